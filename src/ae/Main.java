@@ -25,9 +25,13 @@
  ******************************************************************************/
 package ae;
 
+import diuf.diva.dia.ms.script.BatchRunner;
+import diuf.diva.dia.ms.script.Daemon;
+import diuf.diva.dia.ms.script.InferenceServer;
 import diuf.diva.dia.ms.script.XMLScript;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * @author Mathias Seuret
@@ -43,9 +47,24 @@ public class Main {
         
         if (args.length==0) {
             throw new IllegalArgumentException(
-                    "Syntax: java -jar thejarfile.jar xml-script.xml"
+                    "Syntax: java -jar thejarfile.jar xml-script.xml\n"
+                    + "    or: java -jar thejarfile.jar --daemon [--port 4242] [--watch folder] [--jobs 1]\n"
+                    + "    or: java -jar thejarfile.jar --jobs 4 [--budget N] script1.xml script2.xml ...\n"
+                    + "    or: java -jar thejarfile.jar --serve [--port 8080] [--threads N] id=model-file ..."
             );
         }
+        if (args[0].equals("--serve")) {
+            InferenceServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args[0].equals("--jobs")) {
+            BatchRunner.main(args);
+            return;
+        }
+        if (args[0].equals("--daemon")) {
+            Daemon.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         for (String scriptName : args) {
             long start = System.currentTimeMillis();
             XMLScript script = new XMLScript(scriptName);
@@ -0,0 +1,242 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+package bench;
+
+import Jama.Matrix;
+import diuf.diva.dia.ms.ml.ae.StandardAutoEncoder;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.ml.ae.scae.Convolution;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.ml.layer.Layer;
+import diuf.diva.dia.ms.util.BiDataBlock;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Image;
+import diuf.diva.dia.ms.util.PCA;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Microbenchmarks of the hot paths of the library: the layers, the data
+ * block patch copies, the binary data block reads, the convolutions, the
+ * per-pixel classification, the colorspace conversions and the PCA.
+ * <p>
+ * Usage: java -cp bin:lib/* bench.HotPaths [options], see Microbench for
+ * the options. The benchmark names are of the form group.Class.operation,
+ * so that --filter can select a group.
+ *
+ * @author agent
+ */
+public class HotPaths {
+    /**
+     * Layer classes to benchmark.
+     */
+    private static final String[] LAYERS = {
+            "LinearLayer", "NeuralLayer", "OjasLayer", "ReLU", "SigmoidLayer", "SoftPlusLayer"
+    };
+
+    /**
+     * Typical layer sizes: input x output. The first one corresponds to a
+     * 5x5 RGB patch, the second one to a stacked layer.
+     */
+    private static final int[][] SIZES = {{75, 20}, {500, 100}};
+
+    /**
+     * Fixed seed, so that all runs measure the same data.
+     */
+    private static final Random rand = new Random(42);
+
+    public static void main(String[] args) throws Exception {
+        Microbench mb = new Microbench(HotPaths.class, args);
+        layers(mb);
+        dataBlocks(mb);
+        convolutions(mb);
+        colorspaces(mb);
+        pca(mb);
+        mb.finish();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Layers
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static void layers(Microbench mb) throws Exception {
+        for (String cls : LAYERS) {
+            for (int[] size : SIZES) {
+                String name = "layer." + cls + "[" + size[0] + "x" + size[1] + "].";
+                if (!mb.selected(name)) {
+                    continue;
+                }
+                float[] input = randomArray(size[0]);
+                Layer l = (Layer) Class.forName("diuf.diva.dia.ms.ml.layer." + cls)
+                        .getConstructor(float[].class, int.class, int.class)
+                        .newInstance(input, size[0], size[1]);
+                l.setLearningSpeed(1e-4f);
+                for (int o = 0; o < size[1]; o++) {
+                    l.setExpected(o, rand.nextFloat() * 2 - 1);
+                }
+                l.compute();
+
+                mb.run(name + "compute", () -> {
+                    l.compute();
+                    return l.getOutputArray()[0];
+                });
+                mb.run(name + "backPropagate", () -> l.backPropagate());
+                mb.run(name + "learn", () -> {
+                    l.learn();
+                    return 0;
+                });
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Data blocks
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static void dataBlocks(Microbench mb) {
+        DataBlock db = randomDataBlock(256, 256, 3);
+        float[] patch = new float[15 * 15 * 3];
+        int[] pos = {0};
+        mb.run("datablock.DataBlock.patchToArray[15x15x3]", () -> {
+            int p = pos[0] = (pos[0] + 7) % 240;
+            db.patchToArray(patch, p, p, 15, 15);
+            return patch[0];
+        });
+        mb.run("datablock.DataBlock.weightedPatchPaste[15x15x3]", () -> {
+            int p = pos[0] = (pos[0] + 7) % 240;
+            db.weightedPatchPaste(patch, p, p, 15, 15);
+            return 0;
+        });
+
+        BufferedImage bi = new BufferedImage(256, 256, BufferedImage.TYPE_BYTE_BINARY);
+        for (int x = 0; x < 256; x++) {
+            for (int y = 0; y < 256; y++) {
+                bi.setRGB(x, y, rand.nextBoolean() ? 0xFFFFFF : 0);
+            }
+        }
+        BiDataBlock bdb = new BiDataBlock(bi);
+        mb.run("datablock.BiDataBlock.getValue", () -> {
+            int p = pos[0] = (pos[0] + 7) % 256;
+            return bdb.getValue(0, p, 255 - p);
+        });
+        mb.run("datablock.BiDataBlock.getValues", () -> {
+            int p = pos[0] = (pos[0] + 7) % 256;
+            return bdb.getValues(p, 255 - p)[0];
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Convolutions and classification
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static void convolutions(Microbench mb) {
+        if (!mb.selected("convolution.")) {
+            return;
+        }
+        DataBlock page = randomDataBlock(256, 256, 3);
+
+        Convolution conv = new Convolution(new StandardAutoEncoder(5, 5, 3, 20, "NeuralLayer"), 5, 5);
+        conv.setInput(page, 0, 0);
+        mb.run("convolution.Convolution.encode[5x5x3->20]", () -> {
+            conv.encode();
+            return conv.getOutput().getValue(0, 0, 0);
+        });
+
+        SCAE scae = new SCAE(new StandardAutoEncoder(3, 3, 3, 12, "NeuralLayer"), 3, 3);
+        scae.addLayer(new StandardAutoEncoder(3, 3, 12, 20, "NeuralLayer"), 3, 3);
+        FFCNN ffcnn = new FFCNN(scae, "NeuralLayer", 4);
+        int w = ffcnn.getInputWidth();
+        int h = ffcnn.getInputHeight();
+        int[] pos = {0};
+        mb.run("convolution.FFCNN.compute[pixel]", () -> {
+            int p = pos[0] = (pos[0] + 7) % (256 - Math.max(w, h));
+            ffcnn.centerInput(page, p + w / 2, p + h / 2);
+            ffcnn.compute();
+            return ffcnn.getOutputClass(false);
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Colorspaces
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static void colorspaces(Microbench mb) {
+        Image img = new Image(128, 128);
+        for (int x = 0; x < img.getWidth(); x++) {
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int c = 0; c < img.getDepth(); c++) {
+                    img.set(c, x, y, rand.nextFloat() * 2 - 1);
+                }
+            }
+        }
+        for (Image.Colorspace cs : Image.Colorspace.values()) {
+            if (cs == Image.Colorspace.RGB) {
+                continue;
+            }
+            // Round trip, as the conversion happens in place
+            mb.run("colorspace.Image.convertTo[RGB<->" + cs + ",128x128]", () -> {
+                img.convertTo(cs);
+                img.convertTo(Image.Colorspace.RGB);
+                return img.get(0, 0, 0);
+            });
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // PCA
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static void pca(Microbench mb) {
+        Matrix m = new Matrix(1000, 75);
+        for (int r = 0; r < m.getRowDimension(); r++) {
+            for (int c = 0; c < m.getColumnDimension(); c++) {
+                m.set(r, c, rand.nextGaussian());
+            }
+        }
+        mb.run("pca.PCA.train[1000x75]", () -> {
+            PCA pca = new PCA(PCA.centerMatrix(m));
+            return pca.getW().get(0, 0);
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Data generation
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static float[] randomArray(int length) {
+        float[] arr = new float[length];
+        for (int i = 0; i < length; i++) {
+            arr[i] = rand.nextFloat() * 2 - 1;
+        }
+        return arr;
+    }
+
+    private static DataBlock randomDataBlock(int width, int height, int depth) {
+        DataBlock db = new DataBlock(width, height, depth);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int z = 0; z < depth; z++) {
+                    db.setValue(z, x, y, rand.nextFloat() * 2 - 1);
+                }
+            }
+        }
+        return db;
+    }
+}
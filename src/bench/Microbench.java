@@ -0,0 +1,474 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal microbenchmark harness, measuring the average time per call like
+ * JMH's AverageTime mode, without any dependency. Each benchmark is warmed
+ * up, then measured during several iterations of fixed duration; the mean
+ * time per call and its standard deviation over the iterations are reported,
+ * with the bytes allocated per call by the benchmark thread and the garbage
+ * collections which happened during the measurement.
+ * <p>
+ * As with JMH, each benchmark is measured in its own JVM, started with the
+ * same class path, JVM options and arguments. Otherwise, the profile the JIT
+ * gathered for the previous benchmarks, e.g., the several Op classes seen at
+ * the call site of run(), would slow down the next ones. The forked JVM runs
+ * the main class again, but only sets up and measures that benchmark; the
+ * set-ups of the other benchmarks are skipped if they check selected().
+ * <p>
+ * Options:
+ * <pre>
+ * --filter regex      only runs the benchmarks whose name matches
+ * --warmup n          number of warm-up iterations (default 5)
+ * --iterations n      number of measured iterations (default 5)
+ * --time ms           duration of an iteration (default 1000)
+ * --forks n           JVMs measuring each benchmark, their iterations being
+ *                     pooled; 0 measures all of them in this JVM (default 1)
+ * --csv file          also writes the results to a CSV file
+ * </pre>
+ * The results are only comparable on the same machine and JVM; the JIT can
+ * still optimize a benchmark differently than the real code.
+ *
+ * @author agent
+ */
+public class Microbench {
+    /**
+     * A benchmarked operation. The returned value is consumed, so that the
+     * JIT cannot remove the computation.
+     */
+    public interface Op {
+        /**
+         * Runs the operation once.
+         * @return any value depending on the computation
+         */
+        double run();
+    }
+
+    /**
+     * Result of a benchmark.
+     */
+    public static class Result {
+        public final String name;
+        public final double nsPerOp;
+        public final double nsError;
+        public final double bytesPerOp;
+        public final long gcCount;
+        public final long gcMillis;
+
+        Result(String name, double nsPerOp, double nsError, double bytesPerOp, long gcCount, long gcMillis) {
+            this.name = name;
+            this.nsPerOp = nsPerOp;
+            this.nsError = nsError;
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+    }
+
+    /**
+     * Consumes the results of the operations.
+     */
+    private static volatile double sink;
+
+    /**
+     * Starts the line by which a forked JVM gives its measurement.
+     */
+    private static final String RESULT = "#microbench-result";
+
+    private Pattern filter = null;
+    private int warmup = 5;
+    private int iterations = 5;
+    private long time = 1000;
+    private int forks = 1;
+    private String csv = null;
+
+    /**
+     * Class whose main method registers the benchmarks.
+     */
+    private final Class<?> main;
+    /**
+     * Command line options, passed on to the forked JVMs.
+     */
+    private final String[] args;
+    /**
+     * In a forked JVM, name of the only benchmark to measure, or null.
+     */
+    private String benchmark = null;
+
+    /**
+     * Results of the benchmarks run so far.
+     */
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * Used for measuring the allocations of the benchmark thread, if the JVM
+     * supports it.
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Creates a harness.
+     * @param main class whose main method registers the benchmarks, with
+     *             the same arguments
+     * @param args command line options, see the class description
+     */
+    public Microbench(Class<?> main, String[] args) {
+        this.main = main;
+        this.args = args.clone();
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value after " + args[i]);
+            }
+            switch (args[i]) {
+                case "--filter":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                case "--forks":
+                    forks = Integer.parseInt(args[++i]);
+                    break;
+                case "--csv":
+                    csv = args[++i];
+                    break;
+                case "--benchmark":
+                    // Given to the forked JVMs
+                    benchmark = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        if (t instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) t).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) t;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    /**
+     * Tells whether a benchmark would run, so that expensive set-ups can be
+     * skipped.
+     * @param name name of the benchmark
+     * @return true if the name matches the filter
+     */
+    public boolean selected(String name) {
+        if (benchmark != null) {
+            return benchmark.startsWith(name);
+        }
+        return filter == null || filter.matcher(name).find();
+    }
+
+    /**
+     * Runs a benchmark, if it matches the filter, and prints its result.
+     * @param name name of the benchmark
+     * @param op operation to measure
+     */
+    public void run(String name, Op op) {
+        if (benchmark != null) {
+            if (benchmark.equals(name)) {
+                measure(op).print();
+            }
+            return;
+        }
+        if (!selected(name)) {
+            return;
+        }
+
+        Measure m;
+        if (forks == 0) {
+            m = measure(op);
+        } else {
+            m = new Measure(new double[0], 0, 0, 0, 0);
+            for (int f = 0; f < forks; f++) {
+                m = m.add(fork(name));
+            }
+        }
+
+        double[] ns = m.ns;
+        double mean = 0;
+        for (double v : ns) {
+            mean += v;
+        }
+        mean /= ns.length;
+        double var = 0;
+        for (double v : ns) {
+            var += (v - mean) * (v - mean);
+        }
+        double err = (ns.length > 1) ? Math.sqrt(var / (ns.length - 1)) : 0;
+        double bytes = (threads == null) ? Double.NaN : (double) m.allocated / m.calls;
+
+        Result res = new Result(name, mean, err, bytes, m.gcCount, m.gcMillis);
+        results.add(res);
+        System.out.println(String.format(
+                Locale.ROOT, "%-60s %14.1f +- %10.1f ns/op %12.1f B/op %5d gc %6d ms",
+                name, mean, err, bytes, m.gcCount, m.gcMillis
+        ));
+    }
+
+    /**
+     * Measures an operation in this JVM.
+     * @param op operation
+     * @return the measurement
+     */
+    private Measure measure(Op op) {
+        // Calibrate the number of calls per batch, so that reading the clock
+        // does not matter
+        long batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            runBatch(op, batch);
+            if (System.nanoTime() - start > 1000000L || batch > (1L << 40)) {
+                break;
+            }
+            batch *= 2;
+        }
+
+        for (int i = 0; i < warmup; i++) {
+            iteration(op, batch);
+        }
+
+        long gcCount = -gcCount();
+        long gcMillis = -gcMillis();
+        long tid = Thread.currentThread().getId();
+        long allocated = (threads == null) ? 0 : -threads.getThreadAllocatedBytes(tid);
+        double[] ns = new double[iterations];
+        long calls = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] r = iteration(op, batch);
+            ns[i] = (double) r[0] / r[1];
+            calls += r[1];
+        }
+        allocated += (threads == null) ? 0 : threads.getThreadAllocatedBytes(tid);
+        gcCount += gcCount();
+        gcMillis += gcMillis();
+        return new Measure(ns, allocated, calls, gcCount, gcMillis);
+    }
+
+    /**
+     * Measures a benchmark in a new JVM.
+     * @param name name of the benchmark
+     * @return the measurement
+     */
+    private Measure fork(String name) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(main.getName());
+        cmd.addAll(Arrays.asList(args));
+        cmd.addAll(Arrays.asList("--forks", "0", "--benchmark", name));
+
+        Measure m = null;
+        try {
+            Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = br.readLine(); line != null; line = br.readLine()) {
+                    if (line.startsWith(RESULT)) {
+                        m = Measure.parse(line);
+                    } else {
+                        System.out.println(line);
+                    }
+                }
+            }
+            int code = p.waitFor();
+            if (code != 0 || m == null) {
+                throw new Error("the JVM measuring " + name + " failed, exit code " + code);
+            }
+        } catch (IOException e) {
+            throw new Error("cannot start a JVM for " + name + ": " + e, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Error("interrupted while measuring " + name, e);
+        }
+        return m;
+    }
+
+    /**
+     * Runs batches during the duration of an iteration.
+     * @param op operation
+     * @param batch number of calls per batch
+     * @return the elapsed time in nanoseconds and the number of calls
+     */
+    private long[] iteration(Op op, long batch) {
+        long end = System.nanoTime() + time * 1000000L;
+        long calls = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            runBatch(op, batch);
+            calls += batch;
+            now = System.nanoTime();
+        } while (now < end);
+        return new long[]{now - start, calls};
+    }
+
+    /**
+     * Runs an operation several times.
+     * @param op operation
+     * @param n number of calls
+     */
+    private static void runBatch(Op op, long n) {
+        double acc = 0;
+        for (long i = 0; i < n; i++) {
+            acc += op.run();
+        }
+        sink = acc;
+    }
+
+    /**
+     * @return the total number of garbage collections
+     */
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionCount());
+        }
+        return n;
+    }
+
+    /**
+     * @return the total time spent in garbage collections, in milliseconds
+     */
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionTime());
+        }
+        return n;
+    }
+
+    /**
+     * @return the results of the benchmarks run so far
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Writes the results to the CSV file, if one was given.
+     * @throws IOException if the file cannot be written
+     */
+    public void finish() throws IOException {
+        if (csv == null || benchmark != null) {
+            return;
+        }
+        try (PrintWriter pw = new PrintWriter(new FileWriter(csv))) {
+            pw.println("benchmark,ns_per_op,ns_error,bytes_per_op,gc_count,gc_ms");
+            for (Result r : results) {
+                pw.println(String.format(
+                        Locale.ROOT, "%s,%.3f,%.3f,%.3f,%d,%d",
+                        r.name, r.nsPerOp, r.nsError, r.bytesPerOp, r.gcCount, r.gcMillis
+                ));
+            }
+        }
+    }
+
+    /**
+     * Raw measurement of a benchmark, in this JVM or a forked one.
+     */
+    private static class Measure {
+        /**
+         * Time per call of each measured iteration, in nanoseconds.
+         */
+        final double[] ns;
+        final long allocated;
+        final long calls;
+        final long gcCount;
+        final long gcMillis;
+
+        Measure(double[] ns, long allocated, long calls, long gcCount, long gcMillis) {
+            this.ns = ns;
+            this.allocated = allocated;
+            this.calls = calls;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        /**
+         * Pools the iterations of two measurements.
+         * @param m other measurement
+         * @return a new measurement
+         */
+        Measure add(Measure m) {
+            double[] all = Arrays.copyOf(ns, ns.length + m.ns.length);
+            System.arraycopy(m.ns, 0, all, ns.length, m.ns.length);
+            return new Measure(all, allocated + m.allocated, calls + m.calls, gcCount + m.gcCount, gcMillis + m.gcMillis);
+        }
+
+        /**
+         * Prints the line read by parse() in the parent JVM.
+         */
+        void print() {
+            StringBuilder sb = new StringBuilder(RESULT);
+            sb.append(' ').append(allocated).append(' ').append(calls);
+            sb.append(' ').append(gcCount).append(' ').append(gcMillis);
+            for (double v : ns) {
+                sb.append(' ').append(v);
+            }
+            System.out.println(sb);
+        }
+
+        /**
+         * @param line line printed by print()
+         * @return the measurement
+         */
+        static Measure parse(String line) {
+            String[] f = line.split(" ");
+            double[] ns = new double[f.length - 5];
+            for (int i = 0; i < ns.length; i++) {
+                ns[i] = Double.parseDouble(f[5 + i]);
+            }
+            return new Measure(ns, Long.parseLong(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]), Long.parseLong(f[4]));
+        }
+    }
+}
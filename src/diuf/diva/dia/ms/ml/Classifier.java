@@ -27,10 +27,11 @@
 package diuf.diva.dia.ms.ml;
 
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.DeepCopy;
+import diuf.diva.dia.ms.util.ModelFile;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.Serializable;
 
 /**
  * This class defines the basic interface standard for a classifier in the framework.
@@ -170,6 +171,13 @@ public interface Classifier {
      */
     int getInputHeight();
 
+    /**
+     * Releases the memory which is not needed for classifying: decoders,
+     * gradients and error buffers. The classifier can still be trained
+     * afterwards, the buffers being allocated again when needed.
+     */
+    void freeze();
+
     /**
      * Saves the classifier to a file.
      * @param fName file name
@@ -177,6 +185,15 @@ public interface Classifier {
      */
     void save(final String fName) throws IOException;
 
+    /**
+     * Creates an independent copy of the classifier, e.g., for another
+     * thread.
+     * @return a deep copy of the classifier
+     */
+    default Classifier replicate() {
+        return (Classifier) DeepCopy.copy((Serializable) this);
+    }
+
     /**
      * Loads a Classifier from a file.
      *
@@ -186,11 +203,7 @@ public interface Classifier {
      * @throws ClassNotFoundException if the file is not valid, or if the class has been modified
      */
     static Classifier load(final String fName) throws IOException, ClassNotFoundException {
-        Classifier classifier;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fName))) {
-            classifier = (Classifier) ois.readObject();
-        }
-        return classifier;
+        return (Classifier) ModelFile.read(fName);
     }
 
 
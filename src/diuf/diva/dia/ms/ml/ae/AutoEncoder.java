@@ -28,6 +28,7 @@ package diuf.diva.dia.ms.ml.ae;
 
 import diuf.diva.dia.ms.ml.layer.Layer;
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.PerfCounters;
 
 import java.io.Serializable;
 import java.util.Arrays;
@@ -110,6 +111,11 @@ public abstract class AutoEncoder implements Serializable {
      * Reference to the previous error.
      */
     public DataBlock prevErr;
+    /**
+     * Patch of the previous error given to the encoder, allocated when first
+     * needed.
+     */
+    private transient float[] prevErrArray;
     /**
      * Stores the decoded data.
      */
@@ -288,9 +294,7 @@ public abstract class AutoEncoder implements Serializable {
         if (prevErr==null) {
             this.encoder.setPreviousError(null);
         } else {
-            this.encoder.setPreviousError(
-                    prevErr.patchToArray(this.inputX, this.inputY, this.inputWidth, this.inputHeight)
-            );
+            this.encoder.setPreviousError(prevErrPatch());
         }
         
         this.encoder.setError(error.getValues(this.outputX, this.outputY));
@@ -323,6 +327,7 @@ public abstract class AutoEncoder implements Serializable {
      * Decodes the output and stores it in a temporary array.
      */
     public void decode(){
+        checkDecoder();
         decoder.compute();
     }
 
@@ -332,6 +337,8 @@ public abstract class AutoEncoder implements Serializable {
      * @return an estimation of the reconstruction error
      */
     public float train() {
+        long perf = probe().start(PerfCounters.Op.TRAIN);
+        checkDecoder();
 
         // Compute output
         encoder.compute();
@@ -354,6 +361,7 @@ public abstract class AutoEncoder implements Serializable {
         encoder.learn();
         decoder.learn();
 
+        probe().stop(PerfCounters.Op.TRAIN, perf);
         return err;
     }
 
@@ -379,6 +387,36 @@ public abstract class AutoEncoder implements Serializable {
         return err;
     }
 
+    /**
+     * Drops everything which is needed only for the unsupervised training or
+     * for the backpropagation: the decoder, the decoded array, the error data
+     * blocks and the gradients of the encoder. The gradients are allocated
+     * again if the encoder learns; the error data blocks have to be set again
+     * with setError() and setPrevError() before backpropagating. The decoder
+     * cannot be restored, so the auto-encoder cannot be trained unsupervised
+     * anymore.
+     */
+    public void freeze() {
+        if (encoder != null) {
+            encoder.freeze();
+            encoder.setError(null);
+            encoder.setPreviousError(null);
+        }
+        decoder = null;
+        decoded = null;
+        error = null;
+        prevErr = null;
+    }
+
+    /**
+     * Throws an error if the decoder has been dropped by freeze().
+     */
+    private void checkDecoder() {
+        if (decoder == null && decoded == null) {
+            throw new Error("the decoder of this auto-encoder has been dropped by freeze()");
+        }
+    }
+
     /**
      * This method MUST be called when the training is done.
      * Clearly those AE which need this must override this method
@@ -413,7 +451,9 @@ public abstract class AutoEncoder implements Serializable {
         Arrays.sort(num);
         for (int i = num.length - 1; i >= 0; i--) {
             encoder.deleteOutput(num[i]);
-            decoder.deleteInput(num[i]);
+            if (decoder != null) {
+                decoder.deleteInput(num[i]);
+            }
         }
 
         outputDepth -= number.length;
@@ -519,7 +559,7 @@ public abstract class AutoEncoder implements Serializable {
     public void setOutput(DataBlock db, int x, int y) {
         assert (db != null);
         assert (encoder != null); // Forgot to init AutoEncoder properly?
-        assert (decoder != null); // Forgot to init AutoEncoder properly?
+        assert (decoder != null || decoded == null); // Forgot to init AutoEncoder properly?
         assert (db.getDepth() == outputDepth);
         assert (x < db.getWidth());
         assert (y < db.getHeight());
@@ -538,7 +578,9 @@ public abstract class AutoEncoder implements Serializable {
         }
 
         // Set input for decoder (which is the same as the output of the encoder!)
-        decoder.setInputArray(output.getValues(x, y));
+        if (decoder != null) {
+            decoder.setInputArray(output.getValues(x, y));
+        }
     }
 
     /**
@@ -577,7 +619,20 @@ public abstract class AutoEncoder implements Serializable {
         prevErr = db;
 
         // Set the previous error for the encoder
-        encoder.setPreviousError(prevErr.patchToArray(this.inputX, this.inputY, this.inputWidth, this.inputHeight));
+        encoder.setPreviousError(prevErrPatch());
+    }
+
+    /**
+     * Copies the patch of the previous error at the input position into the
+     * buffer given to the encoder.
+     * @return the buffer
+     */
+    private float[] prevErrPatch() {
+        if (prevErrArray == null || prevErrArray.length != inputLength) {
+            prevErrArray = new float[inputLength];
+        }
+        prevErr.patchToArray(prevErrArray, inputX, inputY, inputWidth, inputHeight);
+        return prevErrArray;
     }
 
     /**
@@ -597,7 +652,9 @@ public abstract class AutoEncoder implements Serializable {
         encoder.setError(error.getValues(outputX, outputY));
 
         // Setting previous error of decoder
-        this.decoder.setPreviousError(encoder.getError());
+        if (decoder != null) {
+            this.decoder.setPreviousError(encoder.getError());
+        }
     }
 
     /**
@@ -606,7 +663,9 @@ public abstract class AutoEncoder implements Serializable {
     public void clearError() {
         encoder.clearError();
         encoder.clearPreviousError();
-        decoder.clearError();
+        if (decoder != null) {
+            decoder.clearError();
+        }
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -636,9 +695,7 @@ public abstract class AutoEncoder implements Serializable {
         if (prevErr==null) {
             encoder.setPreviousError(null);
         } else {
-            encoder.setPreviousError(
-                    prevErr.patchToArray(this.inputX, this.inputY, this.inputWidth, this.inputHeight)
-            );
+            encoder.setPreviousError(prevErrPatch());
         }
         encoder.setError(error.getValues(outputX, outputY));
     }
@@ -845,4 +902,21 @@ public abstract class AutoEncoder implements Serializable {
         return getTypeChar()+":"+getInputWidth()+"x"+getInputHeight()+"x"+getOutputDepth();
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Performance counters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Performance counters, created when first needed.
+     */
+    private transient PerfCounters.Probe probe;
+
+    /**
+     * @return the performance counters of this kind of autoencoder
+     */
+    private PerfCounters.Probe probe() {
+        if (probe == null) {
+            probe = PerfCounters.probe(this);
+        }
+        return probe;
+    }
 }
@@ -28,12 +28,20 @@ package diuf.diva.dia.ms.ml.ae;
 
 import diuf.diva.dia.ms.util.DataBlock;
 
+import java.util.Arrays;
+
 /**
  * The max pooler is often used in convolutional neural networks. It computes,
  * for a patch, the maximum value of each channel.
  * @author Mathias Seuret
  */
 public class MaxPooler extends AutoEncoder {
+    /**
+     * Position of the maximum in the input patch, for each output location and
+     * each channel. The position is stored as x*inputHeight+y. The same unit is
+     * used on all locations of a convolution, hence the map on output locations.
+     */
+    private transient int[][][] argmax;
 
     /**
      * Constructs a max pooler. The number of outputs corresponds to
@@ -47,28 +55,56 @@ public class MaxPooler extends AutoEncoder {
     }
 
     /**
-     * Computes the max in a patch.
+     * Computes the max in a patch. All channels are processed in a single
+     * pass over the patch, and the position of the max is stored for
+     * the backpropagation.
      */
     @Override
     public void encode() {
-        for (int z=0; z<inputDepth; z++) {
-            float max = Float.NEGATIVE_INFINITY;
-            for (int ox=0; ox<inputWidth; ox++) {
-                for (int oy=0; oy<inputHeight; oy++) {
-                    max = Math.max(max, input.getValue(z, inputX+ox, inputY+oy));
+        float[] max = output.getValues(outputX, outputY);
+        int[] arg = getArgmax(outputX, outputY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        Arrays.fill(arg, 0);
+
+        // Refreshed as in AutoEncoder.encode(), the content of the input
+        // may have changed since setInput()
+        input.patchToArray(inputArray, inputX, inputY, inputWidth, inputHeight);
+
+        int i = 0;
+        for (int n=0; n<inputWidth*inputHeight; n++) {
+            for (int z=0; z<inputDepth; z++, i++) {
+                if (inputArray[i] > max[z]) {
+                    max[z] = inputArray[i];
+                    arg[z] = n;
                 }
             }
-            output.getValues(outputX, outputY)[z] = max;
         }
     }
 
+    /**
+     * Returns the array storing the argmax of an output location, allocating
+     * the map if the output data block changed.
+     * @param x output position x
+     * @param y output position y
+     * @return the argmax of each channel
+     */
+    private int[] getArgmax(int x, int y) {
+        if (argmax == null
+                || argmax.length != output.getWidth()
+                || argmax[0].length != output.getHeight()) {
+            argmax = new int[output.getWidth()][output.getHeight()][inputDepth];
+        }
+        return argmax[x][y];
+    }
+
     @Override
     public void decode() {
+        float[] max = output.getValues(outputX, outputY);
         int n = 0;
         for (int x=0; x<inputWidth; x++) {
             for (int y=0; y<inputHeight; y++) {
                 for (int z=0; z<inputDepth; z++) {
-                    decoded[n++] = output.getValues(outputX, outputY)[z];
+                    decoded[n++] = max[z];
                 }
             }
         }
@@ -85,7 +121,8 @@ public class MaxPooler extends AutoEncoder {
     }
 
     /**
-     * Backpropagate the error, if needed.
+     * Backpropagate the error, if needed. The error is routed only to the
+     * positions which were the max during the last encoding.
      * @return the mean absolute error of the top layer
      */
     @Override
@@ -100,17 +137,15 @@ public class MaxPooler extends AutoEncoder {
             return sum / outputDepth;
         }
 
+        // Only the max of each channel received the error
+        int[] arg = getArgmax(outputX, outputY);
         for (int z=0; z<inputDepth; z++) {
-            for (int ox=0; ox<inputWidth; ox++) {
-                for (int oy=0; oy<inputHeight; oy++) {
-                    prevErr.addValue(
-                            z,
-                            ox+inputX,
-                            oy+inputY,
-                            e[z]
-                    );
-                }
-            }
+            prevErr.addValue(
+                    z,
+                    inputX + arg[z] / inputHeight,
+                    inputY + arg[z] % inputHeight,
+                    e[z]
+            );
         }
         return sum / outputDepth;
     }
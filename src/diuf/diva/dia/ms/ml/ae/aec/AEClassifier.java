@@ -30,6 +30,7 @@ import diuf.diva.dia.ms.ml.Classifier;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 import diuf.diva.dia.ms.ml.mlnn.MLNN;
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.ModelFile;
 
 import java.io.*;
 
@@ -40,6 +41,9 @@ import java.io.*;
  * @author Mathias Seuret,Michele Alberti
  */
 public class AEClassifier implements Classifier, Serializable {
+
+    private static final long serialVersionUID = -529044437882281203L;
+
     /**
      * Reference to the autoencoder.
      */
@@ -214,6 +218,23 @@ public class AEClassifier implements Classifier, Serializable {
         return mlnn.backPropagate(nbLayers);
     }
 
+    /**
+     * Drops the decoders and gradients of the autoencoder, which is never trained
+     * by the classifier, and the gradients of the neural network, which are
+     * allocated again if the classifier is trained. The autoencoder can be
+     * shared with the script, which could still train it, so the classifier
+     * freezes a replica of it and does not follow its training anymore.
+     */
+    @Override
+    public void freeze() {
+        scae = scae.replicate();
+        scae.freeze();
+        mlnn.setInput(scae.getCentralMultilayerFeatures());
+        for (int i = 0; i < mlnn.getLayersCount(); i++) {
+            mlnn.getLayer(i).freeze();
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Getters
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -290,9 +311,7 @@ public class AEClassifier implements Classifier, Serializable {
     public void save(final String fName) throws IOException {
         DataBlock pIn = scae.getBase().getInput();
         scae.setInput(new DataBlock(scae.getInputPatchWidth(), scae.getInputPatchHeight(), scae.getInputPatchDepth()));
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(fName))) {
-            oos.writeObject(this);
-        }
+        ModelFile.write(this, fName);
         scae.getBase().setInput(pIn);
     }
 
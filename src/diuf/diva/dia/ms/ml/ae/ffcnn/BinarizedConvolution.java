@@ -0,0 +1,544 @@
+/*****************************************************
+  N-light-N
+
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.ml.ae.ffcnn;
+
+import diuf.diva.dia.ms.ml.ae.AutoEncoder;
+import diuf.diva.dia.ms.ml.layer.AbstractLayer;
+import diuf.diva.dia.ms.ml.layer.Layer;
+import diuf.diva.dia.ms.ml.layer.LinearLayer;
+import diuf.diva.dia.ms.ml.layer.NeuralLayer;
+import diuf.diva.dia.ms.ml.layer.OjasLayer;
+import diuf.diva.dia.ms.ml.layer.ReLU;
+import diuf.diva.dia.ms.ml.layer.SigmoidLayer;
+import diuf.diva.dia.ms.ml.layer.SoftPlusLayer;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.PerfCounters;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Inference-only convolution layer for stages whose input is strictly binary,
+ * e.g., the layer placed on top of a ToBinaryUnit or of a BBRBMUnit.
+ * <p>
+ * The weights of the source unit are binarized (or ternarized) with one scale
+ * factor per output, and the input patches are packed into bits. With b the
+ * input bits, w the weight sign bits and m the mask of non-zero weights, the
+ * dot product becomes
+ * <p>
+ * sum_i b_i * sign(w_i) = bitCount(w &amp; m) - bitCount((b ^ w) &amp; m)
+ * <p>
+ * so that no float multiplication is needed. The layer cannot learn: use
+ * FFCNN.binarize() once the training is done.
+ * @author agent
+ */
+public class BinarizedConvolution implements Serializable, ConvolutionalLayer {
+
+    private static final long serialVersionUID = -6214575731694990246L;
+
+    /**
+     * Input values above this threshold are considered as being 1.
+     */
+    public static final float INPUT_THRESHOLD = 0.5f;
+    /**
+     * Number of units on X axis.
+     */
+    final int outWidth;
+    /**
+     * Number of units on Y axis
+     */
+    final int outHeight;
+    /**
+     * Number of outputs of the unit.
+     */
+    final int outDepth;
+    /**
+     * Width of the input area.
+     */
+    final int inputWidth;
+    /**
+     * Height of the input area.
+     */
+    final int inputHeight;
+    /**
+     * Depth of the input area.
+     */
+    final int inputDepth;
+    /**
+     * Width of the patch seen by one unit.
+     */
+    final int patchWidth;
+    /**
+     * Height of the patch seen by one unit.
+     */
+    final int patchHeight;
+    /**
+     * By how much the units are offset.
+     */
+    final int offsetX;
+    /**
+     * By how much the units are offset.
+     */
+    final int offsetY;
+    /**
+     * Position X of the input area.
+     */
+    int inputX;
+    /**
+     * Position Y of the input area.
+     */
+    int inputY;
+    /**
+     * Unit from which the weights were taken, kept for description purpose.
+     */
+    final AutoEncoder unit;
+    /**
+     * Input data block.
+     */
+    DataBlock input;
+    /**
+     * Output data block.
+     */
+    final DataBlock output;
+    /**
+     * Data block storing the error; never filled as this layer cannot learn.
+     */
+    DataBlock error;
+    /**
+     * Accumulator of the previous layer.
+     */
+    DataBlock prevError = null;
+    /**
+     * Number of longs needed for storing an input patch.
+     */
+    final int nbWords;
+    /**
+     * Sign bits of the weights, indexed by [output][word].
+     */
+    final long[][] signs;
+    /**
+     * Bits set for the non-zero weights, indexed by [output][word].
+     */
+    final long[][] masks;
+    /**
+     * Pre-computed bitCount(signs &amp; masks) for each output.
+     */
+    final int[] positives;
+    /**
+     * Scale factor of each output.
+     */
+    final float[] scale;
+    /**
+     * Bias of each output.
+     */
+    final float[] bias;
+    /**
+     * Activation function applied on the scaled sum.
+     */
+    final Activation activation;
+    /**
+     * Buffer in which the input patches are packed.
+     */
+    final long[] packed;
+
+    /**
+     * Activation functions of the layers which can be binarized.
+     */
+    enum Activation {
+        SOFTSIGN, SIGMOID, RELU, SOFTPLUS, LINEAR
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a binarized layer out of a single unit convolution.
+     * @param src layer from which the weights and geometry are taken
+     * @param ternary if true, weights smaller than 0.7 times their mean
+     *                absolute value are set to zero instead of +/-1
+     */
+    public BinarizedConvolution(SingleUnitConvolution src, boolean ternary) {
+        if (!canBinarize(src)) {
+            throw new Error(
+                    "cannot binarize a layer using "
+                    + src.unit.getClass().getSimpleName()
+            );
+        }
+
+        inputWidth  = src.inputWidth;
+        inputHeight = src.inputHeight;
+        inputDepth  = src.inputDepth;
+        patchWidth  = src.unit.getInputWidth();
+        patchHeight = src.unit.getInputHeight();
+        offsetX     = src.offsetX;
+        offsetY     = src.offsetY;
+        outWidth    = src.outWidth;
+        outHeight   = src.outHeight;
+        outDepth    = src.outDepth;
+        unit        = src.unit;
+        output      = src.output;
+        error       = src.error;
+
+        AbstractLayer layer = (AbstractLayer) unit.encoder;
+        activation = activationOf(layer);
+
+        int inputSize = patchWidth * patchHeight * inputDepth;
+        nbWords   = (inputSize + 63) >>> 6;
+        signs     = new long[outDepth][nbWords];
+        masks     = new long[outDepth][nbWords];
+        positives = new int[outDepth];
+        scale     = new float[outDepth];
+        bias      = layer.getBias().clone();
+        packed    = new long[nbWords];
+
+        float[][] w = layer.getWeights();
+        for (int o = 0; o < outDepth; o++) {
+            float mean = 0;
+            for (int i = 0; i < inputSize; i++) {
+                mean += Math.abs(w[i][o]);
+            }
+            mean /= inputSize;
+
+            // Ternary weight networks use 0.7 times the mean as threshold
+            float threshold = ternary ? 0.7f * mean : 0;
+            float sum = 0;
+            int count = 0;
+            for (int i = 0; i < inputSize; i++) {
+                if (ternary && Math.abs(w[i][o]) <= threshold) {
+                    continue;
+                }
+                masks[o][i >>> 6] |= 1L << (i & 63);
+                if (w[i][o] > 0) {
+                    signs[o][i >>> 6] |= 1L << (i & 63);
+                }
+                sum += Math.abs(w[i][o]);
+                count++;
+            }
+            scale[o] = (count == 0) ? 0 : sum / count;
+
+            for (int k = 0; k < nbWords; k++) {
+                positives[o] += Long.bitCount(signs[o][k] & masks[o][k]);
+            }
+        }
+
+        if (src.input != null) {
+            setInput(src.input, src.inputX, src.inputY);
+        }
+        prevError = src.prevError;
+    }
+
+    /**
+     * Checks whether a layer can be binarized, i.e., whether its unit relies
+     * on a standard encoding layer.
+     * @param src layer to check
+     * @return true if the layer can be binarized
+     */
+    public static boolean canBinarize(SingleUnitConvolution src) {
+        Layer layer = src.unit.encoder;
+        return layer instanceof AbstractLayer && activationOf((AbstractLayer) layer) != null;
+    }
+
+    /**
+     * @param layer encoding layer
+     * @return the activation function of the layer, or null if unknown
+     */
+    private static Activation activationOf(AbstractLayer layer) {
+        if (layer instanceof NeuralLayer) {
+            return Activation.SOFTSIGN;
+        }
+        if (layer instanceof SigmoidLayer) {
+            return Activation.SIGMOID;
+        }
+        if (layer instanceof ReLU) {
+            return Activation.RELU;
+        }
+        if (layer instanceof SoftPlusLayer) {
+            return Activation.SOFTPLUS;
+        }
+        if (layer instanceof LinearLayer || layer instanceof OjasLayer) {
+            return Activation.LINEAR;
+        }
+        return null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Input related
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Select the input data and the position.
+     * @param db input data block
+     * @param posX position x of the input
+     * @param posY position y of the input
+     */
+    @Override
+    public void setInput(DataBlock db, int posX, int posY) {
+        assert (db.getDepth() == inputDepth);
+
+        input = db;
+        inputX = posX;
+        inputY = posY;
+    }
+
+    /**
+     * @return the perception area width
+     */
+    @Override
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    /**
+     * @return the perception area height
+     */
+    @Override
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Error related
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Keeps a reference to the data block of the previous layer; nothing
+     * will ever be backpropagated to it.
+     * @param db data block
+     */
+    @Override
+    public void setPrevError(DataBlock db) {
+        prevError = db;
+    }
+
+    @Override
+    public DataBlock getPrevError() {
+        return prevError;
+    }
+
+    @Override
+    public void addError(int x, int y, int z, float e) {
+        throw new UnsupportedOperationException("binarized layers are inference-only");
+    }
+
+    /**
+     * Nothing to clear, as this layer does not store errors.
+     */
+    @Override
+    public void clearError() {
+        // Nothing to do
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Learning
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    @Override
+    public void setExpected(int z, float ex) {
+        throw new UnsupportedOperationException("binarized layers are inference-only");
+    }
+
+    @Override
+    public void setExpected(int x, int y, int z, float ex) {
+        throw new UnsupportedOperationException("binarized layers are inference-only");
+    }
+
+    @Override
+    public DataBlock getError() {
+        return error;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Memory
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Drops the decoder and gradients of the original unit, and the error data blocks.
+     */
+    @Override
+    public void freeze() {
+        unit.freeze();
+        error = null;
+        prevError = null;
+    }
+
+    /**
+     * Allocates again the error data block, so that lower layers can be wired to it.
+     */
+    @Override
+    public void thaw() {
+        if (error == null) {
+            error = new DataBlock(outWidth, outHeight, outDepth);
+        }
+    }
+
+    @Override
+    public void learn() {
+        throw new UnsupportedOperationException("binarized layers are inference-only");
+    }
+
+    @Override
+    public float backPropagate() {
+        throw new UnsupportedOperationException("binarized layers are inference-only");
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Computing
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Computes the output.
+     */
+    @Override
+    public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
+        for (int x = 0; x < outWidth; x++) {
+            for (int y = 0; y < outHeight; y++) {
+                pack(inputX + x * offsetX, inputY + y * offsetY);
+                float[] out = output.getValues(x, y);
+                for (int o = 0; o < outDepth; o++) {
+                    long[] s = signs[o];
+                    long[] m = masks[o];
+                    int diff = 0;
+                    for (int k = 0; k < nbWords; k++) {
+                        diff += Long.bitCount((packed[k] ^ s[k]) & m[k]);
+                    }
+                    out[o] = activate(scale[o] * (positives[o] - diff) + bias[o]);
+                }
+            }
+        }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
+    }
+
+    /**
+     * Packs an input patch into the bit buffer, in the same order
+     * as DataBlock.patchToArray().
+     * @param posX position x of the patch
+     * @param posY position y of the patch
+     */
+    private void pack(int posX, int posY) {
+        Arrays.fill(packed, 0L);
+        int i = 0;
+        for (int x = posX; x < posX + patchWidth; x++) {
+            for (int y = posY; y < posY + patchHeight; y++) {
+                for (int z = 0; z < inputDepth; z++, i++) {
+                    if (input.getValue(z, x, y) > INPUT_THRESHOLD) {
+                        packed[i >>> 6] |= 1L << (i & 63);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the activation function of the source layer.
+     * @param s weighted sum
+     * @return the activated value
+     */
+    private float activate(float s) {
+        switch (activation) {
+            case SOFTSIGN:
+                return s / (1 + Math.abs(s));
+            case SIGMOID:
+                return 1.0f / (1.0f + (float) Math.exp(-s));
+            case RELU:
+                return s > 0 ? s : 0;
+            case SOFTPLUS:
+                return (float) Math.log(1.0f + (float) Math.exp(s));
+            default:
+                return s;
+        }
+    }
+
+    /**
+     * @return the output of the layer
+     */
+    @Override
+    public DataBlock getOutput() {
+        return output;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Getters & Setters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * @param x should be 0
+     * @param y should be 0
+     * @return the autoencoder from which the weights were taken
+     */
+    @Override
+    public AutoEncoder getAutoEncoder(int x, int y) {
+        assert (x == 0);
+        assert (y == 0);
+
+        return unit;
+    }
+
+    /**
+     * @return the offset of the x-axis
+     */
+    @Override
+    public int getXoffset() {
+        return offsetX;
+    }
+
+    /**
+     * @return the offset of the y-axis
+     */
+    @Override
+    public int getYoffset() {
+        return offsetY;
+    }
+
+    /**
+     * @return always 0, as the layer cannot learn
+     */
+    @Override
+    public float getLearningSpeed() {
+        return 0;
+    }
+
+    /**
+     * Ignored, as the layer cannot learn.
+     * @param s new learning speed
+     */
+    @Override
+    public void setLearningSpeed(float s) {
+        // Nothing to do
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Performance counters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Performance counters, created when first needed.
+     */
+    private transient PerfCounters.Probe probe;
+
+    /**
+     * @return the performance counters of this kind of convolution
+     */
+    private PerfCounters.Probe probe() {
+        if (probe == null) {
+            probe = PerfCounters.probe(this);
+        }
+        return probe;
+    }
+}
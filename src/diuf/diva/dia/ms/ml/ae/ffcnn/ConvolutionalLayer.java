@@ -89,6 +89,21 @@ public interface ConvolutionalLayer {
 
     void setLearningSpeed(float s);
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Memory
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Releases everything which is needed only for training: decoders,
+     * gradients and error data blocks.
+     */
+    void freeze();
+
+    /**
+     * Allocates again the error data block dropped by freeze(). The previous
+     * error has to be set again afterwards.
+     */
+    void thaw();
+
 
 
 }
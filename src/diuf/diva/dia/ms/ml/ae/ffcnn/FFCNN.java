@@ -30,6 +30,8 @@ import diuf.diva.dia.ms.ml.Classifier;
 import diuf.diva.dia.ms.ml.ae.scae.Convolution;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.DeepCopy;
+import diuf.diva.dia.ms.util.ModelFile;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -60,6 +62,10 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      * List of layers.
      */
     private ArrayList<ConvolutionalLayer> layers = new ArrayList<>();
+    /**
+     * True if the training buffers have been dropped by freeze().
+     */
+    private boolean frozen = false;
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
@@ -147,6 +153,9 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      * method leads to having the legacy behavior of N-light-N.
      */
     public void deconvolve() {
+        if (frozen) {
+            throw new Error("cannot deconvolve a frozen FFCNN");
+        }
         for (int i=0; i<layers.size(); i++) {
             layers.set(i, new MultipleUnitsConvolution((SingleUnitConvolution)layers.get(i)));
         }
@@ -156,6 +165,71 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
         }
     }
 
+    /**
+     * Replaces the layers which receive strictly binary inputs (i.e., layers placed
+     * on top of units having a binary output) by inference-only binarized layers.
+     * The network cannot learn anymore once this method has been called.
+     * @param ternary if true, weights are ternarized instead of binarized
+     * @return the number of layers which have been replaced
+     */
+    public int binarize(boolean ternary) {
+        int count = 0;
+        for (int i = 1; i < layers.size(); i++) {
+            if (!(layers.get(i) instanceof SingleUnitConvolution)) {
+                continue;
+            }
+            if (!layers.get(i - 1).getAutoEncoder(0, 0).hasBinaryOutput()) {
+                continue;
+            }
+            SingleUnitConvolution suc = (SingleUnitConvolution) layers.get(i);
+            if (!BinarizedConvolution.canBinarize(suc)) {
+                continue;
+            }
+            layers.set(i, new BinarizedConvolution(suc, ternary));
+            count++;
+        }
+        for (int i = 1; i < layers.size(); i++) {
+            layers.get(i).setInput(layers.get(i - 1).getOutput(), 0, 0);
+            if (!frozen) {
+                layers.get(i).setPrevError(layers.get(i - 1).getError());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Drops the decoders, the gradients and the error data blocks of all layers,
+     * which are not needed for classifying. If the FFCNN is trained again, the
+     * gradients and error data blocks are allocated again; the decoders are not,
+     * as the FFCNN never uses them.
+     */
+    @Override
+    public void freeze() {
+        for (ConvolutionalLayer l : layers) {
+            l.freeze();
+        }
+        frozen = true;
+    }
+
+    /**
+     * Allocates again the error data blocks if the FFCNN has been frozen.
+     */
+    private void thaw() {
+        if (!frozen) {
+            return;
+        }
+        for (ConvolutionalLayer l : layers) {
+            l.thaw();
+        }
+        for (int i = 1; i < layers.size(); i++) {
+            layers.get(i).setPrevError(layers.get(i - 1).getError());
+        }
+        for (ConvolutionalLayer l : layers) {
+            l.clearError();
+        }
+        frozen = false;
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Setting input
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -270,6 +344,7 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      */
     @Override
     public void setExpected(int expectedClass, float expectedValue) {
+        thaw();
         topLayer().setExpected(0, 0, expectedClass, expectedValue);
     }
 
@@ -287,6 +362,7 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      */
     @Override
     public void learn(int nbLayers) {
+        thaw();
         for (int i = layers.size() - 1; i>=0 && i >= layers.size() - nbLayers; i--) {
             layers.get(i).learn();
         }
@@ -311,6 +387,7 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      */
     @Override
     public float backPropagate(int nbLayers) {
+        thaw();
 
         /* Backpropagate
          * The only reason the top layer is not in the for-loop is because we want to return
@@ -334,6 +411,7 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      * @param e error to add
      */
     public void addError(int z, float e) {
+        thaw();
         layers.get(layers.size()-1).addError(0, 0, z, e);
     }
 
@@ -458,11 +536,9 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
      */
     @Override
     public void save(String fileName) throws IOException {
-        ObjectOutputStream oop = new ObjectOutputStream(new FileOutputStream(fileName));
         // Dummy input
         setInput(new DataBlock(getInputWidth(), getInputHeight(), getInputDepth()), 0, 0);
-        oop.writeObject(this);
-        oop.close();
+        ModelFile.write(this, fileName);
     }
 
     /**
@@ -485,20 +561,7 @@ public class FFCNN implements Classifier, Serializable, Cloneable {
     @Override
     public FFCNN clone() throws CloneNotSupportedException {
         super.clone();
-        FFCNN res;
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(this);
-
-            ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-            ObjectInputStream ois = new ObjectInputStream(bais);
-
-            res = (FFCNN) ois.readObject();
-        } catch (Exception e) {
-            throw new Error("Could not clone the FFCNN");
-        }
-        return res;
+        return DeepCopy.copy(this);
     }
 
 
@@ -28,6 +28,7 @@ package diuf.diva.dia.ms.ml.ae.ffcnn;
 import diuf.diva.dia.ms.ml.ae.AutoEncoder;
 import diuf.diva.dia.ms.ml.ae.scae.Convolution;
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.Serializable;
 
 /**
@@ -39,6 +40,9 @@ import java.io.Serializable;
  * @author Mathias Seuret
  */
 public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializable {
+
+    private static final long serialVersionUID = 7451954630362026594L;
+
     /**
      * Number of units on X axis.
      */
@@ -168,11 +172,13 @@ public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializabl
      */
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int x=0; x<outWidth; x++) {
             for (int y=0; y<outHeight; y++) {
                 unit[x][y].encode();
             }
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
     
     /**
@@ -215,11 +221,13 @@ public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializabl
      */
     @Override
     public void learn() {
+        long perf = probe().start(PerfCounters.Op.LEARN);
         for (int x=0; x<outWidth; x++) {
             for (int y=0; y<outHeight; y++) {
                 unit[x][y].learn();
             }
         }
+        probe().stop(PerfCounters.Op.LEARN, perf);
     }
     
     /**
@@ -228,6 +236,7 @@ public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializabl
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
         // Backpropagate on all the units of this layer
         float errSum = 0.0f;
         for (int x = 0; x < outWidth; x++) {
@@ -236,6 +245,8 @@ public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializabl
             }
         }
 
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
+
         // Return the cumulated error
         return errSum / (outWidth * outHeight);
     }
@@ -304,6 +315,35 @@ public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializabl
         }
     }
     
+    /**
+     * Drops the decoders and gradients of the units, and the error data blocks.
+     */
+    @Override
+    public void freeze() {
+        for (AutoEncoder[] col : unit) {
+            for (AutoEncoder u : col) {
+                u.freeze();
+            }
+        }
+        error = null;
+        prevError = null;
+    }
+
+    /**
+     * Allocates again the error data block.
+     */
+    @Override
+    public void thaw() {
+        if (error == null) {
+            error = new DataBlock(outWidth, outHeight, output.getDepth());
+            for (AutoEncoder[] col : unit) {
+                for (AutoEncoder u : col) {
+                    u.setError(error);
+                }
+            }
+        }
+    }
+
     /**
      * @return the current learning speed
      */
@@ -368,4 +408,22 @@ public class MultipleUnitsConvolution implements ConvolutionalLayer, Serializabl
     public int getYoffset() {
         return offsetY;
     }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Performance counters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Performance counters, created when first needed.
+     */
+    private transient PerfCounters.Probe probe;
+
+    /**
+     * @return the performance counters of this kind of convolution
+     */
+    private PerfCounters.Probe probe() {
+        if (probe == null) {
+            probe = PerfCounters.probe(this);
+        }
+        return probe;
+    }
 }
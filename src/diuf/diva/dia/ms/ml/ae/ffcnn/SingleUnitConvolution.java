@@ -30,6 +30,7 @@ import diuf.diva.dia.ms.ml.ae.AutoEncoder;
 import diuf.diva.dia.ms.ml.ae.StandardAutoEncoder;
 import diuf.diva.dia.ms.ml.ae.scae.Convolution;
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.PerfCounters;
 
 import java.io.Serializable;
 
@@ -38,6 +39,9 @@ import java.io.Serializable;
  * @author Mathias Seuret, Michele Alberti
  */
 public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
+
+    private static final long serialVersionUID = -2895668189030299143L;
+
     /**
      * Number of units on X axis.
      */
@@ -319,6 +323,7 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
      * Learn the units
      */
     public void learn() {
+        long perf = probe().start(PerfCounters.Op.LEARN);
         for (int x=0; x<outWidth; x++) {
             for (int y=0; y<outHeight; y++) {
                 unit.setInput(input, inputX + x * offsetX, inputY + y * offsetY);
@@ -327,6 +332,7 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
                 unit.learn();
             }
         }
+        probe().stop(PerfCounters.Op.LEARN, perf);
     }
 
     /**
@@ -334,6 +340,7 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
      * @return the mean absolute error of the outputs
      */
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
         // Backpropagate on all the units of this layer
         float errSum = 0.0f;
         for (int x = 0; x < outWidth; x++) {
@@ -345,6 +352,8 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
             }
         }
 
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
+
         // Return the cumulated error
         return errSum / (outWidth * outHeight);
     }
@@ -356,6 +365,7 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
      * Computes the output.
      */
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int x=0; x<outWidth; x++) {
             for (int y=0; y<outHeight; y++) {
                 unit.setInput(input, inputX + x * offsetX, inputY + y * offsetY);
@@ -363,6 +373,7 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
                 unit.encode();
             }
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
 
     /**
@@ -404,6 +415,30 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
         return offsetY;
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Memory
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Drops the decoder and gradients of the unit, and the error data blocks.
+     */
+    @Override
+    public void freeze() {
+        unit.freeze();
+        error = null;
+        prevError = null;
+    }
+
+    /**
+     * Allocates again the error data block.
+     */
+    @Override
+    public void thaw() {
+        if (error == null) {
+            error = new DataBlock(outWidth, outHeight, outDepth);
+            unit.setError(error);
+        }
+    }
+
     /**
      * @return the current learning speed
      */
@@ -420,4 +455,21 @@ public class SingleUnitConvolution implements Serializable, ConvolutionalLayer {
         unit.setLearningSpeed(s);
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Performance counters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Performance counters, created when first needed.
+     */
+    private transient PerfCounters.Probe probe;
+
+    /**
+     * @return the performance counters of this kind of convolution
+     */
+    private PerfCounters.Probe probe() {
+        if (probe == null) {
+            probe = PerfCounters.probe(this);
+        }
+        return probe;
+    }
 }
@@ -0,0 +1,236 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.ml.ae.scae;
+
+import diuf.diva.dia.ms.util.DataBlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the activation maps of all features of an SCAE on a data block.
+ * The SCAE is applied once per position, and all its outputs are stored in
+ * one plane per feature. Rows are distributed over several threads, each
+ * one having its own copy of the SCAE, and the range of each feature is
+ * tracked during the same pass.
+ * @author agent
+ */
+public class ActivationMapper {
+    /**
+     * Autoencoder used by the first worker, and copied for the other ones.
+     */
+    private final SCAE scae;
+    /**
+     * Number of worker threads.
+     */
+    private final int nbThreads;
+    /**
+     * Copies of the SCAE, created on first use.
+     */
+    private final List<SCAE> replicas = new ArrayList<>();
+    /**
+     * Number of positions on the x axis.
+     */
+    private int mapWidth;
+    /**
+     * Number of positions on the y axis.
+     */
+    private int mapHeight;
+    /**
+     * Activations, indexed by [feature][y * mapWidth + x]. Rows are contiguous,
+     * so that the threads, which compute whole rows, do not write to the
+     * same cache lines.
+     */
+    private float[][] planes;
+    /**
+     * Minimum of each feature.
+     */
+    private float[] min;
+    /**
+     * Maximum of each feature.
+     */
+    private float[] max;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates an activation mapper.
+     * @param scae autoencoder to use
+     * @param nbThreads number of worker threads
+     */
+    public ActivationMapper(SCAE scae, int nbThreads) {
+        assert (scae != null);
+        assert (nbThreads > 0);
+
+        this.scae = scae;
+        this.nbThreads = nbThreads;
+        replicas.add(scae);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Computing
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Computes the activation of all features at every position where the
+     * input patch fits strictly inside the data block.
+     * @param db input data block
+     */
+    public void compute(DataBlock db) {
+        final int nbFeatures = scae.getOutputDepth();
+        mapWidth = Math.max(0, db.getWidth() - scae.getInputPatchWidth());
+        mapHeight = Math.max(0, db.getHeight() - scae.getInputPatchHeight());
+        planes = new float[nbFeatures][mapWidth * mapHeight];
+        min = new float[nbFeatures];
+        max = new float[nbFeatures];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+
+        int nbWorkers = Math.max(1, Math.min(nbThreads, mapHeight));
+        if (nbWorkers == 1) {
+            computeRows(scae, db, new AtomicInteger(), min, max);
+            return;
+        }
+
+        while (replicas.size() < nbWorkers) {
+            replicas.add(scae.replicate());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(nbWorkers);
+        AtomicInteger nextRow = new AtomicInteger();
+        List<Future<float[][]>> futures = new ArrayList<>();
+        for (int w = 0; w < nbWorkers; w++) {
+            final SCAE replica = replicas.get(w);
+            futures.add(pool.submit(() -> {
+                float[] lmin = new float[nbFeatures];
+                float[] lmax = new float[nbFeatures];
+                Arrays.fill(lmin, Float.POSITIVE_INFINITY);
+                Arrays.fill(lmax, Float.NEGATIVE_INFINITY);
+                computeRows(replica, db, nextRow, lmin, lmax);
+                return new float[][] {lmin, lmax};
+            }));
+        }
+        try {
+            for (Future<float[][]> f : futures) {
+                float[][] range = f.get();
+                for (int i = 0; i < nbFeatures; i++) {
+                    min[i] = Math.min(min[i], range[0][i]);
+                    max[i] = Math.max(max[i], range[1][i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Error("Computation of the activations interrupted");
+        } catch (ExecutionException e) {
+            throw new Error("Computation of the activations failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Computes rows until none is left.
+     * @param ae autoencoder owned by the calling thread
+     * @param db input data block
+     * @param nextRow counter giving the next row to compute
+     * @param lmin where to store the minimum of each feature
+     * @param lmax where to store the maximum of each feature
+     */
+    private void computeRows(SCAE ae, DataBlock db, AtomicInteger nextRow, float[] lmin, float[] lmax) {
+        for (int y = nextRow.getAndIncrement(); y < mapHeight; y = nextRow.getAndIncrement()) {
+            for (int x = 0; x < mapWidth; x++) {
+                ae.setInput(db, x, y);
+                float[] act = ae.forward();
+                int pos = y * mapWidth + x;
+                for (int i = 0; i < planes.length; i++) {
+                    float a = act[i];
+                    planes[i][pos] = a;
+                    if (a < lmin[i]) {
+                        lmin[i] = a;
+                    }
+                    if (a > lmax[i]) {
+                        lmax[i] = a;
+                    }
+                }
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Getters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * @return the number of positions on the x axis
+     */
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    /**
+     * @return the number of positions on the y axis
+     */
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
+    /**
+     * @return the number of features
+     */
+    public int getNbFeatures() {
+        return planes.length;
+    }
+
+    /**
+     * @param feature feature number
+     * @param x position x
+     * @param y position y
+     * @return the activation of the feature when the patch is at (x,y)
+     */
+    public float getActivation(int feature, int x, int y) {
+        return planes[feature][y * mapWidth + x];
+    }
+
+    /**
+     * @param feature feature number
+     * @return the minimum activation of the feature
+     */
+    public float getMin(int feature) {
+        return min[feature];
+    }
+
+    /**
+     * @param feature feature number
+     * @return the maximum activation of the feature
+     */
+    public float getMax(int feature) {
+        return max[feature];
+    }
+}
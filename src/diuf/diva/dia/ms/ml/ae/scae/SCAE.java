@@ -28,6 +28,8 @@ package diuf.diva.dia.ms.ml.ae.scae;
 
 import diuf.diva.dia.ms.ml.ae.AutoEncoder;
 import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.DeepCopy;
+import diuf.diva.dia.ms.util.ModelFile;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -39,6 +41,8 @@ import java.util.ArrayList;
  */
 public class SCAE implements Serializable {
 
+    private static final long serialVersionUID = 6934094601093363303L;
+
     /**
      * The different layers of the autoencoder.
      */
@@ -500,11 +504,19 @@ public class SCAE implements Serializable {
             file.mkdirs();
         }
 
-        ObjectOutputStream oop = new ObjectOutputStream(new FileOutputStream(fileName));
         // Dummy input
         setInput(new DataBlock(getInputPatchWidth(), getInputPatchHeight(), getInputPatchDepth()));
-        oop.writeObject(this);
-        oop.close();
+        ModelFile.write(this, fileName);
+    }
+
+    /**
+     * Drops the decoders and gradients of all layers. The SCAE can then only
+     * be used for computing features.
+     */
+    public void freeze() {
+        for (Convolution c : stages) {
+            c.getBase().freeze();
+        }
     }
 
     /**
@@ -516,11 +528,27 @@ public class SCAE implements Serializable {
      * @throws ClassNotFoundException if the
      */
     public static SCAE load(String fileName) throws IOException, ClassNotFoundException {
-        SCAE scae;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
-            scae = (SCAE) ois.readObject();
+        return (SCAE) ModelFile.read(fileName);
+    }
+
+    /**
+     * Creates an independent copy of the SCAE, e.g., for using it on another
+     * thread. The data block currently processed is not copied: the copy gets
+     * a dummy input, and this SCAE keeps its own.
+     * @return a deep copy of the SCAE
+     */
+    public SCAE replicate() {
+        DataBlock input = base.input;
+        int x = base.inputX;
+        int y = base.inputY;
+        setInput(new DataBlock(getInputPatchWidth(), getInputPatchHeight(), getInputPatchDepth()));
+        try {
+            return DeepCopy.copy(this);
+        } finally {
+            if (input != null) {
+                base.setInput(input, x, y);
+            }
         }
-        return scae;
     }
 
     @Override
@@ -0,0 +1,317 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.ml.ae.scae;
+
+import diuf.diva.dia.ms.util.DataBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes and decodes whole pages with an SCAE, using several threads.
+ * <p>
+ * The patch positions of the page are grouped into tiles. Each tile is
+ * recoded by a worker thread, which owns its own copy of the SCAE, into
+ * a tile-local data block covering the tile and its halo (i.e., the part
+ * of the last patches going beyond the tile). The values and weights of
+ * the tiles are then merged with overlap-add, and normalized once.
+ * <p>
+ * The copies of the SCAE are made on first use and kept for the next pages,
+ * so a new recoder has to be created once the SCAE has been trained.
+ * @author agent
+ */
+public class TiledRecoder {
+    /**
+     * Default size, in pixels, of the tiles.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+    /**
+     * Autoencoder used by the first worker, and copied for the other ones.
+     */
+    private final SCAE scae;
+    /**
+     * Horizontal offset between two patches.
+     */
+    private final int offsetX;
+    /**
+     * Vertical offset between two patches.
+     */
+    private final int offsetY;
+    /**
+     * Number of worker threads.
+     */
+    private final int nbThreads;
+    /**
+     * Approximate size of the tiles, without halo.
+     */
+    private int tileSize = DEFAULT_TILE_SIZE;
+    /**
+     * Copies of the SCAE, created on first use and kept for the next pages.
+     */
+    private final List<SCAE> replicas = new ArrayList<>();
+
+    /**
+     * Receives each input patch together with its reconstruction. Arrays are
+     * reused from one patch to the next, and must therefore not be stored.
+     */
+    public interface PatchObserver {
+        /**
+         * @param original input patch, as an array
+         * @param reconstruction decoded patch, as an array
+         */
+        void observe(float[] original, float[] reconstruction);
+    }
+
+    /**
+     * Tile of patch positions.
+     */
+    private static class Tile {
+        /**
+         * Position of the tile on the page.
+         */
+        final int x, y;
+        /**
+         * Number of patch positions in the tile.
+         */
+        final int nx, ny;
+
+        Tile(int x, int y, int nx, int ny) {
+            this.x = x;
+            this.y = y;
+            this.nx = nx;
+            this.ny = ny;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a recoder using non-overlapping patches and one thread per core.
+     * @param scae autoencoder to use
+     */
+    public TiledRecoder(SCAE scae) {
+        this(
+                scae,
+                scae.getInputPatchWidth(),
+                scae.getInputPatchHeight(),
+                Runtime.getRuntime().availableProcessors()
+        );
+    }
+
+    /**
+     * Creates a recoder.
+     * @param scae autoencoder to use
+     * @param offsetX horizontal offset between two patches
+     * @param offsetY vertical offset between two patches
+     * @param nbThreads number of worker threads
+     */
+    public TiledRecoder(SCAE scae, int offsetX, int offsetY, int nbThreads) {
+        assert (scae != null);
+        assert (offsetX > 0);
+        assert (offsetY > 0);
+        assert (nbThreads > 0);
+
+        this.scae = scae;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.nbThreads = nbThreads;
+        replicas.add(scae);
+    }
+
+    /**
+     * @return the autoencoder used by the recoder
+     */
+    public SCAE getSCAE() {
+        return scae;
+    }
+
+    /**
+     * Sets the approximate size of the tiles. Default value: 256.
+     * @param size size in pixels, without halo
+     */
+    public void setTileSize(int size) {
+        assert (size > 0);
+        tileSize = size;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Recoding
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Encodes and decodes a data block. The patches are placed every offsetX
+     * and offsetY pixels, as long as they fit into the data block.
+     * @param db data block to recode
+     * @return the normalized reconstruction
+     */
+    public DataBlock recode(DataBlock db) {
+        return recode(db, null);
+    }
+
+    /**
+     * Encodes and decodes a data block, giving each patch and its
+     * reconstruction to an observer. Worker number i uses the i-th observer,
+     * so one observer per thread has to be provided.
+     * @param db data block to recode
+     * @param observers one observer per thread, or null
+     * @return the normalized reconstruction
+     */
+    public DataBlock recode(DataBlock db, List<? extends PatchObserver> observers) {
+        assert (observers == null || observers.size() >= nbThreads);
+
+        final int pw = scae.getInputPatchWidth();
+        final int ph = scae.getInputPatchHeight();
+        DataBlock res = new DataBlock(db.getWidth(), db.getHeight(), db.getDepth());
+        if (db.getWidth() < pw || db.getHeight() < ph) {
+            return res;
+        }
+
+        // Grouping the patch positions into tiles
+        int nx = (db.getWidth() - pw) / offsetX + 1;
+        int ny = (db.getHeight() - ph) / offsetY + 1;
+        int stepX = Math.max(1, tileSize / offsetX);
+        int stepY = Math.max(1, tileSize / offsetY);
+        List<Tile> tiles = new ArrayList<>();
+        for (int tx = 0; tx < nx; tx += stepX) {
+            for (int ty = 0; ty < ny; ty += stepY) {
+                tiles.add(new Tile(
+                        tx * offsetX,
+                        ty * offsetY,
+                        Math.min(stepX, nx - tx),
+                        Math.min(stepY, ny - ty)
+                ));
+            }
+        }
+
+        DataBlock[] parts = new DataBlock[tiles.size()];
+        int nbWorkers = Math.min(nbThreads, tiles.size());
+        if (nbWorkers == 1) {
+            for (int i = 0; i < tiles.size(); i++) {
+                parts[i] = recodeTile(scae, db, tiles.get(i), observer(observers, 0));
+            }
+        } else {
+            while (replicas.size() < nbWorkers) {
+                replicas.add(scae.replicate());
+            }
+            runWorkers(db, tiles, parts, nbWorkers, observers);
+        }
+
+        // Overlap-add, in tile order so that the result does not depend on scheduling
+        for (int i = 0; i < tiles.size(); i++) {
+            res.overlapAdd(parts[i], tiles.get(i).x, tiles.get(i).y);
+            parts[i] = null;
+        }
+        res.normalizeWeights();
+        return res;
+    }
+
+    /**
+     * Recodes the tiles on several threads. Each worker takes the next tile
+     * to process until none is left.
+     * @param db data block to recode
+     * @param tiles list of tiles
+     * @param parts where the tile-local reconstructions are stored
+     * @param nbWorkers number of threads to use
+     * @param observers one observer per thread, or null
+     */
+    private void runWorkers(DataBlock db, List<Tile> tiles, DataBlock[] parts, int nbWorkers,
+                            List<? extends PatchObserver> observers) {
+        ExecutorService pool = Executors.newFixedThreadPool(nbWorkers);
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < nbWorkers; w++) {
+            final SCAE replica = replicas.get(w);
+            final PatchObserver observer = observer(observers, w);
+            futures.add(pool.submit(() -> {
+                for (int i = next.getAndIncrement(); i < tiles.size(); i = next.getAndIncrement()) {
+                    parts[i] = recodeTile(replica, db, tiles.get(i), observer);
+                }
+            }));
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Error("Recoding interrupted");
+        } catch (ExecutionException e) {
+            throw new Error("Recoding failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Recodes the patches of a tile into a tile-local data block. The weights
+     * of the block are not normalized.
+     * @param ae autoencoder owned by the calling thread
+     * @param db data block to recode
+     * @param tile tile to process
+     * @param observer observer of the patches, or null
+     * @return the values and weights of the tile
+     */
+    private DataBlock recodeTile(SCAE ae, DataBlock db, Tile tile, PatchObserver observer) {
+        int pw = ae.getInputPatchWidth();
+        int ph = ae.getInputPatchHeight();
+        DataBlock local = new DataBlock(
+                (tile.nx - 1) * offsetX + pw,
+                (tile.ny - 1) * offsetY + ph,
+                db.getDepth()
+        );
+        float[] original = (observer == null) ? null : new float[ae.base.getBase().getInputSize()];
+        for (int i = 0; i < tile.nx; i++) {
+            for (int j = 0; j < tile.ny; j++) {
+                ae.setInput(db, tile.x + i * offsetX, tile.y + j * offsetY);
+                if (observer != null) {
+                    System.arraycopy(ae.base.getBase().getInputArray(), 0, original, 0, original.length);
+                }
+                ae.forward();
+                ae.setInput(local, i * offsetX, j * offsetY);
+                ae.backward();
+                if (observer != null) {
+                    observer.observe(original, ae.base.getBase().getDecoded());
+                }
+            }
+        }
+        return local;
+    }
+
+    /**
+     * @param observers list of observers, or null
+     * @param n worker number
+     * @return the observer of the worker, or null
+     */
+    private static PatchObserver observer(List<? extends PatchObserver> observers, int n) {
+        return (observers == null) ? null : observers.get(n);
+    }
+
+}
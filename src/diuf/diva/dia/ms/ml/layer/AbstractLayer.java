@@ -27,6 +27,7 @@
 package diuf.diva.dia.ms.ml.layer;
 
 import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.PerfCounters;
 
 import java.io.*;
 
@@ -41,6 +42,9 @@ import java.io.*;
  * @author Michele Alberti
  */
 public abstract class AbstractLayer implements Layer, Serializable {
+
+    private static final long serialVersionUID = -1648080918445536800L;
+
     /**
      * Number of inputs.
      */
@@ -248,6 +252,7 @@ public abstract class AbstractLayer implements Layer, Serializable {
         weight = nWeight;
 
         inputSize--;
+        probe = null;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -456,6 +461,48 @@ public abstract class AbstractLayer implements Layer, Serializable {
 
     }
 
+    /**
+     * Drops the gradients, which are needed only for training. They are
+     * allocated again as soon as the layer learns or backpropagates.
+     */
+    @Override
+    public void freeze() {
+        gradient = null;
+        biasGradient = null;
+    }
+
+    /**
+     * Allocates the gradients if they have been dropped by freeze().
+     */
+    protected void allocateGradients() {
+        if (gradient == null) {
+            gradient = new float[inputSize][outputSize];
+            biasGradient = new float[outputSize];
+        }
+    }
+
+    /**
+     * @return the gradient array, null if the layer is frozen
+     */
+    public float[][] getGradient() {
+        return gradient;
+    }
+
+    /**
+     * @return the gradient of the bias, null if the layer is frozen
+     */
+    public float[] getBiasGradient() {
+        return biasGradient;
+    }
+
+    /**
+     * @return the arrays used only while computing, i.e., the input, output,
+     * weighted sums and errors; some of them may be null
+     */
+    public float[][] getBuffers() {
+        return new float[][] {input, output, wSum, err, prevErr};
+    }
+
     /**
      * @return the bias array
      */
@@ -571,6 +618,7 @@ public abstract class AbstractLayer implements Layer, Serializable {
     public void load(DataInputStream is) throws IOException {
         inputSize = is.readInt();
         outputSize = is.readInt();
+        probe = null;
         weight = new float[inputSize][outputSize];
         for (int i = 0; i < inputSize; i++) {
             for (int o = 0; o < outputSize; o++) {
@@ -588,4 +636,26 @@ public abstract class AbstractLayer implements Layer, Serializable {
         wSum = new float[this.outputSize];
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Performance counters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Performance counters, created when first needed.
+     */
+    private transient PerfCounters.Probe probe;
+
+    /**
+     * Returns the performance counters shared by all layers of the same
+     * class and dimensions.
+     *
+     * @return the performance counters of this layer
+     */
+    protected PerfCounters.Probe probe() {
+        if (probe == null) {
+            probe = PerfCounters.probe(this);
+        }
+        return probe;
+    }
+
 }
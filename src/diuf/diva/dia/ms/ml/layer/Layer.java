@@ -150,6 +150,12 @@ public interface Layer {
      */
     void clearError();
 
+    /**
+     * Releases the memory used only for training, typically the gradients.
+     * It must be allocated again automatically if the layer learns.
+     */
+    void freeze();
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Getters&Setters
     ///////////////////////////////////////////////////////////////////////////////////////////////
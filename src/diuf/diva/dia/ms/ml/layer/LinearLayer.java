@@ -26,6 +26,7 @@
 
 package diuf.diva.dia.ms.ml.layer;
 
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.DataInputStream;
 import java.io.IOException;
 
@@ -109,6 +110,7 @@ public class LinearLayer extends AbstractLayer {
      */
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int o = 0; o < outputSize; o++) {
             wSum[o] = bias[o];
             for (int i = 0; i < inputSize; i++) {
@@ -116,6 +118,7 @@ public class LinearLayer extends AbstractLayer {
             }
             output[o] = wSum[o];
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -126,6 +129,8 @@ public class LinearLayer extends AbstractLayer {
      */
     @Override
     public void learn() {
+        long perf = probe().start(PerfCounters.Op.LEARN);
+        allocateGradients();
         boolean normalise = false;
         for (int o = 0; o < outputSize; o++) {
             for (int i = 0; i < inputSize; i++) {
@@ -157,6 +162,7 @@ public class LinearLayer extends AbstractLayer {
                 }
             }
         }
+        probe().stop(PerfCounters.Op.LEARN, perf);
     }
 
     /**
@@ -165,6 +171,8 @@ public class LinearLayer extends AbstractLayer {
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
+        allocateGradients();
         float errSum = 0.0f;
         if (prevErr == null) {
             for (int o = 0; o < outputSize; o++) {
@@ -185,6 +193,7 @@ public class LinearLayer extends AbstractLayer {
             }
         }
 
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
         return errSum / outputSize;
     }
 
@@ -26,6 +26,7 @@
 
 package diuf.diva.dia.ms.ml.layer;
 
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.DataInputStream;
 import java.io.IOException;
 
@@ -97,6 +98,7 @@ public class NeuralLayer extends AbstractLayer {
      */
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int o = 0; o < outputSize; o++) {
             wSum[o] = bias[o];
             for (int i = 0; i < inputSize; i++) {
@@ -104,6 +106,7 @@ public class NeuralLayer extends AbstractLayer {
             }
             output[o] = wSum[o] / (1 + Math.abs(wSum[o]));
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -114,6 +117,8 @@ public class NeuralLayer extends AbstractLayer {
      */
     @Override
     public void learn() {
+        long perf = probe().start(PerfCounters.Op.LEARN);
+        allocateGradients();
         for (int o = 0; o < outputSize; o++) {
             for (int i = 0; i < inputSize; i++) {
                 weight[i][o] = (1.0f-decay)*weight[i][o] - learningSpeed * gradient[i][o];
@@ -122,6 +127,7 @@ public class NeuralLayer extends AbstractLayer {
             bias[o] = (1.0f-decay)*bias[o] - learningSpeed * biasGradient[o];
             biasGradient[o] = 0.0f;
         }
+        probe().stop(PerfCounters.Op.LEARN, perf);
     }
 
     /**
@@ -130,6 +136,8 @@ public class NeuralLayer extends AbstractLayer {
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
+        allocateGradients();
         float errSum = 0.0f;
         // It does not look nice, but it decreases MUCH the number
         // of conditions executed - I don't think the Java compiler
@@ -157,6 +165,7 @@ public class NeuralLayer extends AbstractLayer {
             }
         }
         
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
         return errSum / outputSize;
     }
 
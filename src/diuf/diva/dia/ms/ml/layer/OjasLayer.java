@@ -26,6 +26,7 @@
 
 package diuf.diva.dia.ms.ml.layer;
 
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.DataInputStream;
 import java.io.IOException;
 
@@ -107,6 +108,7 @@ public class OjasLayer extends AbstractLayer {
      */
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int o = 0; o < outputSize; o++) {
             wSum[o] = bias[o];
             for (int i = 0; i < inputSize; i++) {
@@ -114,6 +116,7 @@ public class OjasLayer extends AbstractLayer {
             }
             output[o] = wSum[o];
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -125,6 +128,8 @@ public class OjasLayer extends AbstractLayer {
      */
     @Override
     public void learn() {
+        long perf = probe().start(PerfCounters.Op.LEARN);
+        allocateGradients();
 
         for (int o = 0; o < outputSize; o++) {
             // Computing phi
@@ -147,6 +152,7 @@ public class OjasLayer extends AbstractLayer {
             // Updating learning speed
             //learningSpeed *= 0.9999;
         }
+        probe().stop(PerfCounters.Op.LEARN, perf);
     }
 
     /**
@@ -155,6 +161,8 @@ public class OjasLayer extends AbstractLayer {
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
+        allocateGradients();
 
         float errSum = 0.0f;
         for (int o = 0; o < outputSize; o++) {
@@ -166,6 +174,7 @@ public class OjasLayer extends AbstractLayer {
             }
         }
 
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
         return errSum / outputSize;
     }
 
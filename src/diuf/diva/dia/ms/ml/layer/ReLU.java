@@ -24,6 +24,7 @@
  ******************************************************************************/
 package diuf.diva.dia.ms.ml.layer;
 
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.DataInputStream;
 import java.io.IOException;
 
@@ -91,6 +92,7 @@ public class ReLU extends NeuralLayer {
 
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int o = 0; o < outputSize; o++) {
             wSum[o] = bias[o];
             for (int i = 0; i < inputSize; i++) {
@@ -98,6 +100,7 @@ public class ReLU extends NeuralLayer {
             }
             output[o] = wSum[o]>0 ? wSum[o] : 0;
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -108,6 +111,8 @@ public class ReLU extends NeuralLayer {
      */
     @Override
     public void learn() {
+        long perf = probe().start(PerfCounters.Op.LEARN);
+        allocateGradients();
         for (int o = 0; o < outputSize; o++) {
             for (int i = 0; i < inputSize; i++) {
                 weight[i][o] = (1.0f-decay)*weight[i][o] - learningSpeed * gradient[i][o];
@@ -116,6 +121,7 @@ public class ReLU extends NeuralLayer {
             bias[o] = (1.0f-decay)*bias[o] - learningSpeed * biasGradient[o];
             biasGradient[o] = 0.0f;
         }
+        probe().stop(PerfCounters.Op.LEARN, perf);
     }
 
     /**
@@ -124,6 +130,8 @@ public class ReLU extends NeuralLayer {
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
+        allocateGradients();
         float errSum = 0.0f;
         // It does not look nice, but it decreases MUCH the number
         // of conditions executed - I don't think the Java compiler
@@ -151,6 +159,7 @@ public class ReLU extends NeuralLayer {
             }
         }
         
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
         return errSum / outputSize;
     }
     
@@ -5,6 +5,7 @@
  */
 package diuf.diva.dia.ms.ml.layer;
 
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.DataInputStream;
 import java.io.IOException;
 
@@ -67,6 +68,7 @@ public class SigmoidLayer extends NeuralLayer {
      */
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int o = 0; o < outputSize; o++) {
             wSum[o] = bias[o];
             for (int i = 0; i < inputSize; i++) {
@@ -74,6 +76,7 @@ public class SigmoidLayer extends NeuralLayer {
             }
             output[o] = 1.0f / (1.0f + (float)Math.exp(-wSum[o]));
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
     
     /**
@@ -82,6 +85,8 @@ public class SigmoidLayer extends NeuralLayer {
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
+        allocateGradients();
         float errSum = 0.0f;
         // It does not look nice, but it decreases MUCH the number
         // of conditions executed - I don't think the Java compiler
@@ -107,6 +112,7 @@ public class SigmoidLayer extends NeuralLayer {
             }
         }
         
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
         return errSum / outputSize;
     }
 }
@@ -5,6 +5,7 @@
  */
 package diuf.diva.dia.ms.ml.layer;
 
+import diuf.diva.dia.ms.util.PerfCounters;
 import java.io.DataInputStream;
 import java.io.IOException;
 
@@ -75,6 +76,7 @@ public class SoftPlusLayer extends NeuralLayer {
      */
     @Override
     public void compute() {
+        long perf = probe().start(PerfCounters.Op.COMPUTE);
         for (int o = 0; o < outputSize; o++) {
             wSum[o] = bias[o];
             for (int i = 0; i < inputSize; i++) {
@@ -82,6 +84,7 @@ public class SoftPlusLayer extends NeuralLayer {
             }
             output[o] = (float)Math.log(1.0f+(float)Math.exp(wSum[o]));
         }
+        probe().stop(PerfCounters.Op.COMPUTE, perf);
     }
     
     /**
@@ -90,6 +93,8 @@ public class SoftPlusLayer extends NeuralLayer {
      */
     @Override
     public float backPropagate() {
+        long perf = probe().start(PerfCounters.Op.BACKPROPAGATE);
+        allocateGradients();
         float errSum = 0.0f;
         // It does not look nice, but it decreases MUCH the number
         // of conditions executed - I don't think the Java compiler
@@ -115,6 +120,7 @@ public class SoftPlusLayer extends NeuralLayer {
             }
         }
         
+        probe().stop(PerfCounters.Op.BACKPROPAGATE, perf);
         return errSum / outputSize;
     }
 }
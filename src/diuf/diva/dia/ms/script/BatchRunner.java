@@ -0,0 +1,161 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import diuf.diva.dia.ms.util.DatasetCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs several XML scripts concurrently in the same JVM. The datasets loaded
+ * from the same folder, with the same color space and size limit, are loaded
+ * once and shared by the scripts (see DatasetCache). A worker budget, shared
+ * by all scripts, limits the number of threads computing at once: each
+ * command takes one permit, and the commands computing on several threads
+ * take one more per additional thread (see XMLScript.acquireThreads()).
+ * <p>
+ * Command line:
+ * <pre>
+ * java -jar nlightn.jar --jobs 4 [--budget N] script1.xml script2.xml ...
+ * </pre>
+ *
+ * @author agent
+ */
+public class BatchRunner {
+    /**
+     * Datasets shared by the scripts.
+     */
+    private final DatasetCache cache = new DatasetCache();
+    /**
+     * Limits the number of threads computing at once.
+     */
+    private final Semaphore budget;
+    /**
+     * Number of scripts running at once.
+     */
+    private final int jobs;
+
+    /**
+     * @param jobs number of scripts running at once
+     * @param budget number of threads computing at once, in all scripts
+     */
+    public BatchRunner(int jobs, int budget) {
+        assert (jobs > 0);
+        assert (budget > 0);
+
+        this.jobs = jobs;
+        this.budget = new Semaphore(budget);
+    }
+
+    /**
+     * Runs scripts, and waits for all of them.
+     * @param scripts file names of the scripts
+     * @return the number of scripts which failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int run(List<String> scripts) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        List<Future<?>> futures = new ArrayList<>();
+        for (String name : scripts) {
+            futures.add(pool.submit(() -> {
+                runScript(name);
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        int failures = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                System.err.println("Script " + scripts.get(i) + " failed: " + e.getCause());
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Runs one script.
+     * @param name file name of the script
+     * @throws Exception if the script fails
+     */
+    private void runScript(String name) throws Exception {
+        long start = System.currentTimeMillis();
+        XMLScript script = new XMLScript(name);
+        script.datasetCache = cache;
+        script.workerBudget = budget;
+        try {
+            String res = script.execute();
+            long t = (System.currentTimeMillis() - start) / 1000;
+            System.out.printf("Script %s exited correctly with value %s after %d:%02d:%02d\n",
+                    name, res, (t / 3600), ((t % 3600) / 60), (t % 60));
+        } finally {
+            script.clearData();
+        }
+    }
+
+    /**
+     * @return the number of datasets currently shared
+     */
+    public int getCachedDatasets() {
+        return cache.size();
+    }
+
+    /**
+     * Runs scripts concurrently.
+     * @param args options and scripts, see the class description
+     * @throws Exception if a script fails
+     */
+    public static void main(String[] args) throws Exception {
+        int jobs = 1;
+        int budget = Runtime.getRuntime().availableProcessors();
+        List<String> scripts = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jobs":
+                    jobs = Integer.parseInt(args[++i]);
+                    break;
+                case "--budget":
+                    budget = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    scripts.add(args[i]);
+            }
+        }
+        int failures = new BatchRunner(jobs, budget).run(scripts);
+        if (failures > 0) {
+            throw new Error(failures + " of " + scripts.size() + " scripts failed");
+        }
+    }
+}
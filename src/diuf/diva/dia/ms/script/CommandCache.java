@@ -0,0 +1,384 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.script.command.AbstractCommand;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.ModelFile;
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Stores on disk the models and datasets produced by expensive commands, e.g.,
+ * trainings, so that running a script again does not repeat them.
+ * <p>
+ * Only the commands with a seed attribute are cached: they draw their random
+ * numbers from their own generator, so that their products depend only on
+ * their element and inputs. The key of an execution is a hash of the
+ * preprocessed XML element of the command, including its seed, and of the
+ * content of the models and datasets it references. On a hit, the weights of
+ * the models are copied into the existing instances, so that the objects
+ * referring to them, e.g., a classifier built on an SCAE, see the trained
+ * values; the new datasets and the result are restored as well. The least
+ * recently used entries are deleted when the folder exceeds its size limit.
+ * <p>
+ * It is enabled by the root element of the script:
+ * <pre>
+ * {@code <script cache="cache-folder" cache-size="4096">}
+ * {@code   <train-scae ref="scae" seed="1234">...</train-scae>}
+ * </pre>
+ * with the size in MB. A command can opt out with cache="false".
+ *
+ * @author agent
+ */
+public class CommandCache {
+    /**
+     * Extension of the cache files.
+     */
+    private static final String EXTENSION = ".nlnc";
+
+    /**
+     * Folder of the cache.
+     */
+    private final File folder;
+    /**
+     * Maximum size of the folder, in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * @param folder folder of the cache, created if needed
+     * @param maxBytes maximum size of the folder, in bytes
+     */
+    public CommandCache(String folder, long maxBytes) {
+        this.folder = new File(folder);
+        this.maxBytes = maxBytes;
+        if (!this.folder.isDirectory() && !this.folder.mkdirs()) {
+            throw new Error("Cannot create the cache folder " + folder);
+        }
+    }
+
+    /**
+     * Executes a command, or restores its products from the cache.
+     * @param script script running the command
+     * @param cmd command
+     * @param e element of the command
+     * @return the result of the command
+     * @throws Exception if the command fails
+     */
+    public String execute(XMLScript script, AbstractCommand cmd, Element e) throws Exception {
+        Set<String> ids = new TreeSet<>(cmd.getResources(e));
+        String key = key(script, e, ids);
+        File file = new File(folder, key + EXTENSION);
+
+        if (file.isFile()) {
+            try {
+                String res = restore(script, file);
+                file.setLastModified(System.currentTimeMillis());
+                script.println(cmd.tagName() + ": restored from the cache (" + key.substring(0, 12) + ")");
+                return res;
+            } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+                script.println(cmd.tagName() + ": ignoring invalid cache entry " + file.getName());
+                file.delete();
+            }
+        }
+
+        Map<String, Dataset> before = new HashMap<>();
+        for (String id : ids) {
+            before.put(id, script.datasets.get(id));
+        }
+        String res = cmd.execute(e);
+        if (store(script, file, ids, before, res)) {
+            evict(file);
+        }
+        return res;
+    }
+
+    /**
+     * Computes the key of a command.
+     * @param script script running the command
+     * @param e element of the command
+     * @param ids resources of the command
+     * @return a hexadecimal SHA-256 hash
+     * @throws IOException if a model cannot be serialized
+     */
+    private String key(XMLScript script, Element e, Set<String> ids) throws IOException {
+        MessageDigest md = sha256();
+        md.update(canonical(script, e).getBytes(StandardCharsets.UTF_8));
+        md.update(script.colorspace.toString().getBytes(StandardCharsets.UTF_8));
+        for (String id : ids) {
+            md.update(("|" + id).getBytes(StandardCharsets.UTF_8));
+            if (script.scae.containsKey(id)) {
+                md.update(modelBytes(script.scae.get(id)));
+            }
+            if (script.classifiers.containsKey(id)) {
+                md.update(modelBytes(script.classifiers.get(id)));
+            }
+            if (script.datasets.containsKey(id)) {
+                hash(md, script.datasets.get(id));
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes an element, with its values preprocessed, in a canonical form.
+     * @param script script defining the variables
+     * @param e element
+     * @return a string representing the element
+     */
+    private static String canonical(XMLScript script, Element e) {
+        StringBuilder sb = new StringBuilder("<").append(e.getName());
+        TreeMap<String, String> attributes = new TreeMap<>();
+        for (Attribute a : e.getAttributes()) {
+            attributes.put(a.getName(), script.preprocess(a.getValue()));
+        }
+        for (Map.Entry<String, String> a : attributes.entrySet()) {
+            sb.append(' ').append(a.getKey()).append("=\"").append(a.getValue()).append('"');
+        }
+        sb.append('>').append(script.preprocess(e.getTextTrim()));
+        for (Element c : e.getChildren()) {
+            sb.append(canonical(script, c));
+        }
+        return sb.append("</").append(e.getName()).append('>').toString();
+    }
+
+    /**
+     * Adds the content of a dataset to a hash. The order of the data blocks is
+     * ignored, as trainings shuffle the datasets, which would otherwise change
+     * the keys of the next commands whether the training is restored or not.
+     * @param md hash
+     * @param ds dataset
+     */
+    private static void hash(MessageDigest md, Dataset ds) {
+        List<String> blocks = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(12);
+        // Not a for-each loop, as the iterator shuffles the dataset
+        for (int i = 0; i < ds.size(); i++) {
+            DataBlock db = ds.get(i);
+            MessageDigest bmd = sha256();
+            buf.clear();
+            buf.putInt(db.getWidth()).putInt(db.getHeight()).putInt(db.getDepth());
+            bmd.update(buf.array(), 0, 12);
+            ByteBuffer values = ByteBuffer.allocate(4 * db.getDepth());
+            for (int x = 0; x < db.getWidth(); x++) {
+                for (int y = 0; y < db.getHeight(); y++) {
+                    values.clear();
+                    for (float v : db.getValues(x, y)) {
+                        values.putFloat(v);
+                    }
+                    bmd.update(values.array(), 0, values.position());
+                }
+            }
+            blocks.add(Base64.getEncoder().encodeToString(bmd.digest()));
+        }
+        Collections.sort(blocks);
+        for (String b : blocks) {
+            md.update(b.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Stores the products of a command.
+     * @param script script running the command
+     * @param file cache file
+     * @param ids resources of the command
+     * @param before datasets before the execution of the command
+     * @param res result of the command
+     * @return false if the products cannot be stored
+     * @throws IOException if the file cannot be written
+     */
+    private boolean store(XMLScript script, File file, Set<String> ids, Map<String, Dataset> before, String res) throws IOException {
+        LinkedHashMap<String, Object> entry = new LinkedHashMap<>();
+        entry.put("result", res);
+        for (String id : ids) {
+            if (script.scae.containsKey(id)) {
+                entry.put("scae:" + id, modelBytes(script.scae.get(id)));
+            }
+            if (script.classifiers.containsKey(id)) {
+                entry.put("classifier:" + id, modelBytes(script.classifiers.get(id)));
+            }
+            // Only new datasets are stored, the others did not change
+            Dataset ds = script.datasets.get(id);
+            if (ds != null && ds != before.get(id)) {
+                ArrayList<DataBlock> blocks = new ArrayList<>();
+                for (int i = 0; i < ds.size(); i++) {
+                    blocks.add(ds.get(i));
+                }
+                entry.put("dataset:" + id, blocks);
+            }
+        }
+
+        File tmp = File.createTempFile("entry", ".tmp", folder);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            oos.writeObject(entry);
+        } catch (NotSerializableException ex) {
+            tmp.delete();
+            return false;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Restores the products of a command: the stored weights are copied
+     * into the models of the script, and the new datasets are put back.
+     * @param script script running the command
+     * @param file cache file
+     * @return the result of the command
+     * @throws IOException if the file cannot be read or does not match the models
+     * @throws ClassNotFoundException if the file is not valid
+     */
+    @SuppressWarnings("unchecked")
+    private String restore(XMLScript script, File file) throws IOException, ClassNotFoundException {
+        Map<String, Object> entry;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            entry = (Map<String, Object>) ois.readObject();
+        }
+
+        // Checking all models before modifying any of them
+        Map<Object, ModelFile> models = new IdentityHashMap<>();
+        for (Map.Entry<String, Object> p : entry.entrySet()) {
+            String k = p.getKey();
+            Object model;
+            if (k.startsWith("scae:")) {
+                model = script.scae.get(k.substring(5));
+            } else if (k.startsWith("classifier:")) {
+                model = script.classifiers.get(k.substring(11));
+            } else {
+                continue;
+            }
+            ModelFile mf = modelFile((byte[]) p.getValue());
+            if (model == null || !mf.fits(model)) {
+                throw new InvalidObjectException(k + " does not match the model of the script");
+            }
+            models.put(model, mf);
+        }
+
+        for (Map.Entry<Object, ModelFile> m : models.entrySet()) {
+            m.getValue().readInto(m.getKey());
+        }
+        for (Map.Entry<String, Object> p : entry.entrySet()) {
+            String k = p.getKey();
+            if (k.startsWith("dataset:")) {
+                Dataset ds = new Dataset(script.colorspace);
+                ds.addAll((List<DataBlock>) p.getValue());
+                script.unloadDataset(k.substring(8));
+                script.datasets.put(k.substring(8), ds);
+            }
+        }
+        return (String) entry.get("result");
+    }
+
+    /**
+     * Deletes the least recently used entries until the folder fits its size
+     * limit.
+     * @param keep entry which must not be deleted
+     */
+    private synchronized void evict(File keep) {
+        File[] files = folder.listFiles((d, n) -> n.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (!f.equals(keep)) {
+                total -= f.length();
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Saves a model in the model file format.
+     * @param model SCAE or classifier
+     * @return the content of the model file
+     * @throws IOException if the model cannot be saved
+     */
+    private static byte[] modelBytes(Object model) throws IOException {
+        File tmp = File.createTempFile("model", ".nlnm");
+        try {
+            if (model instanceof SCAE) {
+                ((SCAE) model).save(tmp.getPath());
+            } else {
+                ((Classifier) model).save(tmp.getPath());
+            }
+            return Files.readAllBytes(tmp.toPath());
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Opens a model saved by modelBytes().
+     * @param bytes content of the model file
+     * @return the model file
+     * @throws IOException if the model cannot be read
+     */
+    private static ModelFile modelFile(byte[] bytes) throws IOException {
+        File tmp = File.createTempFile("model", ".nlnm");
+        try {
+            Files.write(tmp.toPath(), bytes);
+            return new ModelFile(tmp.getPath());
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return a SHA-256 message digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("SHA-256 is not available");
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import diuf.diva.dia.ms.script.command.AbstractCommand;
+import org.jdom2.Element;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the commands of a script, possibly concurrently.
+ * <p>
+ * When automatic scheduling is enabled, each command waits only for the
+ * previous commands sharing a resource with it (an id of model or dataset, a
+ * file or a folder, see AbstractCommand.getResources()). Barrier commands, e.g.,
+ * define, print, or any command using $ANS, wait for all previous commands and
+ * the next ones wait for them.
+ * <p>
+ * Two blocks can be used in scripts:
+ * <pre>
+ * {@code
+ * <parallel>   children run concurrently, without any dependency check
+ * <sequence>   children run one after the other
+ * }
+ * </pre>
+ * Results are folded in the document order, so $ANS always gets the same
+ * value as with a sequential execution. Within a parallel block, $ANS keeps
+ * the value it had before the block.
+ *
+ * @author agent
+ */
+class CommandScheduler {
+    /**
+     * Script containing the commands.
+     */
+    private final XMLScript script;
+    /**
+     * Runs the commands.
+     */
+    private final ExecutorService pool;
+    /**
+     * Limits the number of commands of this script running at once, null if
+     * unlimited. The worker budget of the script, if any, applies as well.
+     */
+    private final Semaphore permits;
+    /**
+     * True if independent commands run concurrently.
+     */
+    private final boolean automatic;
+
+    /**
+     * @param script script containing the commands
+     * @param threads maximum number of commands running at once; automatic
+     *                scheduling is enabled if it is larger than 1
+     */
+    CommandScheduler(XMLScript script, int threads) {
+        this.script = script;
+        this.automatic = threads > 1;
+        this.permits = automatic ? new Semaphore(threads) : null;
+        pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "script-command");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs commands.
+     * @param elements elements of the commands
+     * @return the result of the last command returning something
+     * @throws Exception if a command fails
+     */
+    String execute(List<Element> elements) throws Exception {
+        try {
+            return automatic ? schedule(elements) : sequence(elements, true);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs commands concurrently, according to their dependencies.
+     * @param elements elements of the commands
+     * @return the result of the last command returning something
+     * @throws Exception if a command fails
+     */
+    private String schedule(List<Element> elements) throws Exception {
+        Map<String, CompletableFuture<String>> lastUse = new HashMap<>();
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        String res = "";
+        for (Element e : elements) {
+            if (isBarrier(e)) {
+                res = fold(res, pending, true);
+                pending.clear();
+                lastUse.clear();
+                res = fold(res, run(e, true), true);
+                continue;
+            }
+            Set<CompletableFuture<String>> deps = new HashSet<>();
+            Set<String> resources = getResources(e);
+            for (String r : resources) {
+                if (lastUse.containsKey(r)) {
+                    deps.add(lastUse.get(r));
+                }
+            }
+            CompletableFuture<String> f = CompletableFuture
+                    .allOf(deps.toArray(new CompletableFuture<?>[0]))
+                    .thenApplyAsync(v -> call(e, false), pool);
+            for (String r : resources) {
+                lastUse.put(r, f);
+            }
+            pending.add(f);
+        }
+        return fold(res, pending, true);
+    }
+
+    /**
+     * Runs commands one after the other.
+     * @param elements elements of the commands
+     * @param updateAns true if $ANS is updated after each command
+     * @return the result of the last command returning something
+     * @throws Exception if a command fails
+     */
+    private String sequence(List<Element> elements, boolean updateAns) throws Exception {
+        String res = "";
+        for (Element e : elements) {
+            res = fold(res, run(e, updateAns), updateAns);
+        }
+        return res;
+    }
+
+    /**
+     * Runs commands concurrently, and waits for all of them.
+     * @param elements elements of the commands
+     * @return the result of the last command returning something
+     * @throws Exception if a command fails
+     */
+    private String parallel(List<Element> elements) throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (Element e : elements) {
+            futures.add(CompletableFuture.supplyAsync(() -> call(e, false), pool));
+        }
+        return fold("", futures, false);
+    }
+
+    /**
+     * Runs a command or a block.
+     * @param e element
+     * @param updateAns true if $ANS is updated within a sequence block
+     * @return the result
+     * @throws Exception if the command fails
+     */
+    private String run(Element e, boolean updateAns) throws Exception {
+        switch (e.getName()) {
+            case "sequence":
+                return sequence(e.getChildren(), updateAns);
+            case "parallel":
+                return parallel(e.getChildren());
+            default:
+                AbstractCommand cmd = getCommand(e.getName());
+                if (automatic || !updateAns) {
+                    // Commands of the same type might run at once, and some
+                    // of them store their parameters in fields
+                    cmd = cmd.getClass().getConstructor(XMLScript.class).newInstance(script);
+                }
+                Semaphore budget = script.workerBudget;
+                if (permits != null) {
+                    permits.acquire();
+                }
+                try {
+                    if (budget != null) {
+                        budget.acquire();
+                    }
+                    Recorder recorder = Recorder.get();
+                    Object event = recorder.beginCommand();
+                    boolean cached = false;
+                    boolean success = false;
+                    XMLScript previous = XMLScript.setRunning(script);
+                    Random previousRng = XMLScript.setCommandRng(commandRng(e));
+                    try {
+                        String res;
+                        if (script.commandCache != null && cmd.isMemoizable(e)
+                                && e.getAttributeValue("seed") != null
+                                && !"false".equals(e.getAttributeValue("cache"))) {
+                            cached = true;
+                            res = script.commandCache.execute(script, cmd, e);
+                        } else {
+                            res = cmd.execute(e);
+                        }
+                        success = true;
+                        return res;
+                    } finally {
+                        XMLScript.setCommandRng(previousRng);
+                        XMLScript.setRunning(previous);
+                        if (recorder.shouldCommit(event)) {
+                            String id = (e.getAttributeValue("id") != null)
+                                    ? e.getAttributeValue("id") : e.getAttributeValue("ref");
+                            recorder.commitCommand(event, e.getName(), id, cached, success);
+                        }
+                        if (budget != null) {
+                            budget.release();
+                        }
+                    }
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+        }
+    }
+
+    /**
+     * Creates the random numbers generator of a command with a seed attribute.
+     * @param e element of the command
+     * @return a new generator, or null if the command has no seed
+     */
+    private Random commandRng(Element e) {
+        String seed = e.getAttributeValue("seed");
+        if (seed == null) {
+            return null;
+        }
+        try {
+            return new Random(Long.parseLong(script.preprocess(seed).trim()));
+        } catch (NumberFormatException ex) {
+            throw new Error("The seed attribute of " + e.getName() + " must be an integer, not " + seed);
+        }
+    }
+
+    /**
+     * Runs a command or a block from a lambda expression.
+     * @param e element
+     * @param updateAns true if $ANS is updated within a sequence block
+     * @return the result
+     */
+    private String call(Element e, boolean updateAns) {
+        try {
+            return run(e, updateAns);
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /**
+     * Waits for commands, then folds their results in order.
+     * @param res result before the commands
+     * @param futures results of the commands
+     * @param updateAns true if $ANS is updated after each command
+     * @return the result of the last command returning something
+     * @throws Exception the first failure, in the document order
+     */
+    private String fold(String res, List<CompletableFuture<String>> futures, boolean updateAns) throws Exception {
+        // Wait for all commands, even if one of them fails
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ignored) {
+            // Reported below
+        }
+        for (CompletableFuture<String> f : futures) {
+            try {
+                res = fold(res, f.join(), updateAns);
+            } catch (CompletionException ex) {
+                Throwable cause = ex;
+                while (cause instanceof CompletionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw ex;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Folds the result of a command, as a sequential execution does.
+     * @param res result before the command
+     * @param cmdRes result of the command
+     * @param updateAns true if $ANS has to be updated
+     * @return the result of the last command returning something
+     */
+    private String fold(String res, String cmdRes, boolean updateAns) {
+        if (res.equals("") || !cmdRes.equals("")) {
+            res = cmdRes;
+        }
+        if (updateAns) {
+            script.definitions.put("$ANS", String.valueOf(res));
+        }
+        return res;
+    }
+
+    /**
+     * @param e element of a command or a block
+     * @return true if nothing can run at the same time
+     */
+    private boolean isBarrier(Element e) {
+        if (e.getName().equals("sequence") || e.getName().equals("parallel")) {
+            for (Element c : e.getChildren()) {
+                if (isBarrier(c)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return getCommand(e.getName()).isBarrier(e);
+    }
+
+    /**
+     * @param e element of a command or a block
+     * @return the resources used by the command or the block
+     */
+    private Set<String> getResources(Element e) {
+        if (e.getName().equals("sequence") || e.getName().equals("parallel")) {
+            Set<String> res = new HashSet<>();
+            for (Element c : e.getChildren()) {
+                res.addAll(getResources(c));
+            }
+            return res;
+        }
+        return getCommand(e.getName()).getResources(e);
+    }
+
+    /**
+     * @param name tag name
+     * @return the corresponding command
+     */
+    private AbstractCommand getCommand(String name) {
+        AbstractCommand cmd = script.commands.get(name);
+        if (cmd == null) {
+            throw new Error(
+                    "Cannot find command " + name
+            );
+        }
+        return cmd;
+    }
+}
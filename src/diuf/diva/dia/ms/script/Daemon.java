@@ -0,0 +1,434 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.NoisyDataset;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs XML scripts in a single, long-running JVM. The datasets and models
+ * loaded or created by a script stay in memory, and the following scripts can
+ * use them by ID, as if they had loaded them themselves. A script loading
+ * a dataset which is already in memory, from the same folder, does not load
+ * it again.
+ * <p>
+ * Each script has its own XMLScript instance. Datasets are shared between
+ * scripts, but each script gets its own order of the data blocks, so that they
+ * can be shuffled independently. Models are shared: scripts training the same
+ * model must not be submitted concurrently. When a script ends, the datasets
+ * and models it loaded, created or removed are published to the daemon.
+ * <p>
+ * Scripts can be submitted through a socket listening on localhost, one
+ * request per line:
+ * <pre>
+ * path/to/script.xml   runs the script, answers "OK result" or "ERROR message"
+ * status               lists the datasets and models in memory
+ * unload id            removes a dataset or a model from memory
+ * shutdown             stops the daemon once the running scripts are done
+ * </pre>
+ * or by copying them into a watched folder. There, script.xml is renamed
+ * script.xml.running while it runs, then script.xml.done or script.xml.failed,
+ * and the result or error is written to script.xml.result.
+ * <p>
+ * Command line:
+ * <pre>
+ * java -jar nlightn.jar --daemon [--port 4242] [--watch folder] [--jobs 1]
+ * </pre>
+ *
+ * @author agent
+ */
+public class Daemon {
+    /**
+     * Default port of the socket.
+     */
+    public static final int DEFAULT_PORT = 4242;
+    /**
+     * Resident datasets.
+     */
+    private final HashMap<String, Dataset> datasets = new HashMap<>();
+    /**
+     * Sources of the resident datasets.
+     */
+    private final HashMap<String, String> datasetSources = new HashMap<>();
+    /**
+     * Resident noisy datasets.
+     */
+    private final HashMap<String, NoisyDataset> noisyDataSets = new HashMap<>();
+    /**
+     * Resident autoencoders.
+     */
+    private final HashMap<String, SCAE> scae = new HashMap<>();
+    /**
+     * Resident classifiers.
+     */
+    private final HashMap<String, Classifier> classifiers = new HashMap<>();
+    /**
+     * Runs the scripts.
+     */
+    private final ExecutorService jobs;
+    /**
+     * Socket accepting the requests, may be null.
+     */
+    private ServerSocket server;
+    /**
+     * Set to false when the daemon has to stop.
+     */
+    private volatile boolean running = true;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a daemon.
+     * @param nbJobs maximum number of scripts running at the same time
+     */
+    public Daemon(int nbJobs) {
+        if (nbJobs < 1) {
+            throw new IllegalArgumentException("at least one job must be allowed to run");
+        }
+        jobs = Executors.newFixedThreadPool(nbJobs);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Jobs
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Submits a script. It is run as soon as fewer scripts than the maximum
+     * are running.
+     * @param fname file name of the script
+     * @return the result of the script
+     * @throws RejectedExecutionException if the daemon has been shut down
+     */
+    public Future<String> submit(final String fname) {
+        return jobs.submit(() -> run(fname));
+    }
+
+    /**
+     * Runs a script with the resident datasets and models.
+     * @param fname file name of the script
+     * @return output of the last command
+     * @throws Exception if the script fails
+     */
+    private String run(String fname) throws Exception {
+        long start = System.currentTimeMillis();
+        XMLScript script = new XMLScript(fname);
+
+        // Giving the resident data to the script
+        synchronized (this) {
+            for (Map.Entry<String, Dataset> e : datasets.entrySet()) {
+                script.datasets.put(e.getKey(), new Dataset(e.getValue()));
+            }
+            script.datasetSources.putAll(datasetSources);
+            script.noisyDataSets.putAll(noisyDataSets);
+            script.scae.putAll(scae);
+            script.classifiers.putAll(classifiers);
+        }
+        HashMap<String, Dataset> givenDatasets = new HashMap<>(script.datasets);
+        HashMap<String, NoisyDataset> givenNoisy = new HashMap<>(script.noisyDataSets);
+        HashMap<String, SCAE> givenScae = new HashMap<>(script.scae);
+        HashMap<String, Classifier> givenClassifiers = new HashMap<>(script.classifiers);
+
+        try {
+            String res = script.execute();
+            System.out.println(fname + " exited correctly with value " + res
+                    + " after " + (System.currentTimeMillis() - start) / 1000 + " seconds");
+            return res;
+        } finally {
+            // What has been loaded before a failure is kept as well
+            synchronized (this) {
+                publish(givenDatasets, script.datasets, datasets);
+                publish(givenNoisy, script.noisyDataSets, noisyDataSets);
+                publish(givenScae, script.scae, scae);
+                publish(givenClassifiers, script.classifiers, classifiers);
+                datasetSources.keySet().retainAll(datasets.keySet());
+                for (String id : script.datasets.keySet()) {
+                    if (script.datasetSources.containsKey(id) && script.datasets.get(id) != givenDatasets.get(id)) {
+                        datasetSources.put(id, script.datasetSources.get(id));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the changes made by a script to the resident objects.
+     * @param given objects given to the script
+     * @param result objects of the script after its execution
+     * @param resident resident objects
+     * @param <T> type of the objects
+     */
+    private static <T> void publish(Map<String, T> given, Map<String, T> result, Map<String, T> resident) {
+        for (String id : given.keySet()) {
+            if (!result.containsKey(id)) {
+                resident.remove(id);
+            }
+        }
+        for (Map.Entry<String, T> e : result.entrySet()) {
+            if (given.get(e.getKey()) != e.getValue()) {
+                resident.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return a description of the resident datasets and models
+     */
+    public synchronized String status() {
+        return "datasets=" + datasets.keySet()
+                + " noisy-datasets=" + noisyDataSets.keySet()
+                + " scae=" + scae.keySet()
+                + " classifiers=" + classifiers.keySet();
+    }
+
+    /**
+     * Removes a dataset or model from memory.
+     * @param id ID of the object to remove
+     * @return true if something has been removed
+     */
+    public synchronized boolean unload(String id) {
+        datasetSources.remove(id);
+        return (datasets.remove(id) != null)
+                | (noisyDataSets.remove(id) != null)
+                | (scae.remove(id) != null)
+                | (classifiers.remove(id) != null);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Socket
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Starts accepting requests on a port of localhost.
+     * @param port port number
+     * @throws IOException if the socket cannot be opened
+     */
+    public void listen(int port) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread t = new Thread(() -> {
+            while (running) {
+                try {
+                    final Socket s = server.accept();
+                    Thread c = new Thread(() -> serve(s), "daemon-client");
+                    c.setDaemon(true);
+                    c.start();
+                } catch (IOException e) {
+                    if (running) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "daemon-socket");
+        t.start();
+        System.out.println("Daemon listening on port " + server.getLocalPort());
+    }
+
+    /**
+     * Answers the requests of a client.
+     * @param s socket of the client
+     */
+    private void serve(Socket s) {
+        try (
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)
+        ) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equals("status")) {
+                    out.println("OK " + status());
+                } else if (line.startsWith("unload ")) {
+                    out.println(unload(line.substring(7).trim()) ? "OK" : "ERROR unknown id");
+                } else if (line.equals("shutdown")) {
+                    out.println("OK");
+                    shutdown();
+                    return;
+                } else {
+                    try {
+                        out.println(answer(submit(line)));
+                    } catch (RejectedExecutionException e) {
+                        out.println("ERROR the daemon is shutting down");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits for a script and formats its result.
+     * @param f result of the script
+     * @return "OK result" or "ERROR message"
+     */
+    private static String answer(Future<String> f) {
+        try {
+            String res = f.get();
+            return res.isEmpty() ? "OK" : "OK " + res;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return "ERROR " + String.valueOf(e.getCause()).replace('\n', ' ');
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR interrupted";
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Watched folder
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Starts running the scripts copied into a folder.
+     * @param folder folder to watch
+     */
+    public void watch(final File folder) {
+        if (!folder.isDirectory()) {
+            throw new IllegalArgumentException(folder + " is not a directory");
+        }
+        Thread t = new Thread(() -> {
+            while (running) {
+                File[] files = folder.listFiles((d, n) -> n.endsWith(".xml"));
+                if (files != null) {
+                    for (File f : files) {
+                        File claimed = new File(f.getPath() + ".running");
+                        if (f.renameTo(claimed)) {
+                            runWatched(f, claimed);
+                        }
+                    }
+                }
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "daemon-watch");
+        t.setDaemon(true);
+        t.start();
+        System.out.println("Daemon watching " + folder);
+    }
+
+    /**
+     * Runs a script of the watched folder in the background.
+     * @param f original file
+     * @param claimed the file renamed while it runs
+     */
+    private void runWatched(final File f, final File claimed) {
+        final Future<String> res;
+        try {
+            res = submit(claimed.getPath());
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the script is left for the next daemon
+            claimed.renameTo(f);
+            return;
+        }
+        Thread t = new Thread(() -> {
+            String a = answer(res);
+            boolean ok = a.startsWith("OK");
+            claimed.renameTo(new File(f.getPath() + (ok ? ".done" : ".failed")));
+            try {
+                Files.write(
+                        new File(f.getPath() + ".result").toPath(),
+                        (a + "\n").getBytes(StandardCharsets.UTF_8)
+                );
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "daemon-watch-job");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Life cycle
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Stops accepting requests; the running and queued scripts are completed.
+     */
+    public void shutdown() {
+        running = false;
+        jobs.shutdown();
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Starts a daemon.
+     * @param args --port N, --watch folder, --jobs N
+     * @throws IOException if the socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String watch = null;
+        int nbJobs = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value after " + args[i]);
+            }
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--watch":
+                    watch = args[++i];
+                    break;
+                case "--jobs":
+                    nbJobs = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        Daemon d = new Daemon(nbJobs);
+        d.listen(port);
+        if (watch != null) {
+            d.watch(new File(watch));
+        }
+    }
+}
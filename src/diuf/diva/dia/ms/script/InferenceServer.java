@@ -0,0 +1,735 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Image;
+import diuf.diva.dia.ms.util.misc.LatencyHistogram;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded HTTP service classifying document images with one or more
+ * classifiers kept in memory. It listens on localhost only.
+ * <p>
+ * Requests are queued, and a dispatcher coalesces the requests arriving within
+ * a short delay into a micro-batch. The pixels of the requests of a batch using
+ * the same model are put one after the other and split into chunks executed on
+ * a pool of workers, each chunk using one of the replicas of the classifier
+ * (the classifiers are not thread-safe, so each worker needs its own copy).
+ * Small requests thus share a chunk, and are classified in a single pass.
+ * <p>
+ * Models can be replaced while the service runs: the batches already
+ * dispatched complete with the previous version, the next ones use the new
+ * version, so no request is dropped.
+ * <p>
+ * End points:
+ * <pre>
+ * POST   /classify/ID            body: a PNG/JPEG page; answers the label map as
+ *                                an 8-bit grayscale PNG, 255 where the classifier
+ *                                does not fit in the page
+ *        ?format=text            the label map as text, one line per image row
+ *        ?points=x,y;x,y;...     only these pixels, answers "x y label" lines
+ * PUT    /models/ID?file=PATH    loads or replaces a model
+ * DELETE /models/ID              removes a model
+ * GET    /models                 lists the models
+ * GET    /metrics                latency histograms of each model
+ * </pre>
+ * Command line:
+ * <pre>
+ * java -jar nlightn.jar --serve [--port 8080] [--threads N] [--batch 32] [--delay-ms 2]
+ *                       [--colorspace RGB] id=model-file ...
+ * </pre>
+ *
+ * @author agent
+ */
+public class InferenceServer {
+    /**
+     * Number of pixels classified by a worker at once.
+     */
+    private static final int CHUNK_SIZE = 256;
+    /**
+     * Label of the pixels which cannot be classified.
+     */
+    public static final int UNKNOWN = 255;
+
+    /**
+     * A version of a model, with its replicas.
+     */
+    private static class Model {
+        /**
+         * Idle replicas of the classifier.
+         */
+        final BlockingQueue<Classifier> replicas = new LinkedBlockingQueue<>();
+        /**
+         * Input width of the classifier.
+         */
+        final int width;
+        /**
+         * Input height of the classifier.
+         */
+        final int height;
+
+        /**
+         * @param c classifier
+         * @param n number of replicas
+         */
+        Model(Classifier c, int n) {
+            width = c.getInputWidth();
+            height = c.getInputHeight();
+            replicas.add(c);
+            for (int i = 1; i < n; i++) {
+                replicas.add(c.replicate());
+            }
+        }
+    }
+
+    /**
+     * A classification request.
+     */
+    private static class Request {
+        /**
+         * ID of the model.
+         */
+        final String model;
+        /**
+         * Page to classify.
+         */
+        final DataBlock page;
+        /**
+         * Coordinates of the pixels to classify, null for the whole page.
+         */
+        final int[] xs, ys;
+        /**
+         * Labels of the pixels.
+         */
+        int[] labels;
+        /**
+         * Number of chunks still running.
+         */
+        final AtomicInteger remaining = new AtomicInteger();
+        /**
+         * Completed once all labels are known.
+         */
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+        /**
+         * Arrival time.
+         */
+        final long start = System.nanoTime();
+
+        /**
+         * @param model ID of the model
+         * @param page page to classify
+         * @param xs coordinates x of the pixels, or null for all
+         * @param ys coordinates y of the pixels, or null for all
+         */
+        Request(String model, DataBlock page, int[] xs, int[] ys) {
+            this.model = model;
+            this.page = page;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        /**
+         * @return the number of pixels to classify
+         */
+        int size() {
+            return (xs != null) ? xs.length : page.getWidth() * page.getHeight();
+        }
+    }
+
+    /**
+     * Current version of each model.
+     */
+    private final ConcurrentHashMap<String, Model> models = new ConcurrentHashMap<>();
+    /**
+     * Latencies of each model, kept across versions.
+     */
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    /**
+     * Requests waiting for a batch.
+     */
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    /**
+     * Classifies the chunks.
+     */
+    private final ExecutorService workers;
+    /**
+     * Number of workers, and thus of replicas per model.
+     */
+    private final int nbThreads;
+    /**
+     * Maximum number of requests in a batch.
+     */
+    private final int maxBatch;
+    /**
+     * Maximum time waited for filling a batch.
+     */
+    private final long maxDelayNanos;
+    /**
+     * Color space of the models.
+     */
+    private final Image.Colorspace colorspace;
+    /**
+     * HTTP server, null until started.
+     */
+    private HttpServer http;
+    /**
+     * Coalesces the requests.
+     */
+    private Thread dispatcher;
+    /**
+     * Set to false when stopping.
+     */
+    private volatile boolean running = true;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a service, without any model.
+     * @param nbThreads number of workers
+     * @param maxBatch maximum number of requests in a batch
+     * @param maxDelayMillis maximum time waited for filling a batch
+     * @param colorspace color space in which the pages are given to the models
+     */
+    public InferenceServer(int nbThreads, int maxBatch, long maxDelayMillis, Image.Colorspace colorspace) {
+        assert (nbThreads > 0);
+        assert (maxBatch > 0);
+
+        this.nbThreads = nbThreads;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.colorspace = colorspace;
+        workers = Executors.newFixedThreadPool(nbThreads, r -> {
+            Thread t = new Thread(r, "inference-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Models
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Adds or replaces a model. Requests already dispatched to the previous
+     * version complete normally.
+     * @param id ID of the model
+     * @param classifier the classifier
+     */
+    public void setModel(String id, Classifier classifier) {
+        classifier.freeze();
+        models.put(id, new Model(classifier, nbThreads));
+        latencies.putIfAbsent(id, new LatencyHistogram());
+    }
+
+    /**
+     * Loads a model from a file, then adds it or replaces the previous version.
+     * @param id ID of the model
+     * @param fileName file name
+     * @throws IOException if the file cannot be read
+     * @throws ClassNotFoundException if the file is not valid
+     */
+    public void loadModel(String id, String fileName) throws IOException, ClassNotFoundException {
+        setModel(id, Classifier.load(fileName));
+    }
+
+    /**
+     * Removes a model.
+     * @param id ID of the model
+     * @return true if the model existed
+     */
+    public boolean removeModel(String id) {
+        return models.remove(id) != null;
+    }
+
+    /**
+     * @param id ID of a model
+     * @return its latency histogram, or null if it has never been loaded
+     */
+    public LatencyHistogram getLatency(String id) {
+        return latencies.get(id);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Classification
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Queues a classification.
+     * @param id ID of the model
+     * @param page page to classify
+     * @param xs coordinates x of the pixels, or null for the whole page
+     * @param ys coordinates y of the pixels, or null for the whole page
+     * @return the labels, row-major for a whole page, UNKNOWN where the
+     * classifier does not fit
+     */
+    public CompletableFuture<int[]> classify(String id, DataBlock page, int[] xs, int[] ys) {
+        Request r = new Request(id, page, xs, ys);
+        if (!running) {
+            r.result.completeExceptionally(new IllegalStateException("the service is stopped"));
+        } else {
+            queue.add(r);
+        }
+        return r.result;
+    }
+
+    /**
+     * Coalesces the queued requests into batches and dispatches them.
+     */
+    private void dispatch() {
+        List<Request> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatch) {
+                    Request r = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (r == null) {
+                        break;
+                    }
+                    batch.add(r);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            schedule(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Groups the requests of a batch by model, and schedules each group. The
+     * version of each model is selected now.
+     * @param batch requests
+     */
+    private void schedule(List<Request> batch) {
+        Map<String, List<Request>> groups = new LinkedHashMap<>();
+        for (Request r : batch) {
+            groups.computeIfAbsent(r.model, k -> new ArrayList<>()).add(r);
+        }
+        for (Map.Entry<String, List<Request>> g : groups.entrySet()) {
+            Model m = models.get(g.getKey());
+            if (m == null) {
+                for (Request r : g.getValue()) {
+                    r.result.completeExceptionally(new NoSuchElementException("unknown model " + r.model));
+                }
+                continue;
+            }
+            schedule(m, g.getValue());
+        }
+    }
+
+    /**
+     * Numbers the pixels of the requests of a group one after the other, and
+     * splits them into chunks submitted to the workers. A chunk can thus
+     * contain the pixels of several small requests, which are then classified
+     * in one pass by the same worker and replica.
+     * @param m model
+     * @param group requests using this model
+     */
+    private void schedule(final Model m, List<Request> group) {
+        List<Request> pending = new ArrayList<>(group.size());
+        for (Request r : group) {
+            if (r.size() == 0) {
+                r.labels = new int[0];
+                complete(r);
+            } else {
+                pending.add(r);
+            }
+        }
+        final Request[] reqs = pending.toArray(new Request[0]);
+        final int[] first = new int[reqs.length + 1];
+        for (int i = 0; i < reqs.length; i++) {
+            reqs[i].labels = new int[reqs[i].size()];
+            first[i + 1] = first[i] + reqs[i].size();
+        }
+        int total = first[reqs.length];
+
+        // Counting the chunks of each request before any of them can complete
+        int nbChunks = (total + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int[] firstRequest = new int[nbChunks];
+        for (int c = 0, i = 0; c < nbChunks; c++) {
+            int from = c * CHUNK_SIZE;
+            int to = Math.min(total, from + CHUNK_SIZE);
+            while (first[i + 1] <= from) {
+                i++;
+            }
+            firstRequest[c] = i;
+            for (int j = i; j < reqs.length && first[j] < to; j++) {
+                reqs[j].remaining.incrementAndGet();
+            }
+        }
+
+        for (int c = 0; c < nbChunks; c++) {
+            final int from = c * CHUNK_SIZE;
+            final int to = Math.min(total, from + CHUNK_SIZE);
+            final int i0 = firstRequest[c];
+            workers.execute(() -> {
+                Throwable error = null;
+                try {
+                    Classifier cl = m.replicas.take();
+                    try {
+                        for (int j = i0; j < reqs.length && first[j] < to; j++) {
+                            classify(m, cl, reqs[j],
+                                    Math.max(from, first[j]) - first[j],
+                                    Math.min(to, first[j + 1]) - first[j]);
+                        }
+                    } finally {
+                        m.replicas.add(cl);
+                    }
+                } catch (Throwable t) {
+                    error = t;
+                }
+                for (int j = i0; j < reqs.length && first[j] < to; j++) {
+                    if (error != null) {
+                        reqs[j].result.completeExceptionally(error);
+                    } else if (reqs[j].remaining.decrementAndGet() == 0) {
+                        complete(reqs[j]);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Classifies some pixels of a request.
+     * @param m model
+     * @param cl replica of the classifier
+     * @param r request
+     * @param from index of the first pixel
+     * @param to index after the last pixel
+     */
+    private static void classify(Model m, Classifier cl, Request r, int from, int to) {
+        int pw = r.page.getWidth();
+        int ph = r.page.getHeight();
+        for (int i = from; i < to; i++) {
+            int x = (r.xs != null) ? r.xs[i] : i % pw;
+            int y = (r.ys != null) ? r.ys[i] : i / pw;
+            int cx = x - m.width / 2;
+            int cy = y - m.height / 2;
+            if (cx < 0 || cy < 0 || cx + m.width > pw || cy + m.height > ph) {
+                r.labels[i] = UNKNOWN;
+                continue;
+            }
+            cl.centerInput(r.page, x, y);
+            cl.compute();
+            r.labels[i] = cl.getOutputClass(false);
+        }
+    }
+
+    /**
+     * Records the latency and completes a request.
+     * @param r request
+     */
+    private void complete(Request r) {
+        LatencyHistogram h = latencies.get(r.model);
+        if (h != null) {
+            h.record(System.nanoTime() - r.start);
+        }
+        r.result.complete(r.labels);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // HTTP
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Starts the dispatcher and the HTTP server on localhost.
+     * @param port port number, 0 for any free port
+     * @return the port actually used
+     * @throws IOException if the server cannot be started
+     */
+    public int start(int port) throws IOException {
+        dispatcher = new Thread(this::dispatch, "inference-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/classify/", this::handleClassify);
+        http.createContext("/models", this::handleModels);
+        http.createContext("/metrics", this::handleMetrics);
+        http.setExecutor(Executors.newCachedThreadPool());
+        http.start();
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, then completes the queued ones.
+     */
+    public void stop() {
+        running = false;
+        if (http != null) {
+            http.stop(1);
+        }
+        if (dispatcher != null) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Handles POST /classify/ID.
+     * @param ex exchange
+     * @throws IOException if the answer cannot be sent
+     */
+    private void handleClassify(HttpExchange ex) throws IOException {
+        try {
+            if (!ex.getRequestMethod().equals("POST")) {
+                send(ex, 405, "use POST");
+                return;
+            }
+            String id = ex.getRequestURI().getPath().substring("/classify/".length());
+            if (!models.containsKey(id)) {
+                send(ex, 404, "unknown model " + id);
+                return;
+            }
+            Map<String, String> q = query(ex);
+
+            BufferedImage bi = ImageIO.read(ex.getRequestBody());
+            if (bi == null) {
+                send(ex, 400, "the body is not a supported image");
+                return;
+            }
+            Image img = new Image(bi);
+            img.convertTo(colorspace);
+            DataBlock page = new DataBlock(img);
+
+            int[] xs = null;
+            int[] ys = null;
+            if (q.containsKey("points")) {
+                String[] pts = q.get("points").split(";");
+                xs = new int[pts.length];
+                ys = new int[pts.length];
+                for (int i = 0; i < pts.length; i++) {
+                    String[] c = pts[i].split(",");
+                    xs[i] = Integer.parseInt(c[0].trim());
+                    ys[i] = Integer.parseInt(c[1].trim());
+                    if (xs[i] < 0 || ys[i] < 0 || xs[i] >= page.getWidth() || ys[i] >= page.getHeight()) {
+                        send(ex, 400, "point " + pts[i] + " is outside of the page");
+                        return;
+                    }
+                }
+            }
+
+            int[] labels = classify(id, page, xs, ys).get();
+
+            StringBuilder sb = new StringBuilder();
+            if (xs != null) {
+                for (int i = 0; i < xs.length; i++) {
+                    sb.append(xs[i]).append(' ').append(ys[i]).append(' ').append(labels[i]).append('\n');
+                }
+                send(ex, 200, sb.toString());
+            } else if ("text".equals(q.get("format"))) {
+                int w = page.getWidth();
+                for (int i = 0; i < labels.length; i++) {
+                    sb.append(labels[i]).append((i % w == w - 1) ? '\n' : ' ');
+                }
+                send(ex, 200, sb.toString());
+            } else {
+                BufferedImage map = new BufferedImage(page.getWidth(), page.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+                map.getRaster().setPixels(0, 0, page.getWidth(), page.getHeight(), labels);
+                ByteArrayOutputStream bo = new ByteArrayOutputStream();
+                ImageIO.write(map, "png", bo);
+                ex.getResponseHeaders().set("Content-Type", "image/png");
+                ex.sendResponseHeaders(200, bo.size());
+                try (OutputStream os = ex.getResponseBody()) {
+                    bo.writeTo(os);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            send(ex, 400, "invalid points: " + e.getMessage());
+        } catch (ExecutionException e) {
+            send(ex, 500, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(ex, 503, "interrupted");
+        }
+    }
+
+    /**
+     * Handles /models.
+     * @param ex exchange
+     * @throws IOException if the answer cannot be sent
+     */
+    private void handleModels(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        String id = (path.length() > "/models/".length()) ? path.substring("/models/".length()) : null;
+        switch (ex.getRequestMethod()) {
+            case "GET":
+                StringBuilder sb = new StringBuilder();
+                for (Map.Entry<String, Model> e : new TreeMap<>(models).entrySet()) {
+                    sb.append(e.getKey()).append(' ')
+                            .append(e.getValue().width).append('x').append(e.getValue().height).append('\n');
+                }
+                send(ex, 200, sb.toString());
+                return;
+            case "PUT":
+            case "POST":
+                String file = query(ex).get("file");
+                if (id == null || file == null) {
+                    send(ex, 400, "use /models/ID?file=PATH");
+                    return;
+                }
+                try {
+                    loadModel(id, file);
+                } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                    send(ex, 400, "cannot load " + file + ": " + e);
+                    return;
+                }
+                send(ex, 200, "loaded " + id + "\n");
+                return;
+            case "DELETE":
+                if (id == null || !removeModel(id)) {
+                    send(ex, 404, "unknown model " + id);
+                    return;
+                }
+                send(ex, 200, "removed " + id + "\n");
+                return;
+            default:
+                send(ex, 405, "unsupported method");
+        }
+    }
+
+    /**
+     * Handles GET /metrics.
+     * @param ex exchange
+     * @throws IOException if the answer cannot be sent
+     */
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(latencies).entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        sb.append("queued ").append(queue.size()).append('\n');
+        send(ex, 200, sb.toString());
+    }
+
+    /**
+     * Sends a text answer.
+     * @param ex exchange
+     * @param status HTTP status
+     * @param text content
+     * @throws IOException if the answer cannot be sent
+     */
+    private static void send(HttpExchange ex, int status, String text) throws IOException {
+        byte[] b = text.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(status, b.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(b);
+        }
+    }
+
+    /**
+     * @param ex exchange
+     * @return the parameters of the query
+     * @throws UnsupportedEncodingException never
+     */
+    private static Map<String, String> query(HttpExchange ex) throws UnsupportedEncodingException {
+        Map<String, String> res = new HashMap<>();
+        String q = ex.getRequestURI().getRawQuery();
+        if (q == null) {
+            return res;
+        }
+        for (String p : q.split("&")) {
+            int eq = p.indexOf('=');
+            if (eq > 0) {
+                res.put(URLDecoder.decode(p.substring(0, eq), "UTF-8"), URLDecoder.decode(p.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return res;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Starts a service.
+     * @param args options and models, see the class description
+     * @throws Exception if a model cannot be loaded or the server cannot start
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 32;
+        long delay = 2;
+        Image.Colorspace cs = Image.Colorspace.RGB;
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 >= args.length) {
+                throw new IllegalArgumentException("missing value after " + args[i]);
+            }
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--batch":
+                    batch = Integer.parseInt(args[++i]);
+                    break;
+                case "--delay-ms":
+                    delay = Long.parseLong(args[++i]);
+                    break;
+                case "--colorspace":
+                    cs = Image.Colorspace.valueOf(args[++i]);
+                    break;
+                default:
+                    int eq = args[i].indexOf('=');
+                    if (eq <= 0) {
+                        throw new IllegalArgumentException("expected id=model-file, got " + args[i]);
+                    }
+                    files.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+
+        InferenceServer s = new InferenceServer(threads, batch, delay, cs);
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            s.loadModel(e.getKey(), e.getValue());
+        }
+        System.out.println("Inference service listening on port " + s.start(port));
+    }
+}
@@ -0,0 +1,167 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+/**
+ * Emits the flight recorder events of the scripts: commands, training
+ * epochs, evaluated pages and dataset loads. The events are defined in the
+ * script.event package with jdk.jfr, which appeared in Java 11. This class
+ * loads them only if jdk.jfr is available, and does nothing otherwise, so
+ * that the rest of the library does not depend on them: it still compiles
+ * and runs with Java 8 when the script.event package is left out.
+ * <p>
+ * Events are started by the begin methods and committed by the commit
+ * methods. Their fields are worth computing only if shouldCommit() is true,
+ * i.e., if a recording is running.
+ *
+ * @author agent
+ */
+public class Recorder {
+    /**
+     * Recorder used by the scripts.
+     */
+    private static final Recorder INSTANCE = load();
+
+    /**
+     * Constructs a recorder which does nothing.
+     */
+    protected Recorder() {
+        // Nothing to do
+    }
+
+    /**
+     * @return the flight recorder of the scripts
+     */
+    public static Recorder get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the recorder of the script.event package if jdk.jfr is
+     * available.
+     * @return a recorder
+     */
+    private static Recorder load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Recorder) Class.forName("diuf.diva.dia.ms.script.event.JfrRecorder")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new Recorder();
+        }
+    }
+
+    /**
+     * @param event event returned by a begin method
+     * @return true if the event would be recorded
+     */
+    public boolean shouldCommit(Object event) {
+        return false;
+    }
+
+    /**
+     * Starts the event of a command.
+     * @return the event, or null
+     */
+    public Object beginCommand() {
+        return null;
+    }
+
+    /**
+     * Ends the event of a command.
+     * @param event event returned by beginCommand()
+     * @param command tag name of the command
+     * @param id ID or reference of the model or dataset of the command
+     * @param cached true if the command went through the command cache
+     * @param success false if the command threw an exception
+     */
+    public void commitCommand(Object event, String command, String id, boolean cached, boolean success) {
+        // Nothing to record
+    }
+
+    /**
+     * Starts the event of a training epoch.
+     * @return the event, or null
+     */
+    public Object beginEpoch() {
+        return null;
+    }
+
+    /**
+     * Ends the event of a training epoch.
+     * @param event event returned by beginEpoch()
+     * @param command tag name of the training command
+     * @param id ID of the trained model
+     * @param epoch number of the epoch, starting at 1
+     * @param samples samples used during the epoch
+     * @param totalSamples samples used since the start of the training
+     * @param error mean error of the epoch
+     */
+    public void commitEpoch(Object event, String command, String id, int epoch, long samples, long totalSamples, double error) {
+        // Nothing to record
+    }
+
+    /**
+     * Starts the event of an evaluated page.
+     * @return the event, or null
+     */
+    public Object beginPage() {
+        return null;
+    }
+
+    /**
+     * Ends the event of an evaluated page.
+     * @param event event returned by beginPage()
+     * @param classifier ID of the evaluated classifier
+     * @param page index of the page in the dataset
+     * @param width width of the page
+     * @param height height of the page
+     * @param score score of the page
+     */
+    public void commitPage(Object event, String classifier, int page, int width, int height, double score) {
+        // Nothing to record
+    }
+
+    /**
+     * Starts the event of a dataset load.
+     * @return the event, or null
+     */
+    public Object beginDatasetLoad() {
+        return null;
+    }
+
+    /**
+     * Ends the event of a dataset load.
+     * @param event event returned by beginDatasetLoad()
+     * @param id ID of the dataset
+     * @param folder folder of the images
+     * @param images number of images loaded
+     */
+    public void commitDatasetLoad(Object event, String id, String folder, int images) {
+        // Nothing to record
+    }
+}
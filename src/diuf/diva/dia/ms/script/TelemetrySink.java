@@ -0,0 +1,227 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes telemetry records to a JSON Lines file. Producers put the lines into
+ * a bounded lock-free ring buffer, and a background thread writes them, so
+ * that logging never stalls a training. When the buffer is full, the line is
+ * dropped and counted instead of waiting.
+ * <p>
+ * It is enabled by the root element of the script:
+ * <pre>
+ * {@code <script telemetry="training.jsonl" telemetry-interval="1000">}
+ * </pre>
+ * The optional interval is the minimum number of milliseconds between two
+ * lines of a training; by default, each epoch produces a line.
+ *
+ * @author agent
+ */
+public class TelemetrySink implements Closeable {
+    /**
+     * Number of slots of the ring buffer, a power of two.
+     */
+    private static final int CAPACITY = 4096;
+
+    /**
+     * Lines waiting to be written.
+     */
+    private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(CAPACITY);
+
+    /**
+     * Sequence number of each slot: equal to the position for which the slot
+     * is free, and to the position plus one once it has been filled.
+     */
+    private final AtomicLongArray sequence = new AtomicLongArray(CAPACITY);
+
+    /**
+     * Next position to fill.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Next position to write, only used by the writer thread.
+     */
+    private long tail = 0;
+
+    /**
+     * Number of lines dropped because the buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Output file.
+     */
+    private final Writer out;
+
+    /**
+     * Background thread writing the lines.
+     */
+    private final Thread writer;
+
+    /**
+     * Set when the sink is closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Minimum time between two lines of a training, in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * Opens a telemetry file. Lines are appended if the file exists.
+     * @param fileName name of the file
+     * @param intervalMs minimum time between two lines of a training, in milliseconds
+     * @throws IOException if the file cannot be opened
+     */
+    public TelemetrySink(String fileName, long intervalMs) throws IOException {
+        interval = intervalMs * 1000000L;
+        out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(fileName, true), StandardCharsets.UTF_8
+        ));
+        for (int i = 0; i < CAPACITY; i++) {
+            sequence.set(i, i);
+        }
+        writer = new Thread(this::drain, "telemetry-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Adds a line to the file, without blocking.
+     * @param json a JSON object, without line break
+     * @return false if the line was dropped
+     */
+    public boolean offer(String json) {
+        if (closed) {
+            return false;
+        }
+        while (true) {
+            long pos = head.get();
+            int slot = (int) (pos & (CAPACITY - 1));
+            long seq = sequence.get(slot);
+            if (seq == pos) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    slots.set(slot, json);
+                    sequence.set(slot, pos + 1);
+                    return true;
+                }
+            } else if (seq < pos) {
+                // The writer did not free this slot yet: the buffer is full
+                dropped.incrementAndGet();
+                return false;
+            }
+            // Otherwise another producer took the position; try the next one
+        }
+    }
+
+    /**
+     * @return the minimum time between two lines of a training, in nanoseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the number of lines dropped so far
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the lines until the sink is closed, and then the remaining ones.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                boolean wasClosed = closed;
+                int n = writeAvailable();
+                if (n == 0) {
+                    if (wasClosed) {
+                        break;
+                    }
+                    out.flush();
+                    LockSupport.parkNanos(1000000L);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Telemetry could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all the lines available in the buffer.
+     * @return the number of lines written
+     * @throws IOException if the file cannot be written
+     */
+    private int writeAvailable() throws IOException {
+        int n = 0;
+        while (true) {
+            int slot = (int) (tail & (CAPACITY - 1));
+            if (sequence.get(slot) != tail + 1) {
+                return n;
+            }
+            String line = slots.get(slot);
+            slots.set(slot, null);
+            sequence.set(slot, tail + CAPACITY);
+            tail++;
+            out.write(line);
+            out.write('\n');
+            n++;
+        }
+    }
+
+    /**
+     * Writes the pending lines and closes the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (dropped.get() > 0) {
+            System.err.println("Telemetry: " + dropped.get() + " lines dropped");
+        }
+    }
+}
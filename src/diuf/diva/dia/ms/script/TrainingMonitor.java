@@ -0,0 +1,43 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+/**
+ * Receives the training error of the training commands of a script after each
+ * epoch. A monitor can stop the training, and thus the script, by throwing
+ * an exception.
+ *
+ * @author agent
+ */
+public interface TrainingMonitor {
+    /**
+     * Called after each training epoch.
+     * @param sample number of samples used so far
+     * @param samples number of samples of the training
+     * @param error mean error of the epoch
+     */
+    void report(long sample, long samples, double error);
+}
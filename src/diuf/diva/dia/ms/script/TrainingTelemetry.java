@@ -0,0 +1,234 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * Produces the telemetry records of one training: one JSON line per epoch,
+ * with the throughput since the previous epoch, the wall and CPU time since
+ * the start, the mean error, the learning speed, the number of samples of each
+ * class, the heap usage and the time spent in garbage collection. Nothing is
+ * computed if the script has no telemetry sink. Each epoch is also a flight
+ * recorder event, see Recorder, whose fields are only filled when a
+ * recording is running.
+ * <p>
+ * Example of line (on one line in the file):
+ * <pre>
+ * {"command":"train-classifier","id":"c","epoch":3,"sample":1200,"samples":5000,
+ *  "samples_per_sec":812.5,"wall_s":1.48,"cpu_s":1.45,"error":0.0813,
+ *  "learning_speed":0.001,"class_counts":[400,400,400],
+ *  "heap_used":41943040,"heap_max":4294967296,"gc_ms":12}
+ * </pre>
+ *
+ * @author agent
+ */
+public class TrainingTelemetry {
+    /**
+     * Destination of the records, or null.
+     */
+    private final TelemetrySink sink;
+
+    /**
+     * Tag name of the training command.
+     */
+    private final String command;
+
+    /**
+     * ID of the trained model.
+     */
+    private final String id;
+
+    /**
+     * Learning speed, or NaN if unknown.
+     */
+    private final double learningSpeed;
+
+    /**
+     * Used for measuring the CPU time of the training thread.
+     */
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Start of the training: wall time, CPU time and garbage collection time.
+     */
+    private long startWall, startCpu, startGc;
+
+    /**
+     * Previous epoch: wall time and number of samples.
+     */
+    private long lastWall, lastSample;
+
+    /**
+     * Number of epochs reported.
+     */
+    private int epoch = 0;
+
+    /**
+     * Flight recorder event of the current epoch.
+     */
+    private Object event;
+
+    /**
+     * Number of samples used before the current epoch.
+     */
+    private long eventSample;
+
+    /**
+     * Creates the telemetry of a training starting now.
+     * @param sink destination of the records, or null to do nothing
+     * @param command tag name of the training command
+     * @param id ID of the trained model
+     * @param learningSpeed learning speed, or NaN if unknown
+     */
+    public TrainingTelemetry(TelemetrySink sink, String command, String id, double learningSpeed) {
+        this.sink = sink;
+        this.command = command;
+        this.id = id;
+        this.learningSpeed = learningSpeed;
+        event = Recorder.get().beginEpoch();
+        if (sink == null) {
+            return;
+        }
+        startWall = System.nanoTime();
+        startCpu = cpuTime();
+        startGc = gcTime();
+        lastWall = startWall;
+    }
+
+    /**
+     * Records the end of an epoch. Nothing is written if the previous line
+     * is more recent than the interval of the sink; the throughput is then
+     * computed over all the epochs since the previous line.
+     * @param sample number of samples used so far
+     * @param samples number of samples of the training
+     * @param error mean error of the epoch
+     * @param classCounts number of samples used so far for each class, or null
+     */
+    public void epoch(long sample, long samples, double error, long[] classCounts) {
+        epoch++;
+        Recorder recorder = Recorder.get();
+        if (recorder.shouldCommit(event)) {
+            recorder.commitEpoch(event, command, id, epoch, sample - eventSample, sample, error);
+        }
+        event = recorder.beginEpoch();
+        eventSample = sample;
+
+        if (sink == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (epoch > 1 && now - lastWall < sink.getInterval()) {
+            return;
+        }
+        double rate = (now == lastWall) ? 0 : (sample - lastSample) * 1e9 / (now - lastWall);
+        lastWall = now;
+        lastSample = sample;
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"command\":\"").append(escape(command)).append('"');
+        sb.append(",\"id\":\"").append(escape(id)).append('"');
+        sb.append(",\"epoch\":").append(epoch);
+        sb.append(",\"sample\":").append(sample);
+        sb.append(",\"samples\":").append(samples);
+        sb.append(",\"samples_per_sec\":").append(number(rate));
+        sb.append(",\"wall_s\":").append(number((now - startWall) / 1e9));
+        long cpu = cpuTime();
+        sb.append(",\"cpu_s\":").append(cpu < 0 ? "null" : number((cpu - startCpu) / 1e9));
+        sb.append(",\"error\":").append(number(error));
+        sb.append(",\"learning_speed\":").append(number(learningSpeed));
+        sb.append(",\"class_counts\":");
+        if (classCounts == null) {
+            sb.append("null");
+        } else {
+            sb.append('[');
+            for (int c = 0; c < classCounts.length; c++) {
+                sb.append(c == 0 ? "" : ",").append(classCounts[c]);
+            }
+            sb.append(']');
+        }
+        sb.append(",\"heap_used\":").append(heap.getUsed());
+        sb.append(",\"heap_max\":").append(heap.getMax());
+        sb.append(",\"gc_ms\":").append(gcTime() - startGc);
+        sb.append('}');
+        sink.offer(sb.toString());
+    }
+
+    /**
+     * @return the CPU time of the current thread in nanoseconds, or -1
+     */
+    private long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * @return the total time spent in garbage collection, in milliseconds
+     */
+    private static long gcTime() {
+        long t = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            t += Math.max(0, gc.getCollectionTime());
+        }
+        return t;
+    }
+
+    /**
+     * @param d a number
+     * @return its JSON representation, null if it is not finite
+     */
+    private static String number(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.6g", d);
+    }
+
+    /**
+     * @param s a string
+     * @return the string, escaped for being put between quotes in JSON
+     */
+    private static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -30,6 +30,7 @@ import diuf.diva.dia.ms.ml.Classifier;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 import diuf.diva.dia.ms.script.command.*;
 import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.DatasetCache;
 import diuf.diva.dia.ms.util.Image;
 import diuf.diva.dia.ms.util.NoisyDataset;
 import org.jdom2.Document;
@@ -40,14 +41,25 @@ import org.jdom2.input.SAXBuilder;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 
 
 /**
+ * Parses and runs XML scripts.
+ * <p>
+ * By default, the commands run one after the other. If the root element has
+ * a threads attribute larger than 1, e.g., {@code <script threads="4">}, the
+ * commands which do not share any model, dataset or file run concurrently,
+ * and {@code <parallel>} and {@code <sequence>} blocks can be used to force
+ * the scheduling. See CommandScheduler for the details. Note that the random
+ * numbers drawn by concurrent commands depend on their timing, unless the
+ * commands have a seed attribute, which gives them their own generator.
+ * <p>
+ * The root element can also seed the random number generator, e.g.,
+ * {@code seed="1234"}, enable the command cache, see CommandCache, and
+ * write the telemetry of the trainings to a file, see TelemetrySink.
  * @author Mathias Seuret
  */
 public class XMLScript {
@@ -62,16 +74,61 @@ public class XMLScript {
      * Root element of the XML script.
      */
     protected Element root;
+
+    /**
+     * Maximum number of commands running at once.
+     */
+    private int threads = 1;
     
     /**
      * Maps IDS to datasets.
      */
-    public final HashMap<String, Dataset> datasets = new HashMap<>();
+    public final Map<String, Dataset> datasets = Collections.synchronizedMap(new HashMap<>());
     
     /**
      * Maps IDs to noisy datasets.
      */
-    public final HashMap<String, NoisyDataset> noisyDataSets = new HashMap<>();
+    public final Map<String, NoisyDataset> noisyDataSets = Collections.synchronizedMap(new HashMap<>());
+    
+    /**
+     * Maps dataset IDs to the source they were loaded from, so that a dataset
+     * still in memory is not loaded again.
+     */
+    public final Map<String, String> datasetSources = Collections.synchronizedMap(new HashMap<>());
+    
+    /**
+     * Datasets shared with other scripts, or null if the script loads its
+     * own datasets.
+     */
+    public DatasetCache datasetCache = null;
+    
+    /**
+     * Limits the number of commands running at once in all scripts sharing
+     * it, or null. The commands computing on several threads take one permit
+     * per thread, see acquireThreads().
+     */
+    public Semaphore workerBudget = null;
+    
+    /**
+     * Stores the products of expensive commands, or null.
+     */
+    public CommandCache commandCache = null;
+    
+    /**
+     * Receives the training errors, or null.
+     */
+    public TrainingMonitor trainingMonitor = null;
+    
+    /**
+     * Receives the training telemetry, or null.
+     */
+    public TelemetrySink telemetry = null;
+    
+    /**
+     * True if the telemetry sink was opened by this script, and must be
+     * closed at its end.
+     */
+    private boolean ownsTelemetry = false;
     
     /**
      * Maps tag names to commands.
@@ -81,21 +138,35 @@ public class XMLScript {
     /**
      * Maps IDs to autoencoders.
      */
-    public final HashMap<String, SCAE> scae = new HashMap<>();
+    public final Map<String, SCAE> scae = Collections.synchronizedMap(new HashMap<>());
     
     /**
      * Maps words to definitions.
      */
-    public final HashMap<String, String> definitions = new HashMap<>();
+    public final Map<String, String> definitions = Collections.synchronizedMap(new HashMap<>());
     
     /**
      * Maps IDs to classifiers.
      */
-    public final HashMap<String, Classifier> classifiers = new HashMap<>();
+    public final Map<String, Classifier> classifiers = Collections.synchronizedMap(new HashMap<>());
+    /**
+     * Random numbers generator of the script, which can be seeded with the
+     * seed attribute of the script.
+     */
+    private Random random = new Random();
     /**
-     * A random object,useful to seed the network globally
+     * Script whose command is running on the current thread.
      */
-    private static Random random;
+    private static final ThreadLocal<XMLScript> running = new ThreadLocal<>();
+    /**
+     * Random numbers generator of the command running on the current thread,
+     * if that command has a seed attribute.
+     */
+    private static final ThreadLocal<Random> seeded = new ThreadLocal<>();
+    /**
+     * Random numbers generator used outside of the commands of a script.
+     */
+    private static final Random shared = new Random();
 
     /**
      * Constructs an XML script.
@@ -108,6 +179,7 @@ public class XMLScript {
         Document xml = builder.build(new File(fname));
         root = xml.getRootElement();
         readColorspace();
+        readThreads();
         prepareCommands();
 
         // Select the appropriate rows for your launch. Please comment/De-coment the logging too
@@ -115,20 +187,56 @@ public class XMLScript {
         //System.out.println("\n\n[WARNING] The network randomness is being seeded in XMLScript\n\n");
        // random = new Random(123456789l);
 
-        random = new Random();
+        readCache();
+        readTelemetry();
+    }
+    
+    /**
+     * Constructs a script running the children of an element of another
+     * script, e.g., a trial of a sweep. It starts with the definitions of the
+     * other script, and shares its dataset cache and worker budget. Its random
+     * numbers generator is its own, and can be seeded with setRng().
+     * @param parent script containing the element
+     * @param root element whose children are the commands
+     */
+    public XMLScript(XMLScript parent, Element root) {
+        this.root = root;
+        colorspace = parent.colorspace;
+        readThreads();
+        prepareCommands();
+        definitions.putAll(parent.definitions);
+        datasetCache = parent.datasetCache;
+        workerBudget = parent.workerBudget;
+        commandCache = parent.commandCache;
+        telemetry = parent.telemetry;
     }
     
     /**
      * Deletes everything. Might be useful to free memory.
      */
     public void clearData() {
-        datasets.clear();
+        for (String id : new ArrayList<>(datasets.keySet())) {
+            unloadDataset(id);
+        }
+        datasetSources.clear();
         commands.clear();
         scae.clear();
         definitions.clear();
         classifiers.clear();
     }
     
+    /**
+     * Removes a dataset, and releases it if it comes from the dataset cache.
+     * @param id ID of the dataset
+     */
+    public void unloadDataset(String id) {
+        datasets.remove(id);
+        String source = datasetSources.remove(id);
+        if (source!=null && datasetCache!=null) {
+            datasetCache.release(source);
+        }
+    }
+    
     /**
      * Prepares instances of the different commands.
      */
@@ -136,6 +244,7 @@ public class XMLScript {
         // Load & save
         addCommand(new LoadDataset(this));
         addCommand(new UnloadDataset(this));
+        addCommand(new GeneratePages(this));
         addCommand(new Save(this));
         addCommand(new Load(this));
         addCommand(new Remove(this));
@@ -153,13 +262,18 @@ public class XMLScript {
         addCommand(new TrainClassifier(this));
         addCommand(new PreTrainClassifier(this));
         addCommand(new EvaluateClassifier(this));
+        addCommand(new Binarize(this));
+        addCommand(new Freeze(this));
         // Utility
         addCommand(new DeleteFeatures(this));
         addCommand(new Beep(this));
         addCommand(new Describe(this));
+        addCommand(new Cost(this));
         addCommand(new Define(this));
         addCommand(new Print(this));
         addCommand(new StoreResult(this));
+        addCommand(new Sweep(this));
+        addCommand(new Benchmark(this));
         
     }
     
@@ -207,28 +321,88 @@ public class XMLScript {
         }
     }
     
+    /**
+     * Loads the maximum number of concurrent commands from the XML.
+     */
+    private void readThreads() {
+        String t = root.getAttributeValue("threads");
+        if (t==null) {
+            return;
+        }
+        try {
+            threads = Integer.parseInt(t.trim());
+        } catch (NumberFormatException e) {
+            throw new Error("The threads attribute of the script must be an integer, not "+t);
+        }
+    }
+
+    /**
+     * Loads the random seed and the command cache from the XML.
+     */
+    private void readCache() {
+        String seed = root.getAttributeValue("seed");
+        if (seed!=null) {
+            random = new Random(Long.parseLong(seed.trim()));
+        }
+        String folder = root.getAttributeValue("cache");
+        if (folder!=null) {
+            String size = root.getAttributeValue("cache-size");
+            long mb = (size==null) ? 1024 : Long.parseLong(size.trim());
+            commandCache = new CommandCache(folder, mb * 1024 * 1024);
+        }
+    }
+
+    /**
+     * Opens the telemetry file given by the XML, if any.
+     * @throws IOException if the file cannot be opened
+     */
+    private void readTelemetry() throws IOException {
+        String file = root.getAttributeValue("telemetry");
+        if (file!=null) {
+            String interval = root.getAttributeValue("telemetry-interval");
+            long ms = (interval==null) ? 0 : Long.parseLong(interval.trim());
+            telemetry = new TelemetrySink(file.trim(), ms);
+            ownsTelemetry = true;
+        }
+    }
+
     /**
      * Runs the script.
      * @return the output of the last command
      * @throws Exception in unfortunately too many cases
      */
     public String execute() throws Exception {
-        String res = "";
-        for (Element e : root.getChildren()) {
-            String name = e.getName();
-            AbstractCommand cmd = commands.get(name);
-            if (cmd==null) {
-                throw new Error(
-                        "Cannot find command "+name
-                );
-            }
-            String cmdRes = cmd.execute(e);
-            if (res.equals("") || !cmdRes.equals("")) {
-                res = cmdRes;
+        try {
+            return new CommandScheduler(this, threads).execute(root.getChildren());
+        } finally {
+            if (ownsTelemetry) {
+                telemetry.close();
             }
-            definitions.put("$ANS", String.valueOf(res));
         }
-        return res;
+    }
+    
+    /**
+     * Starts the telemetry of a training.
+     * @param command tag name of the training command
+     * @param id ID of the trained model
+     * @param learningSpeed learning speed, or NaN if unknown
+     * @return the telemetry, doing nothing if the script has no telemetry sink
+     */
+    public TrainingTelemetry startTelemetry(String command, String id, double learningSpeed) {
+        return new TrainingTelemetry(telemetry, command, id, learningSpeed);
+    }
+    
+    /**
+     * Forwards the error of a training epoch to the training monitor, if any.
+     * @param sample number of samples used so far
+     * @param samples number of samples of the training
+     * @param error mean error of the epoch
+     */
+    public void reportTrainingError(long sample, long samples, double error) {
+        TrainingMonitor m = trainingMonitor;
+        if (m!=null) {
+            m.report(sample, samples, error);
+        }
     }
     
     /**
@@ -251,13 +425,114 @@ public class XMLScript {
     }
 
     /**
-     * @return the random
+     * @return the random numbers generator of this script, or the one of its
+     *         command running on the calling thread if that command has a
+     *         seed attribute
+     */
+    public Random getRng() {
+        Random r = seeded.get();
+        return (r != null && running.get() == this) ? r : random;
+    }
+
+    /**
+     * Replaces the random numbers generator returned by getRng(), e.g., when
+     * resuming a training: the one of the command running on the calling
+     * thread if that command has a seed attribute, or else the one of this
+     * script.
+     * @param r new random numbers generator
+     */
+    public void setRng(Random r) {
+        assert (r != null);
+        if (seeded.get() != null && running.get() == this) {
+            seeded.set(r);
+        } else {
+            random = r;
+        }
+    }
+
+    /**
+     * Returns the random numbers generator of the script whose command runs
+     * on the calling thread, or a shared one if no command runs on it. This
+     * is meant for the code which does not know the script, e.g., the
+     * initialization of the weights; commands use getRng() instead.
+     * @return a random numbers generator
      */
     public static Random getRandom() {
-        if (random==null) {
-            random = new Random();
+        Random r = seeded.get();
+        if (r != null) {
+            return r;
+        }
+        XMLScript s = running.get();
+        return (s != null) ? s.random : shared;
+    }
+
+    /**
+     * Indicates that a command of a script runs on the current thread, so
+     * that getRandom() returns the generator of that script.
+     * @param s script, or null
+     * @return the script which was running on the thread before, or null
+     */
+    static XMLScript setRunning(XMLScript s) {
+        XMLScript previous = running.get();
+        if (s != null) {
+            running.set(s);
+        } else {
+            running.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Reserves threads for the command running on the calling thread, which
+     * computes in parallel. If the script of that command has a worker
+     * budget, the command holds one of its permits already and takes as many
+     * of the free permits as it can use, so that the scripts sharing the
+     * budget do not run more threads than it allows. Otherwise, all the
+     * threads wanted are granted. Give them back with releaseThreads().
+     * @param wanted number of threads the command could use
+     * @return number of threads the command may use, at least 1
+     */
+    public static int acquireThreads(int wanted) {
+        XMLScript s = running.get();
+        Semaphore budget = (s != null) ? s.workerBudget : null;
+        if (budget == null) {
+            return Math.max(1, wanted);
+        }
+        int n = 1;
+        while (n < wanted && budget.tryAcquire()) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Gives back the threads reserved with acquireThreads(), from the same
+     * thread.
+     * @param threads number of threads returned by acquireThreads()
+     */
+    public static void releaseThreads(int threads) {
+        XMLScript s = running.get();
+        Semaphore budget = (s != null) ? s.workerBudget : null;
+        if (budget != null && threads > 1) {
+            budget.release(threads - 1);
+        }
+    }
+
+    /**
+     * Gives its own random numbers generator to the command running on the
+     * current thread, e.g., a command with a seed attribute, so that what it
+     * draws does not depend on the commands run before it.
+     * @param r random numbers generator, or null for the one of the script
+     * @return the generator which was given to the thread before, or null
+     */
+    static Random setCommandRng(Random r) {
+        Random previous = seeded.get();
+        if (r != null) {
+            seeded.set(r);
+        } else {
+            seeded.remove();
         }
-        return random;
+        return previous;
     }
 
 }
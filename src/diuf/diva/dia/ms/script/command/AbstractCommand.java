@@ -27,8 +27,14 @@
 package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.Checkpointer;
+import org.jdom2.Attribute;
 import org.jdom2.Element;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * This class provides some methods which simplify the act of parsing the XML script.
  * Furthermore using these methods ensure that each command gets correctly preprocessed and that
@@ -37,6 +43,17 @@ import org.jdom2.Element;
  * @author Mathias Seuret, Michele Alberti
  */
 public abstract class AbstractCommand {
+    /**
+     * Names of the attributes and tags whose values are ids of models or
+     * datasets, or names of files and folders.
+     */
+    private static final Set<String> RESOURCE_TAGS = new HashSet<>(Arrays.asList(
+            "id", "ref", "dataset", "subsampledataset", "scae", "ae", "file", "folder",
+            "clean-folder", "noisy-folder", "destination", "output-folder", "document",
+            "result", "results", "recode", "save-progress", "checkpoint", "groundTruth",
+            "fromClassifier"
+    ));
+
     protected XMLScript script;
     
     /**
@@ -96,6 +113,125 @@ public abstract class AbstractCommand {
         return readElement(c);
     }
 
+    /**
+     * Reads the optional checkpoint tag of a training command, e.g.,
+     * <checkpoint every="10 minutes" resume="true">folder</checkpoint>.
+     * The period is either a number of samples or of minutes, and resume
+     * defaults to true.
+     * @param parent the element of the command
+     * @param model the model being trained
+     * @return a checkpointer, or null if there is no checkpoint tag
+     */
+    protected Checkpointer readCheckpoint(Element parent, Object model) {
+        Element c = parent.getChild("checkpoint");
+        if (c==null) {
+            return null;
+        }
+        try {
+            return new Checkpointer(script, model, readElement(c), readAttribute(c, "every"));
+        } catch (IllegalArgumentException e) {
+            error(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param parent the element of the command
+     * @return true if the training has to resume from the last checkpoint
+     */
+    protected boolean readResume(Element parent) {
+        Element c = parent.getChild("checkpoint");
+        return c!=null && !"false".equals(c.getAttributeValue("resume"));
+    }
+
+    /**
+     * Lists the models, datasets, files and folders used by a command. Two
+     * commands sharing none of them can run concurrently.
+     * @param e root element of the command
+     * @return the ids and file names read or written by the command
+     */
+    public Set<String> getResources(Element e) {
+        return getResources(e, script);
+    }
+
+    /**
+     * Lists the models, datasets, files and folders used by the commands of
+     * an element, resolving their names with the definitions of a script.
+     * @param e element
+     * @param context script whose definitions are used
+     * @return the ids and file names read or written by the commands
+     */
+    protected static Set<String> getResources(Element e, XMLScript context) {
+        Set<String> res = new HashSet<>();
+        addResources(e, context, res);
+        return res;
+    }
+
+    /**
+     * Adds the resources of an element and of its children to a set.
+     * @param e element
+     * @param context script whose definitions are used
+     * @param res set of resources
+     */
+    private static void addResources(Element e, XMLScript context, Set<String> res) {
+        for (Attribute a : e.getAttributes()) {
+            if (RESOURCE_TAGS.contains(a.getName())) {
+                res.add(context.preprocess(a.getValue()));
+            }
+        }
+        for (Element c : e.getChildren()) {
+            if (RESOURCE_TAGS.contains(c.getName())) {
+                res.add(context.preprocess(c.getTextTrim()));
+            }
+            addResources(c, context, res);
+        }
+    }
+
+    /**
+     * Indicates whether all previous commands have to be finished before
+     * running this one, and whether the next ones have to wait for it. This is
+     * the case of commands using $ANS or modifying the definitions.
+     * @param e root element of the command
+     * @return true if the command cannot overlap with any other
+     */
+    public boolean isBarrier(Element e) {
+        return usesAns(e);
+    }
+
+    /**
+     * @param e element
+     * @return true if the element or one of its children refers to $ANS
+     */
+    private static boolean usesAns(Element e) {
+        if (e.getText().contains("$ANS")) {
+            return true;
+        }
+        for (Attribute a : e.getAttributes()) {
+            if (a.getValue().contains("$ANS")) {
+                return true;
+            }
+        }
+        for (Element c : e.getChildren()) {
+            if (usesAns(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether the products of the command can be stored in the
+     * command cache of the script and restored instead of executing it
+     * again. This is the case of deterministic commands whose products are
+     * the models and datasets they reference. They are cached only when
+     * their element has a seed attribute, see CommandCache.
+     * @param e root element of the command
+     * @return true if the command can be memoized
+     */
+    public boolean isMemoizable(Element e) {
+        return false;
+    }
+
     /**
      * This method is formatting and throwing a meaningful error
      * @param msg the content of the message
@@ -0,0 +1,347 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.command;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.misc.LatencyHistogram;
+import org.jdom2.Element;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the inference or training cost of a classifier or of a SCAE on
+ * pixels of a dataset. After some warm-up passes, the timed passes apply
+ * the operation to the sampled pixels, split between the threads, and the
+ * duration of every call is recorded. The throughput, the percentiles of
+ * the latency and the bytes allocated per call are printed, and the
+ * throughput, in calls per second, is the result of the command.
+ * <p>
+ * Every thread works on its own copy of the model, so that the model of
+ * the script is not modified, even when benchmarking the training.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <benchmark ref="stringID">
+ * <dataset>stringID</dataset>
+ * <operation>compute|forward|train</operation> // optional, default: compute for a classifier, forward for a SCAE
+ * <samples>int</samples>             // optional, pixels per pass, default: 10000
+ * <offset-x>int</offset-x>           // optional, pixels taken on a grid instead of at random
+ * <offset-y>int</offset-y>           // optional, pixels taken on a grid instead of at random
+ * <warmup>int</warmup>               // optional, warm-up passes, default: 2
+ * <passes>int</passes>               // optional, timed passes, default: 3
+ * <threads>int</threads>             // optional, default: 1
+ * </benchmark>
+ *
+ * @author agent
+ */
+public class Benchmark extends AbstractCommand {
+
+    /**
+     * Operation applied to a pixel by one thread.
+     */
+    private interface Operation {
+        /**
+         * @param db data block
+         * @param x center of the input
+         * @param y center of the input
+         */
+        void run(DataBlock db, int x, int y);
+    }
+
+    /**
+     * Used for measuring the allocations of the threads, if the JVM
+     * supports it.
+     */
+    private static final com.sun.management.ThreadMXBean threadBean = allocationBean();
+
+    /**
+     * Sampled pixels: index of the data block, x and y.
+     */
+    private int[][] pixels;
+
+    /**
+     * Constructor of the class.
+     * @param script which creates the command
+     */
+    public Benchmark(XMLScript script) {
+        super(script);
+    }
+
+    @Override
+    public String execute(Element element) throws Exception {
+        String ref = readAttribute(element, "ref");
+        Classifier classifier = script.classifiers.get(ref);
+        SCAE scae = script.scae.get(ref);
+        if (classifier == null && scae == null) {
+            error("cannot find " + ref + ", check the id");
+        }
+
+        String dataset = readElement(element, "dataset");
+        Dataset ds = script.datasets.get(dataset);
+        if (ds == null) {
+            error("cannot find dataset " + dataset);
+        }
+
+        String operation = (classifier != null) ? "compute" : "forward";
+        if (element.getChild("operation") != null) {
+            operation = readElement(element, "operation");
+        }
+        int samples = readInt(element, "samples", 10000);
+        int warmup = readInt(element, "warmup", 2);
+        int passes = readInt(element, "passes", 3);
+        int nbThreads = readInt(element, "threads", 1);
+        if (samples < 1 || passes < 1 || nbThreads < 1 || warmup < 0) {
+            error("samples, passes and threads must be positive");
+        }
+
+        // One operation per thread, each on its own copy of the model
+        List<Operation> ops = new ArrayList<>();
+        int width = 0, height = 0;
+        for (int t = 0; t < nbThreads; t++) {
+            if (classifier != null) {
+                if (!operation.equals("compute")) {
+                    error("unknown operation " + operation + " for a classifier, only compute is available");
+                }
+                Classifier c = classifier.replicate();
+                width = c.getInputWidth();
+                height = c.getInputHeight();
+                ops.add((db, x, y) -> {
+                    c.centerInput(db, x, y);
+                    c.compute();
+                });
+            } else {
+                SCAE s = scae.replicate();
+                width = s.getInputPatchWidth();
+                height = s.getInputPatchHeight();
+                switch (operation) {
+                    case "forward":
+                        ops.add((db, x, y) -> {
+                            s.centerInput(db, x, y);
+                            s.forward();
+                        });
+                        break;
+                    case "train":
+                        ops.add((db, x, y) -> {
+                            s.centerInput(db, x, y);
+                            s.train();
+                        });
+                        break;
+                    default:
+                        error("unknown operation " + operation + " for a SCAE, use forward or train");
+                }
+            }
+        }
+
+        if (element.getChild("offset-x") != null || element.getChild("offset-y") != null) {
+            samplePixelsOnGrid(ds, width, height, samples,
+                    readInt(element, "offset-x", width), readInt(element, "offset-y", height));
+        } else {
+            samplePixels(ds, width, height, samples);
+        }
+
+        script.println("Benchmarking " + operation + " of [" + ref + "] on " + pixels.length
+                + " pixels, " + nbThreads + " thread(s), " + warmup + " warm-up and " + passes + " timed passes");
+
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        try {
+            for (int p = 0; p < warmup; p++) {
+                runPass(pool, ops, ds, null);
+            }
+            LatencyHistogram latency = new LatencyHistogram();
+            long nanos = 0;
+            long bytes = 0;
+            for (int p = 0; p < passes; p++) {
+                long start = System.nanoTime();
+                bytes += runPass(pool, ops, ds, latency);
+                nanos += System.nanoTime() - start;
+            }
+
+            double throughput = latency.getCount() / (nanos / 1e9);
+            script.println(String.format(
+                    "Benchmark [%s] %s: %.1f calls/s, p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus, %s bytes/call",
+                    ref, operation, throughput,
+                    latency.getPercentile(50) * 1000, latency.getPercentile(90) * 1000,
+                    latency.getPercentile(99) * 1000, latency.getMax() * 1000,
+                    (threadBean == null) ? "?" : String.format("%.1f", bytes / (double) latency.getCount())
+            ));
+            return String.valueOf(throughput);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Applies the operations to all sampled pixels, the threads taking
+     * interleaved pixels.
+     * @param pool thread pool
+     * @param ops one operation per thread
+     * @param ds dataset
+     * @param latency where the durations are recorded, or null
+     * @return the number of bytes allocated by the threads
+     */
+    private long runPass(ExecutorService pool, List<Operation> ops, Dataset ds, LatencyHistogram latency) {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < ops.size(); t++) {
+            final int first = t;
+            final Operation op = ops.get(t);
+            futures.add(pool.submit(() -> {
+                long allocated = allocatedBytes();
+                for (int i = first; i < pixels.length; i += ops.size()) {
+                    DataBlock db = ds.get(pixels[i][0]);
+                    long start = System.nanoTime();
+                    op.run(db, pixels[i][1], pixels[i][2]);
+                    if (latency != null) {
+                        latency.record(System.nanoTime() - start);
+                    }
+                }
+                return allocatedBytes() - allocated;
+            }));
+        }
+        long bytes = 0;
+        try {
+            for (Future<Long> f : futures) {
+                bytes += f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Error("Benchmark interrupted");
+        } catch (ExecutionException e) {
+            throw new Error("Benchmark failed: " + e.getCause(), e.getCause());
+        }
+        return bytes;
+    }
+
+    /**
+     * Draws pixels at random, far enough from the borders for the input to
+     * fit in the data blocks.
+     * @param ds dataset
+     * @param width input width
+     * @param height input height
+     * @param samples number of pixels
+     */
+    private void samplePixels(Dataset ds, int width, int height, int samples) {
+        pixels = new int[samples][];
+        for (int i = 0; i < samples; i++) {
+            int n = script.getRng().nextInt(ds.size());
+            DataBlock db = ds.get(n);
+            checkSize(db, width, height);
+            pixels[i] = new int[]{
+                    n,
+                    width / 2 + script.getRng().nextInt(db.getWidth() - width + 1),
+                    height / 2 + script.getRng().nextInt(db.getHeight() - height + 1)
+            };
+        }
+    }
+
+    /**
+     * Takes pixels on a grid, in the order of the dataset, until there are
+     * enough of them or the dataset is covered.
+     * @param ds dataset
+     * @param width input width
+     * @param height input height
+     * @param samples maximum number of pixels
+     * @param offsetX horizontal spacing
+     * @param offsetY vertical spacing
+     */
+    private void samplePixelsOnGrid(Dataset ds, int width, int height, int samples, int offsetX, int offsetY) {
+        if (offsetX < 1 || offsetY < 1) {
+            error("offsets must be positive");
+        }
+        List<int[]> res = new ArrayList<>();
+        for (int n = 0; n < ds.size() && res.size() < samples; n++) {
+            DataBlock db = ds.get(n);
+            checkSize(db, width, height);
+            for (int y = 0; y + height <= db.getHeight() && res.size() < samples; y += offsetY) {
+                for (int x = 0; x + width <= db.getWidth() && res.size() < samples; x += offsetX) {
+                    res.add(new int[]{n, x + width / 2, y + height / 2});
+                }
+            }
+        }
+        pixels = res.toArray(new int[res.size()][]);
+    }
+
+    /**
+     * Stops if the input of the model does not fit in a data block.
+     * @param db data block
+     * @param width input width
+     * @param height input height
+     */
+    private void checkSize(DataBlock db, int width, int height) {
+        if (db.getWidth() < width || db.getHeight() < height) {
+            error("the images are smaller than the input of the model (" + width + "x" + height + ")");
+        }
+    }
+
+    /**
+     * Reads an optional integer.
+     * @param element the command element
+     * @param child name of the child element
+     * @param def default value
+     * @return the value of the child, or the default one
+     */
+    private int readInt(Element element, String child, int def) {
+        if (element.getChild(child) == null) {
+            return def;
+        }
+        return Integer.parseInt(readElement(element, child));
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or
+     * 0 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        return (threadBean == null) ? 0 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the thread bean measuring allocations, or null if unsupported
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        if (t instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) t).isThreadAllocatedMemorySupported()) {
+            ((com.sun.management.ThreadMXBean) t).setThreadAllocatedMemoryEnabled(true);
+            return (com.sun.management.ThreadMXBean) t;
+        }
+        return null;
+    }
+
+    @Override
+    public String tagName() {
+        return "benchmark";
+    }
+}
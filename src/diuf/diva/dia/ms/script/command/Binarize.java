@@ -0,0 +1,78 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.command;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.script.XMLScript;
+import org.jdom2.Element;
+
+/**
+ * Replaces the layers of an FFCNN which receive binary inputs by
+ * inference-only binarized layers. The classifier cannot be trained
+ * anymore afterwards.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <binarize ref="myClassifier" ternary="false"/>
+ *
+ * @author agent
+ */
+public class Binarize extends AbstractCommand {
+
+    /**
+     * Constructor of the class.
+     * @param script which creates the command
+     */
+    public Binarize(XMLScript script) {
+        super(script);
+    }
+
+    @Override
+    public String execute(Element element) throws Exception {
+        String ref = readAttribute(element, "ref");
+
+        Classifier classifier = script.classifiers.get(ref);
+        if (classifier == null) {
+            error("cannot find classifier " + ref);
+        }
+        if (!(classifier instanceof FFCNN)) {
+            error("only FFCNN classifiers can be binarized");
+        }
+
+        boolean ternary = Boolean.parseBoolean(element.getAttributeValue("ternary"));
+        int n = ((FFCNN) classifier).binarize(ternary);
+        script.println(n + " layer(s) of " + ref + (ternary ? " ternarized" : " binarized"));
+
+        return String.valueOf(n);
+    }
+
+    @Override
+    public String tagName() {
+        return "binarize";
+    }
+
+}
@@ -0,0 +1,291 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.command;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.AutoEncoder;
+import diuf.diva.dia.ms.ml.ae.MaxPooler;
+import diuf.diva.dia.ms.ml.ae.ToBinaryUnit;
+import diuf.diva.dia.ms.ml.ae.ToRealUnit;
+import diuf.diva.dia.ms.ml.ae.aec.AEClassifier;
+import diuf.diva.dia.ms.ml.ae.ffcnn.ConvolutionalLayer;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.ml.ae.ffcnn.MultipleUnitsConvolution;
+import diuf.diva.dia.ms.ml.ae.scae.Convolution;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.ml.layer.Layer;
+import diuf.diva.dia.ms.ml.layer.NeuralLayer;
+import diuf.diva.dia.ms.ml.mlnn.MLNN;
+import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.misc.Footprint;
+import org.jdom2.Element;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reports the cost of the models and of the datasets in memory, so that the
+ * duration and the memory of a job can be predicted before launching it.
+ * For each stage of a SCAE, layer of a FFCNN or of the neural network of an
+ * AEClassifier, the number of parameters, the resident memory split into
+ * weights, gradients and buffers, the multiply-adds per evaluation and the
+ * receptive field are printed. The multiply-adds are also given per pixel
+ * of a page evaluated with the given offsets, i.e., when one pixel of every
+ * offset-x by offset-y area is classified. The resident memory of every
+ * loaded dataset is printed at the end.
+ * <p>
+ * The result of the command is the number of multiply-adds per page pixel
+ * of the model, or without ref the sum of the multiply-adds per page pixel of
+ * all models.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <cost ref="stringID">              // ref is optional, default: all models
+ * <offset-x>int</offset-x>           // optional, default: 1
+ * <offset-y>int</offset-y>           // optional, default: 1
+ * </cost>
+ *
+ * @author agent
+ */
+public class Cost extends AbstractCommand {
+
+    /**
+     * Evaluation offsets.
+     */
+    private int offsetX, offsetY;
+
+    /**
+     * Constructor of the class.
+     * @param script which creates the command
+     */
+    public Cost(XMLScript script) {
+        super(script);
+    }
+
+    @Override
+    public String execute(Element element) throws Exception {
+        offsetX = 1;
+        if (element.getChild("offset-x") != null) {
+            offsetX = Integer.parseInt(readElement(element, "offset-x"));
+        }
+        offsetY = 1;
+        if (element.getChild("offset-y") != null) {
+            offsetY = Integer.parseInt(readElement(element, "offset-y"));
+        }
+        if (offsetX < 1 || offsetY < 1) {
+            error("offsets must be positive");
+        }
+
+        String ref = element.getAttributeValue("ref");
+        if (ref != null) {
+            ref = script.preprocess(ref);
+            if (!script.scae.containsKey(ref) && !script.classifiers.containsKey(ref)) {
+                error("cannot find a model with the ID " + ref);
+            }
+        }
+
+        double macs = 0;
+        for (Map.Entry<String, SCAE> e : new TreeMap<>(script.scae).entrySet()) {
+            if (ref == null || ref.equals(e.getKey())) {
+                macs += report(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, Classifier> e : new TreeMap<>(script.classifiers).entrySet()) {
+            if (ref == null || ref.equals(e.getKey())) {
+                macs += report(e.getKey(), e.getValue());
+            }
+        }
+
+        for (Map.Entry<String, Dataset> e : new TreeMap<>(script.datasets).entrySet()) {
+            Dataset ds = e.getValue();
+            long pixels = 0;
+            for (int i = 0; i < ds.size(); i++) {
+                pixels += (long) ds.get(i).getWidth() * ds.get(i).getHeight();
+            }
+            script.println("Dataset [" + e.getKey() + "]: " + ds.size() + " images, " + pixels + " pixels, "
+                    + Footprint.format(new Footprint().add(ds).getTotalBytes()));
+        }
+
+        return String.valueOf(macs);
+    }
+
+    /**
+     * Reports the cost of a SCAE.
+     * @param id id of the SCAE
+     * @param scae SCAE
+     * @return multiply-adds per page pixel
+     */
+    private double report(String id, SCAE scae) {
+        script.println("SCAE [" + id + "]");
+        long macs = reportStages(scae);
+        return total(scae, macs, scae.getInputPatchWidth(), scae.getInputPatchHeight());
+    }
+
+    /**
+     * Reports the cost of a classifier.
+     * @param id id of the classifier
+     * @param classifier classifier
+     * @return multiply-adds per page pixel
+     */
+    private double report(String id, Classifier classifier) {
+        script.println(classifier.name() + " [" + id + "]");
+        long macs = 0;
+        if (classifier instanceof FFCNN) {
+            FFCNN ffcnn = (FFCNN) classifier;
+            int rf = 1, jump = 1;
+            for (int n = 0; n < ffcnn.countLayers(); n++) {
+                ConvolutionalLayer l = ffcnn.getLayer(n);
+                AutoEncoder unit = l.getAutoEncoder(0, 0);
+                DataBlock out = l.getOutput();
+                long units = (long) out.getWidth() * out.getHeight();
+                Footprint f = footprint(l);
+                rf += (unit.getInputWidth() - 1) * jump;
+                jump *= l.getXoffset();
+                long m = units * macs(unit);
+                macs += m;
+                line("Layer " + n + " " + l.getClass().getSimpleName()
+                        + " " + out.getWidth() + "x" + out.getHeight() + "x" + out.getDepth()
+                        + ((l instanceof MultipleUnitsConvolution) ? ", " + units + " units" : ""), f, m, rf);
+            }
+        } else if (classifier instanceof AEClassifier) {
+            AEClassifier aec = (AEClassifier) classifier;
+            macs += reportStages(aec.getSCAE());
+            macs += report(aec.getMLNN());
+        } else {
+            script.println("\tno cost model for " + classifier.getClass().getSimpleName());
+        }
+        return total(classifier, macs, classifier.getInputWidth(), classifier.getInputHeight());
+    }
+
+    /**
+     * Reports the stages of a SCAE.
+     * @param scae SCAE
+     * @return multiply-adds per evaluation
+     */
+    private long reportStages(SCAE scae) {
+        long macs = 0;
+        int rf = 1, jump = 1;
+        for (int n = 0; n < scae.getLayers().size(); n++) {
+            Convolution convo = scae.getLayer(n);
+            AutoEncoder base = convo.getBase();
+            long m = (long) convo.getOutputWidth() * convo.getOutputHeight() * macs(base);
+            macs += m;
+            rf += (base.getInputWidth() - 1) * jump;
+            jump *= convo.getInputOffsetX();
+            line("Stage " + n + " " + base.getClass().getSimpleName()
+                    + " " + base.getInputWidth() + "x" + base.getInputHeight() + "x" + base.getInputDepth()
+                    + "->" + base.getOutputDepth()
+                    + ", " + convo.getOutputWidth() + "x" + convo.getOutputHeight() + " units",
+                    footprint(base), m, rf);
+        }
+        return macs;
+    }
+
+    /**
+     * Reports the layers of a neural network.
+     * @param nn neural network
+     * @return multiply-adds per evaluation
+     */
+    private long report(MLNN nn) {
+        long macs = 0;
+        for (int l = 0; l < nn.getLayersCount(); l++) {
+            NeuralLayer nl = nn.getLayer(l);
+            long m = (long) nl.getInputSize() * nl.getOutputSize();
+            macs += m;
+            line("MLNN layer " + l + " " + nl.getInputSize() + "->" + nl.getOutputSize(), footprint(nl), m, -1);
+        }
+        return macs;
+    }
+
+    /**
+     * Prints the totals of a model.
+     * @param model the model
+     * @param macs multiply-adds per evaluation
+     * @param width input width
+     * @param height input height
+     * @return multiply-adds per page pixel
+     */
+    private double total(Object model, long macs, int width, int height) {
+        double perPixel = macs / (double) (offsetX * offsetY);
+        script.println("\tTotal: " + footprint(model));
+        script.println("\tReceptive field " + width + "x" + height + ", " + macs + " multiply-adds per evaluation, "
+                + String.format("%.1f", perPixel) + " per page pixel at offset " + offsetX + "x" + offsetY
+                + String.format(" (%.3g per megapixel)", perPixel * 1e6));
+        return perPixel;
+    }
+
+    /**
+     * Prints the cost of a part of a model.
+     * @param name description of the part
+     * @param f its footprint
+     * @param macs multiply-adds per evaluation
+     * @param rf receptive field, or -1 if not relevant
+     */
+    private void line(String name, Footprint f, long macs, int rf) {
+        script.println("\t" + name + ": " + f + ", " + macs + " multiply-adds"
+                + ((rf > 0) ? ", receptive field " + rf : ""));
+    }
+
+    /**
+     * Measures a part of a model, without the data blocks of the datasets
+     * which the model might be reading.
+     * @param o part of the model
+     * @return its footprint
+     */
+    private Footprint footprint(Object o) {
+        Footprint f = new Footprint();
+        synchronized (script.datasets) {
+            for (Dataset ds : script.datasets.values()) {
+                for (int i = 0; i < ds.size(); i++) {
+                    f.exclude(ds.get(i));
+                }
+            }
+        }
+        return f.add(o);
+    }
+
+    /**
+     * @param ae autoencoder
+     * @return the multiply-adds needed for encoding one patch
+     */
+    private static long macs(AutoEncoder ae) {
+        Layer encoder = ae.getEncoder();
+        if (encoder != null) {
+            return (long) encoder.getInputSize() * encoder.getOutputSize();
+        }
+        if (ae instanceof MaxPooler || ae instanceof ToBinaryUnit || ae instanceof ToRealUnit) {
+            return 0;
+        }
+        return (long) ae.getInputSize() * ae.getOutputDepth();
+    }
+
+    @Override
+    public String tagName() {
+        return "cost";
+    }
+}
@@ -31,11 +31,10 @@ import diuf.diva.dia.ms.ml.ae.ffcnn.ConvolutionalLayer;
 import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.ModelFile;
 import org.jdom2.Element;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 
 /**
  * Creates an SCAE. Described in the doc.
@@ -238,7 +237,7 @@ public class CreateStackedAE extends AbstractCommand {
 
         // Read the *.dat file and load the content
         try {
-            Object o = new ObjectInputStream(new FileInputStream(classifierPath)).readObject();
+            Object o = ModelFile.read(classifierPath);
             // If it is a FFCNN classifier then assign it, otherwise throw error
             if (o instanceof FFCNN) {
                 ffcnn = (FFCNN) o;
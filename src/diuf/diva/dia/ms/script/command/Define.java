@@ -60,6 +60,11 @@ public class Define extends AbstractCommand {
         return "";
     }
 
+    @Override
+    public boolean isBarrier(Element element) {
+        return true;
+    }
+
     @Override
     public String tagName() {
         return "define";
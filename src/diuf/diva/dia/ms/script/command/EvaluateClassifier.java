@@ -27,10 +27,12 @@
 package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.script.Recorder;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.BiDataBlock;
 import diuf.diva.dia.ms.util.DataBlock;
 import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.ImageLoader;
 import org.jdom2.Element;
 
 import javax.imageio.ImageIO;
@@ -43,6 +45,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * Evaluates the classification accuracy and stores the classification result.
@@ -160,12 +163,15 @@ public class EvaluateClassifier extends AbstractCommand {
 
         float[] cumulatedError = {0, 0, 0};
         for (int i = 0; i < ds.size(); i++) {
+            Object event = Recorder.get().beginPage();
+            float score = 0;
 
             switch (et) {
                 case SINGLE_CLASS:
                     float e = getSingleClassError(ds.get(i), gt.get(i), classifier, offsetX, offsetY, outPath + "/" + classifier.name() + "-" + i);
                     script.println("Classified image " + (i + 1) + "/" + ds.size() + " : ACC=" + String.format("%.3f", e));
                     cumulatedError[0] += e;
+                    score = e;
                     break;
 
                 case MULTIPLE_CLASSES:
@@ -174,8 +180,14 @@ public class EvaluateClassifier extends AbstractCommand {
                     cumulatedError[0] += rv[0];
                     cumulatedError[1] += rv[1];
                     cumulatedError[2] += rv[2];
+                    score = rv[0];
                     break;
             }
+
+            // Flight recorder event of the page
+            if (Recorder.get().shouldCommit(event)) {
+                Recorder.get().commitPage(event, ref, i, ds.get(i).getWidth(), ds.get(i).getHeight(), score);
+            }
         }
 
         // Print results over all images
@@ -240,7 +252,7 @@ public class EvaluateClassifier extends AbstractCommand {
                 classifier.compute();
 
                 // Take the correct classification value from GT
-                int correctClass = Math.round((gt.getValues(x, y)[index] + 1) * 255.0f / 2.0f);
+                int correctClass = Math.round((gt.getValue(index, x, y) + 1) * 255.0f / 2.0f);
 
                 // Taking output class
                 int outputClass = classifier.getOutputClass(false);
@@ -335,7 +347,7 @@ public class EvaluateClassifier extends AbstractCommand {
                 classifier.compute();
 
                 // Take the correct classification value from GT
-                int correctClass = Math.round((gt.getValues(x, y)[index] + 1) * 255 / 2.0f);
+                int correctClass = Math.round((gt.getValue(index, x, y) + 1) * 255 / 2.0f);
                 // Convert int to bit-wise indicator. Example: 3(0011) -> 4th(1000)
                 correctClass = 0x01 << correctClass;
 
@@ -468,7 +480,7 @@ public class EvaluateClassifier extends AbstractCommand {
      *
      * @param element the node of the XML directly
      */
-    public String fileNameBased(Element element) throws IOException {
+    public String fileNameBased(Element element) throws Exception {
 
         /***********************************************************************************************
          * PARSE ELEMENT FROM XML
@@ -520,16 +532,22 @@ public class EvaluateClassifier extends AbstractCommand {
         // Getting file names on that folder
         File[] listOfFiles = dsdir.listFiles();
 
-        // For each file listed
+        // Read and decode the files listed in parallel, keeping their order
+        List<File> selectedFiles = new ArrayList<>();
         for (int i = 0; i < listOfFiles.length; i += dsSubSample) {
+            selectedFiles.add(listOfFiles[i]);
+        }
+        List<BiDataBlock> images = ImageLoader.load(selectedFiles, BiDataBlock::new);
+
+        // For each file listed
+        for (int i = 0; i < selectedFiles.size(); i++) {
             // Get correct class from file name
-            int correctClass = Character.getNumericValue(listOfFiles[i].getName().charAt(0));
+            int correctClass = Character.getNumericValue(selectedFiles.get(i).getName().charAt(0));
             // Store in the image in the appropriate ArrayList
             if (!data.containsKey(correctClass)) {
                 data.put(correctClass, new ArrayList<>());
             }
-            data.get(correctClass).add(new BiDataBlock(dsdir + "/" + listOfFiles[i].getName()));
-
+            data.get(correctClass).add(images.get(i));
         }
 
         script.println("Dataset loaded and processed in: " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
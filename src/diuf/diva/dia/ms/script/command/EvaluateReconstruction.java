@@ -27,10 +27,12 @@
 package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.ml.ae.scae.TiledRecoder;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.DataBlock;
 import diuf.diva.dia.ms.util.Dataset;
 import diuf.diva.dia.ms.util.misc.ReconstructionScore;
+import diuf.diva.dia.ms.util.misc.RunningStatistics;
 import org.jdom2.Element;
 
 import java.io.File;
@@ -40,7 +42,17 @@ import java.util.List;
 
 /**
  * This command reconstructs an image and indicates how accurate the
- * reconstruction was.
+ * reconstruction was. The patches are recoded and scored in parallel.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <evaluate-reconstruction ref="myScae">
+ * <dataset>stringID</dataset>
+ * <offset-x>int</offset-x>           // optional, default: patch width
+ * <offset-y>int</offset-y>           // optional, default: patch height
+ * <recode>path</recode>              // optional, folder where reconstructions are stored
+ * <threads>int</threads>             // optional, default: number of cores, bounded by the worker budget
+ * </evaluate-reconstruction>
  * @author Mathias Seuret
  */
 public class EvaluateReconstruction extends AbstractCommand {
@@ -60,6 +72,50 @@ public class EvaluateReconstruction extends AbstractCommand {
      */
     private int imageIndex = 1;
 
+    /**
+     * Number of threads used for the evaluation.
+     */
+    private int nbThreads;
+
+    /**
+     * Recoder used for all images of the current evaluation, so that the
+     * copies of the SCAE made for the worker threads are kept from one
+     * image to the next.
+     */
+    private TiledRecoder recoder = null;
+
+    /**
+     * Accumulates the distances of the patches seen by one thread.
+     */
+    private static class Scorer implements TiledRecoder.PatchObserver {
+        final RunningStatistics eucl = new RunningStatistics();
+        final RunningStatistics soid = new RunningStatistics();
+        final RunningStatistics corr = new RunningStatistics();
+        final RunningStatistics e94 = new RunningStatistics();
+        final RunningStatistics mahala = new RunningStatistics();
+
+        @Override
+        public void observe(float[] exp, float[] val) {
+            eucl.add(ReconstructionScore.euclideanDistance(val, exp));
+            soid.add(ReconstructionScore.scaleOffsetInvarDist(val, exp));
+            corr.add(ReconstructionScore.normalizedCorrelation(val, exp));
+            e94.add(ReconstructionScore.delta94distance(val, exp));
+            mahala.add(ReconstructionScore.mahalanobisDistance(val, exp));
+        }
+
+        /**
+         * Adds the distances of another scorer to this one.
+         * @param other scorer to merge
+         */
+        void merge(Scorer other) {
+            eucl.merge(other.eucl);
+            soid.merge(other.soid);
+            corr.merge(other.corr);
+            e94.merge(other.e94);
+            mahala.merge(other.mahala);
+        }
+    }
+
     public EvaluateReconstruction(XMLScript script) {
         super(script);
     }
@@ -88,6 +144,11 @@ public class EvaluateReconstruction extends AbstractCommand {
             offsetY = Integer.parseInt(readElement(element, "offset-y"));
         }
 
+        nbThreads = Runtime.getRuntime().availableProcessors();
+        if (element.getChild("threads") != null) {
+            nbThreads = Integer.parseInt(readElement(element, "threads"));
+        }
+
         // Parse recode
         if (element.getChild("recode") != null) {
             dst = readElement(element, "recode");
@@ -103,20 +164,28 @@ public class EvaluateReconstruction extends AbstractCommand {
 
         script.print("Starting SCAE Reconstruction evaluation\n");
 
-        // For all images in dataset
-        for (DataBlock db : ds) {
-            float[] val = getReconstructionScore(scae, db);
-
-            System.out.println("--- IMAGE " + imageIndex + "-------------------------");
-            System.out.printf("\tEUC=%.4f : VAR=%.2f\n", val[0], val[1]);
-            System.out.printf("\tSOI=%.4f : VAR=%.2f\n", val[2], val[3]);
-            System.out.printf("\tNORM CORR= %.4f : VAR=%.2f\n", val[4], val[5]);
-            System.out.printf("\tDELTA94= %.4f : VAR=%.2f\n", val[6], val[7]);
-            System.out.printf("\tMAHALA= %.4f : VAR=%.2f\n", val[8], val[9]);
-            imageIndex++;
+        nbThreads = XMLScript.acquireThreads(nbThreads);
+        try {
+            recoder = new TiledRecoder(scae, offsetX, offsetY, nbThreads);
+
+            // For all images in dataset
+            for (DataBlock db : ds) {
+                float[] val = getReconstructionScore(scae, db);
+
+                System.out.println("--- IMAGE " + imageIndex + "-------------------------");
+                System.out.printf("\tEUC=%.4f : VAR=%.2f\n", val[0], val[1]);
+                System.out.printf("\tSOI=%.4f : VAR=%.2f\n", val[2], val[3]);
+                System.out.printf("\tNORM CORR= %.4f : VAR=%.2f\n", val[4], val[5]);
+                System.out.printf("\tDELTA94= %.4f : VAR=%.2f\n", val[6], val[7]);
+                System.out.printf("\tMAHALA= %.4f : VAR=%.2f\n", val[8], val[9]);
+                imageIndex++;
+            }
+        } finally {
+            XMLScript.releaseThreads(nbThreads);
         }
 
         script.print("End SCAE Reconstruction evaluation\n");
+        recoder = null;
 
         return "";
     }
@@ -130,51 +199,34 @@ public class EvaluateReconstruction extends AbstractCommand {
      */
     public float[] getReconstructionScore(SCAE scae, DataBlock input) throws IOException {
 
-        DataBlock res = new DataBlock(input.getWidth(), input.getHeight(), input.getDepth());
-
-        // Init lists
-        List<Float> eucl = new ArrayList<>();
-        List<Float> soid = new ArrayList<>();
-        List<Float> corr = new ArrayList<>();
-        List<Float> e94 = new ArrayList<>();
-        List<Float> mahala = new ArrayList<>();
-
-        // Loop over the image
-        int rightBorder = (input.getWidth() - scae.getInputPatchWidth() > 0) ? input.getWidth() - scae.getInputPatchWidth() : 1;
-        int bottomBorder = (input.getHeight() - scae.getInputPatchHeight() > 0) ? input.getHeight() - scae.getInputPatchHeight() : 1;
-
-        for (int x = 0; x < rightBorder; x += offsetX) {
-            for (int y = 0; y < bottomBorder; y += offsetY) {
-
-                scae.setInput(input, x, y);
-                float[] exp = scae.base.getBase().getInputArray().clone();
-                scae.forward();
-                scae.setInput(res, x, y);
-                scae.backward();
-                float[] val = scae.base.getBase().getDecoded().clone();
-
-                // Compute the different distances
-                eucl.add(ReconstructionScore.euclideanDistance(val, exp));
-                soid.add(ReconstructionScore.scaleOffsetInvarDist(val, exp));
-                corr.add(ReconstructionScore.normalizedCorrelation(val, exp));
-                e94.add(ReconstructionScore.delta94distance(val, exp));
-                mahala.add(ReconstructionScore.mahalanobisDistance(val, exp));
-            }
+        // One scorer per thread, merged at the end
+        List<Scorer> scorers = new ArrayList<>();
+        for (int i = 0; i < nbThreads; i++) {
+            scorers.add(new Scorer());
+        }
+
+        if (recoder == null || recoder.getSCAE() != scae) {
+            recoder = new TiledRecoder(scae, offsetX, offsetY, nbThreads);
         }
+        DataBlock res = recoder.recode(input, scorers);
 
         if (dst != null) {
-            res.normalizeWeights();
             res.setColorspace(script.colorspace);
             res.getImage().write(dst + "/" + imageIndex + "-recoded.png");
         }
 
-        // Compute means and variances of all patches and return the results
+        Scorer s = scorers.get(0);
+        for (int i = 1; i < scorers.size(); i++) {
+            s.merge(scorers.get(i));
+        }
+
+        // Means and variances of all patches
         return new float[]{
-                ReconstructionScore.getMean(eucl), ReconstructionScore.getVariance(eucl),
-                ReconstructionScore.getMean(soid), ReconstructionScore.getVariance(soid),
-                ReconstructionScore.getMean(corr), ReconstructionScore.getVariance(corr),
-                ReconstructionScore.getMean(e94), ReconstructionScore.getVariance(e94),
-                ReconstructionScore.getMean(mahala), ReconstructionScore.getVariance(mahala)
+                s.eucl.getMean(), s.eucl.getVariance(),
+                s.soid.getMean(), s.soid.getVariance(),
+                s.corr.getMean(), s.corr.getVariance(),
+                s.e94.getMean(), s.e94.getVariance(),
+                s.mahala.getMean(), s.mahala.getVariance()
         };
     }
 
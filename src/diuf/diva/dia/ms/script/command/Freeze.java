@@ -0,0 +1,82 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.command;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.script.XMLScript;
+import org.jdom2.Element;
+
+/**
+ * Releases the memory used only for training by an autoencoder or a classifier:
+ * decoders, gradients and error buffers. A frozen SCAE can only compute features;
+ * a frozen classifier can still be trained, its buffers being allocated again
+ * when needed. Saving a frozen model produces a smaller skeleton, and loading it
+ * allocates no gradient.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <freeze ref="myClassifier"/>
+ *
+ * @author agent
+ */
+public class Freeze extends AbstractCommand {
+
+    /**
+     * Constructor of the class.
+     * @param script which creates the command
+     */
+    public Freeze(XMLScript script) {
+        super(script);
+    }
+
+    @Override
+    public String execute(Element element) throws Exception {
+        String ref = readAttribute(element, "ref");
+
+        SCAE scae = script.scae.get(ref);
+        if (scae != null) {
+            scae.freeze();
+            return "";
+        }
+
+        Classifier classifier = script.classifiers.get(ref);
+        if (classifier != null) {
+            classifier.freeze();
+            return "";
+        }
+
+        error("cannot find " + ref);
+
+        return "";
+    }
+
+    @Override
+    public String tagName() {
+        return "freeze";
+    }
+
+}
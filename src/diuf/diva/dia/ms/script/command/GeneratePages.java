@@ -0,0 +1,203 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.command;
+
+import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.BiDataBlock;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.Image;
+import diuf.diva.dia.ms.util.PageGenerator;
+import org.jdom2.Element;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates synthetic pages and their ground-truth, see PageGenerator. The
+ * pages can be stored as datasets, written to a folder, or both; the
+ * folder gets a "pages" and a "gt" sub-folder with files having the same
+ * names, so that it can be loaded with load-dataset afterwards.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <generate-pages>
+ * <dataset>stringID</dataset>         // optional, dataset of the pages
+ * <groundTruth>stringID</groundTruth> // optional, dataset of the ground-truth
+ * <folder>path</folder>               // optional, where the images are written
+ * <number>int</number>
+ * <width>int</width>
+ * <height>int</height>
+ * <classes>int</classes>              // optional, including the background, default: 4
+ * <seed>long</seed>                   // optional, default: drawn from the script's random generator
+ * <threads>int</threads>              // optional, default: number of cores, bounded by the worker budget
+ * </generate-pages>
+ *
+ * @author agent
+ */
+public class GeneratePages extends AbstractCommand {
+
+    /**
+     * Constructor of the class.
+     * @param script which creates the command
+     */
+    public GeneratePages(XMLScript script) {
+        super(script);
+    }
+
+    @Override
+    public String execute(Element element) throws Exception {
+        String dataset = (element.getChild("dataset") != null) ? readElement(element, "dataset") : null;
+        String groundTruth = (element.getChild("groundTruth") != null) ? readElement(element, "groundTruth") : null;
+        String folder = (element.getChild("folder") != null) ? readElement(element, "folder") : null;
+        if (dataset == null && groundTruth == null && folder == null) {
+            error("use at least one of <dataset>, <groundTruth> or <folder>");
+        }
+
+        int number = Integer.parseInt(readElement(element, "number"));
+        int width = Integer.parseInt(readElement(element, "width"));
+        int height = Integer.parseInt(readElement(element, "height"));
+        int classes = 4;
+        if (element.getChild("classes") != null) {
+            classes = Integer.parseInt(readElement(element, "classes"));
+        }
+        long seed = script.getRng().nextLong();
+        if (element.getChild("seed") != null) {
+            seed = Long.parseLong(readElement(element, "seed"));
+        }
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        if (element.getChild("threads") != null) {
+            nbThreads = Integer.parseInt(readElement(element, "threads"));
+        }
+
+        File pageFolder = null;
+        File gtFolder = null;
+        if (folder != null) {
+            pageFolder = new File(folder, "pages");
+            gtFolder = new File(folder, "gt");
+            pageFolder.mkdirs();
+            gtFolder.mkdirs();
+            if (!pageFolder.isDirectory() || !gtFolder.isDirectory()) {
+                error("cannot create the folders in " + folder);
+            }
+        }
+
+        script.println("Generating " + number + " pages of " + width + "x" + height + " with " + classes + " classes");
+        long startTime = System.currentTimeMillis();
+
+        PageGenerator generator = new PageGenerator(width, height, classes, seed);
+        DataBlock[] pages = new DataBlock[(dataset != null) ? number : 0];
+        DataBlock[] truths = new DataBlock[(groundTruth != null) ? number : 0];
+        final File pf = pageFolder;
+        final File gf = gtFolder;
+        final int digits = String.valueOf(number).length();
+        nbThreads = XMLScript.acquireThreads(Math.min(nbThreads, number));
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < number; i++) {
+                final int n = i;
+                futures.add(pool.submit(() -> {
+                    PageGenerator.Page p = generator.generate(n);
+                    if (pf != null) {
+                        String name = String.format("page-%0" + digits + "d.png", n + 1);
+                        ImageIO.write(p.image, "png", new File(pf, name));
+                        ImageIO.write(p.groundTruth, "png", new File(gf, name));
+                    }
+                    if (pages.length > 0) {
+                        pages[n] = toDataBlock(p);
+                    }
+                    if (truths.length > 0) {
+                        truths[n] = new BiDataBlock(p.groundTruth);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error("interrupted");
+        } catch (ExecutionException e) {
+            throw new Error(tagName() + ": generation failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+            XMLScript.releaseThreads(nbThreads);
+        }
+
+        if (dataset != null) {
+            store(dataset, pages, script.colorspace);
+        }
+        if (groundTruth != null) {
+            store(groundTruth, truths, Image.Colorspace.RGB);
+        }
+
+        script.println("Pages generated in " + (System.currentTimeMillis() - startTime) / 1000.0 + " sec");
+        return "";
+    }
+
+    /**
+     * Converts a page to the colorspace of the script. RGB pages are kept
+     * as compact BiDataBlocks.
+     * @param p generated page
+     * @return a data block of the page
+     */
+    private DataBlock toDataBlock(PageGenerator.Page p) {
+        if (script.colorspace == Image.Colorspace.RGB) {
+            return new BiDataBlock(p.image);
+        }
+        Image img = new Image(p.image);
+        img.convertTo(script.colorspace);
+        return new DataBlock(img);
+    }
+
+    /**
+     * Replaces a dataset of the script.
+     * @param id id of the dataset
+     * @param blocks content of the dataset, in order
+     * @param cs colorspace of the dataset
+     */
+    private void store(String id, DataBlock[] blocks, Image.Colorspace cs) {
+        Dataset ds = new Dataset(cs);
+        for (DataBlock db : blocks) {
+            ds.add(db);
+        }
+        script.unloadDataset(id);
+        script.datasets.put(id, ds);
+    }
+
+    @Override
+    public String tagName() {
+        return "generate-pages";
+    }
+}
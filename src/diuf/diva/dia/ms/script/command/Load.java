@@ -29,10 +29,9 @@ package diuf.diva.dia.ms.script.command;
 import diuf.diva.dia.ms.ml.Classifier;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.ModelFile;
 import org.jdom2.Element;
 
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
 
 /**
  * Loads an SCAE or a classifier. Described in the documentation.
@@ -55,10 +54,7 @@ public class Load extends AbstractCommand {
 
         script.println("Loading: " + readAttribute(element, "id"));
 
-        Object o;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fName))) {
-            o = ois.readObject();
-        }
+        Object o = ModelFile.read(fName);
         
         if (o instanceof SCAE) {
             script.scae.put(id, (SCAE) o);
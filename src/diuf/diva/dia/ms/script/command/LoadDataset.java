@@ -26,18 +26,21 @@
 
 package diuf.diva.dia.ms.script.command;
 
+import diuf.diva.dia.ms.script.Recorder;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.BiDataBlock;
 import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.DatasetCache;
 import diuf.diva.dia.ms.util.Image;
+import diuf.diva.dia.ms.util.ImageLoader;
 import diuf.diva.dia.ms.util.NoisyDataset;
 import org.jdom2.Element;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -57,6 +60,29 @@ public class LoadDataset extends AbstractCommand {
 
     @Override
     public String execute(Element element) throws Exception {
+        Recorder recorder = Recorder.get();
+        Object event = recorder.beginDatasetLoad();
+        String res = load(element);
+        if (recorder.shouldCommit(event)) {
+            String id = readAttribute(element, "id");
+            String folder = (element.getChild("folder")!=null)
+                    ? readElement(element, "folder")
+                    : readElement(element, "clean-folder");
+            int images = 0;
+            if (script.datasets.containsKey(id)) {
+                images = script.datasets.get(id).size();
+            } else if (script.noisyDataSets.containsKey(id)) {
+                images = script.noisyDataSets.get(id).clean.size();
+            }
+            recorder.commitDatasetLoad(event, id, folder, images);
+        }
+        return res;
+    }
+
+    /*
+     * Loads the kind of dataset given by the element
+     */
+    private String load(Element element) throws Exception {
         if (element.getChild("folder")!=null && element.getChild("buffered")==null) {
             script.println("Loading dataset: " + readAttribute(element, "id"));
             return loadDataset(element);
@@ -89,9 +115,23 @@ public class LoadDataset extends AbstractCommand {
             limit = Integer.MAX_VALUE;
         }
         
-        Dataset ds = new Dataset(folder, script.colorspace, limit);
+        // The same dataset might still be in memory, e.g., in daemon mode
+        String source = DatasetCache.key(folder, script.colorspace, limit);
+        if (script.datasets.containsKey(id) && source.equals(script.datasetSources.get(id))) {
+            script.println("Dataset " + id + " already in memory");
+            return "";
+        }
         
+        Dataset ds;
+        if (script.datasetCache!=null) {
+            ds = script.datasetCache.acquire(folder, script.colorspace, limit);
+        } else {
+            ds = new Dataset(folder, script.colorspace, limit);
+        }
+        
+        script.unloadDataset(id);
         script.datasets.put(id, ds);
+        script.datasetSources.put(id, source);
         
         return "";
     }
@@ -111,7 +151,7 @@ public class LoadDataset extends AbstractCommand {
         File ff = new File(folder);
         String[] lst = ff.list();
         for (int i=0; i<lst.length; i++) {
-            int j = (int)(Math.random()*lst.length);
+            int j = (int)(script.getRng().nextDouble()*lst.length);
             String s = lst[i];
             lst[i] = lst[j];
             lst[j] = s;
@@ -127,23 +167,28 @@ public class LoadDataset extends AbstractCommand {
         }
         
         Dataset ds = new Dataset(script.colorspace);
-        
+
+        List<File> files = new ArrayList<>();
         for (int i=0; i<limit && i<lst.length; i++) {
             if (lst[i].equals(".DS_Store")) {
                 continue;
             }
-            //script.println("Loading " + folder + File.separator + lst[i]);
-            BufferedImage bi = ImageIO.read(
-                    new File(
-                            folder+File.separator+lst[i]
-                    )
-            );
-            for (float aScale : scale) {
-                BufferedImage b = resize(bi, aScale);
-                ds.add(new BiDataBlock(b));
+            files.add(new File(folder+File.separator+lst[i]));
+        }
+
+        // Reading, decoding and resizing are done in parallel
+        final float[] scales = scale;
+        for (List<BiDataBlock> scaled : ImageLoader.load(files, bi -> {
+            List<BiDataBlock> res = new ArrayList<>(scales.length);
+            for (float aScale : scales) {
+                res.add(new BiDataBlock(resize(bi, aScale)));
             }
+            return res;
+        })) {
+            ds.addAll(scaled);
         }
         
+        script.unloadDataset(id);
         script.datasets.put(id, ds);
         
         return "";
@@ -2,12 +2,12 @@ package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.ml.Classifier;
 import diuf.diva.dia.ms.ml.PreTrainable;
+import diuf.diva.dia.ms.script.TrainingTelemetry;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.BiDataBlock;
 import diuf.diva.dia.ms.util.DataBlock;
 import diuf.diva.dia.ms.util.Dataset;
 import diuf.diva.dia.ms.util.misc.ImageAnalysis;
-import diuf.diva.dia.ms.util.misc.Pixel;
 import org.jdom2.Element;
 
 import java.io.File;
@@ -36,6 +36,10 @@ public class PreTrainClassifier extends AbstractCommand {
      * Max amount of minutes available for the training
      */
     private int MAXTIME;
+    /**
+     * Telemetry of the training, does nothing if the script has no telemetry sink
+     */
+    private TrainingTelemetry telemetry;
 
     @Override
     public String execute(Element element) throws Exception {
@@ -80,8 +84,10 @@ public class PreTrainClassifier extends AbstractCommand {
         // Train the classifier
         script.println("\"SCAE Starting PRE-training[" + ref + "] {maximum time:" + MAXTIME + "m, samples:" + SAMPLES + "}");
 
-        long startTime = System.currentTimeMillis();
+        // Telemetry of the training, if enabled by the script
+        telemetry = script.startTelemetry(tagName(), ref, Double.NaN);
 
+        long startTime = System.currentTimeMillis();
 
         switch (classifier.type()) {
             case "pixel":
@@ -140,10 +146,13 @@ public class PreTrainClassifier extends AbstractCommand {
         // ImageAnalysis init, for data balancing
         ImageAnalysis[] imageAnalyses = new ImageAnalysis[dsImg.size()];
         for (int i = 0; i < dsImg.size(); i++) {
-            imageAnalyses[i] = new ImageAnalysis(dsGt.get(i), classifier.getInputWidth(), classifier.getInputHeight());
+            imageAnalyses[i] = new ImageAnalysis(dsGt.get(i), classifier.getInputWidth(), classifier.getInputHeight(), script.getRng());
             imageAnalyses[i].subSample((int) Math.ceil(SAMPLES / dsImg.size()));
         }
 
+        // Number of samples used for each class
+        long[] classCounts = new long[classifier.getOutputSize()];
+
         script.print("Progress[");
 
         // Train the classifier until enough samples have been evaluated
@@ -164,21 +173,22 @@ public class PreTrainClassifier extends AbstractCommand {
                 for (int c = 0; c < imageAnalyses[i].nbClasses; c++) {
 
                     // Get next representative
-                    Pixel p = imageAnalyses[i].getNextRepresentative(c);
+                    int p = imageAnalyses[i].getNextRepresentative(c);
 
-                    // If pixel 'p' is null it means that this specific GT does not contain this class
-                    if (p == null) {
+                    // If pixel 'p' is -1 it means that this specific GT does not contain this class
+                    if (p < 0) {
                         continue;
                     }
 
                     // Set input to classifier
-                    classifier.centerInput(dsImg.get(i), p.x, p.y);
+                    classifier.centerInput(dsImg.get(i), imageAnalyses[i].getX(p), imageAnalyses[i].getY(p));
 
                     // Forward
                     classifier.compute();
 
                     // Set input to classifier
                     ((PreTrainable) classifier).addTrainingSample(c);
+                    classCounts[c]++;
 
                     // Increase counters
                     sample++;
@@ -193,6 +203,9 @@ public class PreTrainClassifier extends AbstractCommand {
                     }
                 }
             }
+
+            // Pre-training has no error to report
+            telemetry.epoch(sample, SAMPLES, Double.NaN, classCounts);
         }
 
         // Complete the logging progress
@@ -312,6 +325,12 @@ public class PreTrainClassifier extends AbstractCommand {
 
         script.println("\"Classifier starting PRE-training[" + ref + "] {maximum time:" + MAXTIME + "m, samples:" + SAMPLES + "}");
 
+        // Number of samples used for each class
+        long[] classCounts = new long[nbClasses];
+
+        // Telemetry of the training, if enabled by the script
+        telemetry = script.startTelemetry(tagName(), ref, Double.NaN);
+
         script.print("Progress[");
 
         // Train the classifier until enough samples have been evaluated
@@ -330,13 +349,14 @@ public class PreTrainClassifier extends AbstractCommand {
             for (int c = 0; c < nbClasses; c++) {
 
                 // Set input to classifier
-                classifier.setInput(data.get(c).get((int) (Math.random() * data.get(c).size())), 0, 0);
+                classifier.setInput(data.get(c).get((int) (script.getRng().nextDouble() * data.get(c).size())), 0, 0);
 
                 // Forward
                 classifier.compute();
 
                 // Set input to classifier
                 ((PreTrainable) classifier).addTrainingSample(c);
+                classCounts[c]++;
 
                 // Increase counters
                 sample++;
@@ -354,6 +374,9 @@ public class PreTrainClassifier extends AbstractCommand {
                     return;
                 }
             }
+
+            // Pre-training has no error to report
+            telemetry.epoch(sample, SAMPLES, Double.NaN, classCounts);
         }
 
         // Complete the logging progress
@@ -367,6 +390,11 @@ public class PreTrainClassifier extends AbstractCommand {
         System.gc();
     }
 
+    @Override
+    public boolean isMemoizable(Element element) {
+        return true;
+    }
+
     @Override
     public String tagName() {
         return "pre-train-classifier";
@@ -57,6 +57,11 @@ public class Print extends AbstractCommand {
         return "";
     }
 
+    @Override
+    public boolean isBarrier(Element element) {
+        return true;
+    }
+
     @Override
     public String tagName() {
         return "print";
@@ -27,6 +27,7 @@
 package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.ml.ae.scae.TiledRecoder;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.DataBlock;
 import diuf.diva.dia.ms.util.Dataset;
@@ -37,6 +38,19 @@ import java.io.File;
 import java.io.IOException;
 
 /**
+ * Encodes and decodes the pages of a dataset, or a single file, and stores
+ * the reconstructions as images. The pages are split into tiles which are
+ * recoded in parallel.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <recode ref="myScae">
+ * <dataset>stringID</dataset>        // or <file>path</file>
+ * <destination>path</destination>
+ * <offset-x>int</offset-x>           // optional, default: patch width
+ * <offset-y>int</offset-y>           // optional, default: patch height
+ * <threads>int</threads>             // optional, default: number of cores, bounded by the worker budget
+ * </recode>
  *
  * @author Mathias Seuret, Alberti Michele
  */
@@ -95,22 +109,16 @@ public class Recode extends AbstractCommand {
 
         script.println("SCAE Starting recoding {offset:" + offsetX + "," + offsetY + "}");
 
-        for (int n=0; n<ds.size(); n++) {
-            DataBlock db = ds.get(n);
-            DataBlock res = new DataBlock(db.getWidth(), db.getHeight(), db.getDepth());
-
-            for (int x = 0; x < db.getWidth() - scae.getInputPatchWidth(); x += offsetX) {
-                for (int y = 0; y < db.getHeight() - scae.getInputPatchHeight(); y += offsetY) {
-                    scae.setInput(db, x, y);
-                    scae.forward();
-                    scae.setInput(res, x, y);
-                    scae.backward();
-                }
+        int nbThreads = XMLScript.acquireThreads(readThreads(element));
+        try {
+            TiledRecoder recoder = new TiledRecoder(scae, offsetX, offsetY, nbThreads);
+            for (int n=0; n<ds.size(); n++) {
+                DataBlock res = recoder.recode(ds.get(n));
+                res.setColorspace(script.colorspace);
+                res.getImage().write(dst+"/"+n+".png");
             }
-            
-            res.normalizeWeights();
-            res.setColorspace(script.colorspace);
-            res.getImage().write(dst+"/"+n+".png");
+        } finally {
+            XMLScript.releaseThreads(nbThreads);
         }
         
         return "";
@@ -123,27 +131,44 @@ public class Recode extends AbstractCommand {
 
     /**
      * Encodes and decodes a datablock, and returns the result as a datablock.
+     * The threads used are bounded by the worker budget of the script running
+     * on the calling thread, if any. The copies of the SCAE made for them are
+     * dropped at the end, so that the current weights are used at each call.
      * @param scae autoencoder to use
      * @param db datablock to encode and decode
      * @param colorspace to use for visualization
      * @return the resulting datablock
      */
     public static DataBlock recode(SCAE scae, DataBlock db, Image.Colorspace colorspace) {
-        DataBlock res = new DataBlock(db.getWidth(), db.getHeight(), db.getDepth());
-        for (int x = 0; x <= db.getWidth() - scae.getInputPatchWidth(); x += scae.getInputPatchWidth()) {
-            for (int y = 0; y <= db.getHeight() - scae.getInputPatchHeight(); y += scae.getInputPatchHeight()) {
-                scae.setInput(db, x, y);
-                scae.forward();
-                scae.setInput(res, x, y);
-                scae.backward();
-            }
+        int nbThreads = XMLScript.acquireThreads(Runtime.getRuntime().availableProcessors());
+        DataBlock res;
+        try {
+            res = new TiledRecoder(
+                    scae,
+                    scae.getInputPatchWidth(),
+                    scae.getInputPatchHeight(),
+                    nbThreads
+            ).recode(db);
+        } finally {
+            XMLScript.releaseThreads(nbThreads);
         }
-
-        res.normalizeWeights();
         res.setColorspace(colorspace);
         return res;
     }
 
+    /**
+     * Reads the optional number of threads.
+     * @param element XML element of the command
+     * @return the number of threads to use, before the worker budget of the
+     *         script applies
+     */
+    private int readThreads(Element element) {
+        if (element.getChild("threads") != null) {
+            return Integer.parseInt(readElement(element, "threads"));
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     private String recodeFile(Element element) throws IOException {
         String id = readAttribute(element, "ref");
         String file = readElement(element, "file");
@@ -162,17 +187,19 @@ public class Recode extends AbstractCommand {
         img.convertTo(script.colorspace);
         DataBlock db = new DataBlock(img);
         
-        DataBlock res = new DataBlock(db.getWidth(), db.getHeight(), db.getDepth());
-        for (int x = 0; x <= db.getWidth() - scae.getInputPatchWidth(); x += scae.getInputPatchWidth()) {
-            for (int y = 0; y <= db.getHeight() - scae.getInputPatchHeight(); y += scae.getInputPatchHeight()) {
-                scae.setInput(db, x, y);
-                scae.forward();
-                scae.setInput(res, x, y);
-                scae.backward();
-            }
+        int nbThreads = XMLScript.acquireThreads(readThreads(element));
+        DataBlock res;
+        try {
+            res = new TiledRecoder(
+                    scae,
+                    scae.getInputPatchWidth(),
+                    scae.getInputPatchHeight(),
+                    nbThreads
+            ).recode(db);
+        } finally {
+            XMLScript.releaseThreads(nbThreads);
         }
 
-        res.normalizeWeights();
         res.setColorspace(script.colorspace);
         res.getImage().write(dst);
         
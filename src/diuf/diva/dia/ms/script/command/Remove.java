@@ -44,7 +44,7 @@ public class Remove extends AbstractCommand {
         Dataset ds = script.datasets.get(ref);
         if (ds != null) {
             script.println("Removing DATASET: " + ref);
-            script.datasets.remove(ref);
+            script.unloadDataset(ref);
             return "";
         }
 
@@ -32,7 +32,16 @@ import diuf.diva.dia.ms.script.XMLScript;
 import org.jdom2.Element;
 
 /**
- * Saves an autoencoder or a classifier.
+ * Saves an autoencoder or a classifier. If frozen is true, a replica of the
+ * model is frozen (see Freeze) and saved, so that the file is ready for
+ * inference only while the model of the script can still be trained.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <save ref="myClassifier" frozen="false">
+ *     <file>stringPATH</file>
+ * </save>
+ *
  * @author Mathias Seuret, Michele Alberti
  */
 public class Save extends AbstractCommand {
@@ -49,15 +58,24 @@ public class Save extends AbstractCommand {
     public String execute(Element element) throws Exception {
         String ref   = readAttribute(element, "ref");
         String fName = readElement(element, "file");
+        boolean frozen = Boolean.parseBoolean(element.getAttributeValue("frozen"));
         
         SCAE scae = script.scae.get(ref);
         if (scae!=null) {
+            if (frozen) {
+                scae = scae.replicate();
+                scae.freeze();
+            }
             scae.save(fName);
             return "";
         }
 
         Classifier classifier = script.classifiers.get(ref);
         if (classifier != null) {
+            if (frozen) {
+                classifier = classifier.replicate();
+                classifier.freeze();
+            }
             classifier.save(fName);
             return "";
         }
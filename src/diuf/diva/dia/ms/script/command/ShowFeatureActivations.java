@@ -26,6 +26,7 @@
 
 package diuf.diva.dia.ms.script.command;
 
+import diuf.diva.dia.ms.ml.ae.scae.ActivationMapper;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.DataBlock;
@@ -38,6 +39,18 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 
 /**
+ * Stores, for each feature of an SCAE, an image showing its activation at
+ * every position of a document. The SCAE is applied once per position for
+ * all features, using several threads.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <show-feature-activations ref="myScae">
+ * <document>path</document>
+ * <result>path prefix</result>      // images are stored as prefix-n.png
+ * <normalize/>                      // optional, stretches each feature to its range
+ * <threads>int</threads>            // optional, default: number of cores, bounded by the worker budget
+ * </show-feature-activations>
  *
  * @author ms
  */
@@ -58,37 +71,46 @@ public class ShowFeatureActivations extends AbstractCommand {
         String res = readElement(element, "result");
 
         SCAE scae = script.scae.get(ref);
+        if (scae == null) {
+            error("cannot find " + ref);
+        }
         Image img = new Image(doc);
         img.convertTo(script.colorspace);
         DataBlock idb = new DataBlock(img);
-        
-        BufferedImage bi = new BufferedImage(idb.getWidth(), idb.getHeight(), BufferedImage.TYPE_INT_RGB);
+
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        if (element.getChild("threads") != null) {
+            nbThreads = Integer.parseInt(readElement(element, "threads"));
+        }
+        boolean normalize = element.getChild("normalize") != null;
+
+        ActivationMapper mapper;
+        nbThreads = XMLScript.acquireThreads(nbThreads);
+        try {
+            mapper = new ActivationMapper(scae, nbThreads);
+            mapper.compute(idb);
+        } finally {
+            XMLScript.releaseThreads(nbThreads);
+        }
 
         int dx = scae.getInputPatchWidth() / 2;
         int dy = scae.getInputPatchHeight() / 2;
-        for (int i=0; i<scae.getOutputDepth(); i++) {
-            float min = Float.MAX_VALUE;
-            float max = Float.MIN_VALUE;
-            for (int x = 0; x < idb.getWidth() - scae.getInputPatchWidth(); x++) {
-                int mm = bi.getWidth() - scae.getInputPatchWidth();
-                System.out.println(i+"/"+scae.getOutputDepth()+": "+(float)x/mm*100+"%");
-                for (int y = 0; y < idb.getHeight() - scae.getInputPatchHeight(); y++) {
-                    scae.setInput(idb, x, y);
-                    float act = scae.forward()[i];
+        for (int i=0; i<mapper.getNbFeatures(); i++) {
+            BufferedImage bi = new BufferedImage(idb.getWidth(), idb.getHeight(), BufferedImage.TYPE_INT_RGB);
+            float min = mapper.getMin(i);
+            float max = mapper.getMax(i);
+            for (int x = 0; x < mapper.getMapWidth(); x++) {
+                for (int y = 0; y < mapper.getMapHeight(); y++) {
+                    float act = mapper.getActivation(i, x, y);
+                    if (normalize && max > min) {
+                        act = 2 * (act - min) / (max - min) - 1;
+                    }
                     float hue = (act+1)/2 * 0.4f; // Hue (note 0.4 = Green, see huge chart below)
                     bi.setRGB(x+dx, y+dy, Color.getHSBColor(hue, 0.9f, 0.9f).getRGB());
-                    
-                    if (act<min) {
-                        min = act;
-                    }
-                    if (act>max) {
-                        max = act;
-                    }
                 }
             }
             ImageIO.write(bi, "png", new File(res+"-"+i+".png"));
-            //System.out.println("Reconstruction range: ["+min+", "+max+"]");
-            //System.out.println("Class: "+scae.getLayer(scae.getLayers().size()-1).getAE().getClass().getSimpleName());
+            script.println("Feature " + i + " activation range: [" + min + ", " + max + "]");
         }
         
         return "";
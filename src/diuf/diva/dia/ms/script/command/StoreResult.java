@@ -54,6 +54,11 @@ public class StoreResult extends AbstractCommand {
         return "";
     }
 
+    @Override
+    public boolean isBarrier(Element element) {
+        return true;
+    }
+
     @Override
     public String tagName() {
         return "store-result";
@@ -0,0 +1,513 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.command;
+
+import diuf.diva.dia.ms.script.TrainingMonitor;
+import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.DatasetCache;
+import org.jdom2.Element;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the commands of a trial several times, with different values of some
+ * variables, and writes a table of the results. Trials run concurrently; they
+ * get copies of the datasets and models of the script, and share the datasets
+ * they load.
+ * <p>
+ * If all parameters are lists of values, all combinations are tried.
+ * Otherwise, the given number of trials is drawn at random; ranges are
+ * sampled uniformly, or log-uniformly with scale="log".
+ * <p>
+ * Trials whose training error, at some point of a training, is above the
+ * median error of the other trials at the same point are stopped early.
+ * <p>
+ * The number of threads is bounded by the worker budget of the script (see
+ * XMLScript.acquireThreads()). The threads reserved form the worker budget of
+ * the trials, so that the commands of the trials computing on several
+ * threads share them.
+ * <p>
+ * XML syntax:
+ * <p>
+ * <sweep threads="4" trials="20" goal="min">
+ *     <param name="$hidden" values="5,10,20"/>
+ *     <param name="$speed" min="0.001" max="0.1" scale="log"/>
+ *     <param name="$samples" min="10000" max="50000" integer="true"/>
+ *     <!-- optional: stops poor trials once 20% of a training is done, if
+ *          at least 3 other trials reached this point -->
+ *     <prune after="0.2" min-trials="3"/>
+ *     <results>sweep.csv</results>
+ *     <trial>
+ *         ...commands using $hidden, $speed and $samples...
+ *     </trial>
+ * </sweep>
+ * <p>
+ * The result of a trial is the result of its last command returning something;
+ * the best result is returned.
+ *
+ * @author agent
+ */
+public class Sweep extends AbstractCommand {
+
+    /**
+     * Thrown to stop a trial.
+     */
+    public static class Pruned extends RuntimeException {
+        private static final long serialVersionUID = 7817065554310991597L;
+
+        /**
+         * @param msg reason
+         */
+        Pruned(String msg) {
+            super(msg);
+        }
+    }
+
+    /**
+     * A parameter of the sweep.
+     */
+    private static class Param {
+        /**
+         * Name of the variable.
+         */
+        String name;
+        /**
+         * Possible values, or null for a range.
+         */
+        String[] values;
+        /**
+         * Bounds of the range.
+         */
+        double min, max;
+        /**
+         * True if the range is sampled log-uniformly.
+         */
+        boolean log;
+        /**
+         * True if the values are rounded.
+         */
+        boolean integer;
+
+        /**
+         * @param rand random number generator
+         * @return a random value of the parameter
+         */
+        String draw(Random rand) {
+            if (values != null) {
+                return values[rand.nextInt(values.length)];
+            }
+            double v = log
+                    ? Math.exp(Math.log(min) + rand.nextDouble() * (Math.log(max) - Math.log(min)))
+                    : min + rand.nextDouble() * (max - min);
+            return integer ? String.valueOf(Math.round(v)) : String.valueOf(v);
+        }
+    }
+
+    /**
+     * Outcome of a trial.
+     */
+    private static class Trial {
+        /**
+         * Index of the trial.
+         */
+        final int index;
+        /**
+         * Values of the parameters.
+         */
+        final Map<String, String> values;
+        /**
+         * Seed of the random numbers generator of the trial.
+         */
+        final long seed;
+        /**
+         * Result of the last command.
+         */
+        String result = "";
+        /**
+         * done, pruned or failed.
+         */
+        String status = "done";
+        /**
+         * Duration of the trial.
+         */
+        double seconds;
+
+        /**
+         * @param index index of the trial
+         * @param values values of the parameters
+         * @param seed seed of the random numbers generator of the trial
+         */
+        Trial(int index, Map<String, String> values, long seed) {
+            this.index = index;
+            this.values = values;
+            this.seed = seed;
+        }
+
+        /**
+         * @return the result as a number, or NaN
+         */
+        double score() {
+            try {
+                return Double.parseDouble(result.trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Implements the median stopping rule.
+     */
+    private static class Pruner {
+        /**
+         * Fraction of a training after which trials can be stopped.
+         */
+        final double after;
+        /**
+         * Minimum number of other trials having reached the same point.
+         */
+        final int minTrials;
+        /**
+         * Errors reported at each point, a point being a tenth of a training.
+         */
+        final Map<Integer, List<Double>> errors = new HashMap<>();
+
+        /**
+         * @param after fraction of a training after which trials can be stopped
+         * @param minTrials minimum number of trials having reached the same point
+         */
+        Pruner(double after, int minTrials) {
+            this.after = after;
+            this.minTrials = minTrials;
+        }
+
+        /**
+         * Creates the training monitor of a trial.
+         * @return a monitor throwing Pruned when the trial has to stop
+         */
+        TrainingMonitor monitor() {
+            return new TrainingMonitor() {
+                int training = 0;
+                long lastSample = Long.MAX_VALUE;
+                int lastPoint = -1;
+
+                @Override
+                public void report(long sample, long samples, double error) {
+                    if (sample < lastSample) {
+                        // New training command
+                        training++;
+                        lastPoint = -1;
+                    }
+                    lastSample = sample;
+                    int point = (int) Math.min(10, (10 * sample) / Math.max(1, samples));
+                    if (point == lastPoint) {
+                        return;
+                    }
+                    lastPoint = point;
+                    if (check(100 * training + point, point / 10.0, error)) {
+                        throw new Pruned("error " + error + " above the median at " + (10 * point) + "% of training " + training);
+                    }
+                }
+            };
+        }
+
+        /**
+         * @param key training and point
+         * @param fraction fraction of the training done
+         * @param error error of the trial
+         * @return true if the trial has to stop
+         */
+        synchronized boolean check(int key, double fraction, double error) {
+            List<Double> l = errors.computeIfAbsent(key, k -> new ArrayList<>());
+            boolean stop = false;
+            if (fraction >= after && l.size() >= minTrials) {
+                List<Double> sorted = new ArrayList<>(l);
+                Collections.sort(sorted);
+                int n = sorted.size();
+                double median = (n % 2 == 1) ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2;
+                stop = error > median;
+            }
+            l.add(error);
+            return stop;
+        }
+    }
+
+    /**
+     * Constructor of the class.
+     * @param script which creates the command
+     */
+    public Sweep(XMLScript script) {
+        super(script);
+    }
+
+    @Override
+    public String execute(Element element) throws Exception {
+        Element body = element.getChild("trial");
+        if (body == null) {
+            error("a <trial> element is required");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (element.getAttributeValue("threads") != null) {
+            threads = Integer.parseInt(readAttribute(element, "threads"));
+        }
+        boolean maximize = "max".equals(element.getAttributeValue("goal"));
+
+        // Parameters and trials
+        List<Param> params = readParams(element);
+        List<Map<String, String>> combinations = expand(element, params);
+        Pruner pruner = null;
+        if (element.getChild("prune") != null) {
+            Element p = element.getChild("prune");
+            pruner = new Pruner(
+                    (p.getAttributeValue("after") == null) ? 0.2 : Double.parseDouble(readAttribute(p, "after")),
+                    (p.getAttributeValue("min-trials") == null) ? 3 : Integer.parseInt(readAttribute(p, "min-trials"))
+            );
+        }
+
+        // Datasets loaded by trials are shared, and kept until the end
+        DatasetCache cache = (script.datasetCache != null) ? script.datasetCache : new DatasetCache();
+        List<XMLScript> trialScripts = Collections.synchronizedList(new ArrayList<>());
+
+        // The trials share the threads reserved in the worker budget of the script
+        threads = XMLScript.acquireThreads(threads);
+        script.println("Sweep: " + combinations.size() + " trials on " + threads + " threads");
+        final Semaphore budget = new Semaphore(threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Trial> trials = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (Map<String, String> values : combinations) {
+                Trial t = new Trial(trials.size(), values, script.getRng().nextLong());
+                trials.add(t);
+                final Pruner pr = pruner;
+                futures.add(pool.submit(() -> {
+                    runTrial(t, body, cache, budget, pr, trialScripts);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    // Recorded in the trial
+                }
+            }
+        } finally {
+            pool.shutdown();
+            XMLScript.releaseThreads(threads);
+            for (XMLScript s : trialScripts) {
+                s.clearData();
+            }
+        }
+
+        // Best trial
+        Trial best = null;
+        for (Trial t : trials) {
+            double s = t.score();
+            if (!t.status.equals("done") || Double.isNaN(s)) {
+                continue;
+            }
+            if (best == null || (maximize ? s > best.score() : s < best.score())) {
+                best = t;
+            }
+        }
+
+        if (element.getChild("results") != null) {
+            writeResults(readElement(element, "results"), params, trials);
+        }
+
+        if (best == null) {
+            script.println("Sweep: no trial succeeded");
+            return "";
+        }
+        script.println("Sweep: best trial " + best.index + " " + best.values + " -> " + best.result);
+        return best.result;
+    }
+
+    /**
+     * Runs a trial.
+     * @param t trial
+     * @param body element containing the commands
+     * @param cache shared datasets
+     * @param budget worker budget shared by the trials
+     * @param pruner stops poor trials, may be null
+     * @param trialScripts list of the trial scripts
+     */
+    private void runTrial(Trial t, Element body, DatasetCache cache, Semaphore budget, Pruner pruner,
+                          List<XMLScript> trialScripts) {
+        long start = System.currentTimeMillis();
+        XMLScript s = new XMLScript(script, body.clone());
+        trialScripts.add(s);
+        s.datasetCache = cache;
+        s.workerBudget = budget;
+        s.setRng(new Random(t.seed));
+        s.definitions.putAll(t.values);
+        if (pruner != null) {
+            s.trainingMonitor = pruner.monitor();
+        }
+
+        // Copies of the datasets and models of the script; the ids can
+        // depend on the parameters of the trial
+        Set<String> used = getResources(body, s);
+        synchronized (script.datasets) {
+            for (Map.Entry<String, Dataset> e : script.datasets.entrySet()) {
+                s.datasets.put(e.getKey(), new Dataset(e.getValue()));
+            }
+        }
+        s.noisyDataSets.putAll(script.noisyDataSets);
+        for (String id : used) {
+            if (script.scae.containsKey(id)) {
+                s.scae.put(id, script.scae.get(id).replicate());
+            }
+            if (script.classifiers.containsKey(id)) {
+                s.classifiers.put(id, script.classifiers.get(id).replicate());
+            }
+        }
+
+        try {
+            t.result = s.execute();
+        } catch (Pruned e) {
+            t.status = "pruned";
+            script.println("Sweep: trial " + t.index + " stopped, " + e.getMessage());
+        } catch (Throwable e) {
+            t.status = "failed";
+            script.println("Sweep: trial " + t.index + " failed, " + e);
+        } finally {
+            t.seconds = (System.currentTimeMillis() - start) / 1000.0;
+            s.scae.clear();
+            s.classifiers.clear();
+        }
+    }
+
+    /**
+     * Reads the parameters.
+     * @param element sweep element
+     * @return the parameters
+     */
+    private List<Param> readParams(Element element) {
+        List<Param> params = new ArrayList<>();
+        for (Element e : element.getChildren("param")) {
+            Param p = new Param();
+            p.name = readAttribute(e, "name");
+            if (e.getAttributeValue("values") != null) {
+                p.values = readAttribute(e, "values").split(",");
+                for (int i = 0; i < p.values.length; i++) {
+                    p.values[i] = p.values[i].trim();
+                }
+            } else {
+                p.min = Double.parseDouble(readAttribute(e, "min"));
+                p.max = Double.parseDouble(readAttribute(e, "max"));
+                p.log = "log".equals(e.getAttributeValue("scale"));
+                p.integer = Boolean.parseBoolean(e.getAttributeValue("integer"));
+                if (p.log && (p.min <= 0 || p.max <= 0)) {
+                    error("log-scaled parameter " + p.name + " must be positive");
+                }
+            }
+            params.add(p);
+        }
+        if (params.isEmpty()) {
+            error("at least one <param> is required");
+        }
+        return params;
+    }
+
+    /**
+     * Lists the values of the parameters of each trial.
+     * @param element sweep element
+     * @param params parameters
+     * @return values of the parameters, one map per trial
+     */
+    private List<Map<String, String>> expand(Element element, List<Param> params) {
+        List<Map<String, String>> res = new ArrayList<>();
+        boolean grid = true;
+        for (Param p : params) {
+            grid &= (p.values != null);
+        }
+        if (grid && element.getAttributeValue("trials") == null) {
+            res.add(new LinkedHashMap<>());
+            for (Param p : params) {
+                List<Map<String, String>> next = new ArrayList<>();
+                for (Map<String, String> m : res) {
+                    for (String v : p.values) {
+                        Map<String, String> n = new LinkedHashMap<>(m);
+                        n.put(p.name, v);
+                        next.add(n);
+                    }
+                }
+                res = next;
+            }
+            return res;
+        }
+        int n = Integer.parseInt(readAttribute(element, "trials"));
+        Random rand = (element.getAttributeValue("seed") != null)
+                ? new Random(Long.parseLong(readAttribute(element, "seed")))
+                : script.getRng();
+        for (int i = 0; i < n; i++) {
+            Map<String, String> m = new LinkedHashMap<>();
+            for (Param p : params) {
+                m.put(p.name, p.draw(rand));
+            }
+            res.add(m);
+        }
+        return res;
+    }
+
+    /**
+     * Writes the results as CSV.
+     * @param fileName name of the file
+     * @param params parameters
+     * @param trials trials
+     * @throws IOException if the file cannot be written
+     */
+    private void writeResults(String fileName, List<Param> params, List<Trial> trials) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(fileName)))) {
+            pw.print("trial");
+            for (Param p : params) {
+                pw.print("," + p.name);
+            }
+            pw.println(",result,status,seconds");
+            for (Trial t : trials) {
+                pw.print(t.index);
+                for (Param p : params) {
+                    pw.print("," + t.values.get(p.name));
+                }
+                pw.println("," + t.result + "," + t.status + "," + t.seconds);
+            }
+        }
+    }
+
+    @Override
+    public String tagName() {
+        return "sweep";
+    }
+}
@@ -27,19 +27,23 @@
 package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.script.TrainingTelemetry;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.BiDataBlock;
+import diuf.diva.dia.ms.util.Checkpointer;
 import diuf.diva.dia.ms.util.DataBlock;
 import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.ImageLoader;
 import diuf.diva.dia.ms.util.Tracer;
 import diuf.diva.dia.ms.util.misc.ImageAnalysis;
-import diuf.diva.dia.ms.util.misc.Pixel;
 import org.jdom2.Element;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class trains a classifier previously loaded into the script. It it possible to specify different parameters
@@ -78,15 +82,29 @@ public class TrainClassifier extends AbstractCommand {
      * Number of layers to be trained from the top
      */
     private int nbLayers;
+    /**
+     * Stores periodically the classifier, may be null
+     */
+    private Checkpointer checkpoint;
+    /**
+     * Telemetry of the training, does nothing if the script has no telemetry sink
+     */
+    private TrainingTelemetry telemetry;
 
     @Override
     public String execute(Element element) throws Exception {
 
+        // The command can be executed several times, forget the previous checkpoints
+        checkpoint = null;
+
         /** If the tag </filenamebased> is present
          *  call the relative method. Otherwise go on
          *  with typical training.
          */
         if (element.getChild("filenamebased") != null) {
+            if (element.getChild("checkpoint") != null) {
+                error("checkpoints are not supported with <filenamebased/>");
+            }
             fileNameBased(element);
             return "";
         }
@@ -152,6 +170,15 @@ public class TrainClassifier extends AbstractCommand {
                         + "}"
         );
 
+        // Testing if checkpoints should be stored
+        checkpoint = readCheckpoint(element, classifier);
+        if (checkpoint != null && checkpoint.begin(readResume(element))) {
+            script.println("Resuming from checkpoint at sample " + checkpoint.getSample());
+        }
+
+        // Telemetry of the training, if enabled by the script
+        telemetry = script.startTelemetry(tagName(), ref, learningSpeed(classifier));
+
         long startTime = System.currentTimeMillis();
 
         switch (classifier.type()) {
@@ -163,6 +190,11 @@ public class TrainClassifier extends AbstractCommand {
                 error("invalid classifier type :" + classifier.type());
         }
 
+        // Wait for the last checkpoint to be written
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+
         script.println("Training time = " + (int) (System.currentTimeMillis() - startTime) / 1000.0);
         script.println("Finish training classifier [" + ref + "]");
 
@@ -207,6 +239,8 @@ public class TrainClassifier extends AbstractCommand {
      * <display-progress>200</display-progress>
      * <!-- optional -->
      * <save-progress>stringPATH</save-progress>
+     * <!-- optional: periodic checkpoints, every N samples or N minutes -->
+     * <checkpoint every="5000 samples" resume="true">folderPATH</checkpoint>
      * </train-classifier>
      *
      * @param classifier the classifier which is going to be trained
@@ -214,7 +248,7 @@ public class TrainClassifier extends AbstractCommand {
      * @param dsGt       the dataset containing the ground truth for the provided dataset
      *                   is immediately interrupted and the result returned
      */
-    private void trainPixelBasedClassifiers(Classifier classifier, Dataset dsImg, Dataset dsGt) {
+    private void trainPixelBasedClassifiers(Classifier classifier, Dataset dsImg, Dataset dsGt) throws IOException {
 
         // Time of start of the execution, necessary to stop after max time has reached
         long startTime = System.currentTimeMillis();
@@ -235,6 +269,15 @@ public class TrainClassifier extends AbstractCommand {
         // Batch handling
         int batch = 0;
 
+        // Number of samples used for each class
+        long[] classCounts = new long[classifier.getOutputSize()];
+
+        // Resume from the checkpoint
+        if (checkpoint != null) {
+            sample = (int) checkpoint.getSample();
+            epoch = checkpoint.getEpoch();
+        }
+
         // Verify input size for the whole dataset
         for (int i = 0; i < dsImg.size(); i++) {
             DataBlock img = dsImg.get(i);
@@ -249,7 +292,7 @@ public class TrainClassifier extends AbstractCommand {
         // ImageAnalysis init, for data balancing
         ImageAnalysis[] imageAnalyses = new ImageAnalysis[dsImg.size()];
         for (int i = 0; i < dsImg.size(); i++) {
-            imageAnalyses[i] = new ImageAnalysis(dsGt.get(i), classifier.getInputWidth(), classifier.getInputHeight());
+            imageAnalyses[i] = new ImageAnalysis(dsGt.get(i), classifier.getInputWidth(), classifier.getInputHeight(), script.getRng());
             imageAnalyses[i].subSample((int) Math.ceil(SAMPLES / dsImg.size()));
         }
 
@@ -277,15 +320,15 @@ public class TrainClassifier extends AbstractCommand {
                 for (int c = 0; c < imageAnalyses[i].nbClasses; c++) {
 
                     // Get next representative
-                    Pixel p = imageAnalyses[i].getNextRepresentative(c);
+                    int p = imageAnalyses[i].getNextRepresentative(c);
 
-                    // If pixel 'p' is null it means that this specific GT does not contain this class
-                    if (p == null) {
+                    // If pixel 'p' is -1 it means that this specific GT does not contain this class
+                    if (p < 0) {
                         continue;
                     }
 
                     // Set input to classifier
-                    classifier.centerInput(dsImg.get(i), p.x, p.y);
+                    classifier.centerInput(dsImg.get(i), imageAnalyses[i].getX(p), imageAnalyses[i].getY(p));
 
                     // Forward
                     classifier.compute();
@@ -297,6 +340,7 @@ public class TrainClassifier extends AbstractCommand {
 
                     // Learning the classifier
                     err += classifier.backPropagate(nbLayers);
+                    classCounts[c]++;
 
                     // Increase counters
                     sample++;
@@ -325,9 +369,17 @@ public class TrainClassifier extends AbstractCommand {
                 tracer.addPoint(sample, err / epochSize);
             }
 
+            // Report the error, e.g., to a hyperparameter sweep
+            script.reportTrainingError(sample, SAMPLES, err / epochSize);
+            telemetry.epoch(sample, SAMPLES, err / epochSize, classCounts);
+
             // Log the number of epochs
             epoch++;
 
+            // Store a checkpoint if due
+            if (checkpoint != null) {
+                checkpoint.update(sample, epoch, 0);
+            }
         }
 
         // Complete the logging progress
@@ -354,10 +406,12 @@ public class TrainClassifier extends AbstractCommand {
      * <display-progress>200</display-progress> 			// optional
      * <save-progress>stringPATH</save-progress> 			// optional: but make no sense if display progress is not there
      * </train-classifier>
+     * <p>
+     * Checkpoints are not supported by this training.
      *
      * @param element the node of the XML directly
      */
-    public void fileNameBased(Element element) throws IOException {
+    public void fileNameBased(Element element) throws Exception {
 
         /***********************************************************************************************
          * PARSE ELEMENT FROM XML
@@ -443,16 +497,22 @@ public class TrainClassifier extends AbstractCommand {
         // Getting file names on that folder
         File[] listOfFiles = dsdir.listFiles();
 
-        // For each file listed
+        // Read and decode the files listed in parallel, keeping their order
+        List<File> selectedFiles = new ArrayList<>();
         for (int i = 0; i < listOfFiles.length; i += dsSubSample) {
+            selectedFiles.add(listOfFiles[i]);
+        }
+        List<BiDataBlock> images = ImageLoader.load(selectedFiles, BiDataBlock::new);
+
+        // For each file listed
+        for (int i = 0; i < selectedFiles.size(); i++) {
             // Get correct class from file name
-            int correctClass = Character.getNumericValue(listOfFiles[i].getName().charAt(0));
+            int correctClass = Character.getNumericValue(selectedFiles.get(i).getName().charAt(0));
             // Store in the image in the appropriate ArrayList
             if (!data.containsKey(correctClass)) {
                 data.put(correctClass, new ArrayList<>());
             }
-            data.get(correctClass).add(new BiDataBlock(dsdir + "/" + listOfFiles[i].getName()));
-
+            data.get(correctClass).add(images.get(i));
         }
 
         script.println("Dataset loaded and processed in: " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
@@ -475,6 +535,12 @@ public class TrainClassifier extends AbstractCommand {
 
         script.println("\"Classifier starting training[" + ref + "] {maximum time:" + MAXTIME + "m, samples:" + SAMPLES + "}");
 
+        // Number of samples used for each class
+        long[] classCounts = new long[nbClasses];
+
+        // Telemetry of the training, if enabled by the script
+        telemetry = script.startTelemetry(tagName(), ref, learningSpeed(classifier));
+
         script.print("Progress[");
 
         // Train the classifier until enough samples have been evaluated
@@ -497,7 +563,7 @@ public class TrainClassifier extends AbstractCommand {
             for (int c = 0; c < nbClasses; c++) {
 
                 // Set input to classifier
-                classifier.setInput(data.get(c).get((int) (XMLScript.getRandom().nextDouble() * data.get(c).size())), 0, 0);
+                classifier.setInput(data.get(c).get((int) (script.getRng().nextDouble() * data.get(c).size())), 0, 0);
 
                 // Forward
                 classifier.compute();
@@ -509,6 +575,7 @@ public class TrainClassifier extends AbstractCommand {
 
                 // Learning the classifier
                 err += classifier.backPropagate(nbLayers);
+                classCounts[c]++;
 
                 // Increase counters
                 sample++;
@@ -542,9 +609,12 @@ public class TrainClassifier extends AbstractCommand {
                 tracer.addPoint(sample, err / epochSize);
             }
 
+            // Report the error, e.g., to a hyperparameter sweep
+            script.reportTrainingError(sample, SAMPLES, err / epochSize);
+            telemetry.epoch(sample, SAMPLES, err / epochSize, classCounts);
+
             // Log the number of epochs
             epoch++;
-
         }
 
         // Complete the logging progress
@@ -580,6 +650,23 @@ public class TrainClassifier extends AbstractCommand {
 
     }
 
+    /**
+     * @param classifier a classifier
+     * @return the learning speed of its top layer, or NaN if it is unknown
+     */
+    private static double learningSpeed(Classifier classifier) {
+        if (classifier instanceof FFCNN) {
+            FFCNN ffcnn = (FFCNN) classifier;
+            return ffcnn.getLayer(ffcnn.countLayers() - 1).getLearningSpeed();
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public boolean isMemoizable(Element element) {
+        return true;
+    }
+
     @Override
     public String tagName() {
         return "train-classifier";
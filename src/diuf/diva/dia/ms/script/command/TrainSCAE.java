@@ -27,10 +27,10 @@
 package diuf.diva.dia.ms.script.command;
 
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.script.TrainingTelemetry;
 import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.*;
 import diuf.diva.dia.ms.util.misc.ImageAnalysis;
-import diuf.diva.dia.ms.util.misc.Pixel;
 import org.jdom2.Element;
 
 import java.io.File;
@@ -39,6 +39,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -60,8 +61,14 @@ import java.util.Random;
  *      <display-progress>200</display-progress>
  *      <!-- optional, but needs display-progress -->
  *      <save-progress>stringPATH</save-progress>
+ *      <!-- optional: periodic checkpoints, every N samples or N minutes -->
+ *      <checkpoint every="10 minutes" resume="true">folderPATH</checkpoint>
  *  </train-scae>
  *
+ * Checkpoints are supported for the unsupervised and denoising trainings, the
+ * supervised trainings raise an error if they are given one. If resume is true
+ * (default) and the folder contains a checkpoint, the training continues from it.
+ *
  * @author Mathias Seuret, Michele Alberti
  */
 public class TrainSCAE extends AbstractCommand {
@@ -91,6 +98,14 @@ public class TrainSCAE extends AbstractCommand {
      */
     int tracerFeaturesUpdateStep = 1000;
     int currTracerFeatures = 0;
+    /**
+     * Stores periodically the SCAE, may be null
+     */
+    private Checkpointer checkpoint;
+    /**
+     * Telemetry of the training, does nothing if the script has no telemetry sink
+     */
+    private TrainingTelemetry telemetry;
 
     @Override
     public String execute(Element element) throws Exception {
@@ -162,7 +177,9 @@ public class TrainSCAE extends AbstractCommand {
 
         // If display-feature tag is present init it
         FeatureDisplay featureDisplay = null;
-        if (element.getChild("display-features")!=null) {
+        if (element.getChild("display-features")!=null && DataBlockDisplay.isHeadless()) {
+            script.println("Headless mode, ignoring <display-features>");
+        } else if (element.getChild("display-features")!=null) {
             featureDisplay = new FeatureDisplay(scae);
             try {
                 tracerFeaturesUpdateStep = Integer.parseInt(element.getChildText("display-features"));
@@ -173,13 +190,29 @@ public class TrainSCAE extends AbstractCommand {
 
         // If recoding tag is present init it
         RecodingDisplay recodingDisplay = null;
-        if (element.getChild("display-recoding")!=null) {
+        if (element.getChild("display-recoding")!=null && DataBlockDisplay.isHeadless()) {
+            script.println("Headless mode, ignoring <display-recoding>");
+        } else if (element.getChild("display-recoding")!=null) {
             Image img = new Image(element.getChild("display-recoding").getTextTrim());
             img.convertTo(script.colorspace);
             DataBlock imgDB = new DataBlock(img);
             recodingDisplay = new RecodingDisplay(imgDB, scae);
         }
 
+        // The supervised trainings cannot resume from a checkpoint
+        if (element.getChild("checkpoint") != null && (gt != null || element.getChild("filenamebased") != null)) {
+            error("checkpoints are supported only for the unsupervised and denoising trainings");
+        }
+
+        // If checkpoint tag is present init it
+        checkpoint = readCheckpoint(element, scae);
+        if (checkpoint != null && checkpoint.begin(readResume(element))) {
+            script.println("Resuming from checkpoint at sample " + checkpoint.getSample());
+        }
+
+        // Telemetry of the training, if enabled by the script
+        telemetry = script.startTelemetry(tagName(), ref, scae.getTop().getBase().getLearningSpeed());
+
         // Return value of the function
         String returnValue = null;
 
@@ -240,6 +273,11 @@ public class TrainSCAE extends AbstractCommand {
             returnValue = String.valueOf(trainSupervisedFileNameBasedAutoEncoder(scae, element, featureDisplay, recodingDisplay));
         }
 
+        // Wait for the last checkpoint to be written
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+
         // If a result has been computed
         if (returnValue != null) {
             // If tracer has been used
@@ -278,7 +316,7 @@ public class TrainSCAE extends AbstractCommand {
      * @param rd   the recoding display object (may be null!)
      * @return cumulated error of the training
      */
-    private double trainAutoencoder(SCAE scae, Dataset ds, FeatureDisplay fd, RecodingDisplay rd) {
+    private double trainAutoencoder(SCAE scae, Dataset ds, FeatureDisplay fd, RecodingDisplay rd) throws IOException {
 
         // Time of start of the execution, necessary to stop after max time has reached
         long startTime = System.currentTimeMillis();
@@ -298,8 +336,15 @@ public class TrainSCAE extends AbstractCommand {
         // Epoch counter
         int epoch = 0;
 
+        // Resume from the checkpoint
+        if (checkpoint != null && checkpoint.getSample() > 0) {
+            sample = (int) checkpoint.getSample();
+            epoch = checkpoint.getEpoch();
+            cumulatedError = checkpoint.getError();
+        }
+
         // Random numbers generator
-        Random rand = XMLScript.getRandom();
+        Random rand = script.getRng();
 
         // Training an AE
         System.out.print(new SimpleDateFormat("HH:mm:ss.SSS").format(new Date()) + ": " +
@@ -309,7 +354,7 @@ public class TrainSCAE extends AbstractCommand {
         while (sample <= SAMPLES) {
 
             // Shuffle the dataset at each epoch
-            ds.randomPermutation();
+            ds.randomPermutation(rand);
 
             // Epoch-wise error
             err = 0;
@@ -356,6 +401,10 @@ public class TrainSCAE extends AbstractCommand {
                 tracer.addPoint(sample, err);
             }
 
+            // Report the error, e.g., to a hyperparameter sweep
+            script.reportTrainingError(sample, SAMPLES, err / ds.size());
+            telemetry.epoch(sample, SAMPLES, err / ds.size(), null);
+
             // Feature display update
             if (fd!=null && currTracerFeatures>=tracerFeaturesUpdateStep) {
                 fd.update();
@@ -372,6 +421,11 @@ public class TrainSCAE extends AbstractCommand {
             // Update the cumulated error
             cumulatedError += err;
 
+            // Store a checkpoint if due
+            if (checkpoint != null) {
+                checkpoint.update(sample, epoch, cumulatedError);
+            }
+
             // Stop execution if MAXTIME reached
             if (((int) (System.currentTimeMillis() - startTime) / 60000) >= MAXTIME) {
                 // Complete the logging progress
@@ -431,7 +485,7 @@ public class TrainSCAE extends AbstractCommand {
         // ImageAnalysis init, for data balancing
         ImageAnalysis[] imageAnalyses = new ImageAnalysis[dsImg.size()];
         for (int i = 0; i < dsImg.size(); i++) {
-            imageAnalyses[i] = new ImageAnalysis(dsGt.get(i), scae.getInputPatchWidth(), scae.getInputPatchHeight());
+            imageAnalyses[i] = new ImageAnalysis(dsGt.get(i), scae.getInputPatchWidth(), scae.getInputPatchHeight(), script.getRng());
             imageAnalyses[i].subSample((int) Math.ceil(SAMPLES / dsImg.size()));
         }
 
@@ -461,15 +515,15 @@ public class TrainSCAE extends AbstractCommand {
                 for (int c = 0; c < imageAnalyses[i].nbClasses; c++) {
 
                     // Get next representative
-                    Pixel p = imageAnalyses[i].getNextRepresentative(c);
+                    int p = imageAnalyses[i].getNextRepresentative(c);
 
-                    // If pixel 'p' is null it means that this specific GT does not contain this class
-                    if (p == null) {
+                    // If pixel 'p' is -1 it means that this specific GT does not contain this class
+                    if (p < 0) {
                         continue;
                     }
 
                     // Set input
-                    scae.centerInput(dsImg.get(i), p.x, p.y);
+                    scae.centerInput(dsImg.get(i), imageAnalyses[i].getX(p), imageAnalyses[i].getY(p));
 
                     // Train
                     err += scae.trainSupervised(c);
@@ -495,6 +549,10 @@ public class TrainSCAE extends AbstractCommand {
                 tracer.addPoint(sample, err / epochSize);
             }
 
+            // Report the error, e.g., to a hyperparameter sweep
+            script.reportTrainingError(sample, SAMPLES, err / epochSize);
+            telemetry.epoch(sample, SAMPLES, err / epochSize, null);
+
             // Feature display update
             if (fd != null && currTracerFeatures >= tracerFeaturesUpdateStep) {
                 fd.update();
@@ -534,7 +592,7 @@ public class TrainSCAE extends AbstractCommand {
      * @param rd      the recoding display object (may be null!)
      * @return cumulated error of the training
      */
-    private double trainSupervisedFileNameBasedAutoEncoder(SCAE scae, Element element, FeatureDisplay fd, RecodingDisplay rd) throws IOException {
+    private double trainSupervisedFileNameBasedAutoEncoder(SCAE scae, Element element, FeatureDisplay fd, RecodingDisplay rd) throws Exception {
 
         // Time of start of the execution, necessary to stop after max time has reached
         long startTime = System.currentTimeMillis();
@@ -556,7 +614,7 @@ public class TrainSCAE extends AbstractCommand {
         double cumulatedError = 0;
 
         // Random numbers generator
-        Random rand = XMLScript.getRandom();
+        Random rand = script.getRng();
 
         /***********************************************************************************************
          * PARSE ELEMENT FROM XML
@@ -593,17 +651,22 @@ public class TrainSCAE extends AbstractCommand {
         // Getting file names on that folder
         File[] listOfFiles = dsdir.listFiles();
 
-        // For each file listed
+        // Read and decode the files listed in parallel, keeping their order
+        List<File> selectedFiles = new ArrayList<>();
         for (int i = 0; i < listOfFiles.length; i += dsSubSample) {
+            selectedFiles.add(listOfFiles[i]);
+        }
+        List<BiDataBlock> images = ImageLoader.load(selectedFiles, BiDataBlock::new);
+
+        // For each file listed
+        for (int i = 0; i < selectedFiles.size(); i++) {
             // Get correct class from file name
-            int correctClass = Character.getNumericValue(listOfFiles[i].getName().charAt(0));
+            int correctClass = Character.getNumericValue(selectedFiles.get(i).getName().charAt(0));
             // Store in the image in the appropriate ArrayList
             if (!data.containsKey(correctClass)) {
                 data.put(correctClass, new ArrayList<>());
             }
-
-            data.get(correctClass).add(new BiDataBlock(dsdir + "/" + listOfFiles[i].getName()));
-
+            data.get(correctClass).add(images.get(i));
         }
 
         script.println("Dataset loaded and processed in: " + (System.currentTimeMillis() - startTime) / 1000 + " seconds");
@@ -638,7 +701,7 @@ public class TrainSCAE extends AbstractCommand {
             // Iterate over all classes (data balancing)
             for (int c = 0; c < nbClasses; c++) {
 
-                DataBlock db = data.get(c).get((int) (Math.random() * data.get(c).size()));
+                DataBlock db = data.get(c).get((int) (rand.nextDouble() * data.get(c).size()));
 
                 int x = 0;
                 int y = 0;
@@ -675,6 +738,10 @@ public class TrainSCAE extends AbstractCommand {
                 tracer.addPoint(sample, err / epochSize);
             }
 
+            // Report the error, e.g., to a hyperparameter sweep
+            script.reportTrainingError(sample, SAMPLES, err / epochSize);
+            telemetry.epoch(sample, SAMPLES, err / epochSize, null);
+
             // Feature display update
             if (fd != null && currTracerFeatures >= tracerFeaturesUpdateStep) {
                 fd.update();
@@ -719,7 +786,7 @@ public class TrainSCAE extends AbstractCommand {
      * @param rd   the recoding display object (may be null!)
      * @return cumulated error of the training
      */
-    private double trainDenoisingAutoEncoder(SCAE scae, NoisyDataset ds, FeatureDisplay fd, RecodingDisplay rd) {
+    private double trainDenoisingAutoEncoder(SCAE scae, NoisyDataset ds, FeatureDisplay fd, RecodingDisplay rd) throws IOException {
 
         // Time of start of the execution, necessary to stop after max time has reached
         long startTime = System.currentTimeMillis();
@@ -739,6 +806,16 @@ public class TrainSCAE extends AbstractCommand {
         // Epoch counter
         int epoch = 0;
 
+        // Resume from the checkpoint
+        if (checkpoint != null) {
+            sample = (int) checkpoint.getSample();
+            epoch = checkpoint.getEpoch();
+            cumulatedError = checkpoint.getError();
+        }
+
+        // Random numbers generator
+        Random rand = script.getRng();
+
         // Init the index array as index: [1,2,3,4,5,6...,n] where n = ds.size()
         int[] index = new int[ds.size()];
         for (int i=0; i<index.length; i++) {
@@ -770,7 +847,7 @@ public class TrainSCAE extends AbstractCommand {
              * reference between clean and noisy data.
              */
             for (int i=0; i<index.length; i++) {
-                int j = (int)(index.length*Math.random());
+                int j = (int)(index.length*rand.nextDouble());
                 int k = index[i];
                 index[i] = index[j];
                 index[j] = k;
@@ -782,8 +859,8 @@ public class TrainSCAE extends AbstractCommand {
                 DataBlock noisy = ds.getNoisy(n);
 
                 // Get random pixel
-                int x = (int) (Math.random() * (clean.getWidth() - scae.getInputPatchWidth()));
-                int y = (int) (Math.random() * (clean.getHeight() - scae.getInputPatchHeight()));
+                int x = (int) (rand.nextDouble() * (clean.getWidth() - scae.getInputPatchWidth()));
+                int y = (int) (rand.nextDouble() * (clean.getHeight() - scae.getInputPatchHeight()));
 
                 // Train scae
                 err += scae.trainDenoising(clean, noisy, x, y);
@@ -800,6 +877,10 @@ public class TrainSCAE extends AbstractCommand {
                 tracer.addPoint(sample, err);
             }
 
+            // Report the error, e.g., to a hyperparameter sweep
+            script.reportTrainingError(sample, SAMPLES, err / index.length);
+            telemetry.epoch(sample, SAMPLES, err / index.length, null);
+
             // Feature display update
             if (fd != null && currTracerFeatures >= tracerFeaturesUpdateStep) {
                 fd.update();
@@ -816,6 +897,11 @@ public class TrainSCAE extends AbstractCommand {
             // Update the cumulated error
             cumulatedError += err;
 
+            // Store a checkpoint if due
+            if (checkpoint != null) {
+                checkpoint.update(sample, epoch, cumulatedError);
+            }
+
             // Stop execution if MAXTIME reached
             if (((int) (System.currentTimeMillis() - startTime) / 60000) >= MAXTIME) {
                 script.println("Maximum training time (" + MAXTIME + ") reached after " + epoch + " epochs");
@@ -836,6 +922,11 @@ public class TrainSCAE extends AbstractCommand {
         return cumulatedError;
     }
 
+    @Override
+    public boolean isMemoizable(Element element) {
+        return true;
+    }
+
     @Override
     public String tagName() {
         return "train-scae";
@@ -54,7 +54,7 @@ public class UnloadDataset extends AbstractCommand {
     public String execute(Element element) throws Exception {
         String id = readAttribute(element, "id");
         script.println("Unloading dataset: " + id);
-        script.datasets.remove(id);
+        script.unloadDataset(id);
         return "";
     }
 
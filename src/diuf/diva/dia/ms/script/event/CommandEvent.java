@@ -0,0 +1,57 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.event;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event covering the execution of a script command, so that
+ * profiles can be sliced by command.
+ *
+ * @author agent
+ */
+@Name("nlightn.Command")
+@Label("Command")
+@Category({"N-light-N", "Script"})
+@Description("Execution of a script command")
+@StackTrace(false)
+public class CommandEvent extends Event {
+    @Label("Command")
+    @Description("Tag name of the command")
+    public String command;
+
+    @Label("ID")
+    @Description("ID or reference of the model or dataset of the command")
+    public String id;
+
+    @Label("Through cache")
+    @Description("True if the command went through the command cache")
+    public boolean cached;
+
+    @Label("Success")
+    @Description("False if the command threw an exception")
+    public boolean success;
+}
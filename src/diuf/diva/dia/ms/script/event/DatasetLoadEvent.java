@@ -0,0 +1,51 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.event;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event covering the loading of a dataset.
+ *
+ * @author agent
+ */
+@Name("nlightn.DatasetLoad")
+@Label("Dataset Load")
+@Category({"N-light-N", "Script"})
+@Description("Loading of a dataset")
+@StackTrace(false)
+public class DatasetLoadEvent extends Event {
+    @Label("ID")
+    @Description("ID of the dataset")
+    public String id;
+
+    @Label("Folder")
+    public String folder;
+
+    @Label("Images")
+    @Description("Number of images of the dataset")
+    public int images;
+}
@@ -0,0 +1,63 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.event;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event covering a training epoch.
+ *
+ * @author agent
+ */
+@Name("nlightn.Epoch")
+@Label("Training Epoch")
+@Category({"N-light-N", "Training"})
+@Description("Epoch of a training command")
+@StackTrace(false)
+public class EpochEvent extends Event {
+    @Label("Command")
+    @Description("Tag name of the training command")
+    public String command;
+
+    @Label("ID")
+    @Description("ID of the trained model")
+    public String id;
+
+    @Label("Epoch")
+    public int epoch;
+
+    @Label("Epoch Samples")
+    @Description("Number of samples used during the epoch")
+    public long samples;
+
+    @Label("Total Samples")
+    @Description("Number of samples used since the start of the training")
+    public long totalSamples;
+
+    @Label("Error")
+    @Description("Mean error of the epoch")
+    public double error;
+}
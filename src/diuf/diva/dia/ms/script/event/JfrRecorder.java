@@ -0,0 +1,113 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.event;
+
+import diuf.diva.dia.ms.script.Recorder;
+import jdk.jfr.Event;
+
+/**
+ * Recorder emitting the events of this package. It is loaded by
+ * Recorder.get() only if jdk.jfr is available.
+ *
+ * @author agent
+ */
+public class JfrRecorder extends Recorder {
+
+    @Override
+    public boolean shouldCommit(Object event) {
+        return ((Event) event).shouldCommit();
+    }
+
+    @Override
+    public Object beginCommand() {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitCommand(Object event, String command, String id, boolean cached, boolean success) {
+        CommandEvent e = (CommandEvent) event;
+        e.command = command;
+        e.id = id;
+        e.cached = cached;
+        e.success = success;
+        e.commit();
+    }
+
+    @Override
+    public Object beginEpoch() {
+        EpochEvent event = new EpochEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitEpoch(Object event, String command, String id, int epoch, long samples, long totalSamples, double error) {
+        EpochEvent e = (EpochEvent) event;
+        e.command = command;
+        e.id = id;
+        e.epoch = epoch;
+        e.samples = samples;
+        e.totalSamples = totalSamples;
+        e.error = error;
+        e.commit();
+    }
+
+    @Override
+    public Object beginPage() {
+        PageEvent event = new PageEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitPage(Object event, String classifier, int page, int width, int height, double score) {
+        PageEvent e = (PageEvent) event;
+        e.classifier = classifier;
+        e.page = page;
+        e.width = width;
+        e.height = height;
+        e.score = score;
+        e.commit();
+    }
+
+    @Override
+    public Object beginDatasetLoad() {
+        DatasetLoadEvent event = new DatasetLoadEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitDatasetLoad(Object event, String id, String folder, int images) {
+        DatasetLoadEvent e = (DatasetLoadEvent) event;
+        e.id = id;
+        e.folder = folder;
+        e.images = images;
+        e.commit();
+    }
+}
@@ -0,0 +1,58 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.script.event;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event covering the evaluation of a page by a classifier.
+ *
+ * @author agent
+ */
+@Name("nlightn.EvaluatedPage")
+@Label("Evaluated Page")
+@Category({"N-light-N", "Evaluation"})
+@Description("Evaluation of a page by a classifier")
+@StackTrace(false)
+public class PageEvent extends Event {
+    @Label("Classifier")
+    @Description("ID of the classifier")
+    public String classifier;
+
+    @Label("Page")
+    @Description("Index of the page in the dataset")
+    public int page;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Score")
+    @Description("Accuracy, or precision for multiple classes")
+    public double score;
+}
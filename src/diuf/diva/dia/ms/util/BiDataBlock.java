@@ -28,7 +28,12 @@ package diuf.diva.dia.ms.util;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.color.ColorSpace;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 
@@ -42,6 +47,20 @@ public class BiDataBlock extends DataBlock {
      * Buffered image
      */
     private BufferedImage bi;
+    /**
+     * Raster of the image, if its samples are the 8-bit red, green and blue
+     * values; reading them directly avoids the array BufferedImage.getRGB()
+     * allocates at each call. Null if the image has another layout.
+     */
+    private transient WritableRaster samples;
+    /**
+     * Palette of the image if it is indexed, null otherwise.
+     */
+    private transient IndexColorModel palette;
+    /**
+     * True once the layout of the image has been inspected.
+     */
+    private transient boolean inspected;
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
@@ -70,7 +89,11 @@ public class BiDataBlock extends DataBlock {
 
     @Override
     public float getValue(int channel, int x, int y) {
-        int rgb = bi.getRGB(x, y);
+        inspect();
+        if (samples != null) {
+            return (channel < 3) ? samples.getSample(x, y, channel) / 255.0f * 2.0f - 1.0f : 0;
+        }
+        int rgb = rgb(x, y);
         switch (channel) {
             case 0:
                 return ((rgb >> 16) & 0xFF) / 255.0f * 2.0f - 1.0f;
@@ -84,7 +107,7 @@ public class BiDataBlock extends DataBlock {
 
     @Override
     public float[] getValues(int x, int y) {
-        int rgb = bi.getRGB(x, y);
+        int rgb = rgb(x, y);
         float[] rv = new float[3];
         rv[0] = 2.0f * ((rgb >> 16) & 0x0000FF) / 255.0f - 1.0f;
         rv[1] = 2.0f * ((rgb >> 8) & 0x0000FF) / 255.0f - 1.0f;
@@ -94,8 +117,15 @@ public class BiDataBlock extends DataBlock {
 
     @Override
     public void setValue(int channel, int x, int y, float v) {
-        int rgb = bi.getRGB(x, y);
         int i = (int) ((v + 1) / 2.0f * 255.0f);
+        inspect();
+        if (samples != null) {
+            if (channel < 3) {
+                samples.setSample(x, y, channel, i);
+            }
+            return;
+        }
+        int rgb = bi.getRGB(x, y);
         switch (channel) {
             case 0:
                 rgb = (rgb & 0x00FFFF) | (i<<16);
@@ -110,6 +140,51 @@ public class BiDataBlock extends DataBlock {
         bi.setRGB(x, y, rgb);
     }
 
+    /**
+     * Reads the RGB value of a pixel without allocating memory when the
+     * layout of the image allows it.
+     * @param x coordinate
+     * @param y coordinate
+     * @return the RGB value, as BufferedImage.getRGB() would
+     */
+    private int rgb(int x, int y) {
+        inspect();
+        if (samples != null) {
+            return (samples.getSample(x, y, 0) << 16)
+                    | (samples.getSample(x, y, 1) << 8)
+                    | samples.getSample(x, y, 2);
+        }
+        if (palette != null) {
+            return palette.getRGB(bi.getRaster().getSample(x, y, 0));
+        }
+        return bi.getRGB(x, y);
+    }
+
+    /**
+     * Looks whether the samples of the image can be read directly: this is
+     * the case for non-premultiplied sRGB images with 8 bits per color, in
+     * which the first three bands are red, green and blue, and for images
+     * with a palette.
+     */
+    private void inspect() {
+        if (inspected) {
+            return;
+        }
+        ColorModel cm = bi.getColorModel();
+        if (cm instanceof IndexColorModel) {
+            palette = (IndexColorModel) cm;
+        } else if ((cm instanceof DirectColorModel || cm instanceof ComponentColorModel)
+                && cm.getColorSpace().isCS_sRGB()
+                && cm.getColorSpace().getType() == ColorSpace.TYPE_RGB
+                && !cm.isAlphaPremultiplied()
+                && cm.getComponentSize(0) == 8
+                && cm.getComponentSize(1) == 8
+                && cm.getComponentSize(2) == 8) {
+            samples = bi.getRaster();
+        }
+        inspected = true;
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Utility
     ///////////////////////////////////////////////////////////////////////////////////////////////
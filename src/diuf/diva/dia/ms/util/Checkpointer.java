@@ -0,0 +1,447 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.script.XMLScript;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Periodically stores the weights of a model being trained, so that the
+ * training can be resumed after a crash.
+ * <p>
+ * The checkpoint folder contains two model files (see ModelFile) used
+ * alternately, and a state file indicating which one is the latest, together
+ * with the sample counter, epoch counter, cumulated error and state of the
+ * random number generator. When a checkpoint is due, the training thread
+ * only copies the weight arrays; a background thread then writes the sections
+ * which changed since the last time this file was written, and finally
+ * replaces the state file. A crash while writing thus leaves the previous
+ * checkpoint intact.
+ * <p>
+ * If a checkpoint is due while the previous one is still being written,
+ * it is skipped.
+ * @author agent
+ */
+public class Checkpointer implements Closeable {
+    /**
+     * Name of the state file.
+     */
+    private static final String STATE = "checkpoint.state";
+    /**
+     * Script whose random numbers generator is stored and restored.
+     */
+    private final XMLScript script;
+    /**
+     * Model being trained.
+     */
+    private final Object model;
+    /**
+     * Folder in which the checkpoints are stored.
+     */
+    private final File folder;
+    /**
+     * Number of samples between two checkpoints, 0 if based on time.
+     */
+    private final long everySamples;
+    /**
+     * Time between two checkpoints in milliseconds, 0 if based on samples.
+     */
+    private final long everyMillis;
+    /**
+     * Live weight arrays of the model, in the order of the sections.
+     */
+    private final List<Object> sections = new ArrayList<>();
+    /**
+     * Position of the sections in the model files.
+     */
+    private long[] offsets;
+    /**
+     * Content of the sections last written in each of the two files.
+     */
+    private final Object[][] written = new Object[2][];
+    /**
+     * Buffers for the next snapshot; null while a checkpoint is being written.
+     */
+    private volatile Object[] spare;
+    /**
+     * File to use for the next checkpoint.
+     */
+    private int slot = 0;
+    /**
+     * Writes the checkpoints.
+     */
+    private ExecutorService writer;
+    /**
+     * Last checkpoint being written.
+     */
+    private Future<?> pending;
+    /**
+     * Sample counter at the last checkpoint.
+     */
+    private long lastSample;
+    /**
+     * Time of the last checkpoint.
+     */
+    private long lastTime;
+    /**
+     * Restored sample counter.
+     */
+    private long sample;
+    /**
+     * Restored epoch counter.
+     */
+    private int epoch;
+    /**
+     * Restored cumulated error.
+     */
+    private double error;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a checkpointer.
+     * @param script script running the training
+     * @param model SCAE or classifier being trained
+     * @param folder folder in which the checkpoints are stored
+     * @param every period, as a number of samples ("5000", "5000 samples")
+     *              or of minutes ("10 minutes", "10m")
+     */
+    public Checkpointer(XMLScript script, Object model, String folder, String every) {
+        this.script = script;
+        this.model = model;
+        this.folder = new File(folder);
+
+        Matcher m = Pattern.compile("\\s*(\\d+)\\s*(samples?|minutes?|min|m)?\\s*").matcher(every);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("invalid checkpoint period: " + every);
+        }
+        long n = Long.parseLong(m.group(1));
+        if (n <= 0) {
+            throw new IllegalArgumentException("invalid checkpoint period: " + every);
+        }
+        if (m.group(2) != null && m.group(2).startsWith("m")) {
+            everySamples = 0;
+            everyMillis = n * 60000;
+        } else {
+            everySamples = n;
+            everyMillis = 0;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Checkpointing
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Prepares the checkpoint files. If resume is true and a checkpoint exists,
+     * the weights and the random number generator are restored first, and the
+     * counters can be obtained with getSample(), getEpoch() and getError().
+     * @param resume whether to resume from an existing checkpoint
+     * @return true if a checkpoint has been restored
+     * @throws IOException if the checkpoint cannot be read or written
+     */
+    public boolean begin(boolean resume) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        // Dummy input, the one of the SCAE can be too large to be stored
+        if (model instanceof SCAE) {
+            SCAE scae = (SCAE) model;
+            scae.setInput(new DataBlock(scae.getInputPatchWidth(), scae.getInputPatchHeight(), scae.getInputPatchDepth()));
+        }
+
+        // Writing the first file, which gives the sections of the model
+        Path tmp = file("tmp").toPath();
+        ModelFile.write(model, tmp.toString(), sections);
+        offsets = new long[sections.size()];
+        ModelFile mf = new ModelFile(tmp.toString());
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = mf.getOffset(i);
+        }
+
+        boolean restored = resume && new File(folder, STATE).exists() && restore();
+
+        // An older state would refer to the files overwritten below
+        if (!restored) {
+            Files.deleteIfExists(new File(folder, STATE).toPath());
+        }
+
+        // Both files start with the current weights
+        if (restored) {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                for (int i = 0; i < sections.size(); i++) {
+                    ModelFile.writeSection(ch, offsets[i], sections.get(i));
+                }
+            }
+        }
+        Files.copy(tmp, file("1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, file("0").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        written[0] = snapshot(null);
+        written[1] = snapshot(null);
+        spare = snapshot(null);
+        slot = 0;
+
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        lastSample = sample;
+        lastTime = System.currentTimeMillis();
+        return restored;
+    }
+
+    /**
+     * Restores the weights, counters and random number generator.
+     * @return true if the checkpoint could be restored
+     * @throws IOException if the state cannot be read
+     */
+    private boolean restore() throws IOException {
+        int s;
+        long savedSample;
+        int savedEpoch;
+        double savedError;
+        byte[] rng;
+        try (DataInputStream is = new DataInputStream(new FileInputStream(new File(folder, STATE)))) {
+            s = is.readInt();
+            savedSample = is.readLong();
+            savedEpoch = is.readInt();
+            savedError = is.readDouble();
+            rng = new byte[is.readInt()];
+            is.readFully(rng);
+        }
+
+        ModelFile mf = new ModelFile(file(String.valueOf(s)).getPath());
+        if (!mf.copyTo(sections)) {
+            System.err.println("the checkpoint in " + folder + " does not match the model, ignoring it");
+            return false;
+        }
+        sample = savedSample;
+        epoch = savedEpoch;
+        error = savedError;
+
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(rng))) {
+            script.setRng((Random) ois.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("invalid random number generator state", e);
+        }
+        return true;
+    }
+
+    /**
+     * Indicates the training progress, and makes a checkpoint if one is due.
+     * Call this method between epochs.
+     * @param sample number of samples processed
+     * @param epoch number of epochs done
+     * @param error cumulated error
+     * @throws IOException if the state of the random number generator cannot be stored
+     */
+    public void update(long sample, int epoch, double error) throws IOException {
+        assert (writer != null); // forgot to call begin()?
+
+        boolean due = (everySamples > 0)
+                ? sample - lastSample >= everySamples
+                : System.currentTimeMillis() - lastTime >= everyMillis;
+        if (!due || spare == null) {
+            return;
+        }
+        lastSample = sample;
+        lastTime = System.currentTimeMillis();
+
+        final Object[] snap = snapshot(spare);
+        spare = null;
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(script.getRng());
+        }
+        final byte[] rng = baos.toByteArray();
+        final int s = slot;
+        slot = 1 - slot;
+
+        pending = writer.submit(() -> {
+            try {
+                write(s, snap, sample, epoch, error, rng);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Writes a checkpoint; runs on the background thread.
+     * @param s file number
+     * @param snap copy of the weights
+     * @param sample number of samples processed
+     * @param epoch number of epochs done
+     * @param error cumulated error
+     * @param rng serialized random number generator
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void write(int s, Object[] snap, long sample, int epoch, double error, byte[] rng) throws IOException {
+        try (FileChannel ch = FileChannel.open(file(String.valueOf(s)).toPath(), StandardOpenOption.WRITE)) {
+            for (int i = 0; i < snap.length; i++) {
+                if (!same(snap[i], written[s][i])) {
+                    ModelFile.writeSection(ch, offsets[i], snap[i]);
+                }
+            }
+            ch.force(false);
+        } finally {
+            Object[] old = written[s];
+            written[s] = snap;
+            spare = old;
+        }
+
+        File tmp = new File(folder, STATE + ".tmp");
+        try (DataOutputStream os = new DataOutputStream(new FileOutputStream(tmp))) {
+            os.writeInt(s);
+            os.writeLong(sample);
+            os.writeInt(epoch);
+            os.writeDouble(error);
+            os.writeInt(rng.length);
+            os.write(rng);
+        }
+        Files.move(
+                tmp.toPath(),
+                new File(folder, STATE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+        );
+    }
+
+    /**
+     * Waits for the checkpoint being written, if any, and stops the
+     * background thread.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (pending != null) {
+                pending.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Getters
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * @return the restored sample counter
+     */
+    public long getSample() {
+        return sample;
+    }
+
+    /**
+     * @return the restored epoch counter
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the restored cumulated error
+     */
+    public double getError() {
+        return error;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * @param name suffix of the model file
+     * @return the model file
+     */
+    private File file(String name) {
+        return new File(folder, "checkpoint-" + name + ".nlnm");
+    }
+
+    /**
+     * Copies the live weight arrays.
+     * @param dst buffers to reuse, or null to allocate new ones
+     * @return the copy
+     */
+    private Object[] snapshot(Object[] dst) {
+        Object[] res = (dst == null) ? new Object[sections.size()] : dst;
+        for (int i = 0; i < res.length; i++) {
+            Object src = sections.get(i);
+            if (src instanceof float[]) {
+                float[] a = (float[]) src;
+                if (res[i] == null) {
+                    res[i] = new float[a.length];
+                }
+                System.arraycopy(a, 0, res[i], 0, a.length);
+            } else {
+                float[][] a = (float[][]) src;
+                if (res[i] == null) {
+                    res[i] = new float[a.length][a[0].length];
+                }
+                float[][] b = (float[][]) res[i];
+                for (int r = 0; r < a.length; r++) {
+                    System.arraycopy(a[r], 0, b[r], 0, a[r].length);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param a a float[] or float[][]
+     * @param b a float[] or float[][]
+     * @return true if both contain the same values
+     */
+    private static boolean same(Object a, Object b) {
+        if (a instanceof float[]) {
+            return Arrays.equals((float[]) a, (float[]) b);
+        }
+        return Arrays.deepEquals((float[][]) a, (float[][]) b);
+    }
+}
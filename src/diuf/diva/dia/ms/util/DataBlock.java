@@ -36,7 +36,9 @@ import java.io.*;
  * @author Mathias Seuret, Michele Alberti
  */
 public class DataBlock implements Serializable, Cloneable {
-    
+
+    private static final long serialVersionUID = 1507544894050698666L;
+
     /**
      * Width of the array.
      */
@@ -399,6 +401,32 @@ public class DataBlock implements Serializable, Cloneable {
         }
     }
 
+    /**
+     * Adds the values and the weights of a data block at the given position,
+     * so that several partial reconstructions can be merged before
+     * calling normalizeWeights().
+     *
+     * @param source data block
+     * @param posX   position x
+     * @param posY   position y
+     */
+    public void overlapAdd(DataBlock source, int posX, int posY) {
+        assert (source.getDepth() == depth);
+        assert (source.getWidth() + posX <= width);
+        assert (source.getHeight() + posY <= height);
+
+        for (int x = 0; x < source.getWidth(); x++) {
+            for (int y = 0; y < source.getHeight(); y++) {
+                float[] src = source.getValues(x, y);
+                float[] dst = value[x + posX][y + posY];
+                for (int z = 0; z < depth; z++) {
+                    dst[z] += src[z];
+                }
+                weight[x + posX][y + posY] += source.weight[x][y];
+            }
+        }
+    }
+
     /**
      * Puts the values from a patch into an array.
      * @param arr target array
@@ -29,17 +29,52 @@ package diuf.diva.dia.ms.util;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This is a JFrame which displays the content of a datablock, assuming
  * that it contains RGB or grayscale data.
+ * <p>
+ * Updates do not slow down the thread requesting them: a cheap snapshot of
+ * the displayed object is taken, and the datablock is computed and drawn from
+ * it on a background thread. At most one frame is computed at a time, and
+ * updates requested too early or while a frame is being computed are dropped.
+ * Displays cannot be created in headless mode, see isHeadless().
+ * @param <S> type of the snapshots from which the datablock is computed
  * @author Mathias Seuret
  */
-public abstract class DataBlockDisplay extends JFrame {
+public abstract class DataBlockDisplay<S> extends JFrame {
+    /**
+     * Minimum time between two frames, in milliseconds.
+     */
+    private static final long FRAME_INTERVAL = 500;
+    
+    /**
+     * Thread computing the frames of all displays.
+     */
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "display-renderer");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    
     /**
      * An image on which the datablock is displayed.
      */
-    BufferedImage bi;
+    volatile BufferedImage bi;
+    
+    /**
+     * Set while a frame is being computed.
+     */
+    private final AtomicBoolean rendering = new AtomicBoolean(false);
+    
+    /**
+     * Time at which the last frame was requested.
+     */
+    private long lastFrame = 0;
     
     /**
      * Reference to the datablock.
@@ -72,16 +107,17 @@ public abstract class DataBlockDisplay extends JFrame {
         JPanel pane = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
+                BufferedImage img = bi;
                 g.drawImage(
-                        bi,
+                        img,
                         0,
                         0,
                         g.getClipBounds().width,
                         g.getClipBounds().height,
                         0,
                         0,
-                        bi.getWidth(),
-                        bi.getHeight(),
+                        img.getWidth(),
+                        img.getHeight(),
                         null
                 );
             }
@@ -93,33 +129,81 @@ public abstract class DataBlockDisplay extends JFrame {
     }
     
     /**
-     * To updates the content of the datablock.
+     * @return true if no display can be shown
+     */
+    public static boolean isHeadless() {
+        return GraphicsEnvironment.isHeadless();
+    }
+    
+    /**
+     * Requests an update of the content of the datablock. The update is
+     * dropped if the previous one is too recent or not finished.
+     */
+    public void update() {
+        long now = System.currentTimeMillis();
+        if (now - lastFrame < FRAME_INTERVAL || !rendering.compareAndSet(false, true)) {
+            return;
+        }
+        lastFrame = now;
+        final S snapshot;
+        try {
+            snapshot = snapshot();
+        } catch (RuntimeException | Error e) {
+            rendering.set(false);
+            throw e;
+        }
+        RENDERER.execute(() -> {
+            try {
+                updateImage(render(snapshot));
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace();
+            } finally {
+                rendering.set(false);
+            }
+        });
+    }
+    
+    /**
+     * Takes a snapshot of the displayed object, on the thread requesting the
+     * update. It must be quick, and independent from the displayed object.
+     * @return the snapshot
+     */
+    protected abstract S snapshot();
+    
+    /**
+     * Computes the datablock to display, on the background thread.
+     * @param snapshot snapshot of the displayed object
+     * @return the datablock to display
      */
-    public abstract void update();
+    protected abstract DataBlock render(S snapshot);
     
     /**
-     * Updates the image.
+     * Updates the image. It is drawn on a new image, which then replaces the
+     * displayed one.
      * @param db specify which datablock is used.
      */
     protected void updateImage(DataBlock db) {
+        BufferedImage img = new BufferedImage(db.getWidth(), db.getHeight(), BufferedImage.TYPE_INT_RGB);
         switch (db.getDepth()) {
             case 1:
-                updateGrayscale(db);
+                updateGrayscale(db, img);
                 break;
             case 3:
-                updateColor(db);
+                updateColor(db, img);
                 break;
             default:
                 throw new Error("cannot display "+db.getDepth()+"-channels datablocks");
         }
+        bi = img;
         repaint();
     }
     
     /**
      * Draws the image.
      * @param db datablock
+     * @param bi image to draw on
      */
-    protected void updateGrayscale(DataBlock db) {
+    protected void updateGrayscale(DataBlock db, BufferedImage bi) {
         for (int x=0; x<db.getWidth(); x++) {
             for (int y=0; y<db.getHeight(); y++) {
                 float v = (db.getValue(0, x, y) + 1) / 2;
@@ -134,8 +218,9 @@ public abstract class DataBlockDisplay extends JFrame {
     /**
      * Draws the image
      * @param db datablock
+     * @param bi image to draw on
      */
-    protected void updateColor(DataBlock db) {
+    protected void updateColor(DataBlock db, BufferedImage bi) {
         for (int x=0; x<db.getWidth(); x++) {
             for (int y=0; y<db.getHeight(); y++) {
                 float v = (db.getValue(0, x, y) + 1) / 2;
@@ -163,16 +248,17 @@ public abstract class DataBlockDisplay extends JFrame {
      * @param g graphics
      */
     public void paintComponent(Graphics g) {
+        BufferedImage img = bi;
         g.drawImage(
-                bi,
+                img,
                 0,
                 0,
                 g.getClipBounds().width,
                 g.getClipBounds().height,
                 0,
                 0,
-                bi.getWidth(),
-                bi.getHeight(),
+                img.getWidth(),
+                img.getHeight(),
                 null
         );
     }
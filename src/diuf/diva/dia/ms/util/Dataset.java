@@ -34,6 +34,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 /**
  * This is a set of datablocks which can be used for training
@@ -60,6 +62,16 @@ public class Dataset implements Collection<DataBlock> {
         this.colorspace = colorspace;
     }
     
+    /**
+     * Creates a dataset sharing the data blocks of another one, but with
+     * its own order, so that it can be shuffled independently.
+     * @param other dataset to share
+     */
+    public Dataset(Dataset other) {
+        this.colorspace = other.colorspace;
+        this.data = new ArrayList<>(other.data);
+    }
+
     /**
      * Creates a dataset.
      * @param path containing the images
@@ -88,37 +100,39 @@ public class Dataset implements Collection<DataBlock> {
             throw new Error(path + " is not a directory.");
         }
         this.colorspace = colorspace;
-        int size = 0;
         String[] fList = fold.list();
         Arrays.sort(fList);
+        List<File> files = new ArrayList<>();
         for (String fName : fList) {
             if (fName.equals(".DS_Store")) {
                 continue;
             }
-            
-            /* PLEASE - do not add && Buffered here!!!!
-             * Although it being "technically correct" it would make several existing script to crash.
-             * Furthermore, this would make the possibility to create a buffered data set in
-             * LoadDataset.loadBufferedDataset() redundant. However, the two of them have different
-             * performance on memory level which calls for deeper investigation.
-             *
-             * CONCLUSION: this cannot be fixed with a && Buffered. Needs more time & attention and
-             * a bigger refactor.
-             */
-            // TODO investigate the above comment
-            if (colorspace == Image.Colorspace.RGB) {
-                BiDataBlock bid = new BiDataBlock(path + "/" + fName);
-                data.add(bid);
-            } else {
-                Image img = new Image(path + "/" + fName);
-                img.convertTo(colorspace);
-                DataBlock db = new DataBlock(img);
-                data.add(db);
-            }
-            if (sizeLimit!=0 && ++size>=sizeLimit) {
+            files.add(new File(path + "/" + fName));
+            if (sizeLimit!=0 && files.size()>=sizeLimit) {
                 break;
             }
         }
+
+        /* PLEASE - do not add && Buffered here!!!!
+         * Although it being "technically correct" it would make several existing script to crash.
+         * Furthermore, this would make the possibility to create a buffered data set in
+         * LoadDataset.loadBufferedDataset() redundant. However, the two of them have different
+         * performance on memory level which calls for deeper investigation.
+         *
+         * CONCLUSION: this cannot be fixed with a && Buffered. Needs more time & attention and
+         * a bigger refactor.
+         */
+        // TODO investigate the above comment
+        // The files are read and decoded in parallel, the order is kept
+        if (colorspace == Image.Colorspace.RGB) {
+            data.addAll(ImageLoader.load(files, BiDataBlock::new));
+        } else {
+            data.addAll(ImageLoader.load(files, bi -> {
+                Image img = new Image(bi);
+                img.convertTo(colorspace);
+                return new DataBlock(img);
+            }));
+        }
         // Calling the garbage collector at each iteration is painfully slow!!
         // DO NOT do it!
         System.gc();
@@ -145,11 +159,20 @@ public class Dataset implements Collection<DataBlock> {
     }
     
     /**
-     * Tosses the dataset.
+     * Tosses the dataset, using the random numbers generator of the script
+     * running on this thread.
      */
     public void randomPermutation() {
+        randomPermutation(XMLScript.getRandom());
+    }
+
+    /**
+     * Tosses the dataset.
+     * @param random random numbers generator
+     */
+    public void randomPermutation(Random random) {
         for (int i=0; i<data.size(); i++) {
-            int j = (int) (XMLScript.getRandom().nextDouble() * data.size());
+            int j = (int) (random.nextDouble() * data.size());
             DataBlock k = data.get(i);
             data.set(i, data.get(j));
             data.set(j, k);
@@ -0,0 +1,138 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Read-only datasets shared by scripts running in the same JVM. A dataset is
+ * loaded by the first script requesting it; the other scripts requesting the
+ * same folder, color space and size limit wait for it instead of loading it
+ * again. Each script gets its own copy of the list of data blocks, so that it
+ * can shuffle it, but the data blocks themselves are shared and must not be
+ * modified.
+ * <p>
+ * Datasets are reference-counted, and dropped once the last script using
+ * them released them.
+ *
+ * @author agent
+ */
+public class DatasetCache {
+    /**
+     * A dataset, and the number of scripts using it.
+     */
+    private static class Entry {
+        /**
+         * Loads the dataset once.
+         */
+        final FutureTask<Dataset> loader;
+        /**
+         * Number of scripts using the dataset.
+         */
+        int references = 0;
+
+        /**
+         * @param loader loads the dataset
+         */
+        Entry(FutureTask<Dataset> loader) {
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * Datasets, by key.
+     */
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Computes the key of a dataset; it is also used as the source of the
+     * datasets in the scripts.
+     * @param folder folder containing the images
+     * @param colorspace color space
+     * @param sizeLimit maximum number of images
+     * @return the key
+     */
+    public static String key(String folder, Image.Colorspace colorspace, int sizeLimit) {
+        return new File(folder).getAbsolutePath() + "|" + sizeLimit + "|" + colorspace;
+    }
+
+    /**
+     * Gets a dataset, loading it if no other script did. The dataset has to
+     * be released with the key once it is not used anymore.
+     * @param folder folder containing the images
+     * @param colorspace color space
+     * @param sizeLimit maximum number of images
+     * @return a copy of the dataset, sharing its data blocks
+     * @throws Exception if the dataset cannot be loaded
+     */
+    public Dataset acquire(String folder, Image.Colorspace colorspace, int sizeLimit) throws Exception {
+        String key = key(folder, colorspace, sizeLimit);
+        Entry e;
+        synchronized (this) {
+            e = entries.get(key);
+            if (e == null) {
+                e = new Entry(new FutureTask<>(() -> new Dataset(folder, colorspace, sizeLimit)));
+                entries.put(key, e);
+            }
+            e.references++;
+        }
+        // Runs the loading only once, in the first calling thread
+        e.loader.run();
+        try {
+            return new Dataset(e.loader.get());
+        } catch (ExecutionException ex) {
+            release(key);
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw new Error("Could not load " + folder, ex.getCause());
+        }
+    }
+
+    /**
+     * Releases a dataset.
+     * @param key key of the dataset
+     */
+    public synchronized void release(String key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            return;
+        }
+        if (--e.references <= 0) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * @return the number of datasets in memory
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,65 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Deep copies of serializable objects, e.g., for giving each thread its own
+ * copy of a model.
+ *
+ * @author agent
+ */
+public class DeepCopy {
+
+    /**
+     * Copies an object by serializing it and reading it back. Everything
+     * reachable from the object is copied as well.
+     * @param object object to copy
+     * @param <T> type of the object
+     * @return an independent copy of the object
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> T copy(T object) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(object);
+            oos.close();
+
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+            return (T) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new Error("Could not copy " + object.getClass().getSimpleName() + ": " + e, e);
+        }
+    }
+
+}
@@ -29,10 +29,11 @@ package diuf.diva.dia.ms.util;
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
 
 /**
- * Displays the features of a SCAE.
+ * Displays the features of a SCAE. The features are extracted from a copy of
+ * the SCAE on a background thread, so that the training is not slowed down.
  * @author Mathias Seuret
  */
-public class FeatureDisplay extends DataBlockDisplay {
+public class FeatureDisplay extends DataBlockDisplay<SCAE> {
     SCAE scae;
     
     /**
@@ -46,9 +47,12 @@ public class FeatureDisplay extends DataBlockDisplay {
     }
     
     @Override
-    public void update() {
-        DataBlock db = scae.extractFeatures();
-        updateImage(db);
-        repaint();
+    protected SCAE snapshot() {
+        return scae.replicate();
+    }
+    
+    @Override
+    protected DataBlock render(SCAE snapshot) {
+        return snapshot.extractFeatures();
     }
 }
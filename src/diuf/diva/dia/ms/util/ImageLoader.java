@@ -0,0 +1,177 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import diuf.diva.dia.ms.script.XMLScript;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Loads images in parallel. The files are read by a pool of I/O threads,
+ * so that several reads are pending at the same time, and the images are
+ * decoded and converted by a pool of as many threads as there are cores,
+ * within the worker budget of the script running the loading (see
+ * XMLScript.acquireThreads()).
+ * The results are returned in the order of the files, and at most a few
+ * images per core are pending at any time, so that the memory used does
+ * not depend on the number of files.
+ * @author agent
+ */
+public class ImageLoader {
+    /**
+     * Number of files read at the same time.
+     */
+    private static final int IO_THREADS = 8;
+    /**
+     * Number of images pending per decoding thread.
+     */
+    private static final int PENDING_PER_THREAD = 2;
+
+    /**
+     * Loads images.
+     * @param files files to load
+     * @param converter converts a decoded image, e.g., into a data block;
+     *                  called from the decoding threads
+     * @param <T> type of the converted images
+     * @return the converted images, in the order of the files
+     * @throws Exception if a file cannot be read or decoded
+     */
+    public static <T> List<T> load(List<File> files, Function<BufferedImage, T> converter) throws Exception {
+        List<T> res = new ArrayList<>(files.size());
+        if (files.size() < 2) {
+            for (File f : files) {
+                res.add(converter.apply(decode(f, Files.readAllBytes(f.toPath()))));
+            }
+            return res;
+        }
+
+        int nbThreads = XMLScript.acquireThreads(Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService io = Executors.newFixedThreadPool(Math.min(files.size(), IO_THREADS), r -> {
+            Thread t = new Thread(r, "image-reader");
+            t.setDaemon(true);
+            return t;
+        });
+        ExecutorService cpu = Executors.newFixedThreadPool(nbThreads, r -> {
+            Thread t = new Thread(r, "image-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Deque<CompletableFuture<T>> pending = new ArrayDeque<>();
+            int next = 0;
+            while (res.size() < files.size()) {
+                while (next < files.size() && pending.size() < nbThreads * PENDING_PER_THREAD) {
+                    File f = files.get(next++);
+                    pending.add(CompletableFuture
+                            .supplyAsync(() -> read(f), io)
+                            .thenApplyAsync(bytes -> converter.apply(decode(f, bytes)), cpu));
+                }
+                res.add(get(pending.poll()));
+            }
+        } finally {
+            io.shutdownNow();
+            cpu.shutdownNow();
+            XMLScript.releaseThreads(nbThreads);
+        }
+        return res;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @param f file
+     * @return its content
+     */
+    private static byte[] read(File f) {
+        try {
+            return Files.readAllBytes(f.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param f file, for the error messages
+     * @param bytes content of the file
+     * @return the decoded image
+     */
+    private static BufferedImage decode(File f, byte[] bytes) {
+        BufferedImage bi;
+        try {
+            bi = ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (bi == null) {
+            throw new Error("cannot decode " + f.getPath() + ": unknown image format");
+        }
+        return bi;
+    }
+
+    /**
+     * Waits for an image, and throws the exception which prevented loading
+     * it, if any.
+     * @param f future image
+     * @param <T> type of the image
+     * @return the image
+     * @throws Exception if the image could not be loaded
+     */
+    private static <T> T get(CompletableFuture<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
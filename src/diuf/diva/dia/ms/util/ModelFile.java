@@ -0,0 +1,684 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.AutoEncoder;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.ml.layer.AbstractLayer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary model format of N-light-N. All numbers are little-endian.
+ * <pre>
+ * offset  content
+ * 0       magic number "NLNM"
+ * 4       int32   format version (currently 1)
+ * 8       int32   length D of the description, then D bytes of UTF-8 text
+ *                 describing the architecture
+ * ...     int32   length S of the skeleton, then S bytes: the model serialized
+ *                 with Java serialization, but without its weights, biases,
+ *                 gradients and computation buffers
+ * ...     int32   number N of sections, then N entries of
+ *                 {int64 offset, int32 rows, int32 columns}
+ * ...     padding up to the first section
+ * offset  float32 values of each section, row-major, every section starting
+ *                 at a multiple of 64 bytes
+ * </pre>
+ * There is one section for the weights ([input][output]) and one for the bias
+ * ([1][output]) of each layer. Gradients are not stored: they are allocated
+ * again by the layers when the model is trained after loading. The buffers
+ * only used while computing, i.e., the inputs, outputs and errors of the
+ * layers and the content of the data blocks, are not stored either: they are
+ * allocated again, filled with zeros, when the model is read.
+ * <p>
+ * Each section is mapped in memory on its own, so the file can be larger than
+ * 2 GB, but a single section cannot. The layers compute with Java arrays, so
+ * getModel() copies the values of the sections into new arrays; the mapped
+ * sections are read directly only by getSection() and readInto(), e.g., for
+ * restoring a checkpoint or a cached training into an existing model. Files
+ * written with the previous format (plain Java serialization) are still read.
+ * @author agent
+ */
+public class ModelFile {
+    /**
+     * Magic number at the beginning of the files.
+     */
+    public static final byte[] MAGIC = {'N', 'L', 'N', 'M'};
+    /**
+     * Current version of the format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Alignment of the sections, in bytes.
+     */
+    public static final int ALIGNMENT = 64;
+    /**
+     * Number of values written at once.
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * Architecture description.
+     */
+    private final String description;
+    /**
+     * Serialized model without weights.
+     */
+    private final byte[] skeleton;
+    /**
+     * Offsets of the sections in the file.
+     */
+    private final long[] offsets;
+    /**
+     * Number of rows of the sections.
+     */
+    private final int[] rows;
+    /**
+     * Number of columns of the sections.
+     */
+    private final int[] cols;
+    /**
+     * Mapped content of the sections.
+     */
+    private final MappedByteBuffer[] maps;
+
+    /**
+     * Section number of the arrays which are not stored and read as null.
+     */
+    private static final int NONE = -1;
+    /**
+     * Section number of the arrays which are not stored and read as new
+     * arrays filled with zeros.
+     */
+    private static final int BLANK = -2;
+
+    /**
+     * Reference to a section, replacing an array in the skeleton.
+     */
+    private static class SectionRef implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /**
+         * Section number, or NONE or BLANK for arrays which are not stored.
+         */
+        final int section;
+        /**
+         * Dimensions of the array.
+         */
+        final int rows, cols;
+        /**
+         * True if the array is a float[], false for a float[][].
+         */
+        final boolean vector;
+
+        SectionRef(int section, int rows, int cols, boolean vector) {
+            this.section = section;
+            this.rows = rows;
+            this.cols = cols;
+            this.vector = vector;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Opening
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Opens a model file and maps it in memory. Nothing is deserialized yet.
+     * @param fileName file name
+     * @throws IOException if the file cannot be read or is not a model file
+     */
+    public ModelFile(String fileName) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long pos = 0;
+            ByteBuffer head = read(ch, pos, MAGIC.length + 8);
+            pos += head.limit();
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(fileName + " is not an N-light-N model file");
+            }
+            int version = head.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported model file version " + version + " in " + fileName);
+            }
+
+            ByteBuffer desc = read(ch, pos, head.getInt() + 4);
+            pos += desc.limit();
+            byte[] d = new byte[desc.limit() - 4];
+            desc.get(d);
+            description = new String(d, StandardCharsets.UTF_8);
+
+            ByteBuffer skel = read(ch, pos, desc.getInt() + 4);
+            pos += skel.limit();
+            skeleton = new byte[skel.limit() - 4];
+            skel.get(skeleton);
+
+            int n = skel.getInt();
+            ByteBuffer table = read(ch, pos, 16 * n);
+            offsets = new long[n];
+            rows = new int[n];
+            cols = new int[n];
+            maps = new MappedByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                offsets[i] = table.getLong();
+                rows[i] = table.getInt();
+                cols[i] = table.getInt();
+                long bytes = 4L * rows[i] * cols[i];
+                if (bytes > Integer.MAX_VALUE) {
+                    throw new IOException("section " + i + " of " + fileName + " is larger than 2 GB");
+                }
+                maps[i] = ch.map(FileChannel.MapMode.READ_ONLY, offsets[i], bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads bytes from a file.
+     * @param ch file channel
+     * @param pos position of the first byte
+     * @param n number of bytes
+     * @return a little-endian buffer containing the bytes
+     * @throws IOException if the file is too short or cannot be read
+     */
+    private static ByteBuffer read(FileChannel ch, long pos, int n) throws IOException {
+        if (n < 0) {
+            throw new IOException("corrupted model file");
+        }
+        ByteBuffer bb = ByteBuffer.allocate(n);
+        while (bb.hasRemaining()) {
+            if (ch.read(bb, pos + bb.position()) < 0) {
+                throw new EOFException("truncated model file");
+            }
+        }
+        bb.flip();
+        return bb.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Checks whether a file starts with the magic number of the format.
+     * @param fileName file name
+     * @return true if the file uses the binary model format
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isModelFile(String fileName) throws IOException {
+        try (InputStream is = new FileInputStream(fileName)) {
+            byte[] magic = new byte[MAGIC.length];
+            int n = is.read(magic);
+            return n == MAGIC.length && Arrays.equals(magic, MAGIC);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Reading
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Reads a model, whatever the format of the file is.
+     * @param fileName file name
+     * @return the model
+     * @throws IOException if the file cannot be read
+     * @throws ClassNotFoundException if the file contains unknown classes
+     */
+    public static Object read(String fileName) throws IOException, ClassNotFoundException {
+        if (isModelFile(fileName)) {
+            return new ModelFile(fileName).getModel();
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(fileName))) {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * Builds the model, copying the weights from the mapped sections into
+     * new arrays.
+     * @return a new instance of the model
+     * @throws IOException if the skeleton cannot be read
+     * @throws ClassNotFoundException if the skeleton contains unknown classes
+     */
+    public Object getModel() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(skeleton)) {
+            {
+                enableResolveObject(true);
+            }
+
+            @Override
+            protected Object resolveObject(Object obj) {
+                if (!(obj instanceof SectionRef)) {
+                    return obj;
+                }
+                SectionRef ref = (SectionRef) obj;
+                if (ref.section == NONE) {
+                    return null;
+                }
+                if (ref.vector) {
+                    float[] v = new float[ref.cols];
+                    if (ref.section != BLANK) {
+                        getSection(ref.section).get(v);
+                    }
+                    return v;
+                }
+                float[][] m = new float[ref.rows][ref.cols];
+                if (ref.section != BLANK) {
+                    FloatBuffer fb = getSection(ref.section);
+                    for (float[] row : m) {
+                        fb.get(row);
+                    }
+                }
+                return m;
+            }
+        }) {
+            return ois.readObject();
+        }
+    }
+
+    /**
+     * @return the architecture description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the number of sections
+     */
+    public int countSections() {
+        return offsets.length;
+    }
+
+    /**
+     * @param n section number
+     * @return number of rows of the section
+     */
+    public int getRows(int n) {
+        return rows[n];
+    }
+
+    /**
+     * @param n section number
+     * @return number of columns of the section
+     */
+    public int getColumns(int n) {
+        return cols[n];
+    }
+
+    /**
+     * @param n section number
+     * @return the position of the section in the file
+     */
+    long getOffset(int n) {
+        return offsets[n];
+    }
+
+    /**
+     * Returns a read-only view on the mapped values of a section, which
+     * can be used without copying them.
+     * @param n section number
+     * @return the values of the section, row-major
+     */
+    public FloatBuffer getSection(int n) {
+        return maps[n].duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /**
+     * Checks whether the sections have the dimensions of the weights and
+     * biases of an existing model, in the same order.
+     * @param model model, usually an SCAE or a classifier
+     * @return true if readInto() can be used with the model
+     * @throws IOException if the model cannot be serialized
+     */
+    public boolean fits(Object model) throws IOException {
+        List<Object> sections = new ArrayList<>();
+        skeleton(model, sections);
+        return fits(sections);
+    }
+
+    /**
+     * Copies the sections into the weights and biases of an existing model,
+     * so that the objects referring to it, e.g., a classifier built on an
+     * SCAE, see the new values. The rest of the model is left as it is.
+     * @param model model of the same architecture, see fits()
+     * @throws IOException if the model does not fit the file
+     */
+    public void readInto(Object model) throws IOException {
+        List<Object> sections = new ArrayList<>();
+        skeleton(model, sections);
+        if (!copyTo(sections)) {
+            throw new IOException("the model does not fit the sections of the file");
+        }
+    }
+
+    /**
+     * Copies the sections into arrays, if they all have the same dimensions.
+     * @param sections float[] and float[][], in the order of the sections
+     * @return false, and nothing is copied, if the dimensions do not match
+     */
+    boolean copyTo(List<Object> sections) {
+        if (!fits(sections)) {
+            return false;
+        }
+        for (int i = 0; i < sections.size(); i++) {
+            Object a = sections.get(i);
+            if (a instanceof float[]) {
+                getSection(i).get((float[]) a);
+            } else {
+                FloatBuffer fb = getSection(i);
+                for (float[] row : (float[][]) a) {
+                    fb.get(row);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param sections float[] and float[][], in the order of the sections
+     * @return true if they have the dimensions of the sections
+     */
+    private boolean fits(List<Object> sections) {
+        if (sections.size() != countSections()) {
+            return false;
+        }
+        for (int i = 0; i < sections.size(); i++) {
+            Object a = sections.get(i);
+            boolean match;
+            if (a instanceof float[]) {
+                match = rows[i] == 1 && cols[i] == ((float[]) a).length;
+            } else {
+                float[][] m = (float[][]) a;
+                match = rows[i] == m.length && cols[i] == m[0].length;
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Writing
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Writes a model to a file.
+     * @param model model to store, usually an SCAE or a classifier
+     * @param fileName file name
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Object model, String fileName) throws IOException {
+        write(model, fileName, new ArrayList<>());
+    }
+
+    /**
+     * Writes a model to a file, and lists the arrays stored in the sections.
+     * @param model model to store
+     * @param fileName file name
+     * @param sections list to which the float[] and float[][] of the sections are added,
+     *                 in the order of the sections
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Object model, String fileName, List<Object> sections) throws IOException {
+        byte[] skel = skeleton(model, sections);
+        byte[] desc = describe(model, sections).getBytes(StandardCharsets.UTF_8);
+
+        // Computing the layout
+        long pos = MAGIC.length + 4 + 4 + desc.length + 4 + skel.length + 4 + 16L * sections.size();
+        long[] offsets = new long[sections.size()];
+        for (int i = 0; i < sections.size(); i++) {
+            pos = align(pos);
+            offsets[i] = pos;
+            pos += 4L * size(sections.get(i));
+        }
+
+        try (FileChannel ch = FileChannel.open(
+                Paths.get(fileName),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+            head.put(MAGIC);
+            head.putInt(VERSION);
+            head.putInt(desc.length);
+            head.flip();
+            ByteBuffer skelLength = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            skelLength.putInt(skel.length);
+            skelLength.flip();
+            ByteBuffer table = ByteBuffer.allocate(4 + 16 * sections.size()).order(ByteOrder.LITTLE_ENDIAN);
+            table.putInt(sections.size());
+            for (int i = 0; i < sections.size(); i++) {
+                Object s = sections.get(i);
+                table.putLong(offsets[i]);
+                table.putInt((s instanceof float[]) ? 1 : ((float[][]) s).length);
+                table.putInt((s instanceof float[]) ? ((float[]) s).length : ((float[][]) s)[0].length);
+            }
+            table.flip();
+
+            ByteBuffer[] parts = {head, ByteBuffer.wrap(desc), skelLength, ByteBuffer.wrap(skel), table};
+            long written = 0;
+            for (ByteBuffer part : parts) {
+                while (part.hasRemaining()) {
+                    written += ch.write(part, written);
+                }
+            }
+
+            for (int i = 0; i < sections.size(); i++) {
+                writeSection(ch, offsets[i], sections.get(i));
+            }
+        }
+    }
+
+
+    /**
+     * Serializes a model without its weights, and lists the arrays stored in
+     * the sections.
+     * @param model model to store
+     * @param sections list to which the float[] and float[][] of the sections are added,
+     *                 in the order of the sections
+     * @return the skeleton
+     * @throws IOException if the model cannot be serialized
+     */
+    private static byte[] skeleton(Object model, final List<Object> sections) throws IOException {
+        final Map<Object, SectionRef> refs = new IdentityHashMap<>();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos) {
+            {
+                enableReplaceObject(true);
+            }
+
+            @Override
+            protected Object replaceObject(Object obj) {
+                if (obj instanceof AbstractLayer) {
+                    AbstractLayer l = (AbstractLayer) obj;
+                    float[][] w = l.getWeights();
+                    float[] b = l.getBias();
+                    if (w != null && !refs.containsKey(w)) {
+                        refs.put(w, new SectionRef(sections.size(), w.length, w[0].length, false));
+                        sections.add(w);
+                    }
+                    if (b != null && !refs.containsKey(b)) {
+                        refs.put(b, new SectionRef(sections.size(), 1, b.length, true));
+                        sections.add(b);
+                    }
+                    float[][] g = l.getGradient();
+                    if (g != null && !refs.containsKey(g)) {
+                        refs.put(g, new SectionRef(NONE, g.length, g[0].length, false));
+                    }
+                    float[] bg = l.getBiasGradient();
+                    if (bg != null && !refs.containsKey(bg)) {
+                        refs.put(bg, new SectionRef(NONE, 1, bg.length, true));
+                    }
+                    for (float[] a : l.getBuffers()) {
+                        blank(a);
+                    }
+                    return obj;
+                }
+                if (obj instanceof AutoEncoder) {
+                    blank(((AutoEncoder) obj).inputArray);
+                    blank(((AutoEncoder) obj).decoded);
+                    return obj;
+                }
+                if (obj instanceof SCAE) {
+                    blank(((SCAE) obj).featureVector);
+                    return obj;
+                }
+                if (obj.getClass() == DataBlock.class) {
+                    DataBlock db = (DataBlock) obj;
+                    for (int x = 0; x < db.getWidth(); x++) {
+                        for (int y = 0; y < db.getHeight(); y++) {
+                            blank(db.getValues(x, y));
+                        }
+                    }
+                    if (db.weight != null && !refs.containsKey(db.weight)) {
+                        refs.put(db.weight, new SectionRef(BLANK, db.getWidth(), db.getHeight(), false));
+                    }
+                    return obj;
+                }
+                SectionRef ref = refs.get(obj);
+                return (ref == null) ? obj : ref;
+            }
+
+            /**
+             * Stores an array as a reference to a blank array of the same
+             * size, unless it is already stored otherwise.
+             */
+            private void blank(float[] a) {
+                if (a != null && !refs.containsKey(a)) {
+                    refs.put(a, new SectionRef(BLANK, 1, a.length, true));
+                }
+            }
+        }) {
+            oos.writeObject(model);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Writes the values of a section at a given position of a file.
+     * @param ch file channel
+     * @param offset position of the section
+     * @param s a float[] or float[][]
+     * @throws IOException if the file cannot be written
+     */
+    static void writeSection(FileChannel ch, long offset, Object s) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(4 * (int) Math.min(CHUNK, size(s)));
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer fb = bb.asFloatBuffer();
+        float[][] m = (s instanceof float[]) ? new float[][]{(float[]) s} : (float[][]) s;
+        long pos = offset;
+        for (float[] row : m) {
+            for (int from = 0; from < row.length; ) {
+                int n = Math.min(fb.remaining(), row.length - from);
+                fb.put(row, from, n);
+                from += n;
+                if (!fb.hasRemaining()) {
+                    pos = flush(ch, pos, bb, fb);
+                }
+            }
+        }
+        flush(ch, pos, bb, fb);
+    }
+
+    /**
+     * Writes the values put into a buffer, and clears it.
+     * @param ch file channel
+     * @param pos where to write the values
+     * @param bb byte buffer
+     * @param fb float view of the byte buffer
+     * @return the position following the written values
+     * @throws IOException if the file cannot be written
+     */
+    private static long flush(FileChannel ch, long pos, ByteBuffer bb, FloatBuffer fb) throws IOException {
+        bb.clear();
+        bb.limit(4 * fb.position());
+        while (bb.hasRemaining()) {
+            pos += ch.write(bb, pos);
+        }
+        fb.clear();
+        return pos;
+    }
+
+    /**
+     * Builds the textual description of the architecture stored in the header.
+     * @param model model
+     * @param sections weight sections
+     * @return a description
+     */
+    private static String describe(Object model, List<Object> sections) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class: ").append(model.getClass().getName()).append('\n');
+        if (model instanceof SCAE) {
+            sb.append("scae: ").append(model).append('\n');
+        }
+        if (model instanceof Classifier) {
+            Classifier c = (Classifier) model;
+            sb.append("classifier: ").append(c.name()).append(" (").append(c.type()).append(")\n");
+            sb.append("input: ").append(c.getInputWidth()).append('x').append(c.getInputHeight()).append('\n');
+            sb.append("outputs: ").append(c.getOutputSize()).append('\n');
+        }
+        for (int i = 0; i < sections.size(); i++) {
+            Object s = sections.get(i);
+            sb.append("section ").append(i).append(": ");
+            if (s instanceof float[]) {
+                sb.append("bias ").append(((float[]) s).length).append('\n');
+            } else {
+                float[][] m = (float[][]) s;
+                sb.append("weights ").append(m.length).append('x').append(m[0].length).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param s a float[] or float[][]
+     * @return the number of values
+     */
+    private static long size(Object s) {
+        if (s instanceof float[]) {
+            return ((float[]) s).length;
+        }
+        float[][] m = (float[][]) s;
+        return (long) m.length * m[0].length;
+    }
+
+    /**
+     * @param pos position in the file
+     * @return the next aligned position
+     */
+    private static long align(long pos) {
+        return (pos + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,496 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+/**
+ * Generates synthetic document pages with their ground-truth, so that
+ * training and evaluation can be tested at any scale without real data.
+ * A page has a textured parchment background, lines of text-like strokes,
+ * decorated initials and ornaments, and glosses in the left margin.
+ * <p>
+ * The ground-truth follows the convention of the datasets: the blue
+ * channel of a pixel gives its class. Class 0 is the background, class 1
+ * the main text, class 2 the decorations and the classes 3 and above are
+ * glosses with different inks. Only the ink is labelled.
+ * <p>
+ * The n-th page only depends on the seed and on n, so that pages can be
+ * generated on several threads, in any order.
+ *
+ * @author agent
+ */
+public class PageGenerator {
+
+    /**
+     * A generated page.
+     */
+    public static class Page {
+        /**
+         * RGB image of the page.
+         */
+        public final BufferedImage image;
+        /**
+         * Ground-truth, the blue channel giving the class.
+         */
+        public final BufferedImage groundTruth;
+
+        Page(BufferedImage image, BufferedImage groundTruth) {
+            this.image = image;
+            this.groundTruth = groundTruth;
+        }
+    }
+
+    /**
+     * Width of the pages.
+     */
+    private final int width;
+
+    /**
+     * Height of the pages.
+     */
+    private final int height;
+
+    /**
+     * Number of classes, including the background.
+     */
+    private final int nbClasses;
+
+    /**
+     * Seed of the generator.
+     */
+    private final long seed;
+
+    /**
+     * Colors of the ground-truth: class i is (0,0,i).
+     */
+    private final IndexColorModel gtColors;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a generator.
+     * @param width width of the pages
+     * @param height height of the pages
+     * @param nbClasses number of classes, between 2 and 256, including the background
+     * @param seed seed of the generator
+     */
+    public PageGenerator(int width, int height, int nbClasses, long seed) {
+        if (width < 16 || height < 16) {
+            throw new Error("The pages must be at least 16x16 pixels");
+        }
+        if (nbClasses < 2 || nbClasses > 256) {
+            throw new Error("The number of classes must be between 2 and 256");
+        }
+        this.width = width;
+        this.height = height;
+        this.nbClasses = nbClasses;
+        this.seed = seed;
+
+        byte[] zero = new byte[nbClasses];
+        byte[] blue = new byte[nbClasses];
+        for (int i = 0; i < nbClasses; i++) {
+            blue[i] = (byte) i;
+        }
+        gtColors = new IndexColorModel(8, nbClasses, zero, zero, blue);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Generation
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Generates a page.
+     * @param n number of the page
+     * @return the page and its ground-truth
+     */
+    public Page generate(int n) {
+        Random rand = new Random(seed * 0x9E3779B97F4A7C15L + n);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        BufferedImage gt = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, gtColors);
+
+        background(img, rand);
+
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        stains(g, rand);
+        Graphics2D gg = gt.createGraphics();
+        gg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+
+        // Main text block, leaving the left margin to the glosses
+        int lineHeight = Math.max(6, Math.min(width, height) / 45);
+        mainText(g, gg, rand, lineHeight,
+                (int) (width * 0.2), (int) (height * 0.08), (int) (width * 0.92), (int) (height * 0.92));
+        if (nbClasses > 3) {
+            glosses(g, gg, rand, Math.max(4, lineHeight * 3 / 5),
+                    (int) (width * 0.03), (int) (height * 0.08), (int) (width * 0.17), (int) (height * 0.92));
+        }
+
+        g.dispose();
+        gg.dispose();
+        return new Page(img, gt);
+    }
+
+    /**
+     * Fills the page with a parchment-like texture: a base color modulated
+     * by two octaves of value noise and by a grain.
+     * @param img page
+     * @param rand random number generator of the page
+     */
+    private void background(BufferedImage img, Random rand) {
+        int[] px = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        float r = 220 + rand.nextInt(20);
+        float g = r - 8 - rand.nextInt(10);
+        float b = g - 25 - rand.nextInt(20);
+        int coarse = Math.max(8, Math.min(width, height) / 6);
+        int fine = Math.max(4, coarse / 8);
+        float[][] coarseGrid = grid(rand, coarse);
+        float[][] fineGrid = grid(rand, fine);
+        float[] coarseRow = new float[coarseGrid[0].length];
+        float[] fineRow = new float[fineGrid[0].length];
+        int grain = rand.nextInt() | 1;
+        for (int y = 0; y < height; y++) {
+            interpolateRow(coarseGrid, coarse, y, coarseRow);
+            interpolateRow(fineGrid, fine, y, fineRow);
+            int o = y * width;
+            for (int x = 0; x < width; x++) {
+                float v = 0.85f
+                        + 0.10f * interpolate(coarseRow, coarse, x)
+                        + 0.04f * interpolate(fineRow, fine, x);
+                // Xorshift grain, cheaper than a Random for millions of pixels
+                grain ^= grain << 13;
+                grain ^= grain >>> 17;
+                grain ^= grain << 5;
+                v += (grain & 0xFF) / 255.0f * 0.03f;
+                px[o + x] = (clamp(r * v) << 16) | (clamp(g * v) << 8) | clamp(b * v);
+            }
+        }
+    }
+
+    /**
+     * Draws a few darker stains with soft borders.
+     * @param g graphics of the page
+     * @param rand random number generator of the page
+     */
+    private void stains(Graphics2D g, Random rand) {
+        int nb = rand.nextInt(4);
+        for (int i = 0; i < nb; i++) {
+            float radius = Math.min(width, height) * (0.05f + 0.15f * rand.nextFloat());
+            float cx = rand.nextFloat() * width;
+            float cy = rand.nextFloat() * height;
+            g.setPaint(new RadialGradientPaint(
+                    cx, cy, radius,
+                    new float[]{0, 1},
+                    new Color[]{new Color(90, 60, 20, 20 + rand.nextInt(40)), new Color(90, 60, 20, 0)}
+            ));
+            g.fill(new java.awt.geom.Ellipse2D.Float(cx - radius, cy - radius, 2 * radius, 2 * radius));
+        }
+    }
+
+    /**
+     * Writes paragraphs of text in a block. Paragraphs start with a
+     * decorated initial and are separated by ornaments, if there is a
+     * decoration class.
+     * @param g graphics of the page
+     * @param gg graphics of the ground-truth
+     * @param rand random number generator of the page
+     * @param lineHeight distance between two baselines
+     * @param x0 left of the block
+     * @param y0 top of the block
+     * @param x1 right of the block
+     * @param y1 bottom of the block
+     */
+    private void mainText(Graphics2D g, Graphics2D gg, Random rand, int lineHeight, int x0, int y0, int x1, int y1) {
+        Color ink = ink(rand, 40, 30, 20);
+        Color[] decorationInks = {ink(rand, 170, 30, 30), ink(rand, 40, 60, 150)};
+        boolean decorated = nbClasses > 2;
+
+        int y = y0 + lineHeight;
+        while (y <= y1) {
+            int lines = 3 + rand.nextInt(8);
+            int indent = 0;
+            if (decorated) {
+                // Initial covering the first two lines
+                int size = 2 * lineHeight - lineHeight / 4;
+                Color c = decorationInks[rand.nextInt(decorationInks.length)];
+                initial(g, gg, rand, c, x0, y - lineHeight + lineHeight / 4, size);
+                indent = size + lineHeight / 2;
+            }
+            for (int l = 0; l < lines && y <= y1; l++) {
+                int start = x0 + ((l < 2) ? indent : 0);
+                int end = (l == lines - 1) ? start + (int) ((x1 - start) * (0.2f + 0.6f * rand.nextFloat())) : x1;
+                textLine(g, gg, rand, ink, 1, start, end, y, lineHeight);
+                y += lineHeight;
+            }
+            if (decorated && rand.nextInt(3) == 0 && y + lineHeight <= y1) {
+                ornament(g, gg, rand, decorationInks[0], x0 + (x1 - x0) / 4, x0 + 3 * (x1 - x0) / 4,
+                        y - lineHeight / 3, lineHeight);
+                y += lineHeight;
+            }
+            y += lineHeight / 2;
+        }
+    }
+
+    /**
+     * Writes glosses in a margin. The margin is split into vertical slots,
+     * which are randomly given to the gloss classes or left empty.
+     * @param g graphics of the page
+     * @param gg graphics of the ground-truth
+     * @param rand random number generator of the page
+     * @param lineHeight distance between two baselines
+     * @param x0 left of the margin
+     * @param y0 top of the margin
+     * @param x1 right of the margin
+     * @param y1 bottom of the margin
+     */
+    private void glosses(Graphics2D g, Graphics2D gg, Random rand, int lineHeight, int x0, int y0, int x1, int y1) {
+        Color[] inks = new Color[nbClasses];
+        for (int c = 3; c < nbClasses; c++) {
+            inks[c] = Color.getHSBColor(rand.nextFloat(), 0.5f + 0.3f * rand.nextFloat(), 0.2f + 0.3f * rand.nextFloat());
+        }
+        int slot = 8 * lineHeight;
+        int n = 0;
+        for (int y = y0; y + slot <= y1; y += slot, n++) {
+            if (rand.nextInt(5) < 2) {
+                continue;
+            }
+            int cls = 3 + n % (nbClasses - 3);
+            int lines = 2 + rand.nextInt(5);
+            for (int l = 1; l <= lines; l++) {
+                textLine(g, gg, rand, inks[cls], cls, x0, x1, y + l * lineHeight, lineHeight);
+            }
+        }
+    }
+
+    /**
+     * Writes a line of words made of stroke-like glyphs.
+     * @param g graphics of the page
+     * @param gg graphics of the ground-truth
+     * @param rand random number generator of the page
+     * @param ink color of the strokes
+     * @param cls class of the strokes
+     * @param x0 start of the line
+     * @param x1 end of the line
+     * @param baseline position of the baseline
+     * @param lineHeight distance between two baselines
+     */
+    private void textLine(Graphics2D g, Graphics2D gg, Random rand, Color ink, int cls,
+                          int x0, int x1, int baseline, int lineHeight) {
+        float xHeight = lineHeight * 0.35f;
+        float glyphWidth = lineHeight * 0.3f;
+        setStroke(g, gg, Math.max(1, lineHeight / 12f));
+        g.setColor(ink);
+        gg.setColor(classColor(cls));
+        float x = x0;
+        while (true) {
+            int glyphs = 1 + rand.nextInt(8);
+            if (x + glyphs * glyphWidth > x1) {
+                break;
+            }
+            Path2D.Float word = new Path2D.Float();
+            for (int i = 0; i < glyphs; i++) {
+                glyph(word, rand, x, baseline, glyphWidth, xHeight);
+                x += glyphWidth;
+            }
+            g.draw(word);
+            gg.draw(word);
+            x += glyphWidth * (1 + rand.nextFloat());
+        }
+    }
+
+    /**
+     * Adds a glyph to a word: a few curves in the x-height band, sometimes
+     * with an ascender or a descender.
+     * @param word path of the word
+     * @param rand random number generator of the page
+     * @param x left of the glyph
+     * @param baseline position of the baseline
+     * @param w width of the glyph
+     * @param xHeight height of the lower case letters
+     */
+    private void glyph(Path2D.Float word, Random rand, float x, float baseline, float w, float xHeight) {
+        float top = baseline - xHeight;
+        int kind = rand.nextInt(10);
+        if (kind == 0) {
+            top = baseline - 2 * xHeight;
+        }
+        float bottom = (kind == 1) ? baseline + xHeight * 0.8f : baseline;
+        word.moveTo(x + w * 0.2f, top + rand.nextFloat() * xHeight * 0.3f);
+        int strokes = 1 + rand.nextInt(3);
+        for (int s = 0; s < strokes; s++) {
+            word.quadTo(
+                    x + w * rand.nextFloat(), top + (bottom - top) * rand.nextFloat(),
+                    x + w * (0.2f + 0.7f * rand.nextFloat()), (s % 2 == 0) ? bottom : top + xHeight * 0.2f
+            );
+        }
+    }
+
+    /**
+     * Draws a decorated initial: a colored square with light curls.
+     * @param g graphics of the page
+     * @param gg graphics of the ground-truth
+     * @param rand random number generator of the page
+     * @param ink color of the initial
+     * @param x left of the initial
+     * @param y top of the initial
+     * @param size side of the initial
+     */
+    private void initial(Graphics2D g, Graphics2D gg, Random rand, Color ink, int x, int y, int size) {
+        int arc = size / 4;
+        g.setColor(ink);
+        g.fillRoundRect(x, y, size, size, arc, arc);
+        gg.setColor(classColor(2));
+        gg.fillRoundRect(x, y, size, size, arc, arc);
+
+        g.setColor(new Color(235, 220, 190));
+        g.setStroke(new BasicStroke(Math.max(1, size / 16f), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        for (int i = 0; i < 3; i++) {
+            int r = size / 6 + rand.nextInt(Math.max(1, size / 4));
+            g.drawArc(x + rand.nextInt(Math.max(1, size - r)), y + rand.nextInt(Math.max(1, size - r)),
+                    r, r, rand.nextInt(360), 180 + rand.nextInt(180));
+        }
+    }
+
+    /**
+     * Draws a wavy ornament between two paragraphs.
+     * @param g graphics of the page
+     * @param gg graphics of the ground-truth
+     * @param rand random number generator of the page
+     * @param ink color of the ornament
+     * @param x0 start of the ornament
+     * @param x1 end of the ornament
+     * @param y vertical center of the ornament
+     * @param lineHeight distance between two baselines
+     */
+    private void ornament(Graphics2D g, Graphics2D gg, Random rand, Color ink, int x0, int x1, int y, int lineHeight) {
+        float amplitude = lineHeight * (0.1f + 0.15f * rand.nextFloat());
+        float period = lineHeight * (0.5f + rand.nextFloat());
+        Path2D.Float wave = new Path2D.Float();
+        wave.moveTo(x0, y);
+        for (float x = x0; x + period <= x1; x += period) {
+            wave.quadTo(x + period / 4, y - amplitude, x + period / 2, y);
+            wave.quadTo(x + 3 * period / 4, y + amplitude, x + period, y);
+        }
+        setStroke(g, gg, Math.max(1, lineHeight / 10f));
+        g.setColor(ink);
+        gg.setColor(classColor(2));
+        g.draw(wave);
+        gg.draw(wave);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * @param cls class
+     * @return the color of the class in the ground-truth
+     */
+    private Color classColor(int cls) {
+        return new Color(gtColors.getRGB(cls));
+    }
+
+    /**
+     * Uses the same round stroke on the page and on the ground-truth.
+     * @param g graphics of the page
+     * @param gg graphics of the ground-truth
+     * @param width width of the stroke
+     */
+    private static void setStroke(Graphics2D g, Graphics2D gg, float width) {
+        BasicStroke s = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        g.setStroke(s);
+        gg.setStroke(s);
+    }
+
+    /**
+     * @param rand random number generator of the page
+     * @param r red component
+     * @param g green component
+     * @param b blue component
+     * @return the color with some random variations
+     */
+    private static Color ink(Random rand, int r, int g, int b) {
+        return new Color(
+                clamp(r + rand.nextInt(31) - 15),
+                clamp(g + rand.nextInt(31) - 15),
+                clamp(b + rand.nextInt(31) - 15)
+        );
+    }
+
+    /**
+     * @param rand random number generator of the page
+     * @param cell size of the cells
+     * @return random values between -1 and 1 at the corners of the cells covering the page
+     */
+    private float[][] grid(Random rand, int cell) {
+        float[][] res = new float[height / cell + 2][width / cell + 2];
+        for (float[] row : res) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = rand.nextFloat() * 2 - 1;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Interpolates the rows of a grid at a given height.
+     * @param grid values at the corners of the cells
+     * @param cell size of the cells
+     * @param y height
+     * @param row where the values are stored
+     */
+    private static void interpolateRow(float[][] grid, int cell, int y, float[] row) {
+        int gy = y / cell;
+        float t = (y % cell) / (float) cell;
+        for (int i = 0; i < row.length; i++) {
+            row[i] = grid[gy][i] + t * (grid[gy + 1][i] - grid[gy][i]);
+        }
+    }
+
+    /**
+     * @param row interpolated row of a grid
+     * @param cell size of the cells
+     * @param x position
+     * @return the interpolated value at x
+     */
+    private static float interpolate(float[] row, int cell, int x) {
+        int gx = x / cell;
+        float t = (x % cell) / (float) cell;
+        return row[gx] + t * (row[gx + 1] - row[gx]);
+    }
+
+    /**
+     * @param v value
+     * @return the value rounded and clamped between 0 and 255
+     */
+    private static int clamp(float v) {
+        return Math.max(0, Math.min(255, Math.round(v)));
+    }
+}
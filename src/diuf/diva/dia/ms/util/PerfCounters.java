@@ -0,0 +1,402 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util;
+
+import com.sun.net.httpserver.HttpServer;
+import diuf.diva.dia.ms.ml.ae.AutoEncoder;
+import diuf.diva.dia.ms.ml.ae.ffcnn.ConvolutionalLayer;
+import diuf.diva.dia.ms.ml.layer.Layer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Performance counters of the layers, autoencoders and convolutions. For each
+ * kind of layer (class and dimensions) and operation, the number of calls is
+ * counted, and one call out of 64 is timed. The time spent and the FLOP rate
+ * are estimated from the timed calls.
+ * <p>
+ * The counters are disabled by default, and then cost one test per call. They
+ * are enabled with -Dnlightn.perf=true, or by starting the metrics endpoint
+ * with -Dnlightn.perf.port=9100 (or startServer()). Each counter is also
+ * registered as an MXBean named nlightn:type=PerfCounter,layer=...,op=...
+ * <p>
+ * The endpoint, on localhost only, answers GET /metrics in the Prometheus
+ * text format.
+ *
+ * @author agent
+ */
+public final class PerfCounters {
+    /**
+     * Instrumented operations.
+     */
+    public enum Op {
+        COMPUTE, BACKPROPAGATE, LEARN, TRAIN;
+
+        /**
+         * @return the name used in the metrics
+         */
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Attributes of a counter exposed through JMX.
+     */
+    public interface CounterMXBean {
+        /**
+         * @return the number of calls
+         */
+        long getCalls();
+
+        /**
+         * @return the number of timed calls
+         */
+        long getSampledCalls();
+
+        /**
+         * @return the estimated time spent in all calls, in seconds
+         */
+        double getEstimatedSeconds();
+
+        /**
+         * @return the estimated floating-point operations per second, 0 if unknown
+         */
+        double getFlopsPerSecond();
+    }
+
+    /**
+     * Counter of an operation of a kind of layer.
+     */
+    public static final class Counter implements CounterMXBean {
+        /**
+         * Name of the layer.
+         */
+        final String layer;
+        /**
+         * Operation.
+         */
+        final Op op;
+        /**
+         * Estimated floating-point operations per call, 0 if unknown.
+         */
+        final long flopsPerCall;
+        /**
+         * Number of calls.
+         */
+        final LongAdder calls = new LongAdder();
+        /**
+         * Number of timed calls.
+         */
+        final LongAdder sampledCalls = new LongAdder();
+        /**
+         * Time spent in the timed calls.
+         */
+        final LongAdder sampledNanos = new LongAdder();
+
+        /**
+         * @param layer name of the layer
+         * @param op operation
+         * @param flopsPerCall estimated floating-point operations per call
+         */
+        Counter(String layer, Op op, long flopsPerCall) {
+            this.layer = layer;
+            this.op = op;
+            this.flopsPerCall = flopsPerCall;
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getSampledCalls() {
+            return sampledCalls.sum();
+        }
+
+        @Override
+        public double getEstimatedSeconds() {
+            long s = sampledCalls.sum();
+            return (s == 0) ? 0 : sampledNanos.sum() * 1e-9 * calls.sum() / s;
+        }
+
+        @Override
+        public double getFlopsPerSecond() {
+            long ns = sampledNanos.sum();
+            return (ns == 0) ? 0 : flopsPerCall * sampledCalls.sum() / (ns * 1e-9);
+        }
+    }
+
+    /**
+     * Counters of the operations of one layer, kept by the layer.
+     */
+    public static final class Probe {
+        /**
+         * Counters, by operation.
+         */
+        private final Counter[] counters = new Counter[Op.values().length];
+
+        /**
+         * Starts an operation.
+         * @param op operation
+         * @return the start time if the call is timed, 0 otherwise
+         */
+        public long start(Op op) {
+            if (!enabled) {
+                return 0;
+            }
+            counters[op.ordinal()].calls.increment();
+            if ((ThreadLocalRandom.current().nextInt() & SAMPLING_MASK) != 0) {
+                return 0;
+            }
+            return System.nanoTime();
+        }
+
+        /**
+         * Ends an operation.
+         * @param op operation
+         * @param start value returned by start()
+         */
+        public void stop(Op op, long start) {
+            if (start == 0) {
+                return;
+            }
+            Counter c = counters[op.ordinal()];
+            c.sampledNanos.add(System.nanoTime() - start);
+            c.sampledCalls.increment();
+        }
+    }
+
+    /**
+     * One call out of SAMPLING_MASK+1 is timed.
+     */
+    private static final int SAMPLING_MASK = 63;
+    /**
+     * Counters, by layer name and operation.
+     */
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    /**
+     * True if the calls are counted.
+     */
+    private static volatile boolean enabled = Boolean.getBoolean("nlightn.perf");
+    /**
+     * Metrics endpoint, or null.
+     */
+    private static HttpServer server;
+
+    static {
+        int port = Integer.getInteger("nlightn.perf.port", 0);
+        if (port > 0) {
+            try {
+                startServer(port);
+            } catch (IOException e) {
+                System.err.println("Cannot start the metrics endpoint on port " + port + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Static class.
+     */
+    private PerfCounters() {
+    }
+
+    /**
+     * Gets the counters of a layer, creating them if needed.
+     * @param layer name of the layer, e.g., class and dimensions
+     * @param computeFlops floating-point operations of compute()
+     * @param backPropagateFlops floating-point operations of backPropagate()
+     * @param learnFlops floating-point operations of learn()
+     * @param trainFlops floating-point operations of train()
+     * @return the counters
+     */
+    public static Probe probe(String layer, long computeFlops, long backPropagateFlops, long learnFlops, long trainFlops) {
+        long[] flops = {computeFlops, backPropagateFlops, learnFlops, trainFlops};
+        Probe p = new Probe();
+        for (Op op : Op.values()) {
+            p.counters[op.ordinal()] = counters.computeIfAbsent(
+                    layer + "|" + op.label(),
+                    k -> register(new Counter(layer, op, flops[op.ordinal()]))
+            );
+        }
+        return p;
+    }
+
+    /**
+     * Gets the counters shared by all layers of the same class and dimensions.
+     * The floating-point operations per call are the multiply-adds of the
+     * weight matrix.
+     * @param layer layer
+     * @return the counters
+     */
+    public static Probe probe(Layer layer) {
+        long mac = (long) layer.getInputSize() * layer.getOutputSize();
+        return probe(
+                layer.getClass().getSimpleName() + "[" + layer.getInputSize() + "x" + layer.getOutputSize() + "]",
+                2 * mac, 4 * mac, 3 * mac, 0
+        );
+    }
+
+    /**
+     * Gets the counters shared by all autoencoders of the same class and
+     * dimensions. The floating-point operations of train() are those of the
+     * compute, backpropagation and learning of the encoder and the decoder.
+     * @param ae autoencoder
+     * @return the counters
+     */
+    public static Probe probe(AutoEncoder ae) {
+        return probe(
+                ae.getClass().getSimpleName() + "[" + ae.getInputSize() + "x" + ae.getOutputDepth() + "]",
+                0, 0, 0, 18L * ae.getInputSize() * ae.getOutputDepth()
+        );
+    }
+
+    /**
+     * Gets the counters shared by all convolutions of the same class and
+     * dimensions. No floating-point operation is counted, the layers the
+     * convolution is made of having counters of their own.
+     * @param convolution convolution of an FFCNN
+     * @return the counters
+     */
+    public static Probe probe(ConvolutionalLayer convolution) {
+        DataBlock out = convolution.getOutput();
+        return probe(
+                convolution.getClass().getSimpleName()
+                        + "[" + convolution.getInputWidth() + "x" + convolution.getInputHeight() + "->"
+                        + out.getWidth() + "x" + out.getHeight() + "x" + out.getDepth() + "]",
+                0, 0, 0, 0
+        );
+    }
+
+    /**
+     * Registers a counter as an MXBean.
+     * @param c counter
+     * @return the counter
+     */
+    private static Counter register(Counter c) {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            mbs.registerMBean(c, new ObjectName(
+                    "nlightn:type=PerfCounter,layer=" + ObjectName.quote(c.layer) + ",op=" + c.op.label()
+            ));
+        } catch (Exception e) {
+            // JMX is only a view on the counters
+        }
+        return c;
+    }
+
+    /**
+     * @param on true to count the calls
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @return true if the calls are counted
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public static void reset() {
+        for (Counter c : counters.values()) {
+            c.calls.reset();
+            c.sampledCalls.reset();
+            c.sampledNanos.reset();
+        }
+    }
+
+    /**
+     * Writes the counters in the Prometheus text format.
+     * @return the metrics
+     */
+    public static String toPrometheus() {
+        StringBuilder calls = new StringBuilder("# TYPE nlightn_layer_calls_total counter\n");
+        StringBuilder seconds = new StringBuilder("# TYPE nlightn_layer_seconds_total counter\n");
+        StringBuilder flops = new StringBuilder("# TYPE nlightn_layer_flops_per_second gauge\n");
+        for (Counter c : new TreeMap<>(counters).values()) {
+            if (c.getCalls() == 0) {
+                continue;
+            }
+            String labels = "{layer=\"" + c.layer + "\",op=\"" + c.op.label() + "\"} ";
+            calls.append("nlightn_layer_calls_total").append(labels).append(c.getCalls()).append('\n');
+            seconds.append("nlightn_layer_seconds_total").append(labels).append(c.getEstimatedSeconds()).append('\n');
+            if (c.flopsPerCall > 0) {
+                flops.append("nlightn_layer_flops_per_second").append(labels).append(c.getFlopsPerSecond()).append('\n');
+            }
+        }
+        return calls.append(seconds).append(flops).toString();
+    }
+
+    /**
+     * Enables the counters and starts the metrics endpoint on localhost.
+     * @param port port number, 0 for any free port
+     * @return the port actually used
+     * @throws IOException if the server cannot start
+     */
+    public static synchronized int startServer(int port) throws IOException {
+        enabled = true;
+        if (server == null) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", ex -> {
+                byte[] b = toPrometheus().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+                ex.sendResponseHeaders(200, b.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(b);
+                }
+            });
+            // The dispatcher thread inherits the daemon status of the thread
+            // starting it, and must not keep the JVM alive
+            Thread t = new Thread(server::start);
+            t.setDaemon(true);
+            t.start();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return server.getAddress().getPort();
+    }
+}
@@ -27,13 +27,14 @@
 package diuf.diva.dia.ms.util;
 
 import diuf.diva.dia.ms.ml.ae.scae.SCAE;
-import diuf.diva.dia.ms.script.command.Recode;
+import diuf.diva.dia.ms.ml.ae.scae.TiledRecoder;
 
 /**
- * Shows the recoded version of an image.
+ * Shows the recoded version of an image. The image is recoded with a copy of
+ * the SCAE on a background thread, so that the training is not slowed down.
  * @author Mathias Seuret
  */
-public class RecodingDisplay extends DataBlockDisplay {
+public class RecodingDisplay extends DataBlockDisplay<SCAE> {
     DataBlock input;
     SCAE scae;
     
@@ -50,9 +51,21 @@ public class RecodingDisplay extends DataBlockDisplay {
     }
 
     @Override
-    public void update() {
-        db = Recode.recode(scae, input, input.getColorspace());
-        updateImage(db);
+    protected SCAE snapshot() {
+        return scae.replicate();
+    }
+
+    @Override
+    protected DataBlock render(SCAE snapshot) {
+        // A single thread, in order to leave the cores to the training
+        db = new TiledRecoder(
+                snapshot,
+                snapshot.getInputPatchWidth(),
+                snapshot.getInputPatchHeight(),
+                1
+        ).recode(input);
+        db.setColorspace(input.getColorspace());
+        return db;
     }
     
 }
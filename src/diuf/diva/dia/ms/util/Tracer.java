@@ -28,10 +28,6 @@ package diuf.diva.dia.ms.util;
 
 import de.erichseifert.gral.data.DataSeries;
 import de.erichseifert.gral.data.DataTable;
-import de.erichseifert.gral.data.filters.Convolution;
-import de.erichseifert.gral.data.filters.Filter;
-import de.erichseifert.gral.data.filters.Kernel;
-import de.erichseifert.gral.data.filters.Median;
 import de.erichseifert.gral.graphics.Insets2D;
 import de.erichseifert.gral.graphics.Label;
 import de.erichseifert.gral.graphics.Location;
@@ -51,25 +47,36 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This is for plotting graphs nicely and easily.
+ * <p>
+ * The memory and the plotting cost do not depend on the number of points
+ * added: the cumulated average, the moving average and the moving median are
+ * computed while the points are added, and each series keeps at most
+ * CAPACITY points, halved with the largest-triangle-three-buckets algorithm
+ * (LTTB) when full. The series are downsampled again with LTTB to MAXPOINTS
+ * points when plotted, which keeps their peaks and trends visible.
  * @author Michele Alberti
  */
 public class Tracer {
     /**
-     * Expected number of samples for the plot. Used to filter incoming data to save memory
+     * Expected number of samples for the plot. Used to size the moving window
      */
     private final int EXPECTEDSAMPLES;
     /**
-     * Current counter for filtering the samples
+     * Total amount of points to be displayed
      */
-    private int filterCount;
+    private static final int MAXPOINTS = 1000;
     /**
-     * Total amount of points to be displayed
+     * Maximum number of points kept for each series
+     */
+    private static final int CAPACITY = 8 * MAXPOINTS;
+    /**
+     * Maximum size of the moving window
      */
-    private int MAXPOINTS = 1000;
+    private static final int MAXWINDOW = 1024;
     /**
      * The plot object
      */
@@ -77,11 +84,41 @@ public class Tracer {
     /**
      * Raw source data for the plot
      */
-    private ArrayList<Point> data;
+    private final Series data = new Series();
+    /**
+     * Cumulated average after each point
+     */
+    private final Series cumulatedAverage = new Series();
+    /**
+     * Moving average after each point
+     */
+    private final Series movingAverage = new Series();
+    /**
+     * Moving median after each point
+     */
+    private final Series movingMedian = new Series();
+    /**
+     * Sum and number of all points, for the cumulated average
+     */
+    private double sum = 0;
+    private long count = 0;
+    /**
+     * Last values, for the moving average and median
+     */
+    private final double[] window;
+    /**
+     * Sum of the values in the window
+     */
+    private double windowSum = 0;
+    /**
+     * Number of values in the window, and position of the next one
+     */
+    private int windowSize = 0;
+    private int windowPos = 0;
     /**
-     * Raw source data reduce to maxPoints amount
+     * Values of the window in increasing order, for the moving median
      */
-    private DataTable dataReduced;
+    private final double[] sorted;
     /**
      * List of colors for the traces in the graph
      */
@@ -113,7 +150,7 @@ public class Tracer {
      * @param xLabel label on the X axis
      * @param yLabel label on the Y axis
      * @param expectedSamples the number of expected samples that will be added to the plot. This is used to
-     *                        perform a correct online down sampling of data maintaining the density of points.
+     *                        size the window of the moving average and median.
      * @param visibile true if the the tracer has to be displayed
      */
     public Tracer(String title, String xLabel, String yLabel, int expectedSamples, boolean visibile) {
@@ -122,11 +159,10 @@ public class Tracer {
         this.EXPECTEDSAMPLES = expectedSamples;
         this.visible = visibile;
 
-        // Init the down sampling filter so that he adds the fist point
-        this.filterCount = EXPECTEDSAMPLES / MAXPOINTS;
-
-        // Init the raw source data
-        data = new ArrayList<>();
+        // The moving window covers about 5% of the expected points
+        int w = Math.max(1, Math.min(MAXWINDOW, expectedSamples / 20));
+        window = new double[w];
+        sorted = new double[w];
 
         if (visibile) {
             // Create the plot
@@ -164,17 +200,33 @@ public class Tracer {
      * @param y coordinate of the point
      */
     public void addPoint(double x, double y) {
-        // Track the number of point tried to be added
-        filterCount++;
-
-        // Apply the down sampling
-        if (filterCount >= EXPECTEDSAMPLES / MAXPOINTS) {
-            // Add the point
-            data.add(new Point(x, y));
-            // Reset counter
-            filterCount = 0;
+        data.add(x, y);
+
+        // Cumulated average
+        sum += y;
+        count++;
+        cumulatedAverage.add(x, sum / count);
+
+        // Moving window: replace the oldest value
+        if (windowSize == window.length) {
+            windowSum -= window[windowPos];
+            removeSorted(window[windowPos]);
+        } else {
+            windowSize++;
         }
-
+        window[windowPos] = y;
+        windowSum += y;
+        insertSorted(y);
+        windowPos = (windowPos + 1) % window.length;
+        if (windowPos == 0) {
+            // Avoids the accumulation of rounding errors
+            windowSum = 0;
+            for (int i = 0; i < windowSize; i++) {
+                windowSum += window[i];
+            }
+        }
+        movingAverage.add(x, windowSum / windowSize);
+        movingMedian.add(x, windowMedian());
     }
 
     /**
@@ -187,13 +239,8 @@ public class Tracer {
             return;
         }
         
-        // Check that reduced data is available
-        if (dataReduced == null) {
-            reduceData();
-        }
-
         // Add data to the plot
-        DataSeries dsDataReduced = new DataSeries("Raw data entries", dataReduced);
+        DataSeries dsDataReduced = new DataSeries("Raw data entries", data.toTable(MAXPOINTS));
         plot.add(dsDataReduced);
 
         // Style reduced data series
@@ -215,28 +262,9 @@ public class Tracer {
         if (!visible) {
             return;
         }
-        // Check that reduced data is available
-        if (dataReduced == null) {
-            reduceData();
-        }
-
-        // Variable that keeps track of the avg
-        double avg = 0;
-
-        DataTable dataCumAvg = new DataTable(Double.class, Double.class);
-
-        // Initial point (otherwise avg/0 makes infinity!)
-        avg += (Double) dataReduced.getRow(0).get(1);
-        dataCumAvg.add(dataReduced.getRow(0));
-
-        // Compute cumulated average
-        for (int i = 1; i < dataReduced.getRowCount(); i++) {
-            avg += (Double) dataReduced.getRow(i).get(1);
-            dataCumAvg.add(dataReduced.getRow(i).get(0), avg / (i + 1));
-        }
 
         // Add data to the plot
-        DataSeries dsCumAvg = new DataSeries("Cumulated average", dataCumAvg);
+        DataSeries dsCumAvg = new DataSeries("Cumulated average", cumulatedAverage.toTable(MAXPOINTS));
         plot.add(dsCumAvg);
 
         // Style average data series
@@ -247,7 +275,7 @@ public class Tracer {
     }
 
     /**
-     *  Add the moving average of the raw data.
+     *  Add the moving average of the raw data, computed over the last 5% of the expected points.
      *
      *  BLUE LINE
      */
@@ -256,20 +284,8 @@ public class Tracer {
         if (!visible) {
             return;
         }
-        // Check that reduced data is available
-        if (dataReduced == null) {
-            reduceData();
-        }
 
-        // Compute the moving average. The kernel size specifies the size of the 'moving' part
-        int kernelMovingAverageSize = Math.round(MAXPOINTS / 20);
-        Kernel kernelMovingAverage = Kernel.getUniform(
-                kernelMovingAverageSize,
-                kernelMovingAverageSize - 1,
-                1.0D
-        ).normalize();
-        Convolution average = new Convolution(dataReduced, kernelMovingAverage, Filter.Mode.OMIT, new int[]{1});
-        DataSeries dataMovingAvg = new DataSeries("Moving Average", average, new int[]{0, 1});
+        DataSeries dataMovingAvg = new DataSeries("Moving Average", movingAverage.toTable(MAXPOINTS));
 
         // Add data to the plot
         plot.add(dataMovingAvg);
@@ -282,7 +298,7 @@ public class Tracer {
     }
 
     /**
-     *  Add the moving median of the raw data.
+     *  Add the moving median of the raw data, computed over the last 5% of the expected points.
      *
      *  CYAN LINE
      */
@@ -291,21 +307,8 @@ public class Tracer {
         if (!visible) {
             return;
         }
-        // Check that reduced data is available
-        if (dataReduced == null) {
-            reduceData();
-        }
 
-        // Compute the moving median. The kernel size specifies the size of the 'moving' part
-        int kernelMovingMedianSize = Math.round(MAXPOINTS / 20);
-        Median median = new Median(
-                dataReduced,
-                kernelMovingMedianSize,
-                kernelMovingMedianSize - 1,
-                Filter.Mode.OMIT,
-                new int[]{1}
-        );
-        DataSeries dataMovingMedian = new DataSeries("Moving Median", median, new int[]{0, 1});
+        DataSeries dataMovingMedian = new DataSeries("Moving Median", movingMedian.toTable(MAXPOINTS));
 
         // Add data to the plot
         plot.add(dataMovingMedian);
@@ -362,8 +365,8 @@ public class Tracer {
             // Appends
             PrintWriter pr = new PrintWriter(new BufferedWriter(new FileWriter(fName + ".tracer", true)));
 
-            for (Point p : data) {
-                pr.println(p.x + "," + p.y);
+            for (int i = 0; i < data.size; i++) {
+                pr.println(data.x[i] + "," + data.y[i]);
             }
             pr.close();
 
@@ -395,28 +398,100 @@ public class Tracer {
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * Perform an offline down sampling. Take the raw source data and reduces it to a set of size MAXPOINTS.
+     * @return the median of the values in the moving window
      */
-    private void reduceData() {
-
-        // Get the number of raw points
-        int numRawSamples = data.size();
+    private double windowMedian() {
+        if (windowSize % 2 == 1) {
+            return sorted[windowSize / 2];
+        }
+        return (sorted[windowSize / 2 - 1] + sorted[windowSize / 2]) / 2;
+    }
 
-        // Check if we don't have enough points, just take all of them
-        if (numRawSamples < MAXPOINTS) {
-            MAXPOINTS = numRawSamples;
+    /**
+     * Inserts a value in the sorted window, which already counts it. The
+     * window is bounded, so this does not depend on the number of points.
+     * @param v value
+     */
+    private void insertSorted(double v) {
+        int n = windowSize - 1;
+        int pos = Arrays.binarySearch(sorted, 0, n, v);
+        if (pos < 0) {
+            pos = -pos - 1;
         }
+        System.arraycopy(sorted, pos, sorted, pos + 1, n - pos);
+        sorted[pos] = v;
+    }
 
-        // Create the down sampled dataset
-        dataReduced = new DataTable(Double.class, Double.class);
+    /**
+     * Removes a value from the sorted window, which still counts it.
+     * @param v value, must be in the window
+     */
+    private void removeSorted(double v) {
+        int pos = Arrays.binarySearch(sorted, 0, windowSize, v);
+        System.arraycopy(sorted, pos + 1, sorted, pos, windowSize - pos - 1);
+    }
 
-        /* Create the new reduced set. I use a double as iterating variable to handle cases where numRawSamples
-         * is not a direct multiplier of MAXPOINTS.
-         */
-        for (double i = 0; i < numRawSamples; i += numRawSamples / MAXPOINTS) {
-            dataReduced.add(data.get((int) (i + 0.5)).x, data.get((int) (i + 0.5)).y);
+    /**
+     * Selects points of a series with the largest-triangle-three-buckets
+     * algorithm: the first and last points are kept, the others are split
+     * into buckets, and in each bucket the point forming the largest triangle
+     * with the previously selected point and the average of the next bucket
+     * is kept.
+     * @param x x coordinates
+     * @param y y coordinates
+     * @param n number of points
+     * @param threshold number of points to select, at least 3
+     * @return the indices of the selected points, in increasing order
+     */
+    static int[] lttb(double[] x, double[] y, int n, int threshold) {
+        if (threshold >= n) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
         }
+        int[] res = new int[threshold];
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        res[0] = 0;
+        for (int b = 0; b < threshold - 2; b++) {
+            // Average of the next bucket, or last point
+            int nextStart = (int) ((b + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((b + 2) * bucketSize) + 1, n);
+            double avgX = 0, avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            int nextLen = nextEnd - nextStart;
+            if (nextLen > 0) {
+                avgX /= nextLen;
+                avgY /= nextLen;
+            } else {
+                avgX = x[n - 1];
+                avgY = y[n - 1];
+            }
 
+            // Point of the current bucket with the largest triangle
+            int start = (int) (b * bucketSize) + 1;
+            int end = (int) ((b + 1) * bucketSize) + 1;
+            double maxArea = -1;
+            int selected = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs(
+                        (x[a] - avgX) * (y[i] - y[a]) - (x[a] - x[i]) * (avgY - y[a])
+                );
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = i;
+                }
+            }
+            res[b + 1] = selected;
+            a = selected;
+        }
+        res[threshold - 1] = n - 1;
+        return res;
     }
 
     /**
@@ -441,22 +516,48 @@ public class Tracer {
     /**
      * Support class for easier data structure modelling.
      * This is necessary as the data structure of GRAL is super heavy and I can't store millions of samples.
-     * With this simple class and an arrayList however, I can.
+     * The points are stored in arrays of bounded size, and halved with LTTB when full.
      */
-    private class Point {
+    private static class Series {
+        /**
+         * Coordinates of the points
+         */
+        double[] x = new double[CAPACITY];
+        double[] y = new double[CAPACITY];
         /**
-         * X coordinate of the point
+         * Number of points
          */
-        public final double x;
+        int size = 0;
+
         /**
-         * Y coordinate of the point
+         * Adds a point, and halves the series if it is full.
+         * @param px x coordinate
+         * @param py y coordinate
          */
-        public final double y;
+        void add(double px, double py) {
+            if (size == CAPACITY) {
+                int[] keep = lttb(x, y, size, CAPACITY / 2);
+                for (int i = 0; i < keep.length; i++) {
+                    x[i] = x[keep[i]];
+                    y[i] = y[keep[i]];
+                }
+                size = keep.length;
+            }
+            x[size] = px;
+            y[size] = py;
+            size++;
+        }
 
-        public Point(double x, double y) {
-            this.x = x;
-            this.y = y;
+        /**
+         * @param maxPoints maximum number of points
+         * @return a table with at most maxPoints points of the series
+         */
+        DataTable toTable(int maxPoints) {
+            DataTable table = new DataTable(Double.class, Double.class);
+            for (int i : lttb(x, y, size, maxPoints)) {
+                table.add(x[i], y[i]);
+            }
+            return table;
         }
     }
 }
-
@@ -0,0 +1,311 @@
+package diuf.diva.dia.ms.util.misc;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Estimates the memory used by a model or a dataset, by walking the objects
+ * reachable from it. The memory is split into weights, gradients and buffers,
+ * according to the names of the fields of the ml classes holding the arrays;
+ * the number of values in the weights gives the number of parameters.
+ * <p>
+ * Sizes assume a 64-bit JVM with compressed references; they are estimates.
+ * Static fields are not followed, and JDK objects other than collections
+ * and images are counted without their content. Transient fields are, since
+ * they hold the buffers allocated lazily.
+ *
+ * @author agent
+ */
+public class Footprint {
+    /**
+     * Names of the fields holding learned parameters.
+     */
+    private static final Set<String> WEIGHTS = new HashSet<>(Arrays.asList(
+            "weight", "bias", "w", "b", "c", "vb", "hb", "signs", "masks", "positives", "scale"
+    ));
+    /**
+     * Names of the fields holding gradients or training statistics.
+     */
+    private static final Set<String> GRADIENTS = new HashSet<>(Arrays.asList(
+            "gradient", "biasGradient", "positive", "negative", "pW", "nW"
+    ));
+    /**
+     * Only the fields of these classes are looked up in the name lists.
+     */
+    private static final String ML_PACKAGE = "diuf.diva.dia.ms.ml.";
+
+    private enum Kind {WEIGHTS, GRADIENTS, BUFFERS}
+
+    /**
+     * Bytes used by the weights.
+     */
+    private long weightBytes;
+    /**
+     * Bytes used by the gradients.
+     */
+    private long gradientBytes;
+    /**
+     * Bytes used by everything else.
+     */
+    private long bufferBytes;
+    /**
+     * Number of learned values.
+     */
+    private long parameters;
+    /**
+     * Objects already counted.
+     */
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    /**
+     * Fields of the classes, cached.
+     */
+    private static final Map<Class<?>, List<Field>> fields = new HashMap<>();
+
+    /**
+     * Excludes an object, e.g., a data block used as input by a model but
+     * belonging to a dataset.
+     * @param o object not to count
+     * @return this
+     */
+    public Footprint exclude(Object o) {
+        seen.add(o);
+        return this;
+    }
+
+    /**
+     * Adds the objects reachable from a root which were not counted yet.
+     * @param root object
+     * @return this
+     */
+    public Footprint add(Object root) {
+        Deque<Object> objects = new ArrayDeque<>();
+        Deque<Kind> kinds = new ArrayDeque<>();
+        objects.push(root);
+        kinds.push(Kind.BUFFERS);
+        while (!objects.isEmpty()) {
+            Object o = objects.pop();
+            Kind k = kinds.pop();
+            if (!seen.add(o)) {
+                continue;
+            }
+            Class<?> c = o.getClass();
+            if (c.isArray()) {
+                Class<?> t = c.getComponentType();
+                int n = java.lang.reflect.Array.getLength(o);
+                count(k, align(16 + (long) n * sizeOf(t)));
+                if (t.isPrimitive()) {
+                    if (k == Kind.WEIGHTS) {
+                        parameters += n;
+                    }
+                } else {
+                    for (Object e : (Object[]) o) {
+                        if (e != null) {
+                            objects.push(e);
+                            kinds.push(k);
+                        }
+                    }
+                }
+            } else if (o instanceof BufferedImage) {
+                DataBuffer db = ((BufferedImage) o).getRaster().getDataBuffer();
+                count(Kind.BUFFERS, align(16 + (long) db.getSize() * db.getNumBanks()
+                        * DataBuffer.getDataTypeSize(db.getDataType()) / 8));
+            } else if (o instanceof Collection && isJdk(c)) {
+                Collection<?> col = (Collection<?>) o;
+                count(Kind.BUFFERS, align(16 + 4L * col.size()) + 24);
+                for (Object e : col) {
+                    if (e != null) {
+                        objects.push(e);
+                        kinds.push(Kind.BUFFERS);
+                    }
+                }
+            } else if (o instanceof Map && isJdk(c)) {
+                Map<?, ?> map = (Map<?, ?>) o;
+                count(Kind.BUFFERS, align(16 + 4L * map.size()) + 32L * map.size() + 48);
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    for (Object x : new Object[]{e.getKey(), e.getValue()}) {
+                        if (x != null) {
+                            objects.push(x);
+                            kinds.push(Kind.BUFFERS);
+                        }
+                    }
+                }
+            } else if (isJdk(c) || c.isEnum()) {
+                count(Kind.BUFFERS, 16);
+            } else {
+                long size = 12;
+                for (Field f : fieldsOf(c)) {
+                    size += sizeOf(f.getType());
+                    if (f.getType().isPrimitive()) {
+                        continue;
+                    }
+                    Object v;
+                    try {
+                        v = f.get(o);
+                    } catch (IllegalAccessException e) {
+                        continue;
+                    }
+                    if (v != null) {
+                        objects.push(v);
+                        kinds.push(kindOf(f));
+                    }
+                }
+                count(Kind.BUFFERS, align(size));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the bytes used by the weights
+     */
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    /**
+     * @return the bytes used by the gradients and training statistics
+     */
+    public long getGradientBytes() {
+        return gradientBytes;
+    }
+
+    /**
+     * @return the bytes used by the buffers and the objects
+     */
+    public long getBufferBytes() {
+        return bufferBytes;
+    }
+
+    /**
+     * @return the total number of bytes
+     */
+    public long getTotalBytes() {
+        return weightBytes + gradientBytes + bufferBytes;
+    }
+
+    /**
+     * @return the number of learned values
+     */
+    public long getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @param bytes number of bytes
+     * @return a human-readable size
+     */
+    public static String format(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = {"KiB", "MiB", "GiB", "TiB"};
+        double v = bytes;
+        int u = -1;
+        while (v >= 1024 && u < units.length - 1) {
+            v /= 1024;
+            u++;
+        }
+        return String.format("%.1f %s", v, units[u]);
+    }
+
+    @Override
+    public String toString() {
+        return parameters + " parameters, " + format(getTotalBytes())
+                + " (weights " + format(weightBytes)
+                + ", gradients " + format(gradientBytes)
+                + ", buffers " + format(bufferBytes) + ")";
+    }
+
+    private void count(Kind k, long bytes) {
+        switch (k) {
+            case WEIGHTS:
+                weightBytes += bytes;
+                break;
+            case GRADIENTS:
+                gradientBytes += bytes;
+                break;
+            default:
+                bufferBytes += bytes;
+        }
+    }
+
+    /**
+     * @param f field
+     * @return the kind of memory the field refers to
+     */
+    private static Kind kindOf(Field f) {
+        if (!f.getDeclaringClass().getName().startsWith(ML_PACKAGE)) {
+            return Kind.BUFFERS;
+        }
+        if (WEIGHTS.contains(f.getName())) {
+            return Kind.WEIGHTS;
+        }
+        if (GRADIENTS.contains(f.getName())) {
+            return Kind.GRADIENTS;
+        }
+        return Kind.BUFFERS;
+    }
+
+    /**
+     * @param c class
+     * @return the non-static fields of the class and of its parents
+     */
+    private static synchronized List<Field> fieldsOf(Class<?> c) {
+        List<Field> res = fields.get(c);
+        if (res == null) {
+            res = new ArrayList<>();
+            for (Class<?> k = c; k != null && !isJdk(k); k = k.getSuperclass()) {
+                for (Field f : k.getDeclaredFields()) {
+                    int m = f.getModifiers();
+                    if (Modifier.isStatic(m)) {
+                        continue;
+                    }
+                    f.setAccessible(true);
+                    res.add(f);
+                }
+            }
+            fields.put(c, res);
+        }
+        return res;
+    }
+
+    /**
+     * @param c class
+     * @return true if the class belongs to the JDK
+     */
+    private static boolean isJdk(Class<?> c) {
+        String n = c.getName();
+        return n.startsWith("java.") || n.startsWith("javax.") || n.startsWith("sun.") || n.startsWith("jdk.");
+    }
+
+    /**
+     * @param t type of a field or of an array element
+     * @return its size in bytes
+     */
+    private static int sizeOf(Class<?> t) {
+        if (t == long.class || t == double.class) {
+            return 8;
+        }
+        if (t == int.class || t == float.class) {
+            return 4;
+        }
+        if (t == short.class || t == char.class) {
+            return 2;
+        }
+        if (t == byte.class || t == boolean.class) {
+            return 1;
+        }
+        return 4;
+    }
+
+    /**
+     * @param size size in bytes
+     * @return the size rounded up to a multiple of 8
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -4,14 +4,14 @@ import diuf.diva.dia.ms.script.XMLScript;
 import diuf.diva.dia.ms.util.DataBlock;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Random;
 
 /**
  * This class is used for data balancing while training. It analyses a datablock
  * and stores references to different pixels of different classes such that is possible
- * to get them for training.
+ * to get them for training. A pixel is referenced by its position y * width + x,
+ * use getX() and getY() to read its coordinates back.
  * @author Michele Alberti
  */
 public class ImageAnalysis {
@@ -20,55 +20,95 @@ public class ImageAnalysis {
      */
     private final SimpleDateFormat ft = new SimpleDateFormat("HH:mm:ss.SSS");
     /**
-     * This hashMap stores one arrayList per each new class found. In the arrayList
-     * are contained pixels belonging to that class
+     * Number of classes a ground truth can encode
      */
-    private final HashMap<Integer, ArrayList<Pixel>> data = new HashMap<>();
+    private static final int MAX_CLASSES = 256;
+    /**
+     * This array stores, for each class found, the positions of the pixels
+     * belonging to that class. It is null for the classes which are not present
+     */
+    private final int[][] data = new int[MAX_CLASSES][];
     /**
      * Final number of classes found in the picture
      */
     public final int nbClasses;
     /**
-     * List which keeps track of next random representative to serve
-     * The key is the class, the value the next representative to serve on the list: data
+     * Keeps track of next representative to serve, indexed by class. The value
+     * is the index of the next representative on the array: data.
+     */
+    private final int[] next = new int[MAX_CLASSES];
+    /**
+     * Width of the analysed image, used for encoding the positions
+     */
+    private final int width;
+    /**
+     * Random numbers generator used for picking the representatives
      */
-    private final HashMap<Integer, Integer> next = new HashMap<>();
+    private final Random random;
 
     /**
-     * Creates a image analysis
+     * Creates a image analysis, using the random numbers generator of the
+     * script running on this thread
      *
      * @param gt          the images that need to be analysed
      * @param inputWidth  size of input, need to handle borders
      * @param inputHeight size of input, need to handle borders
      */
     public ImageAnalysis(final DataBlock gt, final int inputWidth, final int inputHeight) {
+        this(gt, inputWidth, inputHeight, XMLScript.getRandom());
+    }
+
+    /**
+     * Creates a image analysis
+     *
+     * @param gt          the images that need to be analysed
+     * @param inputWidth  size of input, need to handle borders
+     * @param inputHeight size of input, need to handle borders
+     * @param random      random numbers generator used for picking the representatives
+     */
+    public ImageAnalysis(final DataBlock gt, final int inputWidth, final int inputHeight, final Random random) {
+        this.random = random;
+        this.width = gt.getWidth();
         long startTime = System.currentTimeMillis();
 
         /* Population of the data keeping in consideration to skip borders of image (because if
          * we then center the input we want the input patch to be within the border of the image!
          */
 
+        // First count the pixels of each class, then store their positions
         int index = gt.getDepth() - 1;
+        int[] count = new int[MAX_CLASSES];
+        for (int x = inputWidth / 2; x <= gt.getWidth() - inputWidth; x++) {
+            for (int y = inputHeight / 2; y <= gt.getHeight() - inputHeight; y++) {
+                count[getClass(gt, index, x, y)]++;
+            }
+        }
+
+        int classes = 0;
+        for (int c = 0; c < MAX_CLASSES; c++) {
+            if (count[c] > 0) {
+                data[c] = new int[count[c]];
+                count[c] = 0;
+                classes++;
+            }
+        }
+
         for (int x = inputWidth / 2; x <= gt.getWidth() - inputWidth; x++) {
             for (int y = inputHeight / 2; y <= gt.getHeight() - inputHeight; y++) {
-                int correctClass = Math.round((gt.getValues(x, y)[index] + 1) * 255 / 2.0f);
-                if (!data.containsKey(correctClass)) {
-                    next.put(correctClass, 0);
-                    data.put(correctClass, new ArrayList<>());
-                }
-                data.get(correctClass).add(new Pixel(x, y));
+                int correctClass = getClass(gt, index, x, y);
+                data[correctClass][count[correctClass]++] = y * width + x;
             }
         }
 
-        this.nbClasses = data.size();
+        this.nbClasses = classes;
 
         // Log creation
         System.out.println(ft.format(new Date()) + ": ImageAnalysis created in: " + (int) (System.currentTimeMillis() - startTime) / 1000.0 + " sec " + this.toString());
         /*
         This output is redundant with previous line and spams into the log with big datasets
         System.out.println(ft.format(new Date()) + "Number of elements:");
-        for (int key : data.keySet()) {
-            System.out.println(ft.format(new Date()) + "  class "+key+": "+data.get(key).size());
+        for (int c = 0; c < MAX_CLASSES; c++) {
+            if (data[c] != null) System.out.println(ft.format(new Date()) + "  class "+c+": "+data[c].length);
         }
         */
 
@@ -87,19 +127,19 @@ public class ImageAnalysis {
         // For each class
         for (int c = 0; c < nbClasses; c++) {
             // If this class was not present skip
-            if (data.get(c) == null) continue;
+            if (data[c] == null) continue;
 
-            // Init the new array list for storing the sub sampled points
-            ArrayList<Pixel> ssp = new ArrayList<>();
+            // Init the new array for storing the sub sampled points
+            int perClass = (int) Math.ceil(samples / (nbClasses * 1.0));
+            int[] ssp = new int[perClass];
 
             // Populate the sub sampled points with random representative until we have enough
-            for (int i = 0; i < (int) Math.ceil(samples / (nbClasses * 1.0)); i++) {
-                ssp.add(getRandomRepresentative(c));
+            for (int i = 0; i < perClass; i++) {
+                ssp[i] = getRandomRepresentative(c);
             }
 
-            // Remove old array list and set the new one
-            data.remove(c);
-            data.put(c, ssp);
+            // Replace the old array with the new one
+            data[c] = ssp;
         }
         System.gc();
 
@@ -109,47 +149,80 @@ public class ImageAnalysis {
     }
 
     /**
-     * Select, return the a random pixel on the list.
+     * Reads the class of a pixel of the ground truth.
+     *
+     * @param gt    the ground truth
+     * @param index the channel containing the classes
+     * @param x     position of the pixel
+     * @param y     position of the pixel
+     * @return the class of the pixel
+     */
+    private static int getClass(DataBlock gt, int index, int x, int y) {
+        int c = Math.round((gt.getValue(index, x, y) + 1) * 255 / 2.0f);
+        if (c < 0 || c >= MAX_CLASSES) {
+            throw new Error("invalid class " + c + " in the ground truth at " + x + "," + y);
+        }
+        return c;
+    }
+
+    /**
+     * Select, return the position of a random pixel on the list.
      *
      * @param c the class of which the representative will be chosen
-     * @return the next pixel on the list
+     * @return the position of the pixel, or -1 if the class is not present
      */
-    private Pixel getRandomRepresentative(int c) {
-        return (data.get(c) != null) ? data.get(c).get((int) (XMLScript.getRandom().nextDouble() * data.get(c).size())) : null;
+    private int getRandomRepresentative(int c) {
+        return (data[c] != null) ? data[c][(int) (random.nextDouble() * data[c].length)] : -1;
     }
 
     /**
-     * Select, return the a random pixel on the list.
+     * Select, return the position of the next pixel on the list.
      *
      * @param c the class of which the representative will be chosen
-     * @return the next pixel on the list
+     * @return the position of the next pixel on the list, or -1 if the class is not present
      */
-    public Pixel getNextRepresentative(int c) {
-        if (data.get(c) != null) {
-            int n = next.get(c);
-            if (n >= data.get(c).size()) {
+    public int getNextRepresentative(int c) {
+        if (c >= 0 && c < MAX_CLASSES && data[c] != null) {
+            int n = next[c];
+            if (n >= data[c].length) {
                  /* This is life-saver in case of a mistake! If this methods is called too many times
                  * we print a warning but we prevent the crash of the program!
                  */
                 //System.out.println("[WARNING][ImageAnalysis.java - getNextRepresentative()] You called too many times this methods for this class");
-                n = (int) (XMLScript.getRandom().nextDouble() * data.get(c).size());
+                n = (int) (random.nextDouble() * data[c].length);
             }
 
-            next.put(c, n + 1);
-            return data.get(c).get(n);
+            next[c] = n + 1;
+            return data[c][n];
         } else {
-            return null;
+            return -1;
         }
 
 
     }
 
+    /**
+     * @param position position returned by getNextRepresentative()
+     * @return the horizontal coordinate of the pixel
+     */
+    public int getX(int position) {
+        return position % width;
+    }
+
+    /**
+     * @param position position returned by getNextRepresentative()
+     * @return the vertical coordinate of the pixel
+     */
+    public int getY(int position) {
+        return position / width;
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
         s.append("[");
         for (int i = 0; i < nbClasses; i++) {
-            s.append((data.get(i) != null) ? data.get(i).size() : 0);
+            s.append((data[i] != null) ? data[i].length : 0);
             if (i < nbClasses - 1) {
                 s.append(",");
             }
@@ -0,0 +1,168 @@
+/*****************************************************
+  N-light-N
+  
+  A Highly-Adaptable Java Library for Document Analysis with
+  Convolutional Auto-Encoders and Related Architectures.
+  
+  -------------------
+  Author:
+  2026 by agent <agent@local>
+  -------------------
+
+  This software is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation version 3.
+
+  This software is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General Public
+  License along with this software; if not, write to the Free Software
+  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ ******************************************************************************/
+
+package diuf.diva.dia.ms.util.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with the layout of an HDR histogram: the
+ * durations, in nanoseconds, are grouped by power of two, and each power of
+ * two is split into SUB_BUCKETS linear buckets. Percentiles are thus given
+ * with a relative error below 1/SUB_BUCKETS, from nanoseconds to hours, with
+ * a fixed amount of memory.
+ *
+ * @author agent
+ */
+public class LatencyHistogram {
+    /**
+     * Log2 of the number of linear buckets per power of two.
+     */
+    private static final int SUB_BITS = 5;
+    /**
+     * Number of linear buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /**
+     * Longest duration which can be recorded, about 2.4 hours; longer ones
+     * are clamped.
+     */
+    private static final long HIGHEST = (1L << 43) - 1;
+    /**
+     * Number of buckets.
+     */
+    private static final int NB_BUCKETS = index(HIGHEST) + 1;
+    /**
+     * Counts of the buckets.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(NB_BUCKETS);
+    /**
+     * Number of durations recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+    /**
+     * Sum of the durations, in nanoseconds.
+     */
+    private final AtomicLong sum = new AtomicLong();
+    /**
+     * Longest duration, in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long v = Math.min(HIGHEST, Math.max(0, nanos));
+        buckets.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        max.accumulateAndGet(v, Math::max);
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the mean duration in milliseconds, or NaN if there is none
+     */
+    public double getMean() {
+        long n = count.get();
+        return (n == 0) ? Double.NaN : sum.get() / 1e6 / n;
+    }
+
+    /**
+     * @return the longest duration in milliseconds
+     */
+    public double getMax() {
+        return max.get() / 1e6;
+    }
+
+    /**
+     * @param p percentile, between 0 and 100
+     * @return an upper bound of the percentile in milliseconds, or NaN if
+     * there is no duration
+     */
+    public double getPercentile(double p) {
+        long n = count.get();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int b = 0; b < NB_BUCKETS; b++) {
+            seen += buckets.get(b);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(b), max.get()) / 1e6;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Computes the bucket of a duration. The durations below 2*SUB_BUCKETS
+     * have one bucket each; above, the bucket is given by the position of
+     * the highest bit and by the SUB_BITS following bits.
+     * @param v duration in nanoseconds, between 0 and HIGHEST
+     * @return index of the bucket
+     */
+    private static int index(long v) {
+        int magnitude = Math.max(0, 63 - Long.numberOfLeadingZeros(v) - SUB_BITS);
+        if (magnitude == 0) {
+            return (int) v;
+        }
+        return (magnitude + 1) * SUB_BUCKETS + (int) (v >>> magnitude) - SUB_BUCKETS;
+    }
+
+    /**
+     * @param b index of a bucket
+     * @return the longest duration falling into the bucket, in nanoseconds
+     */
+    private static long highestInBucket(int b) {
+        if (b < 2 * SUB_BUCKETS) {
+            return b;
+        }
+        int magnitude = b / SUB_BUCKETS - 1;
+        long sub = b % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << magnitude) - 1;
+    }
+
+    /**
+     * @return count, mean, median, 90th and 99th percentiles and maximum
+     */
+    @Override
+    public String toString() {
+        return String.format(
+                "count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax()
+        );
+    }
+}
@@ -2,7 +2,6 @@ package diuf.diva.dia.ms.util.misc;
 
 /**
  * Support class for easier data structure modelling.
- * Currently used in trainClassifier, trainSCAE, ImageAnalysis.
  * @author Michele Alberti
  */
 public class Pixel {
@@ -4,8 +4,6 @@ package diuf.diva.dia.ms.util.misc;
 import Jama.Matrix;
 import diuf.diva.dia.ms.util.PCA;
 
-import java.util.List;
-
 /**
  * Encodes a reconstruction score.
  */
@@ -34,9 +32,10 @@ public class ReconstructionScore {
         // For each pixel
         float d = 0;
         for (int i = 0; i < a.length; i += 3) {
-            float[] A = new float[]{a[i], a[i + 1], a[i + 2]};
-            float[] B = new float[]{b[i], b[i + 1], b[i + 2]};
-            d += euclidean(A, B);
+            float d0 = a[i] - b[i];
+            float d1 = a[i + 1] - b[i + 1];
+            float d2 = a[i + 2] - b[i + 2];
+            d += (float) Math.sqrt(d0 * d0 + d1 * d1 + d2 * d2);
         }
 
         return d / (a.length / 3);
@@ -135,12 +134,16 @@ public class ReconstructionScore {
         assert (a.length % 3 == 0);
         assert (a.length == b.length);
 
-        // For each pixel
+        // For each pixel, reusing the same buffers
+        float[] xyz = new float[3];
+        float[] A = new float[3];
+        float[] B = new float[3];
         float d = 0;
         for (int i = 0; i < a.length; i += 3) {
-
-            float[] A = XYZtoLab(rgbToXYZ(new float[]{a[i], a[i + 1], a[i + 2]}));
-            float[] B = XYZtoLab(rgbToXYZ(new float[]{b[i], b[i + 1], b[i + 2]}));
+            rgbToXYZ(a, i, xyz);
+            XYZtoLab(xyz, A);
+            rgbToXYZ(b, i, xyz);
+            XYZtoLab(xyz, B);
             d += deltaE94(A, B);
         }
 
@@ -157,7 +160,7 @@ public class ReconstructionScore {
      * @param b second variable
      * @return the Mahalanobis distance
      */
-    public static Float mahalanobisDistance(float[] a, float[] b) {
+    public static float mahalanobisDistance(float[] a, float[] b) {
 
         // Input must be dividable in pixels and same size ofc
         assert (a.length % 3 == 0);
@@ -180,44 +183,48 @@ public class ReconstructionScore {
             c = Matrix.identity(3, 3);
         }
 
+        // The inverse is the same for all pixels
+        double[][] inv = c.inverse().getArray();
+
         // Compute Mahalanobis distance
         float distance = 0;
-        for (int i = 0; i < d.length / 2; i++) {
-
-            Matrix x = data.getMatrix(i, i, 0, data.getColumnDimension() - 1);
-            Matrix y = data.getMatrix(i + d.length / 2, i + d.length / 2, 0, data.getColumnDimension() - 1);
-            Matrix tmp = x.minus(y);
-
-            distance += Math.sqrt(tmp.times(c.inverse()).times(tmp.transpose()).get(0, 0));
+        for (int i = 0; i < a.length; i += 3) {
+            double t0 = a[i] - b[i];
+            double t1 = a[i + 1] - b[i + 1];
+            double t2 = a[i + 2] - b[i + 2];
+            double q = t0 * (inv[0][0] * t0 + inv[1][0] * t1 + inv[2][0] * t2)
+                     + t1 * (inv[0][1] * t0 + inv[1][1] * t1 + inv[2][1] * t2)
+                     + t2 * (inv[0][2] * t0 + inv[1][2] * t1 + inv[2][2] * t2);
+            distance += Math.sqrt(q);
         }
 
         return distance / (a.length / 3);
     }
 
     /**
-     * @param l a list
-     * @return mean value of the list
+     * @param v values
+     * @return mean value of the array
      */
-    public static float getMean(List<Float> l) {
+    public static float getMean(float[] v) {
         float sum = 0;
-        for (Float f : l) {
+        for (float f : v) {
             sum += f;
         }
-        return sum / l.size();
+        return sum / v.length;
     }
 
     /**
-     * @param l a list
-     * @return variance of the list
+     * @param v values
+     * @return variance of the array
      */
-    public static float getVariance(List<Float> l) {
-        float mean = getMean(l);
+    public static float getVariance(float[] v) {
+        float mean = getMean(v);
         float sum = 0;
-        for (Float f : l) {
+        for (float f : v) {
             float d = (f - mean);
             sum += d * d;
         }
-        return sum / l.size();
+        return sum / v.length;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -235,9 +242,23 @@ public class ReconstructionScore {
 
         assert (rgb.length == 3);
 
-        double R = (rgb[0] / 255);        //R from 0 to 255
-        double G = (rgb[1] / 255);        //G from 0 to 255
-        double B = (rgb[2] / 255);        //B from 0 to 255
+        float[] xyz = new float[3];
+        rgbToXYZ(rgb, 0, xyz);
+        return xyz;
+    }
+
+    /**
+     * Convert a pixel in RGB values into XYZ space, without allocation.
+     *
+     * @param rgb array containing the pixel
+     * @param from index of the pixel in the array
+     * @param xyz where to store the pixel in XYZ
+     */
+    protected static void rgbToXYZ(float[] rgb, int from, float[] xyz) {
+
+        double R = (rgb[from] / 255);        //R from 0 to 255
+        double G = (rgb[from + 1] / 255);    //G from 0 to 255
+        double B = (rgb[from + 2] / 255);    //B from 0 to 255
 
         R = (R > 0.04045) ? Math.pow((R + 0.055) / 1.055, 2.4) : R / 12.92;
         G = (G > 0.04045) ? Math.pow((G + 0.055) / 1.055, 2.4) : G / 12.92;
@@ -248,11 +269,9 @@ public class ReconstructionScore {
         B *= 100;
 
         //Observer. = 2�, Illuminant = D65
-        float X = (float) (R * 0.4124 + G * 0.3576 + B * 0.1805);
-        float Y = (float) (R * 0.2126 + G * 0.7152 + B * 0.0722);
-        float Z = (float) (R * 0.0193 + G * 0.1192 + B * 0.9505);
-
-        return new float[]{X, Y, Z};
+        xyz[0] = (float) (R * 0.4124 + G * 0.3576 + B * 0.1805);
+        xyz[1] = (float) (R * 0.2126 + G * 0.7152 + B * 0.0722);
+        xyz[2] = (float) (R * 0.0193 + G * 0.1192 + B * 0.9505);
     }
 
     /**
@@ -266,6 +285,19 @@ public class ReconstructionScore {
 
         assert (xyz.length == 3);
 
+        float[] lab = new float[3];
+        XYZtoLab(xyz, lab);
+        return lab;
+    }
+
+    /**
+     * Convert a pixel in XYZ values into Lab space, without allocation.
+     *
+     * @param xyz values of the pixel
+     * @param lab where to store the pixel in Lab
+     */
+    protected static void XYZtoLab(float[] xyz, float[] lab) {
+
         double X = xyz[0] / 95.047;          //ref_X =  95.047   Observer= 2�, Illuminant= D65
         double Y = xyz[1] / 100.000;         //ref_Y = 100.000
         double Z = xyz[2] / 108.883;         //ref_Z = 108.883
@@ -274,11 +306,9 @@ public class ReconstructionScore {
         Y = (Y > 0.008856) ? Math.pow(Y, 1 / 3.0) : (7.787 * Y) + (16 / 116.0);
         Z = (Z > 0.008856) ? Math.pow(Z, 1 / 3.0) : (7.787 * Z) + (16 / 116.0);
 
-        float L = (float) (116 * Y) - 16;
-        float a = (float) (500 * (X - Y));
-        float b = (float) (200 * (Y - Z));
-
-        return new float[]{L, a, b};
+        lab[0] = (float) (116 * Y) - 16;
+        lab[1] = (float) (500 * (X - Y));
+        lab[2] = (float) (200 * (Y - Z));
     }
 
     /**
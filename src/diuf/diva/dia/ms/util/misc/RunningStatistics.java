@@ -0,0 +1,69 @@
+package diuf.diva.dia.ms.util.misc;
+
+/**
+ * Streaming mean and variance accumulator (Welford's algorithm). Accumulators
+ * filled on different threads can be merged afterwards.
+ *
+ * @author agent
+ */
+public class RunningStatistics {
+    /**
+     * Number of values added.
+     */
+    private long n = 0;
+    /**
+     * Current mean.
+     */
+    private double mean = 0;
+    /**
+     * Sum of the squared differences to the mean.
+     */
+    private double m2 = 0;
+
+    /**
+     * Adds a value.
+     * @param v value
+     */
+    public void add(double v) {
+        n++;
+        double d = v - mean;
+        mean += d / n;
+        m2 += d * (v - mean);
+    }
+
+    /**
+     * Adds the values of another accumulator to this one.
+     * @param other accumulator to merge
+     */
+    public void merge(RunningStatistics other) {
+        if (other.n == 0) {
+            return;
+        }
+        long total = n + other.n;
+        double d = other.mean - mean;
+        mean += d * other.n / total;
+        m2 += other.m2 + d * d * n * other.n / total;
+        n = total;
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long getCount() {
+        return n;
+    }
+
+    /**
+     * @return the mean of the values, or NaN if there is none
+     */
+    public float getMean() {
+        return (n == 0) ? Float.NaN : (float) mean;
+    }
+
+    /**
+     * @return the (population) variance of the values, or NaN if there is none
+     */
+    public float getVariance() {
+        return (n == 0) ? Float.NaN : (float) (m2 / n);
+    }
+}
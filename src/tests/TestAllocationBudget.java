@@ -0,0 +1,143 @@
+package tests;
+
+import diuf.diva.dia.ms.ml.ae.StandardAutoEncoder;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.util.BiDataBlock;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.PageGenerator;
+import diuf.diva.dia.ms.util.misc.ImageAnalysis;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that the steady-state training and inference loops do not allocate
+ * more than their declared budget, in bytes per sample. The loops are warmed
+ * up first, so that the JIT has compiled them, then the bytes allocated by
+ * the thread are measured over many samples.
+ *
+ * @author agent
+ */
+public class TestAllocationBudget {
+
+    /**
+     * Budgets in bytes per sample. The steady-state loops should not allocate
+     * at all; one byte per sample leaves room for rare JIT or TLAB events.
+     */
+    private static final double INFERENCE_BUDGET = 1;
+    private static final double TRAINING_BUDGET = 1;
+    private static final double SAMPLING_BUDGET = 1;
+
+    private static final int WARMUP = 50000;
+    private static final int SAMPLES = 20000;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static DataBlock page;
+    private static DataBlock gt;
+
+    static {
+        java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+        if (t instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) t).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) t;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        PageGenerator.Page p = new PageGenerator(200, 200, 4, 1).generate(0);
+        page = new BiDataBlock(p.image);
+        gt = new BiDataBlock(p.groundTruth);
+    }
+
+    @Test
+    public void testClassifierInference() {
+        FFCNN ffcnn = classifier();
+        int w = ffcnn.getInputWidth();
+        int h = ffcnn.getInputHeight();
+        check("FFCNN.compute", INFERENCE_BUDGET, i -> {
+            ffcnn.centerInput(page, x(i, w), y(i, h));
+            ffcnn.compute();
+            ffcnn.getOutputClass(false);
+        });
+    }
+
+    @Test
+    public void testClassifierTraining() {
+        FFCNN ffcnn = classifier();
+        int w = ffcnn.getInputWidth();
+        int h = ffcnn.getInputHeight();
+        check("FFCNN training step", TRAINING_BUDGET, i -> {
+            ffcnn.centerInput(page, x(i, w), y(i, h));
+            ffcnn.compute();
+            for (int c = 0; c < ffcnn.getOutputSize(); c++) {
+                ffcnn.setExpected(c, (c == i % 4) ? 1 : 0);
+            }
+            ffcnn.backPropagate();
+            ffcnn.learn();
+        });
+    }
+
+    @Test
+    public void testSCAETraining() {
+        SCAE scae = scae();
+        int w = scae.getInputPatchWidth();
+        int h = scae.getInputPatchHeight();
+        check("SCAE training step", TRAINING_BUDGET, i -> {
+            scae.centerInput(page, x(i, w), y(i, h));
+            scae.train();
+        });
+    }
+
+    @Test
+    public void testSampling() {
+        ImageAnalysis ia = new ImageAnalysis(gt, 9, 9);
+        ia.subSample(1000);
+        check("ImageAnalysis.getNextRepresentative", SAMPLING_BUDGET, i -> {
+            ia.getNextRepresentative(i % ia.nbClasses);
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private interface Step {
+        void run(int i);
+    }
+
+    /**
+     * Runs a step WARMUP times, then measures the bytes allocated over
+     * SAMPLES steps and fails if they exceed the budget.
+     */
+    private static void check(String name, double budget, Step step) {
+        if (threads == null) {
+            return;
+        }
+        for (int i = 0; i < WARMUP; i++) {
+            step.run(i);
+        }
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < SAMPLES; i++) {
+            step.run(i);
+        }
+        double perSample = (threads.getThreadAllocatedBytes(id) - before) / (double) SAMPLES;
+        assert perSample <= budget : name + " allocates " + perSample + " bytes per sample, budget " + budget;
+    }
+
+    private static SCAE scae() {
+        SCAE scae = new SCAE(new StandardAutoEncoder(3, 3, 3, 8, "NeuralLayer"), 3, 3);
+        scae.addLayer(new StandardAutoEncoder(3, 3, 8, 12, "NeuralLayer"), 3, 3);
+        return scae;
+    }
+
+    private static FFCNN classifier() {
+        return new FFCNN(scae(), "NeuralLayer", 4);
+    }
+
+    private static int x(int i, int w) {
+        return w / 2 + (i * 7) % (page.getWidth() - w);
+    }
+
+    private static int y(int i, int h) {
+        return h / 2 + (i * 13) % (page.getHeight() - h);
+    }
+}
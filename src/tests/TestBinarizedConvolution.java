@@ -0,0 +1,90 @@
+package tests;
+
+import diuf.diva.dia.ms.ml.ae.StandardAutoEncoder;
+import diuf.diva.dia.ms.ml.ae.ffcnn.BinarizedConvolution;
+import diuf.diva.dia.ms.ml.ae.ffcnn.SingleUnitConvolution;
+import diuf.diva.dia.ms.ml.ae.scae.Convolution;
+import diuf.diva.dia.ms.ml.layer.AbstractLayer;
+import diuf.diva.dia.ms.util.DataBlock;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * This class tests whether the XNOR/popcount layer gives the same outputs as
+ * the float convolution it replaces, on binary inputs, when the weights of
+ * the float convolution are already binary (or ternary) with one scale per
+ * output.
+ *
+ * @author agent
+ */
+public class TestBinarizedConvolution {
+
+    @Test
+    public void testBinary() {
+        compare(false);
+    }
+
+    @Test
+    public void testTernary() {
+        compare(true);
+    }
+
+    /**
+     * Builds a 3x3x5 convolution with +/-scale (and 0 if ternary) weights,
+     * and compares its outputs with the ones of the binarized layer on
+     * random {0,1} inputs.
+     * @param ternary whether some weights are set to zero
+     */
+    private void compare(boolean ternary) {
+        Random rnd = new Random(42);
+        StandardAutoEncoder ae = new StandardAutoEncoder(3, 3, 5, 7, "NeuralLayer");
+        AbstractLayer enc = (AbstractLayer) ae.encoder;
+        float[][] w = enc.getWeights();
+        float[] b = enc.getBias();
+        for (int o = 0; o < w[0].length; o++) {
+            float scale = 0.05f + rnd.nextFloat() * 0.2f;
+            for (int i = 0; i < w.length; i++) {
+                if (ternary && rnd.nextInt(3) == 0) {
+                    w[i][o] = 0;
+                } else {
+                    w[i][o] = rnd.nextBoolean() ? scale : -scale;
+                }
+            }
+            b[o] = rnd.nextFloat() - 0.5f;
+        }
+
+        SingleUnitConvolution suc = new SingleUnitConvolution(new Convolution(ae, 4, 3, 2, 2));
+        BinarizedConvolution bin = new BinarizedConvolution(suc, ternary);
+
+        DataBlock input = new DataBlock(9, 7, 5);
+        for (int n = 0; n < 20; n++) {
+            for (int x = 0; x < input.getWidth(); x++) {
+                for (int y = 0; y < input.getHeight(); y++) {
+                    for (int z = 0; z < input.getDepth(); z++) {
+                        input.setValue(z, x, y, rnd.nextBoolean() ? 1 : 0);
+                    }
+                }
+            }
+
+            // Both layers share their output data block
+            suc.setInput(input, 0, 0);
+            suc.compute();
+            DataBlock expected = suc.getOutput().clone();
+
+            bin.setInput(input, 0, 0);
+            bin.compute();
+            DataBlock actual = bin.getOutput();
+
+            for (int x = 0; x < expected.getWidth(); x++) {
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int z = 0; z < expected.getDepth(); z++) {
+                        float e = expected.getValue(z, x, y);
+                        float a = actual.getValue(z, x, y);
+                        assert (Math.abs(e - a) < 1e-5) : "output " + z + " at " + x + "," + y + ": " + a + " instead of " + e;
+                    }
+                }
+            }
+        }
+    }
+}
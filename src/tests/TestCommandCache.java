@@ -0,0 +1,105 @@
+package tests;
+
+import diuf.diva.dia.ms.script.CommandCache;
+import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.script.command.AbstractCommand;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Dataset;
+import org.jdom2.Element;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Runs a command producing a dataset through a command cache, and checks that
+ * running it again restores its dataset and result without executing it,
+ * while changing its seed executes it again.
+ *
+ * @author agent
+ */
+public class TestCommandCache {
+
+    @Test
+    public void testHit() throws Exception {
+        File folder = Files.createTempDirectory("cache").toFile();
+        CommandCache cache = new CommandCache(folder.getPath(), 1 << 20);
+        XMLScript script = script();
+        Make cmd = new Make(script);
+
+        Element e = new Element("make").setAttribute("id", "ds").setAttribute("seed", "1").setAttribute("value", "0.5");
+        String res = cache.execute(script, cmd, e);
+        assert cmd.runs == 1;
+        assert res.equals("made 0.5") : res;
+        Dataset first = script.datasets.get("ds");
+
+        // Same command and inputs: restored from the cache
+        script.unloadDataset("ds");
+        res = cache.execute(script, cmd, e);
+        assert cmd.runs == 1 : cmd.runs;
+        assert res.equals("made 0.5") : res;
+        Dataset restored = script.datasets.get("ds");
+        assert restored != null && restored != first;
+        assert restored.size() == 1;
+        assert restored.get(0).getValues(1, 1)[0] == 0.5f;
+
+        // Another seed is another execution
+        script.unloadDataset("ds");
+        e.setAttribute("seed", "2");
+        cache.execute(script, cmd, e);
+        assert cmd.runs == 2 : cmd.runs;
+
+        for (File f : folder.listFiles()) {
+            f.delete();
+        }
+        folder.delete();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a dataset of one block filled with its value attribute, and
+     * counts its executions.
+     */
+    private static class Make extends AbstractCommand {
+        int runs = 0;
+
+        Make(XMLScript script) {
+            super(script);
+        }
+
+        @Override
+        public String execute(Element element) throws Exception {
+            runs++;
+            float value = Float.parseFloat(readAttribute(element, "value"));
+            DataBlock db = new DataBlock(2, 2, 1);
+            for (int x = 0; x < 2; x++) {
+                for (int y = 0; y < 2; y++) {
+                    db.setValue(0, x, y, value);
+                }
+            }
+            Dataset ds = new Dataset(script.colorspace);
+            ds.add(db);
+            script.datasets.put(readAttribute(element, "id"), ds);
+            return "made " + value;
+        }
+
+        @Override
+        public String tagName() {
+            return "make";
+        }
+    }
+
+    /**
+     * Writes an empty script, and loads it.
+     */
+    private static XMLScript script() throws Exception {
+        File file = File.createTempFile("cache", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "<script/>".getBytes(StandardCharsets.UTF_8));
+        return new XMLScript(file.getPath());
+    }
+}
@@ -0,0 +1,129 @@
+package tests;
+
+import diuf.diva.dia.ms.script.XMLScript;
+import diuf.diva.dia.ms.script.command.AbstractCommand;
+import org.jdom2.Element;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs small scripts made of a test command with the automatic scheduling,
+ * and checks that the commands sharing a resource run in the document order,
+ * that the other ones overlap, and that the results are folded as with a
+ * sequential execution.
+ *
+ * @author agent
+ */
+public class TestCommandScheduler {
+
+    @Test
+    public void testAnsFolding() throws Exception {
+        XMLScript script = script(
+                "<step name='a' ref='a' sleep='300' value='1'/>",
+                "<step name='b' ref='b' sleep='0' value='2'/>",
+                "<step name='c' ref='c' sleep='100' value=''/>",
+                "<step name='d' ref='d' sleep='0' value='$ANS'/>",
+                "<step name='e' ref='e' sleep='0' value=''/>"
+        );
+        String res = script.execute();
+
+        // b finished before a, but b is the last result in the document order
+        assert Step.end("b") < Step.end("a");
+        assert Step.result("d").equals("2") : Step.result("d");
+        assert res.equals("2") : res;
+
+        // d uses $ANS, so it waits for all previous commands, and e for d
+        assert Step.start("d") >= Step.end("a");
+        assert Step.start("e") >= Step.end("d");
+    }
+
+    @Test
+    public void testDependencies() throws Exception {
+        XMLScript script = script(
+                "<step name='first' ref='x' sleep='300' value=''/>",
+                "<step name='other' ref='y' sleep='0' value=''/>",
+                "<step name='second' ref='x' sleep='0' value=''/>"
+        );
+        script.execute();
+
+        // Same resource: document order; different resource: concurrent
+        assert Step.start("second") >= Step.end("first");
+        assert Step.start("other") < Step.end("first");
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Waits some milliseconds, records when it started and ended, and returns
+     * its value attribute.
+     */
+    public static class Step extends AbstractCommand {
+        private static final Map<String, long[]> times = new HashMap<>();
+        private static final Map<String, String> results = new HashMap<>();
+
+        public Step(XMLScript script) {
+            super(script);
+        }
+
+        @Override
+        public String execute(Element element) throws Exception {
+            String name = readAttribute(element, "name");
+            long start = System.nanoTime();
+            Thread.sleep(Long.parseLong(readAttribute(element, "sleep")));
+            String res = readAttribute(element, "value");
+            synchronized (times) {
+                times.put(name, new long[]{start, System.nanoTime()});
+                results.put(name, res);
+            }
+            return res;
+        }
+
+        @Override
+        public String tagName() {
+            return "step";
+        }
+
+        static long start(String name) {
+            synchronized (times) {
+                return times.get(name)[0];
+            }
+        }
+
+        static long end(String name) {
+            synchronized (times) {
+                return times.get(name)[1];
+            }
+        }
+
+        static String result(String name) {
+            synchronized (times) {
+                return results.get(name);
+            }
+        }
+    }
+
+    /**
+     * Writes a script running its commands on 4 threads, and loads it.
+     */
+    private static XMLScript script(String... commands) throws Exception {
+        StringBuilder xml = new StringBuilder("<script threads='4'>");
+        for (String c : commands) {
+            xml.append(c);
+        }
+        xml.append("</script>");
+        File file = File.createTempFile("scheduler", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+
+        XMLScript script = new XMLScript(file.getPath());
+        script.commands.put("step", new Step(script));
+        return script;
+    }
+}
@@ -0,0 +1,57 @@
+package tests;
+
+import diuf.diva.dia.ms.util.Dataset;
+import diuf.diva.dia.ms.util.DatasetCache;
+import diuf.diva.dia.ms.util.Image;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Acquires and releases a dataset of a dataset cache, and checks that the
+ * scripts using it share its data blocks, and that it is dropped once the
+ * last of them released it.
+ *
+ * @author agent
+ */
+public class TestDatasetCache {
+
+    @Test
+    public void testReferences() throws Exception {
+        File folder = Files.createTempDirectory("dataset").toFile();
+        for (int i = 0; i < 3; i++) {
+            ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", new File(folder, i + ".png"));
+        }
+        DatasetCache cache = new DatasetCache();
+        String key = DatasetCache.key(folder.getPath(), Image.Colorspace.RGB, 10);
+
+        // Two users: one loading, own lists, shared blocks
+        Dataset a = cache.acquire(folder.getPath(), Image.Colorspace.RGB, 10);
+        Dataset b = cache.acquire(folder.getPath(), Image.Colorspace.RGB, 10);
+        assert a != b;
+        assert a.size() == 3 && b.size() == 3;
+        assert a.get(0) == b.get(0);
+        assert cache.size() == 1;
+
+        // Dropped only after the last release
+        cache.release(key);
+        assert cache.size() == 1;
+        cache.release(key);
+        assert cache.size() == 0;
+
+        // Loaded again by the next user
+        Dataset c = cache.acquire(folder.getPath(), Image.Colorspace.RGB, 10);
+        assert c.get(0) != a.get(0);
+        cache.release(key);
+        assert cache.size() == 0;
+
+        for (File f : folder.listFiles()) {
+            f.delete();
+        }
+        folder.delete();
+    }
+}
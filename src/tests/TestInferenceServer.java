@@ -0,0 +1,140 @@
+package tests;
+
+import diuf.diva.dia.ms.ml.ae.StandardAutoEncoder;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.script.InferenceServer;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.Image;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Starts the inference service on a free localhost port, and checks that the
+ * labels it answers are the ones the classifier gives directly, also when
+ * many small requests are batched together.
+ *
+ * @author agent
+ */
+public class TestInferenceServer {
+
+    @Test
+    public void testPoints() throws Exception {
+        FFCNN ffcnn = classifier();
+        BufferedImage page = page();
+        InferenceServer server = new InferenceServer(2, 32, 5, Image.Colorspace.RGB);
+        server.setModel("m", ffcnn.clone());
+        int port = server.start(0);
+        try {
+            DataBlock db = dataBlock(page);
+
+            // Many concurrent requests of a few pixels each, batched together
+            List<CompletableFuture<String>> answers = new ArrayList<>();
+            List<int[]> points = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int[] p = {5 + i % 20, 5 + (i * 7) % 20};
+                points.add(p);
+                answers.add(CompletableFuture.supplyAsync(() -> post(port, "/classify/m?points=" + p[0] + "," + p[1], page)));
+            }
+            for (int i = 0; i < answers.size(); i++) {
+                int[] p = points.get(i);
+                ffcnn.centerInput(db, p[0], p[1]);
+                ffcnn.compute();
+                String expected = p[0] + " " + p[1] + " " + ffcnn.getOutputClass(false) + "\n";
+                assert answers.get(i).get().equals(expected) : answers.get(i).get() + " instead of " + expected;
+            }
+
+            // Pixels where the classifier does not fit
+            assert post(port, "/classify/m?points=0,0", page).equals("0 0 " + InferenceServer.UNKNOWN + "\n");
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        InferenceServer server = new InferenceServer(1, 8, 1, Image.Colorspace.RGB);
+        server.setModel("m", classifier());
+        int port = server.start(0);
+        try {
+            assert status(port, "/classify/unknown", page()) == 404;
+            assert status(port, "/classify/m?points=99,0", page()) == 400;
+            assert status(port, "/models", null) == 200;
+        } finally {
+            server.stop();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    private static FFCNN classifier() {
+        SCAE scae = new SCAE(new StandardAutoEncoder(3, 3, 3, 6, "NeuralLayer"), 3, 3);
+        return new FFCNN(scae, "NeuralLayer", 4);
+    }
+
+    private static BufferedImage page() {
+        Random rnd = new Random(3);
+        BufferedImage bi = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < bi.getWidth(); x++) {
+            for (int y = 0; y < bi.getHeight(); y++) {
+                bi.setRGB(x, y, rnd.nextInt(0x1000000));
+            }
+        }
+        return bi;
+    }
+
+    /**
+     * Converts the page as the service does.
+     */
+    private static DataBlock dataBlock(BufferedImage bi) {
+        Image img = new Image(bi);
+        img.convertTo(Image.Colorspace.RGB);
+        return new DataBlock(img);
+    }
+
+    private static String post(int port, String path, BufferedImage page) {
+        try {
+            HttpURLConnection c = open(port, path, page);
+            try (InputStream is = c.getInputStream()) {
+                ByteArrayOutputStream bo = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                for (int n = is.read(buf); n >= 0; n = is.read(buf)) {
+                    bo.write(buf, 0, n);
+                }
+                return new String(bo.toByteArray(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static int status(int port, String path, BufferedImage page) throws IOException {
+        return open(port, path, page).getResponseCode();
+    }
+
+    private static HttpURLConnection open(int port, String path, BufferedImage page) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        if (page != null) {
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            try (OutputStream os = c.getOutputStream()) {
+                ImageIO.write(page, "png", os);
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,126 @@
+package tests;
+
+import diuf.diva.dia.ms.ml.Classifier;
+import diuf.diva.dia.ms.ml.ae.StandardAutoEncoder;
+import diuf.diva.dia.ms.ml.ae.aec.AEClassifier;
+import diuf.diva.dia.ms.ml.ae.ffcnn.FFCNN;
+import diuf.diva.dia.ms.ml.ae.scae.SCAE;
+import diuf.diva.dia.ms.util.DataBlock;
+import diuf.diva.dia.ms.util.ModelFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that models survive being written and read with ModelFile, and that
+ * models saved with plain Java serialization by the previous versions of the
+ * library can still be read and trained. The files in the models folder were
+ * written by the library before the binary model format was introduced.
+ *
+ * @author agent
+ */
+public class TestModelFile {
+
+    @Test
+    public void testBaselineSCAE() throws Exception {
+        SCAE scae = (SCAE) ModelFile.read(model("baseline-scae.dat"));
+        scae.centerInput(page(), 20, 20);
+        scae.train();
+        assert scae.getOutputDepth() == 12;
+    }
+
+    @Test
+    public void testBaselineFFCNN() throws Exception {
+        train((Classifier) ModelFile.read(model("baseline-ffcnn.dat")));
+    }
+
+    @Test
+    public void testBaselineAEClassifier() throws Exception {
+        train((Classifier) ModelFile.read(model("baseline-aec.dat")));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SCAE scae = new SCAE(new StandardAutoEncoder(3, 3, 3, 8, "NeuralLayer"), 3, 3);
+        scae.addLayer(new StandardAutoEncoder(3, 3, 8, 12, "NeuralLayer"), 3, 3);
+        FFCNN ffcnn = new FFCNN(scae, "NeuralLayer", 4);
+        DataBlock page = page();
+        ffcnn.centerInput(page, 20, 20);
+        ffcnn.compute();
+        float[] expected = ffcnn.getOutput().getValues(0, 0).clone();
+
+        File file = File.createTempFile("ffcnn", ".model");
+        file.deleteOnExit();
+        ffcnn.save(file.getPath());
+        assert ModelFile.isModelFile(file.getPath());
+
+        FFCNN copy = (FFCNN) ModelFile.read(file.getPath());
+        copy.centerInput(page, 20, 20);
+        copy.compute();
+        assert Arrays.equals(expected, copy.getOutput().getValues(0, 0));
+        train(copy);
+    }
+
+    @Test
+    public void testFreezeSharedSCAE() throws Exception {
+        SCAE scae = new SCAE(new StandardAutoEncoder(3, 3, 3, 8, "NeuralLayer"), 3, 3);
+        AEClassifier aec = new AEClassifier(scae, 4, 6);
+        aec.freeze();
+        train(aec);
+
+        // The SCAE of the script keeps its decoders
+        scae.centerInput(page(), 20, 20);
+        scae.train();
+
+        // A frozen replica can be saved and read back
+        File file = File.createTempFile("aec", ".model");
+        file.deleteOnExit();
+        Classifier frozen = aec.replicate();
+        frozen.freeze();
+        frozen.save(file.getPath());
+        train((Classifier) ModelFile.read(file.getPath()));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Runs one training step, which fails if the gradients or the buffers of
+     * the classifier were not allocated when it was read.
+     */
+    private static void train(Classifier c) {
+        c.centerInput(page(), 20, 20);
+        c.compute();
+        c.setExpected(0, 1);
+        c.backPropagate();
+        c.learn();
+        assert c.getOutputSize() == 4;
+    }
+
+    private static DataBlock page() {
+        Random rnd = new Random(1);
+        DataBlock page = new DataBlock(50, 50, 3);
+        for (int x = 0; x < page.getWidth(); x++) {
+            for (int y = 0; y < page.getHeight(); y++) {
+                for (int z = 0; z < page.getDepth(); z++) {
+                    page.setValue(z, x, y, 2 * rnd.nextFloat() - 1);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Finds a model file, either on the class path or in the source tree.
+     */
+    private static String model(String name) throws Exception {
+        URL url = TestModelFile.class.getResource("models/" + name);
+        if (url != null) {
+            return new File(url.toURI()).getPath();
+        }
+        return "src/tests/models/" + name;
+    }
+}
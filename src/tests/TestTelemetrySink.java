@@ -0,0 +1,84 @@
+package tests;
+
+import diuf.diva.dia.ms.script.TelemetrySink;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fills the ring buffer of a telemetry sink from several threads, and checks
+ * that every line is either written once or counted as dropped, that the
+ * lines of a thread keep their order, and that nothing is accepted after the
+ * sink was closed.
+ *
+ * @author agent
+ */
+public class TestTelemetrySink {
+    private static final int PRODUCERS = 4;
+    private static final int LINES = 20000;
+
+    @Test
+    public void testRing() throws Exception {
+        File file = File.createTempFile("telemetry", ".jsonl");
+        file.deleteOnExit();
+        TelemetrySink sink = new TelemetrySink(file.getPath(), 0);
+
+        AtomicInteger accepted = new AtomicInteger();
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int id = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < LINES; i++) {
+                    if (sink.offer("{\"p\":" + id + ",\"i\":" + i + "}")) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        sink.close();
+
+        // Accepted lines are all written, the others are counted as dropped
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assert lines.size() == accepted.get() : lines.size() + " " + accepted.get();
+        assert accepted.get() + sink.getDropped() == PRODUCERS * LINES;
+
+        int[] last = new int[PRODUCERS];
+        Arrays.fill(last, -1);
+        for (String line : lines) {
+            int p = number(line, "\"p\":");
+            int i = number(line, "\"i\":");
+            assert i > last[p] : line;
+            last[p] = i;
+        }
+
+        // A closed sink drops everything, and closing it again does nothing
+        assert !sink.offer("{}");
+        sink.close();
+        assert Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size() == lines.size();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // Utility
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Reads an integer field of a line written by the producers.
+     */
+    private static int number(String line, String field) {
+        int start = line.indexOf(field) + field.length();
+        int end = start;
+        while (Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(line.substring(start, end));
+    }
+}